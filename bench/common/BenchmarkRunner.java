@@ -0,0 +1,106 @@
+package common;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Utilidades comunes de las pruebas de rendimiento del directorio {@code bench}.
+ * <p>
+ * Mide una operación en el hilo actual: primero la repite {@value #WARMUP_ROUNDS} rondas para que el compilador
+ * JIT la optimice, y después {@value #MEASURED_ROUNDS} rondas en las que se anotan el tiempo y los bytes
+ * asignados por el hilo ({@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)}). Informa de la
+ * mediana del tiempo por operación y de la media de bytes asignados por operación, en una fila de tabla Markdown
+ * que puede copiarse tal cual en el README.
+ * </p>
+ * <p>
+ * No sustituye a JMH: no aísla cada prueba en su propia JVM ni controla la eliminación de código muerto más allá
+ * de {@link #consume(Object)}. Basta para comparar órdenes de magnitud entre dos implementaciones ejecutadas en
+ * la misma máquina, que es lo que necesitan estas pruebas.
+ * </p>
+ */
+public final class BenchmarkRunner {
+
+    /** Rondas de calentamiento que no se miden. */
+    public static final int WARMUP_ROUNDS = 5;
+
+    /** Rondas medidas. */
+    public static final int MEASURED_ROUNDS = 10;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static volatile Object sink;  // Destino de los resultados, para que el JIT no elimine la operación
+
+    /**
+     * Una operación medida.
+     */
+    @FunctionalInterface
+    public interface Operation {
+        /**
+         * Ejecuta la operación una vez.
+         *
+         * @param iteration El número de la iteración dentro de la ronda, desde 0.
+         * @throws Exception Si la operación falla, lo que aborta la prueba.
+         */
+        void run(int iteration) throws Exception;
+    }
+
+    private BenchmarkRunner() {
+    }
+
+    /**
+     * Imprime la cabecera de la tabla de resultados.
+     *
+     * @param title El título de la prueba.
+     */
+    public static void header(String title) {
+        System.out.println();
+        System.out.println("### " + title);
+        System.out.println();
+        System.out.println("| Caso | ns/op | B/op |");
+        System.out.println("|---|---:|---:|");
+    }
+
+    /**
+     * Mide una operación e imprime su fila de resultados.
+     *
+     * @param name El nombre del caso.
+     * @param operations Las operaciones de cada ronda.
+     * @param operation La operación.
+     * @throws Exception Si la operación falla.
+     */
+    public static void measure(String name, int operations, Operation operation) throws Exception {
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            for (int i = 0; i < operations; i++) {
+                operation.run(i);
+            }
+        }
+        long thread = Thread.currentThread().getId();
+        double[] nanos = new double[MEASURED_ROUNDS];
+        long allocated = 0;
+        for (int round = 0; round < MEASURED_ROUNDS; round++) {
+            long bytesBefore = THREADS.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            for (int i = 0; i < operations; i++) {
+                operation.run(i);
+            }
+            long elapsed = System.nanoTime() - start;
+            allocated += THREADS.getThreadAllocatedBytes(thread) - bytesBefore;
+            nanos[round] = (double) elapsed / operations;
+        }
+        Arrays.sort(nanos);
+        double median = nanos[MEASURED_ROUNDS / 2];
+        double bytes = (double) allocated / ((long) operations * MEASURED_ROUNDS);
+        System.out.printf(Locale.ROOT, "| %s | %.1f | %.1f |%n", name, median, bytes);
+    }
+
+    /**
+     * Consume un resultado para que el compilador no pueda eliminar la operación que lo produce.
+     *
+     * @param value El resultado.
+     */
+    public static void consume(Object value) {
+        sink = value;
+    }
+}
@@ -0,0 +1,76 @@
+package common.command;
+
+import common.BenchmarkRunner;
+import common.model.User;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Prueba de rendimiento de la resolución de comandos de {@link CommandFactory}.
+ * <p>
+ * Compara, por paquete de comando, la tabla precompilada de comandos sin estado con el camino reflexivo
+ * anterior: búsqueda en un {@link HashMap} por nombre, {@code getConstructor(CommandContext.class).newInstance}
+ * y un {@link User} desechable con los argumentos. Los nombres se alternan entre todos los comandos registrados
+ * y uno desconocido.
+ * </p>
+ */
+public class CommandFactoryBenchmark {
+
+    private static final int OPERATIONS = 200_000;
+    private static final String[] NAMES = {"login", "users", "private", "exit", "history", "join", "leave", "rooms", "unknown"};
+
+    /**
+     * Ejecuta la prueba.
+     *
+     * @param args No se usan.
+     * @throws Exception Si la prueba falla.
+     */
+    public static void main(String[] args) throws Exception {
+        CommandFactory factory = new CommandFactory();
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", 40000);
+        byte[][] encodedNames = new byte[NAMES.length][];
+        Map<String, Class<? extends ReflectiveCommand>> reflective = new HashMap<>();
+        for (int i = 0; i < NAMES.length; i++) {
+            encodedNames[i] = NAMES[i].getBytes(StandardCharsets.US_ASCII);
+            if (!NAMES[i].equals("unknown")) {
+                reflective.put(NAMES[i], ReflectiveCommand.class);
+            }
+        }
+
+        BenchmarkRunner.header("CommandFactory: resolución de un comando por paquete");
+        BenchmarkRunner.measure("Reflexión (HashMap + newInstance + User)", OPERATIONS, i -> {
+            String name = NAMES[i % NAMES.length];
+            User throwaway = new User("alice hello", address);
+            CommandContext context = new CommandContext(null, throwaway.getAddress(), throwaway.getUsername());
+            Class<? extends ReflectiveCommand> type = reflective.get(name);
+            BenchmarkRunner.consume(type != null ? type.getConstructor(CommandContext.class).newInstance(context) : null);
+        });
+        BenchmarkRunner.measure("Tabla precompilada, nombre como String", OPERATIONS, i -> {
+            Command command = factory.getCommand(NAMES[i % NAMES.length]);
+            BenchmarkRunner.consume(command != null ? new CommandContext(null, address, "alice hello") : null);
+        });
+        BenchmarkRunner.measure("Tabla precompilada, nombre sobre los bytes", OPERATIONS, i -> {
+            byte[] name = encodedNames[i % NAMES.length];
+            Command command = factory.getCommand(name, 0, name.length);
+            BenchmarkRunner.consume(command != null ? new CommandContext(null, address, "alice hello") : null);
+        });
+        BenchmarkRunner.measure("Código de operación", OPERATIONS, i -> {
+            Command command = factory.getCommand((byte) (1 + i % NAMES.length));
+            BenchmarkRunner.consume(command != null ? new CommandContext(null, address, "alice hello") : null);
+        });
+    }
+
+    /**
+     * Un comando del diseño anterior: una instancia por invocación, creada por reflexión con su contexto.
+     */
+    public static final class ReflectiveCommand {
+        private final CommandContext context;
+
+        public ReflectiveCommand(CommandContext context) {
+            this.context = context;
+        }
+    }
+}
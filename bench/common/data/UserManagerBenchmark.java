@@ -0,0 +1,67 @@
+package common.data;
+
+import common.BenchmarkRunner;
+import common.model.User;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Prueba de rendimiento de {@link UserManager#getUserByAddress(InetSocketAddress)} con distinto número de
+ * usuarios conectados.
+ * <p>
+ * Compara el índice por dirección con el recorrido anterior de todos los usuarios del mapa por nombre, desde
+ * 10 hasta 100.000 usuarios. Cada búsqueda es de un usuario conectado elegido en un orden que recorre todos.
+ * </p>
+ */
+public class UserManagerBenchmark {
+
+    private static final int[] USER_COUNTS = {10, 100, 1_000, 10_000, 100_000};
+    private static final int INDEX_OPERATIONS = 200_000;
+    private static final long SCAN_BUDGET = 2_000_000;  // Usuarios recorridos por ronda en el recorrido lineal
+
+    /**
+     * Ejecuta la prueba.
+     *
+     * @param args No se usan.
+     * @throws Exception Si la prueba falla.
+     */
+    public static void main(String[] args) throws Exception {
+        BenchmarkRunner.header("UserManager: búsqueda del usuario de una dirección");
+        for (int count : USER_COUNTS) {
+            UserManager userManager = new UserManager();
+            Map<String, User> clients = new ConcurrentHashMap<>();
+            InetSocketAddress[] addresses = new InetSocketAddress[count];
+            for (int i = 0; i < count; i++) {
+                byte[] ip = {10, (byte) (i >> 16), (byte) (i >> 8), (byte) i};
+                addresses[i] = new InetSocketAddress(InetAddress.getByAddress(ip), 40000 + i % 1000);
+                userManager.addUser("user-" + i, addresses[i]);
+                clients.put("user-" + i, new User("user-" + i, addresses[i]));
+            }
+            int stride = 7919;  // Primo: recorre todas las direcciones sin seguir el orden de inserción
+
+            BenchmarkRunner.measure(String.format("%,d usuarios, índice por dirección", count), INDEX_OPERATIONS,
+                    i -> BenchmarkRunner.consume(userManager.getUserByAddress(addresses[(int) ((long) i * stride % count)])));
+            BenchmarkRunner.measure(String.format("%,d usuarios, recorrido lineal", count), (int) Math.max(10, SCAN_BUDGET / count),
+                    i -> BenchmarkRunner.consume(scan(clients, addresses[(int) ((long) i * stride % count)])));
+        }
+    }
+
+    /**
+     * La búsqueda anterior: recorre los usuarios hasta encontrar el de la dirección.
+     *
+     * @param clients Los usuarios por nombre.
+     * @param address La dirección.
+     * @return El usuario, o {@code null} si no hay ninguno con esa dirección.
+     */
+    private static User scan(Map<String, User> clients, InetSocketAddress address) {
+        for (User user : clients.values()) {
+            if (user.getAddress().equals(address)) {
+                return user;
+            }
+        }
+        return null;
+    }
+}
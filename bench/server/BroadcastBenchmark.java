@@ -0,0 +1,94 @@
+package server;
+
+import common.BenchmarkRunner;
+import common.data.Room;
+import common.data.RoomManager;
+import common.model.Message;
+import common.model.User;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Prueba de rendimiento de la difusión de un mensaje de chat a los clientes de texto de una sala.
+ * <p>
+ * Mide la memoria asignada y el tiempo por difusión a 1.000 destinatarios del camino actual, que codifica el
+ * mensaje una sola vez y envía el mismo buffer a cada destinatario, frente al anterior, que por cada destinatario
+ * creaba la cadena de {@code Message.toString()}, sus bytes y un {@link DatagramPacket}. El envío al socket se
+ * sustituye por un envío vacío en ambos casos, para medir solo el trabajo del servidor.
+ * </p>
+ */
+public class BroadcastBenchmark {
+
+    private static final int RECIPIENTS = 1_000;
+    private static final int OPERATIONS = 2_000;
+
+    /**
+     * Ejecuta la prueba.
+     *
+     * @param args No se usan.
+     * @throws Exception Si la prueba falla.
+     */
+    public static void main(String[] args) throws Exception {
+        BenchServer server = new BenchServer();
+        server.setMetricsInterval(0);
+        server.setIdleTimeout(0);
+        server.start();
+        try {
+            InetSocketAddress sender = null;
+            for (int i = 0; i < RECIPIENTS + 1; i++) {
+                byte[] ip = {10, 0, (byte) (i >> 8), (byte) i};
+                InetSocketAddress address = new InetSocketAddress(InetAddress.getByAddress(ip), 40000);
+                server.getUserManager().addUser("user-" + i, address);
+                server.getRoomManager().join(server.getUserManager().getUserByName("user-" + i), RoomManager.DEFAULT_ROOM);
+                sender = sender == null ? address : sender;
+            }
+            Room room = server.getRoomManager().getDefaultRoom();
+            InetSocketAddress author = sender;
+            Message message = new Message(server.getUserManager().getUserByAddress(author), "hello everyone in the room");
+
+            BenchmarkRunner.header("Difusión de un mensaje a " + String.format("%,d", RECIPIENTS) + " clientes de texto");
+            BenchmarkRunner.measure("Codificación por destinatario (anterior)", OPERATIONS, i -> {
+                room.getHistory().addMessage(message);
+                for (User client : room.getMembers()) {
+                    if (!client.getAddress().equals(author)) {
+                        byte[] data = message.toString().getBytes();
+                        BenchmarkRunner.consume(new DatagramPacket(data, data.length, client.getAddress()));
+                        server.sendEncoded(ByteBuffer.wrap(data), client.getAddress());
+                    }
+                }
+            });
+            BenchmarkRunner.measure("Codificación única (broadcastMessage)", OPERATIONS,
+                    i -> server.broadcastMessage(room, message, author));
+            System.out.printf("%nEnvíos por difusión: %d%n", server.sends / ((long) OPERATIONS
+                    * 2 * (BenchmarkRunner.WARMUP_ROUNDS + BenchmarkRunner.MEASURED_ROUNDS)));
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Servidor que no escucha y cuyos envíos solo se cuentan.
+     */
+    private static final class BenchServer extends AbstractUDPServer {
+        private long sends;  // Envíos hechos, para comprobar que la difusión llega a todos los destinatarios
+
+        private BenchServer() {
+            super(0);
+        }
+
+        @Override
+        public void listen() {
+            // La prueba llama directamente a la difusión: no hace falta recibir datagramas
+        }
+
+        @Override
+        protected void sendEncoded(ByteBuffer payload, InetSocketAddress clientAddress) throws IOException {
+            sends++;
+            BenchmarkRunner.consume(payload);
+        }
+    }
+}
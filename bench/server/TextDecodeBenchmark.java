@@ -0,0 +1,120 @@
+package server;
+
+import common.BenchmarkRunner;
+import common.command.Command;
+import common.protocol.Frame;
+import common.protocol.FrameCodec;
+import common.socket.PeerAddressTable;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Prueba de rendimiento de la decodificación de los datagramas recibidos, con la memoria asignada por datagrama.
+ * <p>
+ * Mide el camino actual de {@link UDPServer}: el datagrama llega a un buffer reutilizado, la dirección se obtiene
+ * de una {@link PeerAddressTable} y {@link AbstractUDPServer#handleDatagram(byte[], int, int, InetSocketAddress)}
+ * lo analiza sobre los bytes. Lo compara con el camino anterior, que por datagrama creaba un array de 1024 bytes,
+ * una cadena recortada con {@code trim()}, un {@link InetSocketAddress} y, para los comandos, el resultado de
+ * {@code split} y {@code substring}. El manejo posterior del mensaje o del comando se sustituye por un consumo
+ * vacío, para medir solo la decodificación. Se incluye también una trama binaria, cuyas asignaciones restantes
+ * documenta {@link FrameCodec#decode(byte[], int, int)}.
+ * </p>
+ */
+public class TextDecodeBenchmark {
+
+    private static final int OPERATIONS = 200_000;
+    private static final int PEERS = 64;
+
+    /**
+     * Ejecuta la prueba.
+     *
+     * @param args No se usan.
+     * @throws Exception Si la prueba falla.
+     */
+    public static void main(String[] args) throws Exception {
+        DecodeServer server = new DecodeServer();
+        PeerAddressTable peerAddresses = new PeerAddressTable();
+        InetAddress[] ips = new InetAddress[PEERS];
+        for (int i = 0; i < PEERS; i++) {
+            ips[i] = InetAddress.getByAddress(new byte[]{10, 0, 0, (byte) i});
+        }
+        byte[] receiveBuffer = new byte[1024];  // Buffer del paquete reutilizado en cada recepción
+        byte[] chat = "  hello everyone in the room  ".getBytes(StandardCharsets.UTF_8);
+        byte[] command = "/private bob are you there?".getBytes(StandardCharsets.UTF_8);
+        byte[] frame = FrameCodec.encode(FrameCodec.OP_CHAT, (byte) 0, 0, "hello everyone in the room");
+
+        BenchmarkRunner.header("Decodificación de un datagrama recibido");
+        BenchmarkRunner.measure("Mensaje de chat, camino anterior", OPERATIONS,
+                i -> legacyDecode(chat, ips[i % PEERS], 40000));
+        BenchmarkRunner.measure("Mensaje de chat, buffer reutilizado", OPERATIONS, i -> {
+            System.arraycopy(chat, 0, receiveBuffer, 0, chat.length);
+            server.handleDatagram(receiveBuffer, 0, chat.length, peerAddresses.intern(ips[i % PEERS], 40000));
+        });
+        BenchmarkRunner.measure("Comando, camino anterior", OPERATIONS,
+                i -> legacyDecode(command, ips[i % PEERS], 40000));
+        BenchmarkRunner.measure("Comando, buffer reutilizado", OPERATIONS, i -> {
+            System.arraycopy(command, 0, receiveBuffer, 0, command.length);
+            server.handleDatagram(receiveBuffer, 0, command.length, peerAddresses.intern(ips[i % PEERS], 40000));
+        });
+        BenchmarkRunner.measure("Trama binaria de chat", OPERATIONS, i -> {
+            System.arraycopy(frame, 0, receiveBuffer, 0, frame.length);
+            server.handleDatagram(receiveBuffer, 0, frame.length, peerAddresses.intern(ips[i % PEERS], 40000));
+        });
+    }
+
+    /**
+     * La decodificación anterior de un datagrama de texto.
+     *
+     * @param datagram Los bytes recibidos.
+     * @param ip La dirección IP del remitente.
+     * @param port El puerto del remitente.
+     */
+    private static void legacyDecode(byte[] datagram, InetAddress ip, int port) {
+        byte[] buffer = new byte[1024];
+        System.arraycopy(datagram, 0, buffer, 0, datagram.length);
+        String message = new String(buffer, 0, datagram.length).trim();
+        InetSocketAddress clientAddress = new InetSocketAddress(ip, port);
+        if (message.startsWith("/")) {
+            String[] parts = message.split(" ", 2);
+            String commandName = parts[0].substring(1);
+            String content = parts.length > 1 ? parts[1] : "";
+            BenchmarkRunner.consume(commandName);
+            BenchmarkRunner.consume(content);
+        } else {
+            BenchmarkRunner.consume(message);
+        }
+        BenchmarkRunner.consume(clientAddress);
+    }
+
+    /**
+     * Servidor que no escucha y que solo consume lo que decodifica.
+     */
+    private static final class DecodeServer extends AbstractUDPServer {
+
+        private DecodeServer() {
+            super(0);
+        }
+
+        @Override
+        public void listen() {
+            // La prueba entrega los datagramas directamente
+        }
+
+        @Override
+        protected void handleMessage(String message, InetSocketAddress clientAddress) {
+            BenchmarkRunner.consume(message);
+        }
+
+        @Override
+        protected void handleCommand(Command command, String commandName, String content, InetSocketAddress clientAddress) {
+            BenchmarkRunner.consume(content);
+        }
+
+        @Override
+        protected void handleFrame(Frame frame, InetSocketAddress clientAddress) {
+            BenchmarkRunner.consume(frame);
+        }
+    }
+}
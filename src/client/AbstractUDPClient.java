@@ -6,6 +6,7 @@ import common.socket.UDPUtil;
 
 import java.io.IOException;
 import java.net.*;
+import java.nio.ByteBuffer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -76,4 +77,13 @@ public abstract class AbstractUDPClient implements Client {
     public void sendMessage(String message) throws IOException {
         UDPSocketCommunication.sendMessage(clientSocket, message, serverAddress);  // Enviar el mensaje
     }
+
+    /**
+     * Envía al servidor una trama ya codificada del protocolo binario.
+     *
+     * @param frame Los bytes de la trama.
+     */
+    protected void sendFrame(byte[] frame) {
+        UDPSocketCommunication.sendMessage(clientSocket, ByteBuffer.wrap(frame), serverAddress);
+    }
 }
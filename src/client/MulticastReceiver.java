@@ -0,0 +1,347 @@
+package client;
+
+import common.logger.ChatLogger;
+import common.protocol.Frame;
+import common.protocol.FrameCodec;
+import common.socket.UDPSocketCommunication;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * La clase {@code MulticastReceiver} recibe del grupo multicast del servidor los mensajes de la sala del cliente y
+ * los entrega en orden de secuencia.
+ * <p>
+ * Al entrar en una sala, el servidor invita al cliente al grupo con la siguiente secuencia de la sala. Los mensajes
+ * de la sala llegan como datagramas {@link FrameCodec#OP_MULTICAST} por el grupo y, mientras el servidor no sepa que
+ * el grupo le llega al cliente, también por unicast: los repetidos se descartan por su secuencia. En cuanto llega
+ * el primer datagrama del grupo, el cliente lo confirma al servidor, que deja de enviarle las copias; si el grupo
+ * deja de llegar durante {@value #SUSPECT_INTERVALS} intervalos de balizas, el cliente lo indica y las copias
+ * vuelven.
+ * </p>
+ * <p>
+ * Un salto en las secuencias, en un mensaje o en una baliza, se pide al servidor con
+ * {@link FrameCodec#OP_MULTICAST_NACK}; los mensajes posteriores esperan hasta que llegan los que faltan o el
+ * servidor indica que ya no puede repararlos, y entonces se muestra cuántos se han perdido.
+ * </p>
+ */
+public class MulticastReceiver {
+    private static final Logger logger = ChatLogger.getLogger(MulticastReceiver.class.getName());
+
+    /** Intervalos de balizas sin datagramas del grupo tras los que se da por perdido. */
+    public static final int SUSPECT_INTERVALS = 3;
+
+    /** Mensajes que pueden esperar a que se repare un salto; si se superan, los que faltan se dan por perdidos. */
+    public static final int MAX_HELD = 256;
+
+    private final String username;  // Usuario del cliente, que no muestra sus propios mensajes
+    private final String interfaceName;  // Interfaz de red por la que se recibe el grupo, vacía para la del sistema
+    private final Consumer<Frame> display;  // Muestra una trama al usuario
+    private final Consumer<byte[]> control;  // Envía una trama de control al servidor
+    private final TreeMap<Integer, Frame> held;  // Mensajes recibidos tras un salto, por secuencia
+    private MulticastSocket socket;  // Socket unido al grupo, o null hasta la primera invitación
+    private InetSocketAddress group;  // Grupo al que está unido el socket
+    private long syncMillis;  // Intervalo entre balizas del servidor
+    private String epoch;  // Época del servidor que ha enviado la invitación
+    private String room;  // Sala del cliente
+    private int expected;  // Secuencia del siguiente mensaje a mostrar
+    private int requestedUpTo;  // Última secuencia ya pedida al servidor
+    private volatile boolean receiving;  // Si el grupo le llega al cliente, según lo confirmado al servidor
+    private long lastConfirm;  // Instante de la última confirmación, en System.nanoTime()
+
+    /**
+     * Constructor de la clase {@code MulticastReceiver}. El socket no se abre hasta la primera invitación.
+     *
+     * @param username El nombre del usuario del cliente.
+     * @param interfaceName El nombre de la interfaz de red del grupo, o una cadena vacía para la del sistema.
+     * @param display Muestra una trama de chat o de aviso al usuario.
+     * @param control Envía una trama de control al servidor.
+     */
+    public MulticastReceiver(String username, String interfaceName, Consumer<Frame> display, Consumer<byte[]> control) {
+        this.username = username;
+        this.interfaceName = interfaceName;
+        this.display = display;
+        this.control = control;
+        this.held = new TreeMap<>();
+    }
+
+    /**
+     * Maneja una trama del grupo multicast, llegue por el grupo o por unicast.
+     *
+     * @param frame La trama.
+     * @param viaGroup {@code true} si ha llegado por el grupo.
+     * @return {@code true} si era una trama del grupo; {@code false} si debe manejarse como cualquier otra.
+     */
+    public synchronized boolean accept(Frame frame, boolean viaGroup) {
+        switch (frame.getOpcode()) {
+            case FrameCodec.OP_MULTICAST_JOIN:
+                onJoin(frame);
+                return true;
+            case FrameCodec.OP_MULTICAST:
+            case FrameCodec.OP_MULTICAST_SYNC:
+            case FrameCodec.OP_MULTICAST_NACK:
+                break;
+            default:
+                return false;
+        }
+        if (!frame.getField(0).equals(epoch)) {
+            return true;  // De otro servidor o de una ejecución anterior
+        }
+        if (viaGroup && !receiving) {
+            confirm(true);
+        }
+        if (!frame.getField(1).equals(room)) {
+            return true;  // De otra sala
+        }
+        if (frame.getOpcode() == FrameCodec.OP_MULTICAST) {
+            onMessage(frame, viaGroup);
+        } else if (frame.getOpcode() == FrameCodec.OP_MULTICAST_SYNC) {
+            onSync(frame.getSequence());
+        } else {
+            try {
+                onLost(Integer.parseInt(frame.getField(2)), Integer.parseInt(frame.getField(3)));
+            } catch (NumberFormatException e) {
+                logger.log(Level.WARNING, "Invalid multicast loss notice: {0}", frame);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Atiende una invitación del servidor: se une al grupo si aún no lo estaba y, si el cliente ha cambiado de sala,
+     * empieza a esperar sus mensajes desde la secuencia indicada.
+     *
+     * @param join La invitación.
+     */
+    private void onJoin(Frame join) {
+        try {
+            if (!join.getField(1).equals(room) || !join.getField(0).equals(epoch)) {
+                expected = Integer.parseInt(join.getField(4));
+                epoch = join.getField(0);
+                room = join.getField(1);
+                requestedUpTo = expected - 1;
+                held.clear();
+            }
+            syncMillis = Long.parseLong(join.getField(3));
+            String address = join.getField(2);
+            int colon = address.lastIndexOf(':');
+            InetSocketAddress invited = new InetSocketAddress(InetAddress.getByName(address.substring(0, colon)),
+                    Integer.parseInt(address.substring(colon + 1)));
+            if (!invited.equals(group)) {
+                open(invited);
+            }
+        } catch (IOException | RuntimeException e) {
+            // Sin grupo, el servidor sigue enviando las copias por unicast
+            logger.log(Level.WARNING, "Cannot join multicast group {0}: {1}", new Object[]{join.getField(2), e.getMessage()});
+        }
+    }
+
+    /**
+     * Se une a un grupo, abandonando el anterior, y arranca el hilo que lo recibe.
+     *
+     * @param invited El grupo.
+     * @throws IOException Si no se puede abrir el socket o unirse al grupo.
+     */
+    private void open(InetSocketAddress invited) throws IOException {
+        close();
+        if (receiving) {
+            confirm(false);  // Hasta que llegue el grupo nuevo
+        }
+        MulticastSocket joined = new MulticastSocket(invited.getPort());
+        NetworkInterface networkInterface = interfaceName.isEmpty() ? null : NetworkInterface.getByName(interfaceName);
+        joined.joinGroup(invited, networkInterface);
+        joined.setSoTimeout((int) Math.min(Integer.MAX_VALUE, syncMillis * SUSPECT_INTERVALS));
+        socket = joined;
+        group = invited;
+        Thread receiver = new Thread(() -> receiveLoop(joined), "multicast-receiver");
+        receiver.setDaemon(true);
+        receiver.start();
+        logger.log(Level.INFO, "Joined multicast group {0}", invited);
+    }
+
+    /**
+     * Muestra un mensaje si es el siguiente en secuencia, lo guarda si hay un salto antes de él y lo descarta si
+     * ya se había recibido.
+     *
+     * @param frame El mensaje.
+     * @param viaGroup {@code true} si ha llegado por el grupo.
+     */
+    private void onMessage(Frame frame, boolean viaGroup) {
+        int sequence = frame.getSequence();
+        if (sequence < expected) {
+            // Repetido. Si llega por unicast mientras el grupo funciona, el servidor no ha recibido la confirmación
+            if (!viaGroup && receiving && System.nanoTime() - lastConfirm > TimeUnit.MILLISECONDS.toNanos(syncMillis)) {
+                confirm(true);
+            }
+            return;
+        }
+        if (sequence > expected) {
+            held.put(sequence, frame);
+            request(sequence);
+            if (held.size() > MAX_HELD) {
+                skipTo(held.firstKey());
+            }
+            return;
+        }
+        show(frame);
+        expected++;
+        drain();
+    }
+
+    /**
+     * Atiende una baliza: si el servidor ya ha publicado mensajes que no han llegado, los pide de nuevo.
+     *
+     * @param next La siguiente secuencia de la sala en el servidor.
+     */
+    private void onSync(int next) {
+        int end = held.isEmpty() ? next : Math.min(next, held.firstKey());
+        if (end > expected) {
+            control.accept(FrameCodec.encode(FrameCodec.OP_MULTICAST_NACK, (byte) 0, 0, epoch, room,
+                    String.valueOf(expected), String.valueOf(end - expected)));
+            requestedUpTo = Math.max(requestedUpTo, end - 1);
+        }
+    }
+
+    /**
+     * Atiende la respuesta del servidor con los mensajes que ya no puede reparar: se dan por perdidos.
+     *
+     * @param from La primera secuencia perdida.
+     * @param count El número de secuencias perdidas.
+     */
+    private void onLost(int from, int count) {
+        if (from + count > expected) {
+            skipTo(from + count);
+        }
+    }
+
+    /**
+     * Pide al servidor los mensajes que faltan antes de uno recibido tras un salto y que aún no se han pedido.
+     *
+     * @param sequence La secuencia del mensaje recibido.
+     */
+    private void request(int sequence) {
+        int from = Math.max(expected, requestedUpTo + 1);
+        if (from < sequence) {
+            control.accept(FrameCodec.encode(FrameCodec.OP_MULTICAST_NACK, (byte) 0, 0, epoch, room,
+                    String.valueOf(from), String.valueOf(sequence - from)));
+            requestedUpTo = sequence - 1;
+        }
+    }
+
+    /**
+     * Da por perdidos los mensajes anteriores a una secuencia, lo indica al usuario y muestra los que esperaban.
+     *
+     * @param sequence La secuencia del primer mensaje que no se ha perdido.
+     */
+    private void skipTo(int sequence) {
+        int missing = sequence - expected - held.headMap(sequence).size();
+        while (expected < sequence) {
+            Frame frame = held.remove(expected++);
+            if (frame != null) {
+                show(frame);
+            }
+        }
+        if (missing > 0) {
+            logger.log(Level.WARNING, "{0} multicast messages lost in {1}", new Object[]{missing, room});
+            display.accept(new Frame(FrameCodec.VERSION, FrameCodec.OP_NOTICE, (byte) 0, 0, new String[]{missing + " messages lost"}));
+        }
+        drain();
+    }
+
+    /**
+     * Muestra los mensajes guardados que ya son consecutivos.
+     */
+    private void drain() {
+        Frame frame;
+        while ((frame = held.remove(expected)) != null) {
+            show(frame);
+            expected++;
+        }
+    }
+
+    /**
+     * Muestra el mensaje de chat que transporta un datagrama del grupo, salvo que sea del propio usuario.
+     *
+     * @param frame El datagrama.
+     */
+    private void show(Frame frame) {
+        if (frame.getField(2).equals(username)) {
+            return;
+        }
+        try {
+            byte[] body = frame.getBody();
+            display.accept(FrameCodec.decode(body, 0, body == null ? 0 : body.length));
+        } catch (ProtocolException e) {
+            logger.log(Level.WARNING, "Invalid multicast message: {0}", e.getMessage());
+        }
+    }
+
+    /**
+     * Indica al servidor si el grupo le llega al cliente.
+     *
+     * @param receiving {@code true} si le llega.
+     */
+    private void confirm(boolean receiving) {
+        this.receiving = receiving;
+        this.lastConfirm = System.nanoTime();
+        control.accept(FrameCodec.encode(receiving ? FrameCodec.OP_MULTICAST_JOIN : FrameCodec.OP_MULTICAST_LEAVE, (byte) 0, 0));
+        logger.log(Level.INFO, receiving ? "Receiving multicast group" : "Multicast group silent, back to unicast");
+    }
+
+    /**
+     * Bucle del hilo que recibe el grupo. Si no llega nada durante varios intervalos de balizas, el grupo se da
+     * por perdido hasta que vuelva a llegar algo.
+     *
+     * @param joined El socket unido al grupo.
+     */
+    private void receiveLoop(MulticastSocket joined) {
+        byte[] buffer = new byte[UDPSocketCommunication.MAX_DATAGRAM_SIZE];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        while (!joined.isClosed()) {
+            try {
+                packet.setData(buffer);
+                joined.receive(packet);
+                accept(FrameCodec.decode(packet.getData(), packet.getOffset(), packet.getLength()), true);
+            } catch (SocketTimeoutException e) {
+                synchronized (this) {
+                    if (receiving) {
+                        confirm(false);
+                    }
+                }
+            } catch (ProtocolException e) {
+                // Al cerrar el socket durante la recepción puede devolverse un datagrama vacío
+                if (!joined.isClosed() && packet.getLength() > 0) {
+                    logger.log(Level.WARNING, "Invalid multicast frame: {0}", e.getMessage());
+                }
+            } catch (IOException e) {
+                if (!joined.isClosed()) {
+                    logger.log(Level.SEVERE, "Error receiving multicast frame: {0}", e.getMessage());
+                }
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Error handling multicast frame: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Abandona el grupo y cierra el socket.
+     */
+    public synchronized void close() {
+        if (socket != null) {
+            socket.close();
+            socket = null;
+            group = null;
+        }
+    }
+}
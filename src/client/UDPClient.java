@@ -1,16 +1,28 @@
 package client;
 
 import common.logger.ChatLogger;
+import common.command.Command;
 import common.command.CommandFactory;
 import common.command.commands.ExitCommand;
 import common.command.commands.LoginCommand;
 import common.model.User;
+import common.protocol.Frame;
+import common.protocol.FrameCodec;
+import common.protocol.FrameCompressor;
+import common.protocol.FrameFragmenter;
+import common.protocol.FrameReassembler;
+import common.reliability.ReliableEndpoint;
+import common.timer.TimerWheel;
 import common.socket.UDPSocketCommunication;
 
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -24,9 +36,54 @@ public class UDPClient extends AbstractUDPClient {
     // Logger para el registro de eventos y errores
     private static final Logger logger = ChatLogger.getLogger(UDPClient.class.getName());
 
+    // Tiempo que se espera la respuesta binaria al login antes de volver al protocolo de texto
+    private static final int NEGOTIATION_TIMEOUT_MS = 1000;
+
+    // Fábrica de comandos, usada para traducir los comandos escritos a su código de operación
+    private static final CommandFactory COMMANDS = new CommandFactory();
+
+    // Tiempo máximo que se espera la confirmación de las tramas pendientes al salir
+    private static final long EXIT_DELIVERY_TIMEOUT_MS = 2000;
+
+    // Intervalo sin enviar nada tras el que se envía un latido, si no se indica con chat.heartbeatInterval
+    private static final long DEFAULT_HEARTBEAT_INTERVAL_MS = 10000;
+
     // Usuario asociado al cliente
     private User user;
 
+    // Si el servidor ha aceptado el protocolo binario
+    private volatile boolean binaryProtocol;
+
+    // Entrega fiable de las tramas, o null si no está habilitada (propiedad del sistema chat.reliable)
+    private ReliableEndpoint reliability;
+
+    // Rueda de temporizadores de las retransmisiones y los latidos, o null si no se necesita
+    private TimerWheel timers;
+
+    /** Intervalo de los latidos en milisegundos, 0 si no se envían (propiedad del sistema chat.heartbeatInterval). */
+    private final long heartbeatMillis;
+
+    /** Instante del último envío de una trama, para enviar un latido solo si el cliente lleva un intervalo callado. */
+    private volatile long lastSent;
+
+    /** División de las tramas mayores que la MTU. */
+    private final FrameFragmenter fragmenter;
+
+    /** Reconstrucción de las tramas fragmentadas por el servidor. */
+    private final FrameReassembler reassembler;
+
+    /** Compresión de las tramas, o null si no está habilitada (propiedad del sistema chat.compression). */
+    private final FrameCompressor compressor;
+
+    /** Recepción del grupo multicast de la sala, o null si no está habilitada (propiedad del sistema chat.multicast). */
+    private final MulticastReceiver multicast;
+
+    /** Si el servidor ha indicado que acepta tramas comprimidas. */
+    private volatile boolean serverAcceptsCompression;
+
+    /** Paquete reutilizado en cada recepción, con capacidad para el datagrama más grande. */
+    private final DatagramPacket receivePacket;
+
     /**
      * Constructor que inicializa el cliente UDP con la dirección del servidor y el usuario.
      *
@@ -36,20 +93,49 @@ public class UDPClient extends AbstractUDPClient {
     public UDPClient(InetSocketAddress serverAddress, User user) {
         super(serverAddress, user.getAddress().getPort());
         this.user = user;
+        this.fragmenter = new FrameFragmenter(UDPSocketCommunication.getMtu());
+        this.reassembler = new FrameReassembler();
+        this.compressor = Boolean.getBoolean("chat.compression") ? new FrameCompressor() : null;
+        this.multicast = Boolean.getBoolean("chat.multicast")
+                ? new MulticastReceiver(user.getUsername(), System.getProperty("chat.multicast.interface", ""), this::printFrame, this::sendFrame)
+                : null;
+        this.receivePacket = new DatagramPacket(new byte[UDPSocketCommunication.MAX_DATAGRAM_SIZE], UDPSocketCommunication.MAX_DATAGRAM_SIZE);
+        this.heartbeatMillis = Math.max(0, Long.getLong("chat.heartbeatInterval", DEFAULT_HEARTBEAT_INTERVAL_MS));
     }
 
     /**
-     * Inicia el cliente UDP. Envía un comando de login al servidor e inicia un hilo para escuchar los mensajes
-     * del servidor y manejar las entradas del usuario.
+     * Inicia el cliente UDP. Envía un comando de login al servidor, negociando el protocolo, e inicia un hilo
+     * para escuchar los mensajes del servidor y manejar las entradas del usuario.
+     * <p>
+     * Con la propiedad del sistema {@code chat.reliable=true}, las tramas del protocolo binario se envían con
+     * entrega fiable ({@link ReliableEndpoint}) y el servidor responde también con tramas fiables. Con
+     * {@code chat.compression=true}, el cliente indica al servidor que acepta tramas comprimidas y comprime las
+     * suyas en cuanto el servidor indica lo mismo. Con {@code chat.multicast=true}, el cliente indica que puede
+     * unirse al grupo multicast del servidor y recibe por él los mensajes de su sala ({@link MulticastReceiver});
+     * {@code chat.multicast.interface} elige la interfaz de red del grupo.
+     * </p>
+     * <p>
+     * Con el protocolo binario, el cliente envía un latido cuando lleva {@code chat.heartbeatInterval}
+     * milisegundos sin enviar nada (por defecto {@value #DEFAULT_HEARTBEAT_INTERVAL_MS}, 0 para no enviarlos),
+     * para que el servidor no lo expulse por inactividad.
+     * </p>
      */
     @Override
     public void start() {
         try {
-            // Construye el comando de login para el servidor
-            String loginCommand = CommandFactory.COMMAND_SYMBOL + LoginCommand.getCommandName() + " " + user.getUsername();
+            if (Boolean.getBoolean("chat.reliable") || heartbeatMillis > 0) {
+                timers = new TimerWheel("client-timers");
+            }
+            if (Boolean.getBoolean("chat.reliable")) {
+                reliability = new ReliableEndpoint(timers,
+                        (payload, address) -> UDPSocketCommunication.sendMessage(clientSocket, payload, address));
+            }
 
-            // Envia el comando de login al servidor
-            sendMessage(loginCommand);
+            // Envía el login y negocia el protocolo con el servidor
+            negotiateProtocol();
+            if (binaryProtocol && heartbeatMillis > 0) {
+                timers.schedule(this::heartbeat, heartbeatMillis, TimeUnit.MILLISECONDS);
+            }
 
             // Inicia el hilo para escuchar mensajes del servidor
             Thread listenerThread = startListenerThread();
@@ -62,6 +148,146 @@ public class UDPClient extends AbstractUDPClient {
         }
     }
 
+    /**
+     * Negocia el protocolo con el servidor. Se envía el login como trama binaria; si el servidor responde con
+     * una trama, se usa el protocolo binario. Si responde en texto o no responde a tiempo (un servidor que solo
+     * entiende texto ignora la trama), se repite el login en texto y se usa el protocolo de texto.
+     *
+     * @throws IOException Si ocurre un error al enviar o recibir.
+     */
+    private void negotiateProtocol() throws IOException {
+        sendFrame(FrameCodec.encode(LoginCommand.OPCODE, (byte) 0, 0, user.getUsername()));
+        clientSocket.setSoTimeout(NEGOTIATION_TIMEOUT_MS);
+        try {
+            DatagramPacket reply = UDPSocketCommunication.receiveMessage(clientSocket, receivePacket);
+            binaryProtocol = FrameCodec.isFrame(reply.getData(), 0, reply.getLength());
+            if (binaryProtocol) {
+                logger.log(Level.INFO, "Server accepted binary protocol");
+                handleReceiveMessage(reply);
+            } else {
+                logger.log(Level.INFO, "Server rejected binary protocol: " + new String(reply.getData(), 0, reply.getLength()));
+                fallBackToText();
+            }
+        } catch (SocketTimeoutException e) {
+            logger.log(Level.INFO, "No binary reply from server, falling back to text protocol");
+            fallBackToText();
+        } finally {
+            clientSocket.setSoTimeout(0);
+        }
+    }
+
+    /**
+     * Vuelve al protocolo de texto: descarta la entrega fiable, que el servidor no confirmará, y los latidos, que
+     * no entiende, y repite el login en texto.
+     *
+     * @throws IOException Si ocurre un error al enviar el login.
+     */
+    private void fallBackToText() throws IOException {
+        if (reliability != null) {
+            reliability.forget(serverAddress);
+            reliability = null;
+        }
+        if (timers != null) {
+            timers.close();
+            timers = null;
+        }
+        sendMessage(textLoginCommand());
+    }
+
+    /**
+     * Envía al servidor una trama del protocolo binario, de forma fiable si está habilitado. La trama indica que
+     * el cliente acepta lotes y, si están habilitados, que puede unirse al grupo multicast y que envía latidos.
+     * Si la compresión está habilitada, indica también que el cliente acepta tramas
+     * comprimidas y se comprime si el servidor también las acepta. Si no cabe en la MTU ({@code chat.net.mtu}),
+     * se envían sus fragmentos.
+     *
+     * @param frame Los bytes de la trama, recién codificada para este envío.
+     */
+    @Override
+    protected void sendFrame(byte[] frame) {
+        try {
+            if (compressor != null) {
+                if (serverAcceptsCompression) {
+                    frame = compressor.compress(frame);
+                }
+                FrameCodec.addFlags(frame, FrameCodec.FLAG_ACCEPTS_COMPRESSION);
+            }
+            FrameCodec.addFlags(frame, FrameCodec.FLAG_ACCEPTS_BATCH);
+            if (multicast != null) {
+                FrameCodec.addFlags(frame, FrameCodec.FLAG_ACCEPTS_MULTICAST);
+            }
+            if (heartbeatMillis > 0) {
+                FrameCodec.addFlags(frame, FrameCodec.FLAG_SENDS_HEARTBEATS);
+            }
+            lastSent = System.nanoTime();
+            for (byte[] part : fragmenter.split(frame)) {
+                if (reliability == null) {
+                    super.sendFrame(part);
+                } else {
+                    reliability.send(part, serverAddress);
+                }
+            }
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Failed to send frame: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            logger.log(Level.WARNING, "Message too large to send: " + e.getMessage());
+            System.out.println(RED.get() + "[ERROR] " + RESET.get() + "Message too large");
+        }
+    }
+
+    /**
+     * Envía un latido si el cliente lleva un intervalo sin enviar nada y programa la siguiente comprobación. Se
+     * ejecuta en la rueda de temporizadores; el latido no usa la entrega fiable, ya que si se pierde basta con el
+     * siguiente.
+     */
+    private void heartbeat() {
+        long idleMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastSent);
+        long delay = heartbeatMillis - idleMillis;
+        if (delay <= 0) {
+            lastSent = System.nanoTime();
+            super.sendFrame(FrameCodec.encode(FrameCodec.OP_HEARTBEAT, FrameCodec.FLAG_SENDS_HEARTBEATS, 0));
+            delay = heartbeatMillis;
+        }
+        timers.schedule(this::heartbeat, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Construye el comando de login del protocolo de texto.
+     *
+     * @return El comando de login.
+     */
+    private String textLoginCommand() {
+        return CommandFactory.COMMAND_SYMBOL + LoginCommand.getCommandName() + " " + user.getUsername();
+    }
+
+    /**
+     * Envía al servidor una entrada del usuario con el protocolo negociado. En el protocolo binario los comandos
+     * se envían con su código de operación y sus argumentos como campo; los comandos que el cliente no conoce
+     * se envían como texto para que el servidor responda con el error correspondiente.
+     *
+     * @param input El mensaje o comando a enviar.
+     * @throws IOException Si ocurre un error al enviar.
+     */
+    private void sendInput(String input) throws IOException {
+        if (!binaryProtocol) {
+            sendMessage(input);
+            return;
+        }
+        if (input.isEmpty() || input.charAt(0) != CommandFactory.COMMAND_SYMBOL) {
+            sendFrame(FrameCodec.encode(FrameCodec.OP_CHAT, (byte) 0, 0, input));
+            return;
+        }
+        String[] parts = input.substring(1).split(" ", 2);
+        Command command = COMMANDS.getCommand(parts[0]);
+        if (command == null) {
+            sendMessage(input);
+        } else if (parts.length > 1) {
+            sendFrame(FrameCodec.encode(command.getOpcode(), (byte) 0, 0, parts[1]));
+        } else {
+            sendFrame(FrameCodec.encode(command.getOpcode(), (byte) 0, 0));
+        }
+    }
+
     /**
      * Método para escuchar los mensajes entrantes del servidor en un bucle infinito.
      * Recibe los mensajes a través del socket UDP y los maneja en el hilo principal.
@@ -71,7 +297,7 @@ public class UDPClient extends AbstractUDPClient {
         while (!Thread.currentThread().isInterrupted()) {
             try {
                 // Recibe un paquete de datos del servidor
-                DatagramPacket packet = UDPSocketCommunication.receiveMessage(clientSocket);
+                DatagramPacket packet = UDPSocketCommunication.receiveMessage(clientSocket, receivePacket);
                 // Maneja el mensaje recibido
                 handleReceiveMessage(packet);
             } catch (IOException e) {
@@ -102,11 +328,25 @@ public class UDPClient extends AbstractUDPClient {
         System.out.println(CYAN.get() + BOLD.get() + "Ending session..." + RESET.get());
         try {
             // Envía el comando de salida al servidor
-            sendMessage(CommandFactory.COMMAND_SYMBOL + ExitCommand.getCommandName());
+            sendInput(CommandFactory.COMMAND_SYMBOL + ExitCommand.getCommandName());
         } catch (IOException e) {
             // Si hay un error al enviar el comando, se registra el fallo
             logger.log(Level.SEVERE, "Error sending exit command: " + e.getMessage(), e);
         }
+        // Con entrega fiable, espera a que el servidor confirme el comando de salida antes de cerrar el socket
+        if (binaryProtocol && reliability != null) {
+            try {
+                reliability.awaitDelivery(serverAddress, EXIT_DELIVERY_TIMEOUT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (timers != null) {
+            timers.close();  // Detiene también los latidos
+        }
+        if (multicast != null) {
+            multicast.close();
+        }
         // Interrumpe el hilo de escucha
         listenerThread.interrupt();
     }
@@ -156,7 +396,7 @@ public class UDPClient extends AbstractUDPClient {
     protected void processUserInput(String input) {
         try {
             // Envía el mensaje o comando al servidor
-            sendMessage(input);
+            sendInput(input);
         } catch (IOException e) {
             // Si hay un error al enviar el mensaje, se registra el fallo
             logger.log(Level.SEVERE, "Error sending command: " + e.getMessage(), e);
@@ -170,6 +410,10 @@ public class UDPClient extends AbstractUDPClient {
      * @param packet El paquete de datos recibido del servidor.
      */
     protected void handleReceiveMessage(DatagramPacket packet) {
+        if (FrameCodec.isFrame(packet.getData(), 0, packet.getLength())) {
+            handleReceiveFrame(packet);
+            return;
+        }
         String message = new String(packet.getData(), 0, packet.getLength());
 
         // Si el mensaje comienza con "ERROR", lo imprime en rojo
@@ -181,6 +425,80 @@ public class UDPClient extends AbstractUDPClient {
         }
     }
 
+    /**
+     * Maneja un datagrama del protocolo binario recibido del servidor. Si es un lote, sus tramas se manejan
+     * una a una, en orden, como si hubieran llegado en datagramas separados.
+     *
+     * @param packet El paquete de datos recibido del servidor.
+     */
+    private void handleReceiveFrame(DatagramPacket packet) {
+        try {
+            Frame frame = FrameCodec.decode(packet.getData(), 0, packet.getLength());
+            if (frame.getOpcode() != FrameCodec.OP_BATCH) {
+                handleFrame(frame);
+                return;
+            }
+            for (Frame batched : FrameCodec.decodeBatch(frame)) {
+                handleFrame(batched);
+            }
+        } catch (ProtocolException e) {
+            logger.log(Level.WARNING, "Invalid frame from server: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Maneja una trama recibida del servidor. El tipo de mensaje se conoce por el código de operación, sin
+     * inspeccionar el texto. Los fragmentos se juntan y el mensaje se muestra cuando llegan todos. Las tramas del
+     * grupo multicast que llegan por unicast pasan por el {@link MulticastReceiver}, que las ordena con las del grupo.
+     *
+     * @param frame La trama recibida.
+     */
+    private void handleFrame(Frame frame) {
+        try {
+            if ((frame.getFlags() & FrameCodec.FLAG_ACCEPTS_COMPRESSION) != 0) {
+                serverAcceptsCompression = true;
+            }
+            List<Frame> received = reliability == null ? List.of(frame) : reliability.receive(frame, serverAddress);
+            for (Frame delivered : received) {  // Ninguna si es una confirmación o una trama repetida
+                if (delivered.getOpcode() == FrameCodec.OP_FRAGMENT) {
+                    delivered = reassembler.accept(delivered, serverAddress);  // null mientras falten fragmentos
+                }
+                if (delivered != null && (multicast == null || !multicast.accept(delivered, false))) {
+                    printFrame(delivered);
+                }
+            }
+        } catch (ProtocolException e) {
+            logger.log(Level.WARNING, "Invalid frame from server: " + e.getMessage());
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Failed to acknowledge frame: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Muestra una trama recibida del servidor según su código de operación. Si el servidor avisa de que ha
+     * cerrado la sesión, el cliente vuelve a iniciarla con el mismo nombre.
+     *
+     * @param frame La trama recibida.
+     */
+    private void printFrame(Frame frame) {
+        switch (frame.getOpcode()) {
+            case FrameCodec.OP_ERROR:
+                System.out.println(RED.get() + "[ERROR] " + RESET.get() + frame.getField(0));
+                break;
+            case FrameCodec.OP_SESSION_EXPIRED:
+                System.out.println(RED.get() + "[ERROR] " + RESET.get() + frame.getField(0));
+                logger.log(Level.INFO, "Server closed the session, logging in again");
+                sendFrame(FrameCodec.encode(LoginCommand.OPCODE, (byte) 0, 0, user.getUsername()));
+                break;
+            case FrameCodec.OP_CHAT:
+                System.out.println(CYAN.get() + BOLD.get() + "[" + frame.getField(0) + "] " + frame.getField(1) + RESET.get());
+                break;
+            default:
+                System.out.println(CYAN.get() + BOLD.get() + frame.getField(0) + RESET.get());
+                break;
+        }
+    }
+
     /**
      * Maneja los errores ocurridos durante la recepción de un mensaje del servidor.
      *
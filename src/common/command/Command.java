@@ -1,34 +1,50 @@
 package common.command;
 
 import java.io.IOException;
-import java.net.DatagramSocket;
+import java.util.List;
 
 /**
  * La interfaz {@code Command} define el contrato para los comandos ejecutables en el sistema de chat.
  * Todos los comandos deben implementar el método {@code execute}, el cual define las acciones que se deben realizar
  * cuando el comando es invocado.
  * <p>
- * Los comandos implementados permitirán distintas funcionalidades dentro de la aplicación, como enviar mensajes,
- * listar usuarios, etc.
+ * Los comandos no guardan estado: se registra una única instancia de cada uno en {@link CommandFactory}
+ * y la información de cada invocación llega en el {@link CommandContext}, por lo que una misma instancia
+ * puede atender invocaciones concurrentes.
  * </p>
  */
 public interface Command {
 
     /**
-     * Ejecuta el comando utilizando un socket de Datagram, realizando las operaciones definidas por cada comando.
+     * Ejecuta el comando, realizando las operaciones definidas por cada comando.
      *
-     * @param socket El socket de tipo {@code DatagramSocket} que se utilizará para enviar o recibir datos.
-     * @throws IOException Si ocurre un error al interactuar con el socket.
+     * @param context El contexto de la invocación: servidor, dirección del cliente y argumentos del comando.
+     * @throws IOException Si ocurre un error al enviar o recibir datos.
      */
-    void execute(DatagramSocket socket) throws IOException;
+    void execute(CommandContext context) throws IOException;
 
     /**
-     * Método estático opcional que puede ser utilizado para obtener el nombre o identificador del comando.
-     * Este método puede ser implementado por las clases concretas de comando si es necesario.
+     * Obtiene el nombre del comando, tal y como lo escribe el usuario sin el símbolo de comando.
      *
-     * @return El nombre o identificador del comando.
+     * @return El nombre del comando.
      */
-    static String getCommand() {
-        return null;
+    String getName();
+
+    /**
+     * Obtiene el código de operación de un byte que identifica al comando.
+     *
+     * @return El código de operación del comando.
+     */
+    byte getOpcode();
+
+    /**
+     * Obtiene los textos fijos que el comando envía a los clientes, como los avisos y los errores, sin las partes
+     * variables. Forman parte del diccionario de {@link common.protocol.FrameCompressor}, por lo que un texto
+     * nuevo o cambiado llega al diccionario sin tocarlo.
+     *
+     * @return Los textos fijos, o una lista vacía si el comando no envía ninguno.
+     */
+    default List<String> getReplies() {
+        return List.of();
     }
 }
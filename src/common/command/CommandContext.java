@@ -1,7 +1,6 @@
 package common.command;
 
-import common.model.User;
-import server.UDPServer;
+import server.AbstractUDPServer;
 
 import java.net.InetSocketAddress;
 
@@ -9,7 +8,7 @@ import java.net.InetSocketAddress;
  * La clase {@code CommandContext} proporciona el contexto necesario para ejecutar un comando.
  * <p>
  * Esta clase encapsula información relevante como el servidor que está ejecutando el comando,
- * el usuario que ejecuta el comando y la dirección del cliente desde donde se recibió la solicitud.
+ * la dirección del cliente desde donde se recibió la solicitud y los argumentos del comando.
  * </p>
  */
 public class CommandContext {
@@ -17,30 +16,30 @@ public class CommandContext {
     /**
      * El servidor UDP que está gestionando las solicitudes de los clientes.
      */
-    private final UDPServer server;
+    private final AbstractUDPServer server;
 
     /**
-     * El usuario que está ejecutando el comando.
+     * La dirección del cliente (IP y puerto) desde la que se ha recibido la solicitud.
      */
-    private final User user;
+    private final InetSocketAddress clientAddress;
 
     /**
-     * La dirección del cliente (IP y puerto) desde la que se ha recibido la solicitud.
+     * Los argumentos del comando, es decir, el texto que sigue al nombre del comando.
      */
-    private final InetSocketAddress clientAddress;
+    private final String arguments;
 
     /**
      * Constructor de la clase {@code CommandContext}.
      * Se utiliza para crear un contexto que contiene la información relevante para ejecutar un comando.
      *
      * @param server El servidor UDP que está gestionando la solicitud.
-     * @param user El usuario que ejecuta el comando.
      * @param clientAddress La dirección del cliente (IP y puerto).
+     * @param arguments Los argumentos del comando, o una cadena vacía si no tiene.
      */
-    public CommandContext(UDPServer server, User user, InetSocketAddress clientAddress) {
+    public CommandContext(AbstractUDPServer server, InetSocketAddress clientAddress, String arguments) {
         this.server = server;
-        this.user = user;
         this.clientAddress = clientAddress;
+        this.arguments = arguments;
     }
 
     /**
@@ -48,25 +47,25 @@ public class CommandContext {
      *
      * @return El servidor UDP.
      */
-    public UDPServer getServer() {
+    public AbstractUDPServer getServer() {
         return server;
     }
 
     /**
-     * Obtiene el usuario que está ejecutando el comando.
+     * Obtiene la dirección del cliente desde la que se ha recibido la solicitud.
      *
-     * @return El usuario.
+     * @return La dirección del cliente.
      */
-    public User getUser() {
-        return user;
+    public InetSocketAddress getClientAddress() {
+        return clientAddress;
     }
 
     /**
-     * Obtiene la dirección del cliente desde la que se ha recibido la solicitud.
+     * Obtiene los argumentos del comando.
      *
-     * @return La dirección del cliente.
+     * @return Los argumentos, o una cadena vacía si el comando no tiene.
      */
-    public InetSocketAddress getClientAddress() {
-        return clientAddress;
+    public String getArguments() {
+        return arguments;
     }
 }
@@ -4,17 +4,21 @@ import common.command.commands.LoginCommand;
 import common.command.commands.ExitCommand;
 import common.command.commands.ListUsersCommand;
 import common.command.commands.PrivateMessageCommand;
+import common.command.commands.HistoryCommand;
+import common.command.commands.JoinCommand;
+import common.command.commands.LeaveCommand;
+import common.command.commands.RoomsCommand;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 
 /**
- * La clase {@code CommandFactory} es responsable de crear comandos basados en su nombre.
- * Se encarga de registrar las clases de comandos disponibles y de crear instancias de ellas
- * cuando se solicita un comando específico.
+ * La clase {@code CommandFactory} es responsable de localizar los comandos a partir de su nombre
+ * o de su código de operación.
  * <p>
- * Esta clase utiliza un mapa ({@code HashMap}) para asociar los nombres de los comandos con
- * sus respectivas clases concretas.
+ * Cada comando se registra una única vez como instancia sin estado. Los nombres se guardan en una tabla
+ * de direccionamiento abierto junto con su hash, calculado al registrar el comando, por lo que resolver
+ * un comando solo requiere calcular el hash del nombre recibido y comparar una entrada, sin reflexión
+ * ni creación de objetos. Los códigos de operación se resuelven indexando directamente un array.
  * </p>
  */
 public class CommandFactory {
@@ -25,48 +29,177 @@ public class CommandFactory {
      */
     public static final char COMMAND_SYMBOL = '/';
 
-    // Mapa que asocia nombres de comando con sus clases correspondientes
-    private final Map<String, Class<? extends Command>> commands;
+    // Tamaño de la tabla de nombres (potencia de dos, holgada para mantener pocas colisiones)
+    private static final int TABLE_SIZE = 64;
+
+    // Tabla de nombres: hash precalculado y comando de cada posición
+    private final int[] nameHashes;
+    private final Command[] commandsByName;
+
+    // Tabla de códigos de operación, indexada por el byte sin signo
+    private final Command[] commandsByOpcode;
 
     /**
      * Constructor de la clase {@code CommandFactory}.
-     * Registra los comandos básicos (Login, ListUsers, PrivateMessage, Exit) en el mapa {@code commands}.
+     * Registra los comandos básicos (Login, ListUsers, PrivateMessage, Exit, History, Join, Leave, Rooms).
      */
     public CommandFactory() {
-        commands = new HashMap<>();
+        nameHashes = new int[TABLE_SIZE];
+        commandsByName = new Command[TABLE_SIZE];
+        commandsByOpcode = new Command[256];
 
         // Registro de comandos disponibles en el sistema
-        registerCommand(LoginCommand.getCommandName(), LoginCommand.class);
-        registerCommand(ListUsersCommand.getCommandName(), ListUsersCommand.class);
-        registerCommand(PrivateMessageCommand.getCommandName(), PrivateMessageCommand.class);
-        registerCommand(ExitCommand.getCommandName(), ExitCommand.class);
+        for (Command command : getDefaultCommands()) {
+            registerCommand(command);
+        }
     }
 
     /**
-     * Registra un comando en el mapa {@code commands} asociando un nombre con una clase de comando.
+     * Obtiene los comandos básicos que registra cada fábrica.
      *
-     * @param commandName El nombre del comando (por ejemplo, "/login").
-     * @param commandClass La clase que implementa el comando correspondiente.
+     * @return Los comandos, en orden de registro.
      */
-    public void registerCommand(String commandName, Class<? extends Command> commandClass) {
-        commands.put(commandName, commandClass);
+    public static List<Command> getDefaultCommands() {
+        return List.of(LoginCommand.INSTANCE, ListUsersCommand.INSTANCE, PrivateMessageCommand.INSTANCE, ExitCommand.INSTANCE,
+                HistoryCommand.INSTANCE, JoinCommand.INSTANCE, LeaveCommand.INSTANCE, RoomsCommand.INSTANCE);
+    }
+
+    /**
+     * Registra un comando por su nombre y por su código de operación.
+     *
+     * @param command La instancia del comando.
+     * @throws IllegalArgumentException Si el nombre o el código de operación ya están registrados, o la tabla está llena.
+     */
+    public void registerCommand(Command command) {
+        int opcode = command.getOpcode() & 0xFF;
+        if (commandsByOpcode[opcode] != null) {
+            throw new IllegalArgumentException("Opcode already registered: " + opcode);
+        }
+
+        String name = command.getName();
+        int hash = hash(name);
+        for (int i = 0; i < TABLE_SIZE; i++) {
+            int index = (hash + i) & (TABLE_SIZE - 1);
+            if (commandsByName[index] == null) {
+                nameHashes[index] = hash;
+                commandsByName[index] = command;
+                commandsByOpcode[opcode] = command;
+                return;
+            }
+            if (nameHashes[index] == hash && commandsByName[index].getName().equals(name)) {
+                throw new IllegalArgumentException("Command already registered: " + name);
+            }
+        }
+        throw new IllegalArgumentException("Command table is full");
     }
 
     /**
-     * Crea una nueva instancia de un comando basado en el nombre del comando proporcionado.
+     * Obtiene el comando correspondiente a un nombre.
      *
-     * @param commandName El nombre del comando que se desea crear.
-     * @param context El contexto necesario para la ejecución del comando.
-     * @return Una instancia del comando correspondiente o {@code null} si el comando no existe.
-     * @throws Exception Si ocurre un error al instanciar el comando.
+     * @param commandName El nombre del comando, sin el símbolo de comando.
+     * @return El comando correspondiente o {@code null} si el comando no existe.
      */
-    public Command createCommand(String commandName, CommandContext context) throws Exception {
-        // Busca la clase asociada al nombre del comando
-        Class<? extends Command> commandClass = commands.get(commandName);
-        if (commandClass != null) {
-            // Si se encuentra la clase, crea una nueva instancia usando el constructor que acepta un CommandContext
-            return commandClass.getConstructor(CommandContext.class).newInstance(context);
+    public Command getCommand(CharSequence commandName) {
+        int hash = hash(commandName);
+        for (int i = 0; i < TABLE_SIZE; i++) {
+            int index = (hash + i) & (TABLE_SIZE - 1);
+            Command command = commandsByName[index];
+            if (command == null) {
+                return null;  // Posición vacía: el nombre no está registrado
+            }
+            if (nameHashes[index] == hash && command.getName().contentEquals(commandName)) {
+                return command;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Obtiene el comando cuyo nombre ocupa un rango de bytes, sin decodificar el nombre a texto.
+     * Los nombres de los comandos son ASCII, por lo que cada byte se compara directamente con un carácter;
+     * un byte no ASCII nunca coincide con un nombre registrado.
+     *
+     * @param data Los bytes que contienen el nombre.
+     * @param offset La posición del primer byte del nombre.
+     * @param length La longitud del nombre en bytes.
+     * @return El comando correspondiente o {@code null} si el comando no existe.
+     */
+    public Command getCommand(byte[] data, int offset, int length) {
+        int hash = hash(data, offset, length);
+        for (int i = 0; i < TABLE_SIZE; i++) {
+            int index = (hash + i) & (TABLE_SIZE - 1);
+            Command command = commandsByName[index];
+            if (command == null) {
+                return null;
+            }
+            if (nameHashes[index] == hash && nameEquals(command.getName(), data, offset, length)) {
+                return command;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Obtiene el comando correspondiente a un código de operación.
+     *
+     * @param opcode El código de operación.
+     * @return El comando correspondiente o {@code null} si el código no está registrado.
+     */
+    public Command getCommand(byte opcode) {
+        return commandsByOpcode[opcode & 0xFF];
+    }
+
+    /**
+     * Calcula el hash FNV-1a de un nombre de comando sin crear objetos intermedios.
+     *
+     * @param name El nombre del comando.
+     * @return El hash del nombre.
+     */
+    private static int hash(CharSequence name) {
+        int hash = 0x811C9DC5;
+        for (int i = 0; i < name.length(); i++) {
+            hash ^= name.charAt(i);
+            hash *= 0x01000193;
+        }
+        return hash ^ (hash >>> 16);  // Mezcla los bits altos, ya que la tabla usa solo los bajos
+    }
+
+    /**
+     * Calcula el hash FNV-1a de un nombre de comando contenido en un rango de bytes. Coincide con
+     * {@link #hash(CharSequence)} para los nombres ASCII.
+     *
+     * @param data Los bytes que contienen el nombre.
+     * @param offset La posición del primer byte del nombre.
+     * @param length La longitud del nombre en bytes.
+     * @return El hash del nombre.
+     */
+    private static int hash(byte[] data, int offset, int length) {
+        int hash = 0x811C9DC5;
+        for (int i = offset; i < offset + length; i++) {
+            hash ^= data[i] & 0xFF;
+            hash *= 0x01000193;
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Compara un nombre de comando con un rango de bytes.
+     *
+     * @param name El nombre registrado.
+     * @param data Los bytes recibidos.
+     * @param offset La posición del primer byte del nombre.
+     * @param length La longitud del nombre en bytes.
+     * @return {@code true} si los bytes son el nombre en ASCII.
+     */
+    private static boolean nameEquals(String name, byte[] data, int offset, int length) {
+        if (name.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) != (data[offset + i] & 0xFF)) {
+                return false;
+            }
         }
-        return null; // Retorna null si no se encuentra el comando
+        return true;
     }
 }
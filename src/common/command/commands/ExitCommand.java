@@ -1,15 +1,16 @@
 package common.command.commands;
 
+import common.data.Room;
 import common.logger.ChatLogger;
 import common.model.Message;
 import common.model.User;
 import common.command.Command;
 import common.command.CommandContext;
-import server.UDPServer;
+import server.AbstractUDPServer;
 
 import java.io.IOException;
-import java.net.DatagramSocket;
 import java.net.InetSocketAddress;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -33,46 +34,69 @@ public class ExitCommand implements Command {
     private static final String COMMAND_NAME = "exit";
 
     /**
-     * El contexto asociado con este comando, que proporciona acceso al servidor, al usuario y a la dirección del cliente.
+     * El código de operación del comando "exit".
      */
-    private final CommandContext context;
+    public static final byte OPCODE = 4;
 
     /**
-     * Constructor de la clase {@code ExitCommand}. Inicializa el contexto necesario para ejecutar el comando.
-     *
-     * @param context El contexto del comando que proporciona acceso al servidor y al usuario.
+     * Aviso que se difunde a la sala cuando un usuario se desconecta.
+     */
+    public static final String DISCONNECTED = "has disconnected.";
+
+    /**
+     * Aviso que se difunde a la sala cuando se expulsa a un usuario inactivo.
+     */
+    public static final String TIMED_OUT = "timed out.";
+
+    /**
+     * La única instancia del comando. El comando no guarda estado, por lo que se reutiliza en cada invocación.
+     */
+    public static final ExitCommand INSTANCE = new ExitCommand();
+
+    /**
+     * Constructor privado: se utiliza la instancia compartida {@link #INSTANCE}.
      */
-    public ExitCommand(CommandContext context) {
-        this.context = context;
+    private ExitCommand() {
     }
 
     /**
      * Ejecuta el comando de desconexión. El método elimina al usuario de la lista de usuarios conectados
      * y transmite un mensaje de desconexión a los demás usuarios.
      *
-     * @param socket El socket utilizado para enviar mensajes, aunque no se utiliza directamente en este caso.
+     * @param context El contexto de la invocación, que proporciona acceso al servidor y a la dirección del cliente.
      * @throws IOException Si ocurre un error al enviar mensajes o al realizar la desconexión.
      */
     @Override
-    public void execute(DatagramSocket socket) throws IOException {
+    public void execute(CommandContext context) throws IOException {
         // Se obtiene la dirección del cliente desde el contexto
         InetSocketAddress clientAddress = context.getClientAddress();
 
         // Maneja la desconexión del usuario
-        handleDisconnect(clientAddress);
+        handleDisconnect(context.getServer(), clientAddress);
     }
 
     /**
      * Maneja la desconexión de un usuario. El método elimina al usuario de la lista de usuarios conectados
      * y notifica a todos los demás usuarios sobre la desconexión.
      *
+     * @param server El servidor que ejecuta el comando.
      * @param clientAddress La dirección del cliente que desea desconectarse.
      * @throws IOException Si ocurre un error al enviar el mensaje de desconexión.
      */
-    public void handleDisconnect(InetSocketAddress clientAddress) throws IOException {
-        // Se obtiene el servidor desde el contexto
-        UDPServer server = context.getServer();
+    public void handleDisconnect(AbstractUDPServer server, InetSocketAddress clientAddress) throws IOException {
+        handleDisconnect(server, clientAddress, DISCONNECTED);
+    }
 
+    /**
+     * Maneja la desconexión de un usuario con el aviso que reciben los demás usuarios de su sala. Lo usa también
+     * el servidor para expulsar a los clientes inactivos.
+     *
+     * @param server El servidor que ejecuta el comando.
+     * @param clientAddress La dirección del cliente que se desconecta.
+     * @param notice El aviso que sigue al nombre del usuario, por ejemplo "has disconnected.".
+     * @throws IOException Si ocurre un error al enviar el mensaje de desconexión.
+     */
+    public void handleDisconnect(AbstractUDPServer server, InetSocketAddress clientAddress, String notice) throws IOException {
         // Se obtiene el usuario correspondiente a la dirección del cliente
         User user = server.getUserManager().getUserByAddress(clientAddress);
 
@@ -80,12 +104,45 @@ public class ExitCommand implements Command {
             // Se registra el evento de desconexión
             logger.log(Level.CONFIG, "User disconnected: " + user.getUsername());
 
-            // Se elimina al usuario de la lista de usuarios conectados
+            // Se elimina al usuario de la lista de usuarios conectados y, si lo hay, del clúster
             server.getUserManager().removeUser(user.getUsername());
+            if (server.getCluster() != null) {
+                server.getCluster().release(user.getUsername());
+            }
 
-            // Se notifica a todos los usuarios que el usuario se ha desconectado
-            server.broadcastMessage(new Message(user, "has disconnected."), null);
+            // Se saca al usuario de su sala y se notifica a los demás usuarios de la sala que se ha desconectado
+            Room room = server.getRoomManager().leave(user);
+            if (room != null) {
+                server.broadcastMessage(room, new Message(user, notice), null);
+            }
         }
+
+        // Se olvida el protocolo negociado por el cliente
+        server.forgetPeer(clientAddress);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getName() {
+        return COMMAND_NAME;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte getOpcode() {
+        return OPCODE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<String> getReplies() {
+        return List.of(DISCONNECTED, TIMED_OUT);
     }
 
     /**
@@ -0,0 +1,255 @@
+package common.command.commands;
+
+import common.command.Command;
+import common.command.CommandContext;
+import common.data.MessageHistoryManager;
+import common.logger.ChatLogger;
+import server.AbstractUDPServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * El comando {@code HistoryCommand} permite consultar el historial de mensajes por páginas.
+ * <p>
+ * Formas admitidas:
+ * <ul>
+ *     <li>{@code /history [n]}: los últimos {@code n} mensajes.</li>
+ *     <li>{@code /history before <secuencia> [n]}: los {@code n} mensajes anteriores a una secuencia.</li>
+ *     <li>{@code /history after <secuencia> [n]}: los {@code n} mensajes posteriores a una secuencia.</li>
+ *     <li>{@code /history range <desde> <hasta>}: los mensajes entre dos instantes, expresados como
+ *     {@code HH:mm[:ss]} (hoy) o {@code yyyy-MM-ddTHH:mm[:ss]}.</li>
+ * </ul>
+ * Cada mensaje se envía precedido de su secuencia y su hora. Las páginas tienen como mucho {@value #MAX_PAGE}
+ * mensajes; si quedan más, se indica al cliente el comando con el que pedir la página siguiente.
+ * </p>
+ */
+public class HistoryCommand implements Command {
+
+    /**
+     * El logger utilizado para registrar los eventos en este comando.
+     */
+    private static final Logger logger = ChatLogger.getLogger(HistoryCommand.class.getName());
+
+    /**
+     * El nombre del comando "history".
+     */
+    private static final String COMMAND_NAME = "history";
+
+    /**
+     * El código de operación del comando "history".
+     */
+    public static final byte OPCODE = 5;
+
+    /**
+     * Número de mensajes de una página cuando el cliente no lo indica.
+     */
+    public static final int DEFAULT_PAGE = 20;
+
+    /**
+     * Número máximo de mensajes de una página.
+     */
+    public static final int MAX_PAGE = 50;
+
+    /**
+     * Formato de la hora con la que se envía cada mensaje.
+     */
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    /**
+     * Mensaje de ayuda con el formato del comando.
+     */
+    private static final String USAGE = "Incorrect format. Use: /history [n] | /history before <seq> [n] | "
+            + "/history after <seq> [n] | /history range <from> <to>";
+
+    /**
+     * Aviso para quien pide el historial de una sala sin mensajes.
+     */
+    private static final String EMPTY = "No messages in history.";
+
+    /**
+     * Sugerencia para pedir la página siguiente, seguida de la última secuencia enviada.
+     */
+    private static final String NEWER = "Newer messages: /history after ";
+
+    /**
+     * Sugerencia para pedir la página anterior, seguida de la primera secuencia enviada.
+     */
+    private static final String OLDER = "Older messages: /history before ";
+
+    /**
+     * La única instancia del comando. El comando no guarda estado, por lo que se reutiliza en cada invocación.
+     */
+    public static final HistoryCommand INSTANCE = new HistoryCommand();
+
+    /**
+     * Constructor privado: se utiliza la instancia compartida {@link #INSTANCE}.
+     */
+    private HistoryCommand() {
+    }
+
+    /**
+     * Ejecuta el comando de historial, interpretando los argumentos y enviando la página solicitada.
+     *
+     * @param context El contexto de la invocación, que proporciona acceso al servidor y a la dirección del cliente.
+     * @throws IOException Si ocurre un error al enviar los mensajes.
+     */
+    @Override
+    public void execute(CommandContext context) throws IOException {
+        handleHistory(context.getServer(), context.getArguments(), context.getClientAddress());
+    }
+
+    /**
+     * Interpreta los argumentos del comando y envía la página de historial correspondiente. Si el formato es
+     * incorrecto, se notifica al cliente.
+     *
+     * @param server El servidor que ejecuta el comando.
+     * @param arguments Los argumentos del comando.
+     * @param clientAddress La dirección del cliente que solicita el historial.
+     * @throws IOException Si ocurre un error al enviar los mensajes.
+     */
+    public void handleHistory(AbstractUDPServer server, String arguments, InetSocketAddress clientAddress) throws IOException {
+        MessageHistoryManager history = server.getHistoryOf(clientAddress);
+        String[] parts = arguments.isBlank() ? new String[0] : arguments.trim().split("\\s+");
+        try {
+            if (parts.length == 0) {
+                sendPage(server, history, history.latest(DEFAULT_PAGE), clientAddress, true);
+            } else if (parts.length == 1 && !parts[0].equals("before") && !parts[0].equals("after") && !parts[0].equals("range")) {
+                sendPage(server, history, history.latest(pageSize(parts[0])), clientAddress, true);
+            } else if (parts[0].equals("before") && (parts.length == 2 || parts.length == 3)) {
+                long before = Long.parseLong(parts[1]);
+                int count = parts.length == 3 ? pageSize(parts[2]) : DEFAULT_PAGE;
+                sendPage(server, history, history.cursor(before - count, before), clientAddress, true);
+            } else if (parts[0].equals("after") && (parts.length == 2 || parts.length == 3)) {
+                long after = Long.parseLong(parts[1]) + 1;
+                int count = parts.length == 3 ? pageSize(parts[2]) : DEFAULT_PAGE;
+                sendPage(server, history, history.cursor(after, after + count), clientAddress, false);
+            } else if (parts[0].equals("range") && parts.length == 3) {
+                long from = history.findSequence(parseTime(parts[1]));
+                long to = history.findSequence(parseTime(parts[2]) + 1);  // El instante final se incluye
+                sendPage(server, history, history.cursor(from, Math.min(to, from + MAX_PAGE)), clientAddress, false);
+            } else {
+                server.sendError(USAGE, clientAddress);
+            }
+        } catch (NumberFormatException | DateTimeParseException e) {
+            logger.log(Level.WARNING, "Incorrect history request from " + clientAddress + ": " + arguments);
+            server.sendError(USAGE, clientAddress);
+        }
+    }
+
+    /**
+     * Envía los mensajes de un cursor y, si quedan mensajes fuera de la página, el comando para pedir la siguiente.
+     *
+     * @param server El servidor que ejecuta el comando.
+     * @param history El historial consultado.
+     * @param cursor El cursor de la página.
+     * @param clientAddress La dirección del cliente.
+     * @param backwards {@code true} si la página siguiente es la de mensajes anteriores, {@code false} si es la de posteriores.
+     * @throws IOException Si ocurre un error al enviar los mensajes.
+     */
+    private void sendPage(AbstractUDPServer server, MessageHistoryManager history, MessageHistoryManager.Cursor cursor,
+                          InetSocketAddress clientAddress, boolean backwards) throws IOException {
+        long first = -1;
+        long last = -1;
+        while (cursor.hasNext()) {
+            String text = cursor.next().toString();
+            if (first < 0) {
+                first = cursor.getSequence();
+            }
+            last = cursor.getSequence();
+            String time = TIME_FORMAT.format(Instant.ofEpochMilli(cursor.getTimestamp()).atZone(ZoneId.systemDefault()));
+            server.sendMessage("#" + last + " " + time + " " + text, clientAddress);
+        }
+
+        if (first < 0) {
+            server.sendMessage(EMPTY, clientAddress);
+        } else if (backwards && first > history.getOldestSequence()) {
+            server.sendMessage(olderMessagesHint(first), clientAddress);
+        } else if (!backwards && last + 1 < history.getNextSequence()) {
+            server.sendMessage(NEWER + last, clientAddress);
+        }
+    }
+
+    /**
+     * Genera el aviso que indica cómo pedir los mensajes anteriores a una secuencia.
+     *
+     * @param sequence La secuencia del mensaje más antiguo enviado.
+     * @return El aviso para el cliente.
+     */
+    public static String olderMessagesHint(long sequence) {
+        return OLDER + sequence;
+    }
+
+    /**
+     * Interpreta un tamaño de página, limitándolo a {@link #MAX_PAGE}.
+     *
+     * @param value El texto del tamaño.
+     * @return El tamaño de página.
+     * @throws NumberFormatException Si el texto no es un número positivo.
+     */
+    private static int pageSize(String value) {
+        int size = Integer.parseInt(value);
+        if (size < 1) {
+            throw new NumberFormatException("Page size must be positive: " + value);
+        }
+        return Math.min(size, MAX_PAGE);
+    }
+
+    /**
+     * Interpreta un instante como hora de hoy ({@code HH:mm[:ss]}) o como fecha y hora ({@code yyyy-MM-ddTHH:mm[:ss]})
+     * en la zona horaria del servidor.
+     *
+     * @param value El texto del instante.
+     * @return El instante en milisegundos desde la época.
+     * @throws DateTimeParseException Si el texto no tiene ninguno de los dos formatos.
+     */
+    private static long parseTime(String value) {
+        LocalDateTime dateTime = value.indexOf('T') >= 0
+                ? LocalDateTime.parse(value)
+                : LocalDateTime.of(LocalDate.now(), LocalTime.parse(value));
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getName() {
+        return COMMAND_NAME;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte getOpcode() {
+        return OPCODE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<String> getReplies() {
+        return List.of(USAGE, EMPTY, NEWER, OLDER);
+    }
+
+    /**
+     * Obtiene el nombre del comando.
+     *
+     * @return El nombre del comando, que es "history".
+     */
+    public static String getCommandName() {
+        return COMMAND_NAME;
+    }
+}
@@ -0,0 +1,209 @@
+package common.command.commands;
+
+import common.data.Room;
+import common.data.RoomManager;
+import common.logger.ChatLogger;
+import common.model.Message;
+import common.model.User;
+import common.command.Command;
+import common.command.CommandContext;
+import server.AbstractUDPServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * El comando {@code JoinCommand} permite a un usuario cambiar de sala.
+ * <p>
+ * Cuando un cliente envía el comando "/join &lt;sala&gt;", el usuario sale de su sala actual y entra en la indicada,
+ * que se crea si no existe. Se avisa a los miembros de ambas salas y el usuario recibe los últimos mensajes del
+ * historial de la sala nueva. A partir de ese momento, sus mensajes solo llegan a los miembros de esa sala.
+ * </p>
+ */
+public class JoinCommand implements Command {
+
+    /**
+     * El logger utilizado para registrar los eventos en este comando.
+     */
+    private static final Logger logger = ChatLogger.getLogger(JoinCommand.class.getName());
+
+    /**
+     * El nombre del comando "join".
+     */
+    private static final String COMMAND_NAME = "join";
+
+    /**
+     * El código de operación del comando "join".
+     */
+    public static final byte OPCODE = 6;
+
+    /**
+     * Mensaje de ayuda con el formato del comando.
+     */
+    private static final String USAGE = "Incorrect format. Use: /join <room>";
+
+    /**
+     * Error para quien usa un comando que exige haber iniciado sesión sin haberlo hecho.
+     */
+    private static final String NOT_LOGGED_IN = "You must log in first.";
+
+    /**
+     * Error para quien pide una sala con un nombre no válido.
+     */
+    private static final String INVALID_NAME = "Invalid room name. Use up to 32 letters, digits, '-' or '_'.";
+
+    /**
+     * Error para quien pide la sala en la que ya está, seguido del nombre de la sala.
+     */
+    private static final String ALREADY_IN = "You are already in ";
+
+    /**
+     * Error para quien intenta crear una sala cuando ya se ha alcanzado el máximo.
+     */
+    private static final String TOO_MANY_ROOMS = "Too many rooms. Join an existing room.";
+
+    /**
+     * Aviso que se difunde a la sala que deja el usuario.
+     */
+    private static final String LEFT = "left the room.";
+
+    /**
+     * Aviso que se difunde a la sala en la que entra el usuario.
+     */
+    private static final String JOINED = "joined the room.";
+
+    /**
+     * Confirmación para el usuario, seguida del nombre de la sala.
+     */
+    private static final String NOW_IN = "You are now in ";
+
+    /**
+     * La única instancia del comando. El comando no guarda estado, por lo que se reutiliza en cada invocación.
+     */
+    public static final JoinCommand INSTANCE = new JoinCommand();
+
+    /**
+     * Constructor privado: se utiliza la instancia compartida {@link #INSTANCE}.
+     */
+    private JoinCommand() {
+    }
+
+    /**
+     * Ejecuta el comando para cambiar de sala.
+     *
+     * @param context El contexto de la invocación, que proporciona acceso al servidor, a la dirección del cliente
+     *                y al nombre de la sala.
+     * @throws IOException Si ocurre un error al enviar los mensajes.
+     */
+    @Override
+    public void execute(CommandContext context) throws IOException {
+        // Se obtiene el nombre de la sala y la dirección del cliente desde el contexto
+        String roomName = context.getArguments().trim();
+        InetSocketAddress clientAddress = context.getClientAddress();
+
+        // Maneja el cambio de sala
+        handleJoin(context.getServer(), roomName, clientAddress);
+    }
+
+    /**
+     * Maneja el cambio de sala. Si el nombre no es válido, el usuario no ha iniciado sesión o no se pueden
+     * crear más salas, se notifica al cliente.
+     *
+     * @param server El servidor que ejecuta el comando.
+     * @param roomName El nombre de la sala.
+     * @param clientAddress La dirección del cliente que cambia de sala.
+     * @throws IOException Si ocurre un error al enviar los mensajes.
+     */
+    public void handleJoin(AbstractUDPServer server, String roomName, InetSocketAddress clientAddress) throws IOException {
+        if (roomName.isEmpty()) {
+            server.sendError(USAGE, clientAddress);
+            return;
+        }
+        User user = server.getUserManager().getUserByAddress(clientAddress);
+        if (user == null) {
+            logger.log(Level.WARNING, "Join request from unknown address: " + clientAddress);
+            server.sendError(NOT_LOGGED_IN, clientAddress);
+            return;
+        }
+        moveTo(server, user, roomName, clientAddress);
+    }
+
+    /**
+     * Mueve a un usuario a una sala: avisa a los miembros de la sala que deja y de la sala nueva, y le envía
+     * el historial de la sala nueva. Si ya estaba en ella, solo se le notifica.
+     *
+     * @param server El servidor que ejecuta el comando.
+     * @param user El usuario.
+     * @param roomName El nombre de la sala.
+     * @param clientAddress La dirección del cliente.
+     * @throws IOException Si ocurre un error al enviar los mensajes.
+     */
+    static void moveTo(AbstractUDPServer server, User user, String roomName, InetSocketAddress clientAddress) throws IOException {
+        if (!RoomManager.isValidName(roomName)) {
+            server.sendError(INVALID_NAME, clientAddress);
+            return;
+        }
+        Room previous = server.roomOf(user);
+        if (previous.getName().equals(roomName)) {
+            server.sendError(ALREADY_IN + roomName + ".", clientAddress);
+            return;
+        }
+
+        Room room;
+        try {
+            room = server.getRoomManager().join(user, roomName);
+        } catch (IllegalArgumentException e) {
+            logger.log(Level.WARNING, "Cannot join room " + roomName + ": " + e.getMessage());
+            server.sendError(TOO_MANY_ROOMS, clientAddress);
+            return;
+        }
+        logger.log(Level.INFO, "User " + user.getUsername() + " moved from " + previous.getName() + " to " + room.getName());
+        if (server.getCluster() != null) {
+            server.getCluster().presenceChanged();  // Los demás nodos empiezan a reenviar los mensajes de la sala
+        }
+
+        // Se invita al usuario al grupo multicast de la sala nueva, si lo hay, se notifica a los miembros de ambas
+        // salas y se envía al usuario el historial de la sala nueva
+        server.announceRoom(room, clientAddress);
+        server.broadcastMessage(previous, new Message(user, LEFT), null);
+        server.broadcastMessage(room, new Message(user, JOINED), clientAddress);
+        server.sendMessage(NOW_IN + room.getName() + ".", clientAddress);
+        server.sendHistory(clientAddress);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getName() {
+        return COMMAND_NAME;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte getOpcode() {
+        return OPCODE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<String> getReplies() {
+        return List.of(USAGE, NOT_LOGGED_IN, INVALID_NAME, ALREADY_IN, TOO_MANY_ROOMS, LEFT, JOINED, NOW_IN);
+    }
+
+    /**
+     * Obtiene el nombre del comando.
+     *
+     * @return El nombre del comando, que es "join".
+     */
+    public static String getCommandName() {
+        return COMMAND_NAME;
+    }
+}
@@ -0,0 +1,120 @@
+package common.command.commands;
+
+import common.data.RoomManager;
+import common.logger.ChatLogger;
+import common.model.User;
+import common.command.Command;
+import common.command.CommandContext;
+import server.AbstractUDPServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * El comando {@code LeaveCommand} permite a un usuario salir de su sala.
+ * <p>
+ * Cuando un cliente envía el comando "/leave", el usuario vuelve a la sala por defecto
+ * ({@value RoomManager#DEFAULT_ROOM}), de la que no puede salir salvo desconectándose.
+ * </p>
+ */
+public class LeaveCommand implements Command {
+
+    /**
+     * El logger utilizado para registrar los eventos en este comando.
+     */
+    private static final Logger logger = ChatLogger.getLogger(LeaveCommand.class.getName());
+
+    /**
+     * El nombre del comando "leave".
+     */
+    private static final String COMMAND_NAME = "leave";
+
+    /**
+     * El código de operación del comando "leave".
+     */
+    public static final byte OPCODE = 7;
+
+    /**
+     * Error para quien usa un comando que exige haber iniciado sesión sin haberlo hecho.
+     */
+    private static final String NOT_LOGGED_IN = "You must log in first.";
+
+    /**
+     * La única instancia del comando. El comando no guarda estado, por lo que se reutiliza en cada invocación.
+     */
+    public static final LeaveCommand INSTANCE = new LeaveCommand();
+
+    /**
+     * Constructor privado: se utiliza la instancia compartida {@link #INSTANCE}.
+     */
+    private LeaveCommand() {
+    }
+
+    /**
+     * Ejecuta el comando para salir de la sala actual.
+     *
+     * @param context El contexto de la invocación, que proporciona acceso al servidor y a la dirección del cliente.
+     * @throws IOException Si ocurre un error al enviar los mensajes.
+     */
+    @Override
+    public void execute(CommandContext context) throws IOException {
+        // Se obtiene la dirección del cliente desde el contexto
+        InetSocketAddress clientAddress = context.getClientAddress();
+
+        // Maneja la salida de la sala
+        handleLeave(context.getServer(), clientAddress);
+    }
+
+    /**
+     * Maneja la salida de la sala, devolviendo al usuario a la sala por defecto.
+     *
+     * @param server El servidor que ejecuta el comando.
+     * @param clientAddress La dirección del cliente que sale de su sala.
+     * @throws IOException Si ocurre un error al enviar los mensajes.
+     */
+    public void handleLeave(AbstractUDPServer server, InetSocketAddress clientAddress) throws IOException {
+        User user = server.getUserManager().getUserByAddress(clientAddress);
+        if (user == null) {
+            logger.log(Level.WARNING, "Leave request from unknown address: " + clientAddress);
+            server.sendError(NOT_LOGGED_IN, clientAddress);
+            return;
+        }
+        JoinCommand.moveTo(server, user, RoomManager.DEFAULT_ROOM, clientAddress);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getName() {
+        return COMMAND_NAME;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte getOpcode() {
+        return OPCODE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<String> getReplies() {
+        return List.of(NOT_LOGGED_IN);
+    }
+
+    /**
+     * Obtiene el nombre del comando.
+     *
+     * @return El nombre del comando, que es "leave".
+     */
+    public static String getCommandName() {
+        return COMMAND_NAME;
+    }
+}
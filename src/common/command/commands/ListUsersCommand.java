@@ -3,10 +3,9 @@ package common.command.commands;
 import common.logger.ChatLogger;
 import common.command.Command;
 import common.command.CommandContext;
-import server.UDPServer;
+import server.AbstractUDPServer;
 
 import java.io.IOException;
-import java.net.DatagramSocket;
 import java.net.InetSocketAddress;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -31,53 +30,74 @@ public class ListUsersCommand implements Command {
     private static final String COMMAND_NAME = "users";
 
     /**
-     * El contexto asociado con este comando, que proporciona acceso al servidor y a la dirección del cliente.
+     * El código de operación del comando "users".
      */
-    private final CommandContext context;
+    public static final byte OPCODE = 2;
 
     /**
-     * Constructor de la clase {@code ListUsersCommand}. Inicializa el contexto necesario para ejecutar el comando.
-     *
-     * @param context El contexto del comando que proporciona acceso al servidor y a la dirección del cliente.
+     * La única instancia del comando. El comando no guarda estado, por lo que se reutiliza en cada invocación.
+     */
+    public static final ListUsersCommand INSTANCE = new ListUsersCommand();
+
+    /**
+     * Constructor privado: se utiliza la instancia compartida {@link #INSTANCE}.
      */
-    public ListUsersCommand(CommandContext context) {
-        this.context = context;
+    private ListUsersCommand() {
     }
 
     /**
      * Ejecuta el comando para obtener y enviar la lista de usuarios conectados al cliente.
      *
-     * @param socket El socket utilizado para enviar mensajes, aunque no se utiliza directamente en este caso.
+     * @param context El contexto de la invocación, que proporciona acceso al servidor y a la dirección del cliente.
      * @throws IOException Si ocurre un error al enviar la lista de usuarios.
      */
     @Override
-    public void execute(DatagramSocket socket) throws IOException {
+    public void execute(CommandContext context) throws IOException {
         // Se obtiene la dirección del cliente desde el contexto
         InetSocketAddress clientAddress = context.getClientAddress();
 
         // Maneja la solicitud de la lista de usuarios
-        handleUserList(clientAddress);
+        handleUserList(context.getServer(), clientAddress);
     }
 
     /**
      * Maneja la solicitud de lista de usuarios. Obtiene la lista de usuarios conectados
      * y la envía al cliente que realizó la solicitud.
      *
+     * @param server El servidor que ejecuta el comando.
      * @param clientAddress La dirección del cliente que solicitó la lista de usuarios.
      * @throws IOException Si ocurre un error al enviar la lista de usuarios.
      */
-    public void handleUserList(InetSocketAddress clientAddress) throws IOException {
-        // Se obtiene el servidor desde el contexto
-        UDPServer server = context.getServer();
-
-        // Se obtiene la lista de usuarios conectados
-        String userList = server.getUserManager().getUserList();
+    public void handleUserList(AbstractUDPServer server, InetSocketAddress clientAddress) throws IOException {
+        // Se obtiene la lista de usuarios conectados, incluidos los de otros nodos del clúster
+        StringBuilder userList = new StringBuilder(server.getUserManager().getUserList());
+        if (server.getCluster() != null) {
+            for (String username : server.getCluster().getRemoteUsers()) {
+                userList.append(username).append(", ");
+            }
+        }
 
         // Se registra el evento de envío de la lista de usuarios
         logger.log(Level.INFO, "Sending user list to " + clientAddress);
 
         // Se envía la lista de usuarios al cliente
-        server.sendMessage(userList, clientAddress);
+        server.sendMessage(userList.toString(), clientAddress);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getName() {
+        return COMMAND_NAME;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte getOpcode() {
+        return OPCODE;
     }
 
     /**
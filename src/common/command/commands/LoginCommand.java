@@ -1,15 +1,18 @@
 package common.command.commands;
 
+import common.data.Room;
+import common.data.RoomManager;
 import common.logger.ChatLogger;
 import common.model.Message;
 import common.model.User;
 import common.command.Command;
 import common.command.CommandContext;
-import server.UDPServer;
+import server.AbstractUDPServer;
+import server.cluster.ClusterNode;
 
 import java.io.IOException;
-import java.net.DatagramSocket;
 import java.net.InetSocketAddress;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -34,63 +37,122 @@ public class LoginCommand implements Command {
     private static final String COMMAND_NAME = "login";
 
     /**
-     * El contexto asociado con este comando, que proporciona acceso al servidor y al usuario que se está conectando.
+     * El código de operación del comando "login".
      */
-    private final CommandContext context;
+    public static final byte OPCODE = 1;
 
     /**
-     * Constructor de la clase {@code LoginCommand}. Inicializa el contexto necesario para ejecutar el comando.
-     *
-     * @param context El contexto del comando que proporciona acceso al servidor y al usuario.
+     * Error para quien intenta iniciar sesión con un nombre ya en uso.
      */
-    public LoginCommand(CommandContext context) {
-        this.context = context;
+    public static final String USER_EXISTS = "User already exists. Try another name.";
+
+    /**
+     * Error para quien intenta iniciar sesión desde una dirección que ya tiene un usuario conectado.
+     */
+    private static final String ALREADY_LOGGED_IN = "You are already logged in. Use /exit first.";
+
+    /**
+     * Aviso que se difunde a la sala cuando un usuario inicia sesión.
+     */
+    public static final String CONNECTED = "is connected.";
+
+    /**
+     * La única instancia del comando. El comando no guarda estado, por lo que se reutiliza en cada invocación.
+     */
+    public static final LoginCommand INSTANCE = new LoginCommand();
+
+    /**
+     * Constructor privado: se utiliza la instancia compartida {@link #INSTANCE}.
+     */
+    private LoginCommand() {
     }
 
     /**
      * Ejecuta el comando de inicio de sesión, intentado agregar al usuario al servidor.
      *
-     * @param socket El socket utilizado para enviar mensajes, aunque no se utiliza directamente en este caso.
+     * @param context El contexto de la invocación, que proporciona acceso al servidor y a la dirección del cliente.
      * @throws IOException Si ocurre un error al intentar agregar al usuario o enviar mensajes.
      */
     @Override
-    public void execute(DatagramSocket socket) throws IOException {
+    public void execute(CommandContext context) throws IOException {
         // Se obtiene el nombre de usuario y la dirección del cliente desde el contexto
-        String username = context.getUser().getUsername();
+        String username = context.getArguments();
         InetSocketAddress clientAddress = context.getClientAddress();
 
         // Maneja la solicitud de conexión del usuario
-        handleConnect(username, clientAddress);
+        handleConnect(context.getServer(), username, clientAddress);
     }
 
     /**
      * Maneja la conexión de un nuevo usuario. Si el nombre de usuario ya existe, se envía un mensaje de error.
      * Si el nombre de usuario es válido, el usuario se conecta correctamente y se envían mensajes de bienvenida.
      *
+     * @param server El servidor que ejecuta el comando.
      * @param username El nombre de usuario que el cliente ha intentado utilizar.
      * @param clientAddress La dirección del cliente que está intentando conectarse.
      * @throws IOException Si ocurre un error al enviar mensajes.
      */
-    private void handleConnect(String username, InetSocketAddress clientAddress) throws IOException {
-        UDPServer server = context.getServer();
-
-        // Si el nombre de usuario ya existe, se notifica al cliente
-        if (!server.getUserManager().addUser(username, clientAddress)) {
+    private void handleConnect(AbstractUDPServer server, String username, InetSocketAddress clientAddress) throws IOException {
+        // Si el nombre de usuario ya existe, en este servidor o en otro nodo del clúster, se notifica al cliente
+        ClusterNode cluster = server.getCluster();
+        if (server.getUserManager().isAddressConnected(clientAddress)) {
+            // Un segundo usuario desde la misma dirección dejaría al primero inalcanzable por su dirección
+            logger.log(Level.WARNING, "Login as {0} from an address that already has a user", username);
+            server.sendError(ALREADY_LOGGED_IN, clientAddress);
+        } else if ((cluster != null && cluster.isRemoteUser(username)) || !server.getUserManager().addUser(username, clientAddress)) {
             logger.log(Level.WARNING, "User already exists: " + username);
-            server.sendMessage("User already exists. Try another name.", clientAddress);
+            server.sendError(USER_EXISTS, clientAddress);
         } else {
             // Si el usuario se conecta correctamente, se genera un mensaje de bienvenida
             User newUser = server.getUserManager().getUserByName(username);
             logger.log(Level.INFO, "User connected: " + username);
 
-            // Se notifica a los demás usuarios que el nuevo usuario se ha conectado
-            server.broadcastMessage(new Message(newUser, "is connected."), null);
+            // El usuario entra en la sala por defecto
+            Room room = server.getRoomManager().join(newUser, RoomManager.DEFAULT_ROOM);
+
+            // Desde ahora se vigila su actividad, si envía latidos
+            server.watchSession(clientAddress);
+
+            // Se registra el nombre en el clúster, ya con su sala en la presencia
+            if (cluster != null) {
+                cluster.claim(username);
+            }
+
+            // Se invita al usuario al grupo multicast de su sala, si lo hay, antes de los mensajes de la sala
+            server.announceRoom(room, clientAddress);
+
+            // Se notifica a los demás usuarios de la sala que el nuevo usuario se ha conectado
+            server.broadcastMessage(room, new Message(newUser, CONNECTED), null);
 
             // Se envía el historial de mensajes al nuevo usuario
             server.sendHistory(clientAddress);
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getName() {
+        return COMMAND_NAME;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte getOpcode() {
+        return OPCODE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<String> getReplies() {
+        return List.of(USER_EXISTS, ALREADY_LOGGED_IN, CONNECTED);
+    }
+
     /**
      * Obtiene el nombre del comando.
      *
@@ -5,11 +5,11 @@ import common.model.Message;
 import common.model.User;
 import common.command.Command;
 import common.command.CommandContext;
-import server.UDPServer;
+import server.AbstractUDPServer;
 
 import java.io.IOException;
-import java.net.DatagramSocket;
 import java.net.InetSocketAddress;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -34,52 +34,68 @@ public class PrivateMessageCommand implements Command {
     private static final String COMMAND_NAME = "private";
 
     /**
-     * El contexto asociado con este comando, que proporciona acceso al servidor y al usuario que envía el mensaje.
+     * El código de operación del comando "private".
      */
-    private final CommandContext context;
+    public static final byte OPCODE = 3;
 
     /**
-     * Constructor de la clase {@code PrivateMessageCommand}. Inicializa el contexto necesario para ejecutar el comando.
-     *
-     * @param context El contexto del comando que proporciona acceso al servidor y al usuario.
+     * Mensaje de ayuda con el formato del comando.
+     */
+    private static final String USAGE = "Incorrect format. Use: /private <target_user> <message>";
+
+    /**
+     * Prefijo del texto que recibe el destinatario de un mensaje privado.
+     */
+    private static final String PREFIX = "[Private] ";
+
+    /**
+     * Error para quien escribe a un usuario que no existe, precedido del nombre del usuario.
+     */
+    private static final String NOT_FOUND = " not found.";
+
+    /**
+     * La única instancia del comando. El comando no guarda estado, por lo que se reutiliza en cada invocación.
      */
-    public PrivateMessageCommand(CommandContext context) {
-        this.context = context;
+    public static final PrivateMessageCommand INSTANCE = new PrivateMessageCommand();
+
+    /**
+     * Constructor privado: se utiliza la instancia compartida {@link #INSTANCE}.
+     */
+    private PrivateMessageCommand() {
     }
 
     /**
      * Ejecuta el comando de mensaje privado, manejando el contenido y enviando el mensaje a la dirección del usuario destino.
      *
-     * @param socket El socket utilizado para enviar mensajes, aunque no se utiliza directamente en este caso.
+     * @param context El contexto de la invocación, que proporciona acceso al servidor y a la dirección del cliente.
      * @throws IOException Si ocurre un error al enviar el mensaje privado.
      */
     @Override
-    public void execute(DatagramSocket socket) throws IOException {
-        // Se obtiene el contenido del mensaje privado del nombre de usuario
-        String content = context.getUser().getUsername();
+    public void execute(CommandContext context) throws IOException {
+        // Se obtiene el contenido del mensaje privado de los argumentos del comando
+        String content = context.getArguments();
         InetSocketAddress clientAddress = context.getClientAddress();
 
         // Maneja el envío del mensaje privado
-        handlePrivateMessage(content, clientAddress);
+        handlePrivateMessage(context.getServer(), content, clientAddress);
     }
 
     /**
      * Maneja el envío del mensaje privado a un usuario específico. Si el formato es incorrecto o el usuario destino
      * no existe, se notifica al cliente.
      *
+     * @param server El servidor que ejecuta el comando.
      * @param content El contenido del mensaje, que debe incluir el nombre del usuario destino y el mensaje.
      * @param clientAddress La dirección del cliente que envía el mensaje.
      * @throws IOException Si ocurre un error al enviar el mensaje.
      */
-    public void handlePrivateMessage(String content, InetSocketAddress clientAddress) throws IOException {
-        UDPServer server = context.getServer();
-
+    public void handlePrivateMessage(AbstractUDPServer server, String content, InetSocketAddress clientAddress) throws IOException {
         // Se divide el contenido del mensaje en el nombre del usuario destino y el mensaje privado
         String[] parts = content.split(" ", 2);
         if (parts.length < 2) {
             // Si el formato es incorrecto, se notifica al cliente
             logger.log(Level.WARNING, "Incorrect private message format from " + clientAddress);
-            server.sendMessage("Incorrect format. Use: /private <target_user> <message>", clientAddress);
+            server.sendError(USAGE, clientAddress);
             return;
         }
 
@@ -91,15 +107,43 @@ public class PrivateMessageCommand implements Command {
         User target = server.getUserManager().getUserByName(targetUser);
         if (target != null) {
             // Si el usuario destino existe, se envía el mensaje privado
-            logger.log(Level.INFO, "Sending private message to " + targetUser + ": " + privateMessage);
-            server.sendMessage(new Message(server.getUserManager().getUserByAddress(clientAddress), "[Private] " + privateMessage).toString(), target.getAddress());
+            logger.log(Level.FINE, "Sending private message to {0}", targetUser);
+            server.sendChatMessage(new Message(server.getUserManager().getUserByAddress(clientAddress), PREFIX + privateMessage), target.getAddress());
+        } else if (server.getCluster() != null && server.getCluster().relayPrivate(targetUser,
+                new Message(server.getUserManager().getUserByAddress(clientAddress), PREFIX + privateMessage))) {
+            // Si el usuario destino está en otro nodo del clúster, se le reenvía el mensaje
+            logger.log(Level.FINE, "Relaying private message to {0}", targetUser);
         } else {
             // Si el usuario destino no existe, se notifica al remitente
             logger.log(Level.WARNING, "User not found for private message: " + targetUser);
-            server.sendMessage("User " + targetUser + " not found.", clientAddress);
+            server.sendError(userNotFound(targetUser), clientAddress);
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getName() {
+        return COMMAND_NAME;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte getOpcode() {
+        return OPCODE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<String> getReplies() {
+        return List.of(USAGE, PREFIX, NOT_FOUND);
+    }
+
     /**
      * Obtiene el nombre del comando.
      *
@@ -108,4 +152,14 @@ public class PrivateMessageCommand implements Command {
     public static String getCommandName() {
         return COMMAND_NAME;
     }
+
+    /**
+     * Compone el error para quien escribe a un usuario que no existe.
+     *
+     * @param username El nombre del usuario buscado.
+     * @return El texto del error.
+     */
+    public static String userNotFound(String username) {
+        return "User " + username + NOT_FOUND;
+    }
 }
@@ -0,0 +1,108 @@
+package common.command.commands;
+
+import common.data.Room;
+import common.logger.ChatLogger;
+import common.model.User;
+import common.command.Command;
+import common.command.CommandContext;
+import server.AbstractUDPServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * El comando {@code RoomsCommand} maneja la solicitud de listar las salas del servidor.
+ * <p>
+ * Cuando un usuario envía el comando "rooms", se le envía la lista de salas con su número de miembros
+ * y la sala en la que está.
+ * </p>
+ */
+public class RoomsCommand implements Command {
+
+    /**
+     * El logger utilizado para registrar los eventos en este comando.
+     */
+    private static final Logger logger = ChatLogger.getLogger(RoomsCommand.class.getName());
+
+    /**
+     * El nombre del comando "rooms".
+     */
+    private static final String COMMAND_NAME = "rooms";
+
+    /**
+     * El código de operación del comando "rooms".
+     */
+    public static final byte OPCODE = 8;
+
+    /**
+     * La única instancia del comando. El comando no guarda estado, por lo que se reutiliza en cada invocación.
+     */
+    public static final RoomsCommand INSTANCE = new RoomsCommand();
+
+    /**
+     * Constructor privado: se utiliza la instancia compartida {@link #INSTANCE}.
+     */
+    private RoomsCommand() {
+    }
+
+    /**
+     * Ejecuta el comando para obtener y enviar la lista de salas al cliente.
+     *
+     * @param context El contexto de la invocación, que proporciona acceso al servidor y a la dirección del cliente.
+     * @throws IOException Si ocurre un error al enviar la lista de salas.
+     */
+    @Override
+    public void execute(CommandContext context) throws IOException {
+        // Se obtiene la dirección del cliente desde el contexto
+        InetSocketAddress clientAddress = context.getClientAddress();
+
+        // Maneja la solicitud de la lista de salas
+        handleRoomList(context.getServer(), clientAddress);
+    }
+
+    /**
+     * Maneja la solicitud de lista de salas y la envía al cliente que la ha realizado, indicando su sala actual.
+     *
+     * @param server El servidor que ejecuta el comando.
+     * @param clientAddress La dirección del cliente que solicitó la lista de salas.
+     * @throws IOException Si ocurre un error al enviar la lista de salas.
+     */
+    public void handleRoomList(AbstractUDPServer server, InetSocketAddress clientAddress) throws IOException {
+        String roomList = server.getRoomManager().getRoomList();
+        User user = server.getUserManager().getUserByAddress(clientAddress);
+        if (user != null) {
+            Room current = server.roomOf(user);
+            roomList += " | current: " + current.getName();
+        }
+
+        logger.log(Level.INFO, "Sending room list to " + clientAddress);
+        server.sendMessage(roomList, clientAddress);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getName() {
+        return COMMAND_NAME;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte getOpcode() {
+        return OPCODE;
+    }
+
+    /**
+     * Obtiene el nombre del comando.
+     *
+     * @return El nombre del comando, que es "rooms".
+     */
+    public static String getCommandName() {
+        return COMMAND_NAME;
+    }
+}
@@ -2,56 +2,218 @@ package common.data;
 
 import common.model.Message;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * La clase {@code MessageHistoryManager} gestiona el historial de mensajes del sistema.
  * Se encarga de almacenar los mensajes recibidos y mantener un límite en el número de mensajes almacenados.
- * Cuando se alcanza el límite, el mensaje más antiguo es eliminado.
+ * Cuando se alcanza el límite, el mensaje más antiguo es sobrescrito.
  * <p>
- * El historial de mensajes es almacenado en una lista y se puede recuperar utilizando el método {@code getHistory}.
+ * El historial es un buffer circular de capacidad fija en el que cada mensaje recibe un número de secuencia
+ * creciente y una marca de tiempo no decreciente. Las escrituras se serializan con un cerrojo (un único escritor a la vez) y publican el mensaje
+ * antes de avanzar la secuencia; las lecturas no usan cerrojos: recorren el buffer con un {@link Cursor}
+ * sin copiarlo y descartan las posiciones que el escritor haya sobrescrito mientras tanto.
+ * </p>
+ * <p>
+ * La secuencia sirve de índice directo (la posición de un mensaje se calcula a partir de ella) y, como las
+ * marcas de tiempo crecen con la secuencia, un instante se traduce a secuencia mediante búsqueda binaria.
+ * Así se pueden leer páginas del historial por secuencia o por intervalo de tiempo sin recorrerlo entero.
+ * </p>
+ * <p>
+ * Opcionalmente, cada mensaje se anexa también a un {@link MessageJournal}; al crear el historial se reconstruyen
+ * desde el diario los últimos mensajes y se continúa la numeración, de modo que el historial sobrevive a los reinicios.
  * </p>
  */
 public class MessageHistoryManager {
     // Logger para registrar operaciones relacionadas con el historial de mensajes
     private static final Logger logger = Logger.getLogger(MessageHistoryManager.class.getName());
 
-    // Límite máximo de mensajes a mantener en el historial
-    private static final int MESSAGE_HISTORY_LIMIT = 10;
+    /** Capacidad por defecto del historial. */
+    public static final int DEFAULT_CAPACITY = 10;
+
+    // Capacidad máxima de mensajes a mantener en el historial
+    private final int capacity;
+
+    // Posiciones del buffer circular; la secuencia s ocupa la posición s % capacity
+    private final AtomicReferenceArray<Entry> entries;
+
+    // Serializa a los escritores
+    private final ReentrantLock writeLock;
 
-    // Lista que almacena los mensajes, manteniendo solo los últimos MESSAGE_HISTORY_LIMIT mensajes
-    private final List<Message> messageHistory;
+    // Diario en disco en el que se anexan los mensajes, o null si el historial solo vive en memoria
+    private final MessageJournal journal;
+
+    // Secuencia que recibirá el próximo mensaje; los mensajes publicados son los anteriores
+    private volatile long nextSequence;
+
+    // Marca de tiempo del último mensaje añadido, protegida por el cerrojo de escritura
+    private long lastTimestamp;
 
     /**
-     * Constructor de la clase {@code MessageHistoryManager}.
-     * Inicializa la lista que almacenará el historial de mensajes.
+     * Constructor de la clase {@code MessageHistoryManager} con la capacidad por defecto.
      */
     public MessageHistoryManager() {
-        this.messageHistory = new ArrayList<>();
+        this(DEFAULT_CAPACITY);
     }
 
     /**
-     * Agrega un mensaje al historial. Si el número de mensajes supera el límite,
-     * elimina el mensaje más antiguo.
+     * Constructor de la clase {@code MessageHistoryManager}.
+     *
+     * @param capacity El número máximo de mensajes que se conservan.
+     * @throws IllegalArgumentException Si la capacidad no es positiva.
+     */
+    public MessageHistoryManager(int capacity) {
+        this(capacity, null);
+    }
+
+    /**
+     * Constructor de la clase {@code MessageHistoryManager} respaldado por un diario en disco. Reconstruye
+     * el historial con los últimos mensajes del diario; si la lectura falla, el historial empieza vacío.
+     *
+     * @param capacity El número máximo de mensajes que se conservan en memoria.
+     * @param journal El diario en el que se guardan los mensajes, o null para no persistirlos.
+     * @throws IllegalArgumentException Si la capacidad no es positiva.
+     */
+    public MessageHistoryManager(int capacity, MessageJournal journal) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("History capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.entries = new AtomicReferenceArray<>(capacity);
+        this.writeLock = new ReentrantLock();
+        this.journal = journal;
+        if (journal != null) {
+            restore(journal);
+        }
+    }
+
+    /**
+     * Reconstruye el historial a partir del diario. Solo quedan en memoria los últimos mensajes, que se
+     * sobrescriben en el buffer circular igual que durante la ejecución.
+     *
+     * @param journal El diario.
+     */
+    private void restore(MessageJournal journal) {
+        try {
+            nextSequence = journal.replay((sequence, timestamp, message) -> {
+                entries.set(indexOf(sequence), new Entry(sequence, timestamp, message));
+                lastTimestamp = Math.max(lastTimestamp, timestamp);
+            });
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Failed to replay message journal: {0}", e.getMessage());
+        }
+    }
+
+    /**
+     * Agrega un mensaje al historial. Si el historial está lleno, sobrescribe el mensaje más antiguo.
      *
      * @param message El mensaje a agregar al historial.
+     * @return El número de secuencia asignado al mensaje.
      */
-    public void addMessage(Message message) {
-        // Añadir el nuevo mensaje al historial
-        messageHistory.add(message);
+    public long addMessage(Message message) {
+        writeLock.lock();
+        try {
+            long sequence = nextSequence;
+            long timestamp = Math.max(lastTimestamp, System.currentTimeMillis());  // No decreciente, para poder buscar por tiempo
+            lastTimestamp = timestamp;
+            int index = indexOf(sequence);
+            Entry removed = entries.get(index);
+            entries.set(index, new Entry(sequence, timestamp, message));  // Se publica el mensaje antes que la secuencia
+            nextSequence = sequence + 1;
+            if (journal != null) {
+                journal.append(sequence, timestamp, message);  // Solo copia en memoria proyectada, sin esperar al disco
+            }
 
-        // Si el historial excede el límite, eliminar el mensaje más antiguo
-        if (messageHistory.size() > MESSAGE_HISTORY_LIMIT) {
-            // Eliminar el primer mensaje de la lista (el más antiguo)
-            Message removedMessage = messageHistory.remove(0);
-            // Registrar que se ha eliminado un mensaje por exceder el límite
-            logger.log(Level.INFO, "Message removed from history due to limit: {0}", removedMessage);
+            if (removed != null) {
+                logger.log(Level.FINE, "Message removed from history due to limit: {0}", removed.message);
+            }
+            return sequence;
+        } finally {
+            writeLock.unlock();
         }
     }
 
+    /**
+     * Crea un cursor que recorre los mensajes conservados, del más antiguo al más reciente.
+     *
+     * @return El cursor.
+     */
+    public Cursor cursor() {
+        return cursor(0);
+    }
+
+    /**
+     * Crea un cursor que recorre los mensajes conservados a partir de una secuencia. Si esa secuencia ya ha
+     * sido sobrescrita, el cursor empieza en el mensaje más antiguo conservado.
+     *
+     * @param fromSequence La primera secuencia que se quiere leer.
+     * @return El cursor, que termina en el último mensaje publicado al crearlo.
+     */
+    public Cursor cursor(long fromSequence) {
+        return cursor(fromSequence, Long.MAX_VALUE);
+    }
+
+    /**
+     * Crea un cursor que recorre los mensajes conservados con secuencia en {@code [fromSequence, toSequence)}.
+     *
+     * @param fromSequence La primera secuencia que se quiere leer.
+     * @param toSequence La secuencia en la que termina el cursor, excluida.
+     * @return El cursor, que nunca pasa del último mensaje publicado al crearlo.
+     */
+    public Cursor cursor(long fromSequence, long toSequence) {
+        long next = nextSequence;
+        return new Cursor(Math.max(fromSequence, Math.max(0, next - capacity)), Math.min(toSequence, next));
+    }
+
+    /**
+     * Crea un cursor sobre los últimos mensajes.
+     *
+     * @param count El número de mensajes.
+     * @return El cursor.
+     */
+    public Cursor latest(int count) {
+        return cursor(nextSequence - count);
+    }
+
+    /**
+     * Busca la primera secuencia cuyo mensaje se añadió en un instante igual o posterior al indicado.
+     * Las posiciones sobrescritas durante la búsqueda se tratan como anteriores a cualquier instante.
+     *
+     * @param timestampMillis El instante, en milisegundos desde la época.
+     * @return La secuencia encontrada, o la siguiente secuencia si todos los mensajes son anteriores.
+     */
+    public long findSequence(long timestampMillis) {
+        long high = nextSequence;
+        long low = Math.max(0, high - capacity);
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            Entry entry = entries.get(indexOf(middle));
+            if (entry == null || entry.sequence != middle || entry.timestamp < timestampMillis) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Obtiene la secuencia del mensaje más antiguo que se conserva.
+     *
+     * @return La secuencia más antigua, igual a la siguiente secuencia si el historial está vacío.
+     */
+    public long getOldestSequence() {
+        return Math.max(0, nextSequence - capacity);
+    }
+
     /**
      * Recupera una copia del historial de mensajes.
      *
@@ -59,8 +221,141 @@ public class MessageHistoryManager {
      */
     public List<Message> getHistory() {
         // Registrar que se está obteniendo el historial de mensajes
-        logger.log(Level.CONFIG, "Fetching message history. Current size: {0}", messageHistory.size());
-        // Retornar una copia del historial para evitar modificaciones externas
-        return new ArrayList<>(messageHistory);
+        logger.log(Level.CONFIG, "Fetching message history. Current size: {0}", size());
+        List<Message> history = new ArrayList<>();
+        cursor().forEachRemaining(history::add);
+        return history;
+    }
+
+    /**
+     * Obtiene el número de mensajes conservados.
+     *
+     * @return El número de mensajes, como mucho la capacidad.
+     */
+    public int size() {
+        return (int) Math.min(nextSequence, capacity);
+    }
+
+    /**
+     * Obtiene la capacidad del historial.
+     *
+     * @return El número máximo de mensajes que se conservan.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Obtiene la secuencia que recibirá el próximo mensaje.
+     *
+     * @return La siguiente secuencia; los mensajes publicados tienen secuencias menores.
+     */
+    public long getNextSequence() {
+        return nextSequence;
+    }
+
+    /**
+     * Cierra el diario, si lo hay, forzando a disco los mensajes pendientes.
+     */
+    public void close() {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    /**
+     * Calcula la posición del buffer que corresponde a una secuencia.
+     *
+     * @param sequence La secuencia.
+     * @return La posición en el buffer circular.
+     */
+    private int indexOf(long sequence) {
+        return (int) (sequence % capacity);
+    }
+
+    /**
+     * Cursor de lectura sobre el historial. Lee directamente del buffer circular, sin copiar el historial
+     * ni bloquear al escritor. Si el escritor sobrescribe una posición antes de que el cursor llegue a ella,
+     * el cursor salta a la siguiente secuencia que siga conservada.
+     */
+    public final class Cursor implements Iterator<Message> {
+        private long sequence;  // Próxima secuencia a leer
+        private final long end;  // Secuencia en la que termina el cursor (excluida)
+        private Entry next;  // Próxima entrada, ya leída del buffer
+        private Entry last;  // Última entrada devuelta
+
+        private Cursor(long from, long end) {
+            this.sequence = from;
+            this.end = end;
+        }
+
+        /**
+         * Indica si quedan mensajes por leer.
+         *
+         * @return {@code true} si hay un mensaje disponible.
+         */
+        @Override
+        public boolean hasNext() {
+            while (next == null && sequence < end) {
+                Entry entry = entries.get(indexOf(sequence));
+                if (entry != null && entry.sequence == sequence) {
+                    next = entry;
+                    sequence++;
+                } else {
+                    // La posición ya contiene un mensaje posterior: se continúa desde el más antiguo conservado
+                    sequence = Math.max(sequence + 1, nextSequence - capacity);
+                }
+            }
+            return next != null;
+        }
+
+        /**
+         * Devuelve el siguiente mensaje.
+         *
+         * @return El mensaje.
+         * @throws NoSuchElementException Si no quedan mensajes.
+         */
+        @Override
+        public Message next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            last = next;
+            next = null;
+            return last.message;
+        }
+
+        /**
+         * Obtiene la secuencia del último mensaje devuelto por {@link #next()}.
+         *
+         * @return La secuencia, o -1 si aún no se ha devuelto ningún mensaje.
+         */
+        public long getSequence() {
+            return last == null ? -1 : last.sequence;
+        }
+
+        /**
+         * Obtiene el instante en que se añadió el último mensaje devuelto por {@link #next()}.
+         *
+         * @return El instante en milisegundos desde la época, o -1 si aún no se ha devuelto ningún mensaje.
+         */
+        public long getTimestamp() {
+            return last == null ? -1 : last.timestamp;
+        }
+    }
+
+    /**
+     * Un mensaje del historial junto con su secuencia y su instante, publicado de forma inmutable.
+     */
+    private static final class Entry {
+        private final long sequence;
+        private final long timestamp;
+        private final Message message;
+
+        private Entry(long sequence, long timestamp, Message message) {
+            this.sequence = sequence;
+            this.timestamp = timestamp;
+            this.message = message;
+        }
     }
 }
@@ -0,0 +1,345 @@
+package common.data;
+
+import common.model.Message;
+import common.model.User;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * La clase {@code MessageJournal} guarda en disco los mensajes del historial para que sobrevivan a los
+ * reinicios del servidor.
+ * <p>
+ * Es un registro de solo anexado repartido en segmentos de tamaño fijo proyectados en memoria
+ * ({@link MappedByteBuffer}). Anexar un mensaje solo copia sus bytes en la proyección, de modo que la difusión
+ * no espera al disco; un hilo en segundo plano fuerza los cambios a disco periódicamente, agrupando en una sola
+ * sincronización todos los mensajes del intervalo. Cuando un segmento se llena se abre otro, y solo se
+ * conservan los segmentos más recientes. Tras un reinicio se sigue anexando en el último segmento, a partir
+ * del final de sus datos, de modo que los reinicios no crean segmentos casi vacíos que desplacen a los llenos.
+ * </p>
+ * <p>
+ * Cada registro tiene el formato {@code [longitud:int][crc32:int][secuencia:long][instante:long]
+ * [longitud del usuario:short][usuario:UTF-8][texto:UTF-8]}, donde la longitud y el CRC cubren los bytes desde la secuencia. Una longitud
+ * cero marca el final de los datos del segmento, y un CRC incorrecto (una escritura interrumpida) detiene la
+ * lectura de ese segmento.
+ * </p>
+ */
+public class MessageJournal implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(MessageJournal.class.getName());
+
+    /** Prefijo de los ficheros de segmento; el resto del nombre es la secuencia de su primer mensaje. */
+    private static final String SEGMENT_PREFIX = "journal-";
+
+    /** Extensión de los ficheros de segmento. */
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    /** Bytes de la cabecera de cada registro: longitud y CRC. */
+    private static final int HEADER_SIZE = Integer.BYTES * 2;
+
+    /** Bytes fijos del cuerpo de cada registro: secuencia, instante y longitud del usuario. */
+    private static final int FIXED_BODY_SIZE = Long.BYTES * 2 + Short.BYTES;
+
+    private final Path directory;  // Directorio de los segmentos
+    private final int segmentSize;  // Tamaño de cada segmento en bytes
+    private final int maxSegments;  // Segmentos que se conservan
+    private final ScheduledExecutorService syncer;  // Hilo que fuerza los cambios a disco
+    private final CRC32 crc;  // Calculadora de CRC, protegida por el cerrojo del objeto
+    private Segment current;  // Segmento en el que se anexa, o null hasta el primer mensaje
+    private Path resumePath;  // Último segmento leído en la reconstrucción, en el que se sigue anexando
+    private int resumeOffset;  // Posición en la que terminan los datos de ese segmento
+    private boolean dirty;  // Si hay cambios sin forzar a disco
+    private boolean closed;  // Si el diario se ha cerrado
+
+    /**
+     * Abre un diario en un directorio, creándolo si no existe.
+     *
+     * @param directory El directorio de los segmentos.
+     * @param segmentSize El tamaño de cada segmento en bytes.
+     * @param maxSegments El número de segmentos que se conservan.
+     * @param syncIntervalMillis Los milisegundos entre sincronizaciones con el disco.
+     * @throws IOException Si no se puede crear el directorio.
+     */
+    public MessageJournal(Path directory, int segmentSize, int maxSegments, long syncIntervalMillis) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.segmentSize = segmentSize;
+        this.maxSegments = Math.max(1, maxSegments);
+        this.crc = new CRC32();
+        this.syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "journal-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        syncer.scheduleWithFixedDelay(this::sync, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Receptor de los mensajes leídos durante la reconstrucción.
+     */
+    @FunctionalInterface
+    public interface ReplayListener {
+        /**
+         * Recibe un mensaje del diario.
+         *
+         * @param sequence La secuencia del mensaje.
+         * @param timestamp El instante en que se añadió el mensaje, en milisegundos desde la época.
+         * @param message El mensaje, cuyo usuario solo tiene nombre.
+         */
+        void onMessage(long sequence, long timestamp, Message message);
+    }
+
+    /**
+     * Lee todos los mensajes conservados, en orden de secuencia.
+     *
+     * @param listener El receptor de los mensajes.
+     * @return La secuencia siguiente a la del último mensaje leído, o 0 si el diario está vacío.
+     * @throws IOException Si ocurre un error al leer los segmentos.
+     */
+    public synchronized long replay(ReplayListener listener) throws IOException {
+        long next = 0;
+        int count = 0;
+        List<Path> segments = listSegments();
+        for (Path path : segments) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                int end = 0;  // Posición en la que terminan los datos válidos del segmento
+                while (buffer.remaining() >= HEADER_SIZE) {
+                    end = buffer.position();
+                    int length = buffer.getInt();
+                    int checksum = buffer.getInt();
+                    if (length < FIXED_BODY_SIZE || length > buffer.remaining()) {
+                        break;  // Fin de los datos del segmento
+                    }
+                    byte[] body = new byte[length];
+                    buffer.get(body);
+                    crc.reset();
+                    crc.update(body);
+                    if ((int) crc.getValue() != checksum) {
+                        logger.log(Level.WARNING, "Corrupt journal record in {0}, skipping rest of segment", path.getFileName());
+                        break;
+                    }
+                    long sequence = decode(body, listener);
+                    next = Math.max(next, sequence + 1);
+                    count++;
+                    end = buffer.position();
+                }
+                if (path.equals(segments.get(segments.size() - 1))) {
+                    resumePath = path;
+                    resumeOffset = end;
+                }
+            }
+        }
+        logger.log(Level.INFO, "Replayed {0} messages from journal {1}", new Object[]{count, directory});
+        return next;
+    }
+
+    /**
+     * Decodifica el cuerpo de un registro y lo entrega al receptor.
+     *
+     * @param body El cuerpo del registro.
+     * @param listener El receptor.
+     * @return La secuencia del mensaje.
+     */
+    private static long decode(byte[] body, ReplayListener listener) {
+        ByteBuffer buffer = ByteBuffer.wrap(body);
+        long sequence = buffer.getLong();
+        long timestamp = buffer.getLong();
+        int userLength = buffer.getShort() & 0xFFFF;
+        String username = new String(body, FIXED_BODY_SIZE, userLength, StandardCharsets.UTF_8);
+        int textOffset = FIXED_BODY_SIZE + userLength;
+        String text = new String(body, textOffset, body.length - textOffset, StandardCharsets.UTF_8);
+        listener.onMessage(sequence, timestamp, new Message(new User(username, null), text));
+        return sequence;
+    }
+
+    /**
+     * Anexa un mensaje al diario. Solo escribe en memoria; la sincronización con el disco es periódica.
+     * Los errores se registran y no se propagan, de modo que el historial en memoria sigue funcionando.
+     *
+     * @param sequence La secuencia del mensaje.
+     * @param timestamp El instante en que se añadió el mensaje, en milisegundos desde la época.
+     * @param message El mensaje.
+     */
+    public synchronized void append(long sequence, long timestamp, Message message) {
+        if (closed) {
+            return;
+        }
+        byte[] user = message.getUser().getUsername().getBytes(StandardCharsets.UTF_8);
+        byte[] text = message.getText().getBytes(StandardCharsets.UTF_8);
+        int length = FIXED_BODY_SIZE + user.length + text.length;
+        if (user.length > 0xFFFF || HEADER_SIZE + length > segmentSize) {
+            logger.log(Level.WARNING, "Message {0} too large for journal, not persisted", String.valueOf(sequence));
+            return;
+        }
+
+        try {
+            if (current == null && resumePath != null) {
+                resume();
+            }
+            if (current == null || current.buffer.remaining() < HEADER_SIZE + length) {
+                roll(sequence);
+            }
+            MappedByteBuffer buffer = current.buffer;
+            int start = buffer.position();
+            buffer.position(start + HEADER_SIZE);
+            buffer.putLong(sequence);
+            buffer.putLong(timestamp);
+            buffer.putShort((short) user.length);
+            buffer.put(user);
+            buffer.put(text);
+
+            crc.reset();
+            crc.update(buffer.duplicate().position(start + HEADER_SIZE).limit(buffer.position()));
+            buffer.putInt(start + Integer.BYTES, (int) crc.getValue());
+            buffer.putInt(start, length);  // La longitud se escribe al final: un registro a medias se lee como fin de datos
+            dirty = true;
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Failed to append to journal: {0}", e.getMessage());
+        }
+    }
+
+    /**
+     * Vuelve a abrir el último segmento leído en la reconstrucción y sitúa la escritura al final de sus datos.
+     * Si ya no caben más registros, no se abre y el primer anexo crea un segmento nuevo.
+     *
+     * @throws IOException Si ocurre un error al abrir el segmento.
+     */
+    private void resume() throws IOException {
+        Path path = resumePath;
+        resumePath = null;
+        if (resumeOffset + HEADER_SIZE >= segmentSize) {
+            return;
+        }
+        current = new Segment(path, segmentSize);
+        current.buffer.position(resumeOffset);
+        logger.log(Level.INFO, "Resumed journal segment {0} at offset {1}", new Object[]{path.getFileName(), String.valueOf(resumeOffset)});
+    }
+
+    /**
+     * Cierra el segmento actual, abre uno nuevo que empieza en la secuencia indicada y elimina los segmentos
+     * que exceden la retención. El segmento saliente se fuerza a disco y se cierra en el hilo de sincronización,
+     * de modo que el anexo que provoca el cambio no espera al disco.
+     *
+     * @param firstSequence La secuencia del primer mensaje del nuevo segmento.
+     * @throws IOException Si ocurre un error al crear el segmento.
+     */
+    private void roll(long firstSequence) throws IOException {
+        if (current != null) {
+            syncer.execute(current::close);
+            dirty = false;
+        }
+        Path path = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX));
+        current = new Segment(path, segmentSize);
+        logger.log(Level.INFO, "Opened journal segment {0}", path.getFileName());
+
+        List<Path> segments = listSegments();
+        for (int i = 0; i < segments.size() - maxSegments; i++) {
+            Files.deleteIfExists(segments.get(i));
+            logger.log(Level.INFO, "Deleted journal segment {0} due to retention", segments.get(i).getFileName());
+        }
+    }
+
+    /**
+     * Fuerza a disco los mensajes anexados desde la última sincronización.
+     */
+    public void sync() {
+        MappedByteBuffer buffer;
+        synchronized (this) {
+            if (!dirty || current == null) {
+                return;
+            }
+            dirty = false;
+            buffer = current.buffer;
+        }
+        buffer.force();  // Fuera del cerrojo: los anexos no esperan a la sincronización
+    }
+
+    /**
+     * Lista los segmentos del directorio, del más antiguo al más reciente.
+     *
+     * @return Las rutas de los segmentos.
+     * @throws IOException Si ocurre un error al listar el directorio.
+     */
+    private List<Path> listSegments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(path -> {
+                String name = path.getFileName().toString();
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }).sorted().forEach(segments::add);  // La secuencia tiene ancho fijo, el orden por nombre es el orden por secuencia
+        }
+        return segments;
+    }
+
+    /**
+     * Detiene la sincronización periódica, espera a que se cierren los segmentos salientes, fuerza los cambios
+     * pendientes y cierra el segmento actual.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;  // Desde aquí no se anexa ni se cambia de segmento
+        }
+        syncer.shutdown();  // Fuera del cerrojo: una sincronización en curso lo necesita para terminar
+        try {
+            syncer.awaitTermination(10, TimeUnit.SECONDS);  // Los cierres de segmentos ya encolados se ejecutan
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (current != null) {
+                current.close();
+                current = null;
+            }
+        }
+    }
+
+    /**
+     * Un segmento abierto para anexar: su canal y su proyección en memoria.
+     */
+    private static final class Segment {
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+
+        private Segment(Path path, int size) throws IOException {
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Fuerza los cambios a disco y cierra el canal. La proyección sigue siendo válida hasta que se libere.
+         */
+        private void close() {
+            buffer.force();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Error closing journal segment {0}: {1}", new Object[]{path.getFileName(), e.getMessage()});
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package common.data;
+
+import common.model.User;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * La clase {@code Room} representa una sala de chat: su nombre, sus miembros y su propio historial de mensajes.
+ * <p>
+ * Los miembros se publican como una instantánea inmutable que se reconstruye en cada alta o baja (copia en
+ * escritura): las difusiones la recorren sin cerrojos ni copias, y su coste es proporcional al número de miembros
+ * de la sala, no al de usuarios conectados. Cada alta o baja copia el array de miembros una sola vez. Solo
+ * {@link RoomManager} modifica los miembros, bajo su cerrojo.
+ * </p>
+ */
+public class Room {
+    private final String name;  // Nombre de la sala
+    private final MessageHistoryManager history;  // Historial de los mensajes de la sala
+    private User[] memberArray;  // Array de la instantánea actual, que no se modifica una vez publicado
+    private volatile List<User> members;  // Instantánea inmutable de los miembros, reemplazada en cada alta o baja
+
+    /**
+     * Constructor de la clase {@code Room}, sin miembros.
+     *
+     * @param name El nombre de la sala.
+     * @param history El historial de la sala.
+     */
+    Room(String name, MessageHistoryManager history) {
+        this.name = name;
+        this.history = history;
+        this.memberArray = new User[0];
+        this.members = List.of();
+    }
+
+    /**
+     * Añade un miembro. Solo lo llama {@link RoomManager}, con su cerrojo.
+     *
+     * @param user El usuario.
+     */
+    void add(User user) {
+        User[] updated = Arrays.copyOf(memberArray, memberArray.length + 1);
+        updated[memberArray.length] = user;
+        publish(updated);
+    }
+
+    /**
+     * Quita un miembro. Solo lo llama {@link RoomManager}, con su cerrojo.
+     *
+     * @param user El usuario.
+     */
+    void remove(User user) {
+        int index = Arrays.asList(memberArray).indexOf(user);
+        if (index < 0) {
+            return;
+        }
+        User[] updated = new User[memberArray.length - 1];
+        System.arraycopy(memberArray, 0, updated, 0, index);
+        System.arraycopy(memberArray, index + 1, updated, index, updated.length - index);
+        publish(updated);
+    }
+
+    /**
+     * Publica un array nuevo de miembros como instantánea, sin copiarlo.
+     *
+     * @param updated El array, que no debe modificarse después.
+     */
+    private void publish(User[] updated) {
+        memberArray = updated;
+        members = Collections.unmodifiableList(Arrays.asList(updated));
+    }
+
+    /**
+     * Obtiene el nombre de la sala.
+     *
+     * @return El nombre.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Obtiene el historial de la sala.
+     *
+     * @return El historial.
+     */
+    public MessageHistoryManager getHistory() {
+        return history;
+    }
+
+    /**
+     * Obtiene una instantánea inmutable de los miembros de la sala, que puede recorrerse sin sincronización.
+     *
+     * @return Los miembros en el momento de la llamada.
+     */
+    public List<User> getMembers() {
+        return members;
+    }
+
+    /**
+     * Obtiene el número de miembros de la sala.
+     *
+     * @return El número de miembros.
+     */
+    public int getMemberCount() {
+        return members.size();
+    }
+}
@@ -0,0 +1,204 @@
+package common.data;
+
+import common.model.User;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * La clase {@code RoomManager} gestiona las salas de chat y la sala en la que está cada usuario.
+ * <p>
+ * Cada usuario está en una sola sala a la vez: al iniciar sesión entra en la sala por defecto
+ * ({@value #DEFAULT_ROOM}) y con {@code /join} pasa a otra, que se crea si no existe. Las salas se indexan por
+ * nombre y la sala de cada usuario por su nombre de usuario, de modo que encontrar los destinatarios de un
+ * mensaje cuesta una búsqueda y el recorrido de los miembros de la sala.
+ * </p>
+ * <p>
+ * Las salas conservan su historial aunque se queden vacías. Para acotar la memoria hay un número máximo de
+ * salas; al alcanzarlo, crear una sala nueva elimina antes una sala vacía, y si no hay ninguna la creación se
+ * rechaza. Las altas y bajas se serializan con un cerrojo; las consultas no toman ninguno.
+ * </p>
+ */
+public class RoomManager {
+    private static final Logger logger = Logger.getLogger(RoomManager.class.getName());
+
+    /** Nombre de la sala en la que entran los usuarios al iniciar sesión. */
+    public static final String DEFAULT_ROOM = "general";
+
+    /** Número máximo de salas por defecto, incluida la sala por defecto. */
+    public static final int DEFAULT_MAX_ROOMS = 64;
+
+    /** Nombres de sala válidos: letras, dígitos, guiones y guiones bajos, hasta 32 caracteres. */
+    private static final Pattern NAME_PATTERN = Pattern.compile("[\\p{L}\\p{N}_-]{1,32}");
+
+    private final Map<String, Room> rooms;  // Salas por nombre
+    private final Map<String, Room> roomsByUser;  // Sala de cada usuario, por nombre de usuario
+    private final Function<String, MessageHistoryManager> historyFactory;  // Crea el historial de cada sala nueva
+    private final int maxRooms;  // Número máximo de salas
+    private final Object writeLock;  // Serializa las altas y bajas
+
+    /**
+     * Constructor de la clase {@code RoomManager}.
+     *
+     * @param defaultHistory El historial de la sala por defecto.
+     * @param historyFactory Crea el historial de cada sala nueva a partir de su nombre.
+     * @param maxRooms El número máximo de salas, incluida la sala por defecto.
+     */
+    public RoomManager(MessageHistoryManager defaultHistory, Function<String, MessageHistoryManager> historyFactory, int maxRooms) {
+        this.rooms = new ConcurrentHashMap<>();
+        this.roomsByUser = new ConcurrentHashMap<>();
+        this.historyFactory = historyFactory;
+        this.maxRooms = Math.max(1, maxRooms);
+        this.writeLock = new Object();
+        rooms.put(DEFAULT_ROOM, new Room(DEFAULT_ROOM, defaultHistory));
+    }
+
+    /**
+     * Mueve a un usuario a una sala, creándola si no existe. Si el usuario estaba en otra sala, sale de ella.
+     *
+     * @param user El usuario.
+     * @param roomName El nombre de la sala.
+     * @return La sala en la que ha entrado el usuario.
+     * @throws IllegalArgumentException Si el nombre no es válido o no se pueden crear más salas.
+     */
+    public Room join(User user, String roomName) {
+        if (!isValidName(roomName)) {
+            throw new IllegalArgumentException("Invalid room name: " + roomName);
+        }
+        synchronized (writeLock) {
+            Room room = rooms.get(roomName);
+            if (room == null) {
+                room = createRoom(roomName);
+            }
+            Room previous = roomsByUser.put(user.getUsername(), room);
+            if (previous == room) {
+                return room;
+            }
+            if (previous != null) {
+                previous.remove(user);
+            }
+            room.add(user);
+            return room;
+        }
+    }
+
+    /**
+     * Crea una sala, eliminando antes una sala vacía si se ha alcanzado el máximo.
+     *
+     * @param roomName El nombre de la sala.
+     * @return La sala creada.
+     * @throws IllegalArgumentException Si se ha alcanzado el máximo y no hay salas vacías.
+     */
+    private Room createRoom(String roomName) {
+        if (rooms.size() >= maxRooms && !evictEmptyRoom()) {
+            throw new IllegalArgumentException("Too many rooms");
+        }
+        Room room = new Room(roomName, historyFactory.apply(roomName));
+        rooms.put(roomName, room);
+        logger.log(Level.INFO, "Room created: {0}", roomName);
+        return room;
+    }
+
+    /**
+     * Elimina una sala vacía distinta de la sala por defecto, junto con su historial.
+     *
+     * @return {@code true} si se ha eliminado alguna.
+     */
+    private boolean evictEmptyRoom() {
+        for (Room room : rooms.values()) {
+            if (room.getMemberCount() == 0 && !room.getName().equals(DEFAULT_ROOM)) {
+                rooms.remove(room.getName());
+                room.getHistory().close();
+                logger.log(Level.INFO, "Room removed: {0}", room.getName());
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Saca a un usuario de su sala, por ejemplo cuando se desconecta.
+     *
+     * @param user El usuario.
+     * @return La sala en la que estaba, o {@code null} si no estaba en ninguna.
+     */
+    public Room leave(User user) {
+        synchronized (writeLock) {
+            Room room = roomsByUser.remove(user.getUsername());
+            if (room != null) {
+                room.remove(user);
+            }
+            return room;
+        }
+    }
+
+    /**
+     * Obtiene la sala en la que está un usuario.
+     *
+     * @param user El usuario.
+     * @return La sala, o {@code null} si no está en ninguna.
+     */
+    public Room roomOf(User user) {
+        return roomsByUser.get(user.getUsername());
+    }
+
+    /**
+     * Obtiene la sala por defecto.
+     *
+     * @return La sala por defecto.
+     */
+    public Room getDefaultRoom() {
+        return rooms.get(DEFAULT_ROOM);
+    }
+
+    /**
+     * Obtiene una sala por su nombre.
+     *
+     * @param roomName El nombre de la sala.
+     * @return La sala, o {@code null} si no existe.
+     */
+    public Room getRoom(String roomName) {
+        return rooms.get(roomName);
+    }
+
+    /**
+     * Obtiene las salas existentes.
+     *
+     * @return Una copia de la lista de salas.
+     */
+    public List<Room> getRooms() {
+        return List.copyOf(rooms.values());
+    }
+
+    /**
+     * Genera una lista de las salas con su número de miembros en formato de texto, empezando por la sala por defecto.
+     *
+     * @return Una cadena con los nombres y los miembros de las salas.
+     */
+    public String getRoomList() {
+        StringBuilder roomList = new StringBuilder("Rooms: ");
+        Room defaultRoom = getDefaultRoom();
+        roomList.append(defaultRoom.getName()).append(" (").append(defaultRoom.getMemberCount()).append(")");
+        for (Room room : rooms.values()) {
+            if (room != defaultRoom) {
+                roomList.append(", ").append(room.getName()).append(" (").append(room.getMemberCount()).append(")");
+            }
+        }
+        return roomList.toString();
+    }
+
+    /**
+     * Comprueba si un nombre de sala es válido.
+     *
+     * @param roomName El nombre.
+     * @return {@code true} si solo contiene letras, dígitos, guiones y guiones bajos, y no supera 32 caracteres.
+     */
+    public static boolean isValidName(String roomName) {
+        return roomName != null && NAME_PATTERN.matcher(roomName).matches();
+    }
+}
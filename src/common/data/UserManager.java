@@ -3,8 +3,10 @@ package common.data;
 import common.model.User;
 
 import java.net.InetSocketAddress;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -15,6 +17,18 @@ import java.util.logging.Logger;
  * Los usuarios son almacenados en un mapa donde la clave es el nombre de usuario y el valor es el objeto {@code User}.
  * Esta clase también proporciona métodos para verificar si un usuario está conectado y para generar una lista de los usuarios conectados.
  * </p>
+ * <p>
+ * El mapa es concurrente para que varios hilos de recepción puedan registrar y consultar usuarios a la vez.
+ * Además se mantiene un índice por dirección de red, de modo que identificar al remitente de cada mensaje
+ * es una búsqueda de coste constante independiente del número de usuarios. Las altas y bajas actualizan
+ * ambos mapas bajo el mismo cerrojo; las consultas no toman ningún cerrojo.
+ * </p>
+ * <p>
+ * Las difusiones recorren los miembros de cada {@link Room}, por lo que aquí no se mantiene ninguna copia de los
+ * usuarios: quien necesita recorrerlos todos lo hace sobre el propio mapa concurrente, cuyo recorrido no toma
+ * cerrojos, no bloquea los inicios de sesión y nunca lanza {@code ConcurrentModificationException}. Así las
+ * altas y bajas no copian a todos los usuarios conectados.
+ * </p>
  */
 public class UserManager {
     // Logger para registrar las operaciones de manejo de usuarios
@@ -23,12 +37,20 @@ public class UserManager {
     // Mapa que almacena los usuarios, con el nombre de usuario como clave y el objeto User como valor
     private final Map<String, User> clients;
 
+    // Índice de los mismos usuarios por dirección de red, mantenido en sincronía con el mapa anterior
+    private final Map<InetSocketAddress, User> usersByAddress;
+
+    // Cerrojo que serializa las altas y bajas para mantener ambos mapas coherentes
+    private final Object writeLock;
+
     /**
      * Constructor de la clase {@code UserManager}.
      * Inicializa el mapa de usuarios.
      */
     public UserManager() {
-        this.clients = new HashMap<>();
+        this.clients = new ConcurrentHashMap<>();
+        this.usersByAddress = new ConcurrentHashMap<>();
+        this.writeLock = new Object();
     }
 
     /**
@@ -36,17 +58,26 @@ public class UserManager {
      *
      * @param username El nombre de usuario a agregar.
      * @param address La dirección IP del usuario.
-     * @return {@code true} si el usuario fue agregado correctamente, {@code false} si el nombre de usuario ya existe.
+     * @return {@code true} si el usuario fue agregado correctamente, {@code false} si el nombre de usuario ya existe
+     *         o la dirección ya tiene un usuario.
      */
     public boolean addUser(String username, InetSocketAddress address) {
-        // Verificar si el nombre de usuario ya está en uso
-        if (clients.containsKey(username)) {
-            logger.log(Level.WARNING, "Attempt to add user with existing username: {0}", username);
-            return false; // Si ya existe, no agregar el usuario
+        synchronized (writeLock) {
+            // Una dirección solo puede tener un usuario: otro lo dejaría fuera del índice y de las bajas
+            if (usersByAddress.containsKey(address)) {
+                logger.log(Level.WARNING, "Attempt to add user {0} from an address that already has one", username);
+                return false;
+            }
+            // Agregar el usuario al mapa solo si el nombre no está en uso
+            User user = new User(username, address);
+            if (clients.putIfAbsent(username, user) != null) {
+                logger.log(Level.WARNING, "Attempt to add user with existing username: {0}", username);
+                return false; // Si ya existe, no agregar el usuario
+            }
+            // Indexar por dirección
+            usersByAddress.put(address, user);
+            return true; // Usuario agregado correctamente
         }
-        // Agregar el usuario al mapa
-        clients.put(username, new User(username, address));
-        return true; // Usuario agregado correctamente
     }
 
     /**
@@ -55,9 +86,15 @@ public class UserManager {
      * @param username El nombre de usuario a eliminar.
      */
     public void removeUser(String username) {
-        // Eliminar el usuario y verificar si fue exitoso
-        if (clients.remove(username) == null) {
-            logger.log(Level.WARNING, "Attempt to remove non-existing user: {0}", username);
+        synchronized (writeLock) {
+            // Eliminar el usuario y verificar si fue exitoso
+            User user = clients.remove(username);
+            if (user == null) {
+                logger.log(Level.WARNING, "Attempt to remove non-existing user: {0}", username);
+                return;
+            }
+            // Eliminar la entrada del índice solo si sigue apuntando a este usuario
+            usersByAddress.remove(user.getAddress(), user);
         }
     }
 
@@ -68,15 +105,13 @@ public class UserManager {
      * @return El objeto {@code User} correspondiente a la dirección, o {@code null} si no se encuentra.
      */
     public User getUserByAddress(InetSocketAddress address) {
-        // Buscar el usuario en el mapa por la dirección IP
-        for (Map.Entry<String, User> entry : clients.entrySet()) {
-            if (entry.getValue().getAddress().equals(address)) {
-                return entry.getValue(); // Usuario encontrado por dirección
-            }
+        // Buscar el usuario en el índice por dirección
+        User user = usersByAddress.get(address);
+        if (user == null) {
+            // Si no se encuentra el usuario con esa dirección, registrar un warning
+            logger.log(Level.WARNING, "No user found for address: {0}", address);
         }
-        // Si no se encuentra el usuario con esa dirección, registrar un warning
-        logger.log(Level.WARNING, "No user found for address: {0}", address);
-        return null; // Retornar null si no se encuentra el usuario
+        return user; // Retornar el usuario encontrado o null
     }
 
     /**
@@ -103,8 +138,8 @@ public class UserManager {
     public String getUserList() {
         StringBuilder userList = new StringBuilder("Connected Users: ");
         // Iterar sobre los usuarios y agregar sus nombres a la lista
-        for (String user : clients.keySet()) {
-            userList.append(user).append(", ");
+        for (User user : clients.values()) {
+            userList.append(user.getUsername()).append(", ");
         }
         // Registrar la lista generada
         logger.log(Level.INFO, "Generated user list: {0}", userList.toString());
@@ -122,11 +157,33 @@ public class UserManager {
     }
 
     /**
-     * Obtiene el mapa completo de usuarios conectados.
+     * Verifica si ya hay un usuario conectado desde una dirección.
+     *
+     * @param address La dirección.
+     * @return {@code true} si la dirección tiene un usuario, {@code false} si no.
+     */
+    public boolean isAddressConnected(InetSocketAddress address) {
+        return usersByAddress.containsKey(address);
+    }
+
+    /**
+     * Obtiene una vista de solo lectura de los usuarios conectados, sin copiarlos. Puede recorrerse sin
+     * sincronización mientras otros hilos modifican el registro: el recorrido es débilmente consistente, por lo
+     * que puede incluir o no las altas y bajas que ocurran durante él, pero nunca lanza
+     * {@code ConcurrentModificationException}.
+     *
+     * @return Los usuarios conectados.
+     */
+    public Collection<User> getUsers() {
+        return Collections.unmodifiableCollection(clients.values());
+    }
+
+    /**
+     * Obtiene el número de usuarios conectados.
      *
-     * @return Un mapa con los usuarios, donde la clave es el nombre de usuario y el valor es el objeto {@code User}.
+     * @return El número de usuarios.
      */
-    public Map<String, User> getClients() {
-        return clients; // Retornar el mapa de usuarios
+    public int getUserCount() {
+        return clients.size();
     }
 }
@@ -47,11 +47,26 @@ public class ChatLogger {
             logger.log(Level.SEVERE, "log.txt Not Found.", e); // Si hay un error al crear el archivo de log
         }
 
-        // Establecer el nivel de log para el logger raíz y el manejador de consola
-        rootLogger.setLevel(Level.ALL);
+        // Establecer el nivel de log para el logger raíz; los manejadores muestran todo lo que este deja pasar
+        rootLogger.setLevel(readLevel());
         consoleHandler.setLevel(Level.ALL);
     }
 
+    /**
+     * Lee el nivel de log de la propiedad {@code chat.log.level} (por defecto {@code INFO}). Por debajo de ese
+     * nivel, los mensajes de cada datagrama no llegan a formatearse: {@link Logger#isLoggable(Level)} los
+     * descarta antes de crear sus parámetros.
+     *
+     * @return El nivel indicado, o {@code INFO} si no es un nivel válido.
+     */
+    private static Level readLevel() {
+        try {
+            return Level.parse(System.getProperty("chat.log.level", "INFO").trim());
+        } catch (IllegalArgumentException e) {
+            return Level.INFO;
+        }
+    }
+
     /**
      * Obtiene un logger para una clase específica.
      *
@@ -0,0 +1,85 @@
+package common.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * La clase {@code LatencyRecorder} acumula mediciones de latencia de una operación.
+ * <p>
+ * Registra el total de operaciones desde el inicio y, por intervalo, la suma y el máximo de las latencias.
+ * Los contadores del intervalo se reinician en cada {@link #snapshot()}, de modo que cada informe refleja
+ * solo las operaciones ocurridas desde el anterior. Es seguro para hilos y no crea objetos al registrar.
+ * </p>
+ */
+public class LatencyRecorder {
+    private final String name;  // Nombre de la operación medida
+    private final LongAdder total;  // Operaciones registradas desde el inicio
+    private final LongAdder intervalCount;  // Operaciones del intervalo actual
+    private final LongAdder intervalNanos;  // Suma de latencias del intervalo actual, en nanosegundos
+    private final AtomicLong intervalMaxNanos;  // Latencia máxima del intervalo actual, en nanosegundos
+
+    /**
+     * Constructor de la clase {@code LatencyRecorder}.
+     *
+     * @param name El nombre de la operación medida.
+     */
+    public LatencyRecorder(String name) {
+        this.name = name;
+        this.total = new LongAdder();
+        this.intervalCount = new LongAdder();
+        this.intervalNanos = new LongAdder();
+        this.intervalMaxNanos = new AtomicLong();
+    }
+
+    /**
+     * Registra una operación que comenzó en el instante indicado y termina ahora.
+     *
+     * @param startNanos El instante de inicio, obtenido con {@link System#nanoTime()}.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Registra una operación con la latencia indicada.
+     *
+     * @param nanos La latencia de la operación, en nanosegundos.
+     */
+    public void record(long nanos) {
+        total.increment();
+        intervalCount.increment();
+        intervalNanos.add(nanos);
+        intervalMaxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * Obtiene el número de operaciones registradas desde el inicio.
+     *
+     * @return El número de operaciones.
+     */
+    public long getTotal() {
+        return total.sum();
+    }
+
+    /**
+     * Genera un resumen del intervalo actual y reinicia sus contadores.
+     *
+     * @return Una cadena con el total de operaciones, las del intervalo y las latencias media y máxima en microsegundos.
+     */
+    public String snapshot() {
+        long count = intervalCount.sumThenReset();
+        long nanos = intervalNanos.sumThenReset();
+        long max = intervalMaxNanos.getAndSet(0);
+        long average = count > 0 ? nanos / count : 0;
+        return String.format("%s: total=%d interval=%d avg=%dus max=%dus", name, getTotal(), count, average / 1000, max / 1000);
+    }
+
+    /**
+     * Obtiene el nombre de la operación medida.
+     *
+     * @return El nombre.
+     */
+    public String getName() {
+        return name;
+    }
+}
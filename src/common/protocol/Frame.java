@@ -0,0 +1,146 @@
+package common.protocol;
+
+/**
+ * La clase {@code Frame} representa una trama decodificada del protocolo binario.
+ * <p>
+ * Una trama tiene un código de operación, unos indicadores, un número de secuencia, una lista de campos de texto
+ * y, opcionalmente, un cuerpo de bytes sin interpretar.
+ * Los códigos menores que {@link FrameCodec#OP_CHAT} son los códigos de operación de los comandos
+ * ({@code Command#getOpcode()}); el resto identifican mensajes de chat, avisos y errores.
+ * </p>
+ */
+public class Frame {
+    private final int version;  // Versión del protocolo con la que se codificó la trama
+    private final byte opcode;  // Código de operación
+    private final byte flags;  // Indicadores
+    private final int sequence;  // Número de secuencia
+    private final String[] fields;  // Campos de la trama
+    private final byte[] body;  // Cuerpo de la trama, o null si no tiene
+
+    /**
+     * Constructor de la clase {@code Frame}.
+     *
+     * @param version La versión del protocolo.
+     * @param opcode El código de operación.
+     * @param flags Los indicadores.
+     * @param sequence El número de secuencia.
+     * @param fields Los campos de la trama.
+     */
+    public Frame(int version, byte opcode, byte flags, int sequence, String[] fields) {
+        this(version, opcode, flags, sequence, fields, null);
+    }
+
+    /**
+     * Constructor de la clase {@code Frame} con cuerpo.
+     *
+     * @param version La versión del protocolo.
+     * @param opcode El código de operación.
+     * @param flags Los indicadores.
+     * @param sequence El número de secuencia.
+     * @param fields Los campos de la trama.
+     * @param body El cuerpo de la trama, o {@code null} si no tiene.
+     */
+    public Frame(int version, byte opcode, byte flags, int sequence, String[] fields, byte[] body) {
+        this.version = version;
+        this.opcode = opcode;
+        this.flags = flags;
+        this.sequence = sequence;
+        this.fields = fields;
+        this.body = body;
+    }
+
+    /**
+     * Obtiene la versión del protocolo con la que se codificó la trama.
+     *
+     * @return La versión.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Obtiene el código de operación.
+     *
+     * @return El código de operación.
+     */
+    public byte getOpcode() {
+        return opcode;
+    }
+
+    /**
+     * Obtiene los indicadores.
+     *
+     * @return Los indicadores.
+     */
+    public byte getFlags() {
+        return flags;
+    }
+
+    /**
+     * Comprueba si la trama tiene un indicador.
+     *
+     * @param flag El indicador, por ejemplo {@link FrameCodec#FLAG_RELIABLE}.
+     * @return {@code true} si el indicador está activo.
+     */
+    public boolean hasFlag(byte flag) {
+        return (flags & flag) != 0;
+    }
+
+    /**
+     * Obtiene el número de secuencia.
+     *
+     * @return El número de secuencia.
+     */
+    public int getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Obtiene el número de campos.
+     *
+     * @return El número de campos.
+     */
+    public int getFieldCount() {
+        return fields.length;
+    }
+
+    /**
+     * Obtiene un campo, o una cadena vacía si la trama no lo tiene.
+     *
+     * @param index La posición del campo.
+     * @return El campo.
+     */
+    public String getField(int index) {
+        return index < fields.length ? fields[index] : "";
+    }
+
+    /**
+     * Obtiene el cuerpo de la trama.
+     *
+     * @return Los bytes del cuerpo, o {@code null} si la trama no tiene.
+     */
+    public byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * Une todos los campos separados por espacios, que es la forma que tienen los argumentos de un comando
+     * en el protocolo de texto.
+     *
+     * @return Los campos unidos.
+     */
+    public String joinFields() {
+        return String.join(" ", fields);
+    }
+
+    /**
+     * Genera una representación en cadena de la trama, para el log.
+     *
+     * @return La representación de la trama.
+     */
+    @Override
+    public String toString() {
+        return "Frame{v" + version + " op=" + opcode + " flags=" + flags + " seq=" + sequence + " fields=" + String.join("|", fields)
+                + (body != null ? " body=" + body.length + "B" : "") + "}";
+    }
+}
@@ -0,0 +1,363 @@
+package common.protocol;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * La clase {@code FrameCodec} codifica y decodifica las tramas del protocolo binario, compartido por el
+ * servidor y el cliente.
+ * <p>
+ * Formato de una trama (enteros en orden de red):
+ * <pre>
+ * magic:u16 | versión:u8 | opcode:u8 | indicadores:u8 | número de campos:u8 | secuencia:u32 | campos | cuerpo
+ * campo = longitud:u16 | bytes UTF-8
+ * </pre>
+ * El cuerpo es opcional: los bytes que siguen al último campo, sin longitud ni codificación, para las tramas
+ * que transportan datos binarios como los fragmentos.
+ * El primer byte de {@link #MAGIC} ({@code 0xFF}) nunca aparece en un texto UTF-8, por lo que una trama no se
+ * confunde con un mensaje del protocolo de texto y ambos protocolos pueden convivir en el mismo puerto.
+ * </p>
+ */
+public final class FrameCodec {
+
+    /** Marca que identifica una trama binaria. */
+    public static final short MAGIC = (short) 0xFFC7;
+
+    /**
+     * Versión del protocolo que implementa este codificador. La 2 cambia el diccionario de {@link FrameCompressor},
+     * por lo que las tramas comprimidas de la 1 ya no se pueden descomprimir.
+     */
+    public static final int VERSION = 2;
+
+    /** Tamaño de la cabecera en bytes. */
+    public static final int HEADER_SIZE = 10;
+
+    /** Número máximo de campos de una trama. */
+    public static final int MAX_FIELDS = 255;
+
+    /** Mensaje de chat: del cliente, {@code [texto]}; del servidor, {@code [usuario][texto]}. */
+    public static final byte OP_CHAT = 0x20;
+
+    /** Aviso del servidor: {@code [texto]}. */
+    public static final byte OP_NOTICE = 0x21;
+
+    /** Error del servidor: {@code [texto]}. */
+    public static final byte OP_ERROR = 0x22;
+
+    /**
+     * Confirmación de entrega: la secuencia es la confirmación acumulada (todas las tramas anteriores han
+     * llegado) y el campo {@code [sack]} es, en hexadecimal, el mapa de bits de las tramas recibidas tras ella.
+     */
+    public static final byte OP_ACK = 0x23;
+
+    /**
+     * Fragmento de una trama mayor que la MTU: {@code [id][índice][total]}, con el identificador del mensaje en
+     * hexadecimal, y como cuerpo los bytes del trozo de la trama original que ocupa esa posición.
+     */
+    public static final byte OP_FRAGMENT = 0x24;
+
+    /**
+     * Lote de tramas enviadas juntas en un solo datagrama: sin campos, y como cuerpo cada trama precedida de su
+     * longitud ({@code longitud:u16 | trama}). Se separan con {@link #decodeBatch(Frame)}.
+     */
+    public static final byte OP_BATCH = 0x25;
+
+    /**
+     * Mensaje de una sala publicado en el grupo multicast: {@code [época][sala][excluido]}, con la secuencia de
+     * la sala en la cabecera y como cuerpo la trama {@link #OP_CHAT} del mensaje. El usuario excluido (vacío si no
+     * hay) es el autor, que ya tiene su mensaje y no debe mostrarlo. Las copias por unicast y las reparaciones son
+     * el mismo datagrama.
+     */
+    public static final byte OP_MULTICAST = 0x26;
+
+    /** Baliza del grupo multicast: {@code [época][sala]}, con la siguiente secuencia de la sala en la cabecera. */
+    public static final byte OP_MULTICAST_SYNC = 0x27;
+
+    /**
+     * Del servidor, invitación al grupo multicast: {@code [época][sala][grupo][intervalo de balizas][secuencia]},
+     * con la siguiente secuencia de la sala. Del cliente, sin campos: confirma que recibe el grupo. Como puede
+     * viajar con entrega fiable, que fija su propia secuencia en la cabecera, la de la sala va en un campo.
+     */
+    public static final byte OP_MULTICAST_JOIN = 0x28;
+
+    /** Del cliente, sin campos: ha dejado de recibir el grupo multicast y vuelve a necesitar las copias por unicast. */
+    public static final byte OP_MULTICAST_LEAVE = 0x29;
+
+    /**
+     * Del cliente, petición de reparación: {@code [época][sala][primera secuencia][cantidad]}. Del servidor, con
+     * los mismos campos, las secuencias que ya no puede reparar y que el cliente debe dar por perdidas.
+     */
+    public static final byte OP_MULTICAST_NACK = 0x2A;
+
+    /**
+     * Latido del cliente, sin campos: lo envía cuando lleva un intervalo sin enviar nada, para que el servidor no
+     * lo expulse por inactividad. Viaja sin entrega fiable; si se pierde, basta con el siguiente.
+     */
+    public static final byte OP_HEARTBEAT = 0x2B;
+
+    /**
+     * Del servidor, {@code [texto]}: el servidor ha cerrado la sesión del cliente por inactividad, o recibe latidos
+     * de un cliente sin sesión. El cliente debe volver a iniciar sesión. Viaja sin entrega fiable, ya que el
+     * servidor olvida a continuación el estado fiable del cliente.
+     */
+    public static final byte OP_SESSION_EXPIRED = 0x2C;
+
+    /** Indicador de trama fiable: lleva un número de secuencia y debe confirmarse con {@link #OP_ACK}. */
+    public static final byte FLAG_RELIABLE = 0x01;
+
+    /** Indicador de la primera trama fiable de una sesión, cuya secuencia es la inicial del remitente. */
+    public static final byte FLAG_SYN = 0x02;
+
+    /**
+     * Indicador de trama comprimida: lo que sigue a la cabecera está comprimido con {@link FrameCompressor}.
+     * {@link #decode(byte[], int, int)} lo descomprime, por lo que la trama decodificada ya trae sus campos.
+     */
+    public static final byte FLAG_COMPRESSED = 0x04;
+
+    /** Indicador de que el remitente acepta tramas comprimidas; basta con que aparezca en una de sus tramas. */
+    public static final byte FLAG_ACCEPTS_COMPRESSION = 0x08;
+
+    /** Indicador de que el remitente acepta lotes {@link #OP_BATCH}; basta con que aparezca en una de sus tramas. */
+    public static final byte FLAG_ACCEPTS_BATCH = 0x10;
+
+    /** Indicador de que el remitente puede unirse al grupo multicast; basta con que aparezca en una de sus tramas. */
+    public static final byte FLAG_ACCEPTS_MULTICAST = 0x20;
+
+    /**
+     * Indicador de que el remitente envía latidos {@link #OP_HEARTBEAT} y puede expulsarse si deja de enviar
+     * datagramas; basta con que aparezca en una de sus tramas.
+     */
+    public static final byte FLAG_SENDS_HEARTBEATS = 0x40;
+
+    /** Bytes que ocupa en un lote cada trama además de sus propios bytes: su longitud. */
+    public static final int BATCH_ENTRY_OVERHEAD = Short.BYTES;
+
+    /** Posición de la versión en la cabecera. */
+    private static final int VERSION_OFFSET = 2;
+
+    /** Posición del código de operación en la cabecera. */
+    private static final int OPCODE_OFFSET = 3;
+
+    /** Posición de los indicadores en la cabecera. */
+    static final int FLAGS_OFFSET = 4;
+
+    /** Posición del número de campos en la cabecera. */
+    private static final int FIELD_COUNT_OFFSET = 5;
+
+    /** Posición de la secuencia en la cabecera. */
+    private static final int SEQUENCE_OFFSET = 6;
+
+    /** Campos de las tramas que no tienen ninguno, compartidos porque un array vacío no puede modificarse. */
+    private static final String[] NO_FIELDS = new String[0];
+
+    private FrameCodec() {
+    }
+
+    /**
+     * Comprueba si un datagrama es una trama binaria, mirando solo la marca inicial.
+     *
+     * @param data Los bytes del datagrama.
+     * @param offset La posición del primer byte.
+     * @param length La longitud del datagrama.
+     * @return {@code true} si el datagrama empieza por {@link #MAGIC}.
+     */
+    public static boolean isFrame(byte[] data, int offset, int length) {
+        return length >= HEADER_SIZE && data[offset] == (byte) (MAGIC >> 8) && data[offset + 1] == (byte) MAGIC;
+    }
+
+    /**
+     * Decodifica una trama.
+     * <p>
+     * La cabecera se lee directamente del array, sin envoltorios. La trama decodificada es independiente del
+     * datagrama: se crean sus campos como {@link String}, el array que los contiene (compartido si no hay campos),
+     * una copia del cuerpo si lo tiene y el propio {@link Frame}. Estas asignaciones son deliberadas: el buffer de
+     * recepción se reutiliza en cuanto se decodifica la trama, mientras que la trama puede esperar en el buffer de
+     * reordenación de la entrega fiable, en una reconstrucción de fragmentos o en la cola de otro hilo. Una vista
+     * reutilizable sobre el buffer de recepción obligaría a copiarla en cada uno de esos puntos.
+     * </p>
+     *
+     * @param data Los bytes del datagrama.
+     * @param offset La posición del primer byte.
+     * @param length La longitud del datagrama.
+     * @return La trama decodificada.
+     * @throws ProtocolException Si el datagrama no es una trama válida o su versión no está soportada.
+     */
+    public static Frame decode(byte[] data, int offset, int length) throws ProtocolException {
+        if (!isFrame(data, offset, length)) {
+            throw new ProtocolException("Not a binary frame");
+        }
+        int version = data[offset + VERSION_OFFSET] & 0xFF;
+        if (version < 1 || version > VERSION) {
+            throw new ProtocolException("Unsupported protocol version: " + version);
+        }
+        byte opcode = data[offset + OPCODE_OFFSET];
+        byte flags = data[offset + FLAGS_OFFSET];
+        int fieldCount = data[offset + FIELD_COUNT_OFFSET] & 0xFF;
+        int sequence = readInt(data, offset + SEQUENCE_OFFSET);
+        int position = offset + HEADER_SIZE;
+        int limit = offset + length;
+        if ((flags & FLAG_COMPRESSED) != 0) {
+            if (version != VERSION) {
+                throw new ProtocolException("Compressed frame from protocol version " + version);
+            }
+            data = FrameCompressor.inflate(data, position, limit - position);
+            position = 0;
+            limit = data.length;
+        }
+
+        String[] fields = fieldCount == 0 ? NO_FIELDS : new String[fieldCount];
+        for (int i = 0; i < fieldCount; i++) {
+            if (limit - position < Short.BYTES) {
+                throw new ProtocolException("Truncated frame");
+            }
+            int fieldLength = ((data[position] & 0xFF) << 8) | (data[position + 1] & 0xFF);
+            position += Short.BYTES;
+            if (limit - position < fieldLength) {
+                throw new ProtocolException("Truncated frame");
+            }
+            fields[i] = new String(data, position, fieldLength, StandardCharsets.UTF_8);
+            position += fieldLength;
+        }
+        byte[] body = position < limit ? Arrays.copyOfRange(data, position, limit) : null;
+        return new Frame(version, opcode, flags, sequence, fields, body);
+    }
+
+    /**
+     * Lee un entero de 32 bits en orden de red.
+     *
+     * @param data Los bytes.
+     * @param offset La posición del primer byte.
+     * @return El entero.
+     */
+    private static int readInt(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16)
+                | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+    }
+
+    /**
+     * Separa y decodifica las tramas de un lote {@link #OP_BATCH}.
+     *
+     * @param batch El lote.
+     * @return Las tramas del lote, en el orden en que se agruparon.
+     * @throws ProtocolException Si el lote está truncado, contiene otro lote o alguna trama no es válida.
+     */
+    public static List<Frame> decodeBatch(Frame batch) throws ProtocolException {
+        byte[] body = batch.getBody();
+        List<Frame> frames = new ArrayList<>();
+        int position = 0;
+        while (body != null && position < body.length) {
+            if (body.length - position < BATCH_ENTRY_OVERHEAD) {
+                throw new ProtocolException("Truncated batch");
+            }
+            int length = ((body[position] & 0xFF) << 8) | (body[position + 1] & 0xFF);
+            position += BATCH_ENTRY_OVERHEAD;
+            if (body.length - position < length) {
+                throw new ProtocolException("Truncated batch");
+            }
+            Frame frame = decode(body, position, length);
+            if (frame.getOpcode() == OP_BATCH) {
+                throw new ProtocolException("Nested batch");
+            }
+            frames.add(frame);
+            position += length;
+        }
+        return frames;
+    }
+
+    /**
+     * Codifica una trama en un array nuevo.
+     *
+     * @param opcode El código de operación.
+     * @param flags Los indicadores.
+     * @param sequence El número de secuencia.
+     * @param fields Los campos.
+     * @return Los bytes de la trama.
+     * @throws IllegalArgumentException Si hay demasiados campos o alguno es demasiado largo.
+     */
+    public static byte[] encode(byte opcode, byte flags, int sequence, String... fields) {
+        return encode(opcode, flags, sequence, null, 0, 0, fields);
+    }
+
+    /**
+     * Codifica una trama con cuerpo en un array nuevo.
+     *
+     * @param opcode El código de operación.
+     * @param flags Los indicadores.
+     * @param sequence El número de secuencia.
+     * @param body El array que contiene el cuerpo, o {@code null} si la trama no tiene.
+     * @param bodyOffset La posición del primer byte del cuerpo.
+     * @param bodyLength La longitud del cuerpo.
+     * @param fields Los campos.
+     * @return Los bytes de la trama.
+     * @throws IllegalArgumentException Si hay demasiados campos o alguno es demasiado largo.
+     */
+    public static byte[] encode(byte opcode, byte flags, int sequence, byte[] body, int bodyOffset, int bodyLength, String... fields) {
+        if (fields.length > MAX_FIELDS) {
+            throw new IllegalArgumentException("Too many fields: " + fields.length);
+        }
+        byte[][] encoded = new byte[fields.length][];
+        int size = HEADER_SIZE;
+        for (int i = 0; i < fields.length; i++) {
+            encoded[i] = fields[i].getBytes(StandardCharsets.UTF_8);
+            if (encoded[i].length > 0xFFFF) {
+                throw new IllegalArgumentException("Field too long: " + encoded[i].length);
+            }
+            size += Short.BYTES + encoded[i].length;
+        }
+        if (body != null) {
+            size += bodyLength;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putShort(MAGIC);
+        buffer.put((byte) VERSION);
+        buffer.put(opcode);
+        buffer.put(flags);
+        buffer.put((byte) fields.length);
+        buffer.putInt(sequence);
+        for (byte[] field : encoded) {
+            buffer.putShort((short) field.length);
+            buffer.put(field);
+        }
+        if (body != null) {
+            buffer.put(body, bodyOffset, bodyLength);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Lee el código de operación de una trama ya codificada, sin decodificarla.
+     *
+     * @param frame Los bytes de la trama.
+     * @return El código de operación.
+     */
+    public static byte opcodeOf(byte[] frame) {
+        return frame[OPCODE_OFFSET];
+    }
+
+    /**
+     * Añade indicadores y fija la secuencia de una trama ya codificada, sin volver a codificar sus campos.
+     *
+     * @param frame Los bytes de la trama, que se modifican.
+     * @param flags Los indicadores que se añaden a los que ya tenga la trama.
+     * @param sequence El número de secuencia.
+     */
+    public static void stamp(byte[] frame, byte flags, int sequence) {
+        addFlags(frame, flags);
+        ByteBuffer.wrap(frame).putInt(SEQUENCE_OFFSET, sequence);
+    }
+
+    /**
+     * Añade indicadores a una trama ya codificada, sin volver a codificar sus campos.
+     *
+     * @param frame Los bytes de la trama, que se modifican.
+     * @param flags Los indicadores que se añaden a los que ya tenga la trama.
+     */
+    public static void addFlags(byte[] frame, byte flags) {
+        frame[FLAGS_OFFSET] |= flags;
+    }
+}
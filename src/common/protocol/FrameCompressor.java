@@ -0,0 +1,204 @@
+package common.protocol;
+
+import common.command.Command;
+import common.command.CommandFactory;
+import common.command.commands.ExitCommand;
+import common.command.commands.LoginCommand;
+import server.AbstractUDPServer;
+
+import java.net.ProtocolException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * La clase {@code FrameCompressor} comprime las tramas con Deflate y un diccionario predefinido de chat.
+ * <p>
+ * Los mensajes de chat son cortos y repiten las mismas palabras y avisos, por lo que un compresor sin contexto
+ * apenas gana nada con ellos. Con un diccionario que comparten ambos extremos, las palabras frecuentes se
+ * codifican como referencias a él desde el primer byte. Se comprime todo lo que sigue a la cabecera (campos y
+ * cuerpo); la cabecera queda sin comprimir y marcada con {@link FrameCodec#FLAG_COMPRESSED}, de modo que la
+ * entrega fiable y la fragmentación siguen funcionando sobre la trama comprimida. Solo se comprimen las tramas
+ * de al menos el umbral configurado ({@code chat.net.compressThreshold}) y solo si el resultado es más corto.
+ * </p>
+ * <p>
+ * El diccionario forma parte del protocolo: cambiarlo obliga a cambiar también {@link FrameCodec#VERSION}.
+ * Es segura para varios hilos: cada hilo usa su propio compresor y descompresor.
+ * </p>
+ */
+public class FrameCompressor {
+
+    /** Umbral por defecto: tamaño mínimo de una trama para intentar comprimirla, en bytes. */
+    public static final int DEFAULT_THRESHOLD = 64;
+
+    /** Umbral configurado con {@code chat.net.compressThreshold}. */
+    private static final int THRESHOLD = Math.max(FrameCodec.HEADER_SIZE, Integer.getInteger("chat.net.compressThreshold", DEFAULT_THRESHOLD));
+
+    /** Palabras frecuentes en el chat, en castellano y en inglés. */
+    private static final String WORDS = "gracias de nada perfecto vale genial claro bueno luego mañana ahora nada todo también "
+            + "porque pero para como cuando donde quien estoy estás está tengo tienes puedes hacer "
+            + "alguien sabe alguna vez creo que no sé por qué qué tal cómo estás muy bien hola a todos "
+            + "thanks thank you please sorry maybe tomorrow today tonight later again never always "
+            + "because about would could should there their think know really right just what when "
+            + "where which with have this that from your anyone does someone here now good great "
+            + "the and you for are not but can how why yes okay lol haha jaja ";
+
+    /** Diccionario predefinido, compuesto por {@link #buildDictionary()}. */
+    private static final byte[] DICTIONARY = buildDictionary();
+
+    /** Compresor de cada hilo, sin cabecera zlib: la trama ya identifica el formato. */
+    private static final ThreadLocal<Deflater> DEFLATERS = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED, true));
+
+    /** Descompresor de cada hilo. */
+    private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    private static final LongAdder inflated = new LongAdder();  // Tramas descomprimidas en este proceso
+    private static final LongAdder inflateNanos = new LongAdder();  // Tiempo dedicado a descomprimir
+
+    private final int threshold;  // Tamaño mínimo de una trama para comprimirla
+    private final LongAdder compressed;  // Tramas comprimidas
+    private final LongAdder skipped;  // Tramas que no se han comprimido por no ganar nada
+    private final LongAdder bytesIn;  // Bytes de las tramas comprimidas antes de comprimir
+    private final LongAdder bytesOut;  // Bytes de las tramas comprimidas después de comprimir
+    private final LongAdder compressNanos;  // Tiempo dedicado a comprimir, incluidas las tramas sin ganancia
+
+    /**
+     * Constructor de la clase {@code FrameCompressor} con el umbral de {@code chat.net.compressThreshold}.
+     */
+    public FrameCompressor() {
+        this(THRESHOLD);
+    }
+
+    /**
+     * Constructor de la clase {@code FrameCompressor}.
+     *
+     * @param threshold El tamaño mínimo de una trama para intentar comprimirla, en bytes.
+     */
+    public FrameCompressor(int threshold) {
+        this.threshold = threshold;
+        this.compressed = new LongAdder();
+        this.skipped = new LongAdder();
+        this.bytesIn = new LongAdder();
+        this.bytesOut = new LongAdder();
+        this.compressNanos = new LongAdder();
+    }
+
+    /**
+     * Compone el diccionario a partir de los textos fijos del servidor y de los comandos registrados por defecto,
+     * los nombres de esos comandos y las palabras frecuentes del chat, de modo que no se desfasa al cambiar un
+     * comando. Deflate codifica con menos bits las referencias cercanas al final, por lo que lo más frecuente va
+     * al final: las palabras y, tras ellas, los avisos de conexión y desconexión que se difunden a cada sala.
+     *
+     * @return Los bytes del diccionario.
+     */
+    private static byte[] buildDictionary() {
+        StringBuilder dictionary = new StringBuilder();
+        for (String reply : AbstractUDPServer.getReplies()) {
+            dictionary.append(reply).append(' ');
+        }
+        for (Command command : CommandFactory.getDefaultCommands()) {
+            dictionary.append(CommandFactory.COMMAND_SYMBOL).append(command.getName()).append(' ');
+            for (String reply : command.getReplies()) {
+                dictionary.append(reply).append(' ');
+            }
+        }
+        dictionary.append(WORDS).append(ExitCommand.DISCONNECTED).append(' ').append(LoginCommand.CONNECTED).append(' ');
+        return dictionary.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Comprime una trama si supera el umbral y el resultado es más corto.
+     *
+     * @param frame Los bytes de la trama, que no se modifican.
+     * @return Una trama nueva con {@link FrameCodec#FLAG_COMPRESSED}, o la misma trama si no se ha comprimido.
+     */
+    public byte[] compress(byte[] frame) {
+        if (frame.length < threshold || (frame[FrameCodec.FLAGS_OFFSET] & FrameCodec.FLAG_COMPRESSED) != 0) {
+            return frame;
+        }
+        long start = System.nanoTime();
+        Deflater deflater = DEFLATERS.get();
+        deflater.reset();
+        deflater.setDictionary(DICTIONARY);
+        deflater.setInput(frame, FrameCodec.HEADER_SIZE, frame.length - FrameCodec.HEADER_SIZE);
+        deflater.finish();
+        byte[] output = new byte[frame.length];  // Si no cabe en menos que la trama original, no compensa
+        System.arraycopy(frame, 0, output, 0, FrameCodec.HEADER_SIZE);
+        int length = FrameCodec.HEADER_SIZE;
+        while (!deflater.finished() && length < output.length) {
+            length += deflater.deflate(output, length, output.length - length);
+        }
+        boolean smaller = deflater.finished() && length < frame.length;
+        compressNanos.add(System.nanoTime() - start);
+        if (!smaller) {
+            skipped.increment();
+            return frame;
+        }
+        compressed.increment();
+        bytesIn.add(frame.length);
+        bytesOut.add(length);
+        output[FrameCodec.FLAGS_OFFSET] |= FrameCodec.FLAG_COMPRESSED;
+        return Arrays.copyOf(output, length);
+    }
+
+    /**
+     * Descomprime lo que sigue a la cabecera de una trama marcada con {@link FrameCodec#FLAG_COMPRESSED}.
+     * El resultado está acotado a {@link FrameFragmenter#MAX_MESSAGE_SIZE}, para que una trama pequeña no
+     * pueda obligar a reservar mucha memoria.
+     *
+     * @param data Los bytes comprimidos.
+     * @param offset La posición del primer byte comprimido.
+     * @param length El número de bytes comprimidos.
+     * @return Los campos y el cuerpo de la trama, sin comprimir.
+     * @throws ProtocolException Si los datos no son válidos o descomprimidos superan el tamaño máximo.
+     */
+    static byte[] inflate(byte[] data, int offset, int length) throws ProtocolException {
+        long start = System.nanoTime();
+        Inflater inflater = INFLATERS.get();
+        inflater.reset();
+        inflater.setDictionary(DICTIONARY);
+        inflater.setInput(data, offset, length);
+        byte[] output = new byte[Math.min(FrameFragmenter.MAX_MESSAGE_SIZE, Math.max(256, length * 4))];
+        int size = 0;
+        try {
+            while (!inflater.finished()) {
+                if (size == output.length) {
+                    if (output.length == FrameFragmenter.MAX_MESSAGE_SIZE) {
+                        throw new ProtocolException("Compressed frame too large");
+                    }
+                    output = Arrays.copyOf(output, Math.min(FrameFragmenter.MAX_MESSAGE_SIZE, output.length * 2));
+                }
+                int read = inflater.inflate(output, size, output.length - size);
+                if (read == 0 && inflater.needsInput()) {
+                    throw new ProtocolException("Truncated compressed frame");
+                }
+                size += read;
+            }
+        } catch (DataFormatException e) {
+            throw new ProtocolException("Invalid compressed frame: " + e.getMessage());
+        }
+        inflated.increment();
+        inflateNanos.add(System.nanoTime() - start);
+        return Arrays.copyOf(output, size);
+    }
+
+    /**
+     * Genera un resumen de la compresión: tramas comprimidas, bytes ahorrados y tiempo de CPU por trama.
+     *
+     * @return Una cadena con los contadores de compresión y descompresión.
+     */
+    public String snapshot() {
+        long frames = compressed.sum();
+        long attempts = frames + skipped.sum();
+        long in = bytesIn.sum();
+        long saved = in - bytesOut.sum();
+        long inflatedFrames = inflated.sum();
+        return String.format("compression: frames=%d skipped=%d saved=%d bytes (%.1f%%) deflate=%.1f us/frame inflated=%d inflate=%.1f us/frame",
+                frames, skipped.sum(), saved, in == 0 ? 0.0 : 100.0 * saved / in,
+                attempts == 0 ? 0.0 : compressNanos.sum() / 1000.0 / attempts,
+                inflatedFrames, inflatedFrames == 0 ? 0.0 : inflateNanos.sum() / 1000.0 / inflatedFrames);
+    }
+}
@@ -0,0 +1,90 @@
+package common.protocol;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * La clase {@code FrameFragmenter} divide en fragmentos las tramas que no caben en un datagrama de la MTU.
+ * <p>
+ * Cada fragmento es una trama {@link FrameCodec#OP_FRAGMENT} con el identificador del mensaje, su posición y el
+ * número total de fragmentos, y como cuerpo un trozo consecutivo de los bytes de la trama original. Los
+ * fragmentos son tramas normales, por lo que la entrega fiable los confirma y retransmite uno a uno; el
+ * receptor los junta con un {@link FrameReassembler}. Las tramas que caben en la MTU se envían tal cual, sin
+ * coste adicional.
+ * </p>
+ * <p>
+ * Es segura para varios hilos: los identificadores se asignan con un contador atómico.
+ * </p>
+ */
+public class FrameFragmenter {
+
+    /** Tamaño máximo de una trama que se puede fragmentar. */
+    public static final int MAX_MESSAGE_SIZE = 256 * 1024;
+
+    /** Número máximo de fragmentos de un mensaje. */
+    public static final int MAX_FRAGMENTS = 4096;
+
+    /**
+     * Bytes de un fragmento que no son datos: la cabecera y los tres campos, con el identificador en hexadecimal
+     * (hasta 8 cifras) y la posición y el total en decimal (hasta 5 cifras cada uno).
+     */
+    public static final int FRAGMENT_OVERHEAD = FrameCodec.HEADER_SIZE + 3 * Short.BYTES + 8 + 5 + 5;
+
+    private final int mtu;  // Tamaño máximo de cada datagrama
+    private final AtomicInteger nextId;  // Identificador del próximo mensaje fragmentado
+
+    /**
+     * Constructor de la clase {@code FrameFragmenter}.
+     *
+     * @param mtu El tamaño máximo de cada datagrama, en bytes.
+     * @throws IllegalArgumentException Si la MTU no deja sitio para datos tras la cabecera de un fragmento.
+     */
+    public FrameFragmenter(int mtu) {
+        if (mtu <= FRAGMENT_OVERHEAD) {
+            throw new IllegalArgumentException("MTU too small for fragments: " + mtu);
+        }
+        this.mtu = mtu;
+        this.nextId = new AtomicInteger();
+    }
+
+    /**
+     * Divide una trama en los datagramas que se deben enviar.
+     *
+     * @param frame Los bytes de la trama, que no se modifican.
+     * @return La propia trama si cabe en la MTU, o sus fragmentos en orden.
+     * @throws IllegalArgumentException Si la trama supera {@link #MAX_MESSAGE_SIZE} o necesita más de
+     *                                  {@link #MAX_FRAGMENTS} fragmentos.
+     */
+    public List<byte[]> split(byte[] frame) {
+        if (frame.length <= mtu) {
+            return List.of(frame);
+        }
+        if (frame.length > MAX_MESSAGE_SIZE) {
+            throw new IllegalArgumentException("Frame too large to fragment: " + frame.length);
+        }
+        int chunkSize = mtu - FRAGMENT_OVERHEAD;
+        int count = (frame.length + chunkSize - 1) / chunkSize;
+        if (count > MAX_FRAGMENTS) {
+            throw new IllegalArgumentException("Too many fragments for MTU " + mtu + ": " + count);
+        }
+        String id = Integer.toHexString(nextId.getAndIncrement());
+        String total = Integer.toString(count);
+        List<byte[]> fragments = new ArrayList<>(count);
+        for (int index = 0; index < count; index++) {
+            int offset = index * chunkSize;
+            fragments.add(FrameCodec.encode(FrameCodec.OP_FRAGMENT, (byte) 0, 0, frame, offset,
+                    Math.min(chunkSize, frame.length - offset), id, Integer.toString(index), total));
+        }
+        return fragments;
+    }
+
+    /**
+     * Obtiene la MTU con la que se fragmenta.
+     *
+     * @return El tamaño máximo de cada datagrama, en bytes.
+     */
+    public int getMtu() {
+        return mtu;
+    }
+}
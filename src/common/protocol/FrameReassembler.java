@@ -0,0 +1,292 @@
+package common.protocol;
+
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * La clase {@code FrameReassembler} junta los fragmentos producidos por un {@link FrameFragmenter} y devuelve
+ * la trama original cuando han llegado todos.
+ * <p>
+ * Los fragmentos pueden llegar en cualquier orden y repetidos. Los mensajes a medio recibir se guardan por
+ * extremo remoto y la memoria está acotada: cada mensaje tiene un plazo para completarse, cada extremo puede
+ * tener pendientes como mucho un número de bytes y todos los extremos juntos otro. Un fragmento que no cabe
+ * descarta el mensaje al que pertenece, de modo que un extremo que envía fragmentos sin completarlos solo
+ * consume su propia cuota. Los mensajes vencidos se eliminan al llegar otro fragmento del mismo extremo, o de
+ * todos los extremos cuando se alcanza el límite global.
+ * </p>
+ * <p>
+ * Es segura para varios hilos: cada extremo se protege con el cerrojo de su propio estado, y nunca se tiene
+ * el cerrojo de más de un extremo a la vez.
+ * </p>
+ */
+public class FrameReassembler {
+    private static final Logger logger = Logger.getLogger(FrameReassembler.class.getName());
+
+    /** Plazo por defecto para recibir todos los fragmentos de un mensaje, en milisegundos. */
+    public static final long DEFAULT_TIMEOUT_MILLIS = 10_000;
+
+    /** Bytes pendientes por defecto de cada extremo. */
+    public static final int DEFAULT_MAX_PEER_BYTES = 1024 * 1024;
+
+    /** Bytes pendientes por defecto de todos los extremos juntos. */
+    public static final long DEFAULT_MAX_TOTAL_BYTES = 64L * 1024 * 1024;
+
+    private final long timeoutNanos;  // Plazo para completar un mensaje
+    private final int maxPeerBytes;  // Bytes pendientes permitidos por extremo
+    private final long maxTotalBytes;  // Bytes pendientes permitidos en total
+    private final Map<InetSocketAddress, Peer> peers;  // Mensajes pendientes de cada extremo
+    private final AtomicLong totalBytes;  // Bytes pendientes de todos los extremos
+    private final LongAdder completed;  // Mensajes reconstruidos
+    private final LongAdder expired;  // Mensajes descartados por vencer su plazo
+    private final LongAdder rejected;  // Mensajes descartados por superar algún límite
+
+    /**
+     * Constructor de la clase {@code FrameReassembler} con el plazo y los límites por defecto.
+     */
+    public FrameReassembler() {
+        this(DEFAULT_TIMEOUT_MILLIS, DEFAULT_MAX_PEER_BYTES, DEFAULT_MAX_TOTAL_BYTES);
+    }
+
+    /**
+     * Constructor de la clase {@code FrameReassembler}.
+     *
+     * @param timeoutMillis El plazo para recibir todos los fragmentos de un mensaje, en milisegundos.
+     * @param maxPeerBytes Los bytes que puede tener pendientes cada extremo.
+     * @param maxTotalBytes Los bytes que pueden tener pendientes todos los extremos juntos.
+     */
+    public FrameReassembler(long timeoutMillis, int maxPeerBytes, long maxTotalBytes) {
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        this.maxPeerBytes = maxPeerBytes;
+        this.maxTotalBytes = maxTotalBytes;
+        this.peers = new ConcurrentHashMap<>();
+        this.totalBytes = new AtomicLong();
+        this.completed = new LongAdder();
+        this.expired = new LongAdder();
+        this.rejected = new LongAdder();
+    }
+
+    /**
+     * Registra un fragmento recibido.
+     *
+     * @param fragment La trama {@link FrameCodec#OP_FRAGMENT}.
+     * @param address La dirección del extremo que la envió.
+     * @return La trama original si este fragmento la completa, o {@code null} si aún faltan fragmentos o el
+     *         mensaje se ha descartado.
+     * @throws ProtocolException Si el fragmento o la trama reconstruida no son válidos.
+     */
+    public Frame accept(Frame fragment, InetSocketAddress address) throws ProtocolException {
+        int id;
+        int index;
+        int count;
+        try {
+            id = Integer.parseUnsignedInt(fragment.getField(0), 16);
+            index = Integer.parseInt(fragment.getField(1));
+            count = Integer.parseInt(fragment.getField(2));
+        } catch (NumberFormatException e) {
+            throw new ProtocolException("Invalid fragment header");
+        }
+        byte[] chunk = fragment.getBody();
+        if (chunk == null || count < 2 || index < 0 || index >= count || count > FrameFragmenter.MAX_FRAGMENTS) {
+            throw new ProtocolException("Invalid fragment " + index + "/" + count);
+        }
+
+        long now = System.nanoTime();
+        byte[] message = null;
+        Peer peer = peers.computeIfAbsent(address, key -> new Peer());
+        boolean purged = false;
+        while (message == null) {
+            synchronized (peer) {
+                purgeExpired(peer, now);
+                Partial partial = peer.partials.get(id);
+                if (partial == null) {
+                    partial = new Partial(count, now + timeoutNanos);
+                    peer.partials.put(id, partial);
+                } else if (partial.chunks.length != count) {
+                    throw new ProtocolException("Fragment count mismatch for message " + id);
+                }
+                if (partial.chunks[index] != null) {
+                    return null;  // Fragmento repetido
+                }
+                // La tabla de fragmentos también cuenta con el primer fragmento, para que no salga gratis
+                int cost = chunk.length + (partial.bytes == 0 ? count * Long.BYTES : 0);
+                boolean fits = partial.size + chunk.length <= FrameFragmenter.MAX_MESSAGE_SIZE
+                        && peer.bytes + cost <= maxPeerBytes;
+                if (fits && reserve(cost)) {
+                    partial.chunks[index] = chunk;
+                    partial.size += chunk.length;
+                    partial.bytes += cost;
+                    partial.received++;
+                    peer.bytes += cost;
+                    if (partial.received < count) {
+                        return null;
+                    }
+                    discard(peer, id, partial);
+                    message = partial.join();
+                } else if (!fits || purged) {
+                    discard(peer, id, partial);
+                    rejected.increment();
+                    logger.log(Level.WARNING, "Reassembly limit exceeded by {0}, dropping message {1}",
+                            new Object[]{address, Integer.toHexString(id)});
+                    return null;
+                }
+            }
+            if (message == null) {
+                // La cuota global está llena: se purgan todos los extremos sin el cerrojo de este y se reintenta una vez
+                purgeAllExpired(now);
+                purged = true;
+            }
+        }
+        completed.increment();
+        Frame frame = FrameCodec.decode(message, 0, message.length);
+        if (frame.getOpcode() == FrameCodec.OP_FRAGMENT) {
+            throw new ProtocolException("Nested fragment");
+        }
+        return frame;
+    }
+
+    /**
+     * Reserva bytes en la cuota global.
+     *
+     * @param length Los bytes que se quieren reservar.
+     * @return {@code true} si se han reservado.
+     */
+    private boolean reserve(int length) {
+        if (totalBytes.addAndGet(length) <= maxTotalBytes) {
+            return true;
+        }
+        totalBytes.addAndGet(-length);
+        return false;
+    }
+
+    /**
+     * Elimina los mensajes vencidos de todos los extremos. El llamador no debe tener el cerrojo de ningún extremo:
+     * se toman de uno en uno, nunca anidados, para que dos hilos que llenan la cuota a la vez no se bloqueen
+     * mutuamente.
+     *
+     * @param now El instante actual.
+     */
+    private void purgeAllExpired(long now) {
+        for (Peer other : peers.values()) {
+            synchronized (other) {
+                purgeExpired(other, now);
+            }
+        }
+    }
+
+    /**
+     * Elimina los mensajes de un extremo cuyo plazo ha vencido. Como los mensajes se guardan en orden de llegada
+     * y todos tienen el mismo plazo, basta con recorrerlos hasta el primero que no ha vencido.
+     *
+     * @param peer El estado del extremo, cuyo cerrojo tiene el llamador.
+     * @param now El instante actual.
+     */
+    private void purgeExpired(Peer peer, long now) {
+        Iterator<Partial> pending = peer.partials.values().iterator();
+        while (pending.hasNext()) {
+            Partial partial = pending.next();
+            if (now - partial.deadline < 0) {
+                return;
+            }
+            pending.remove();
+            release(peer, partial);
+            expired.increment();
+        }
+    }
+
+    /**
+     * Quita un mensaje de los pendientes de un extremo y libera sus bytes.
+     *
+     * @param peer El estado del extremo, cuyo cerrojo tiene el llamador.
+     * @param id El identificador del mensaje.
+     * @param partial El mensaje.
+     */
+    private void discard(Peer peer, int id, Partial partial) {
+        peer.partials.remove(id);
+        release(peer, partial);
+    }
+
+    /**
+     * Descuenta los bytes de un mensaje de las cuotas del extremo y global.
+     *
+     * @param peer El estado del extremo, cuyo cerrojo tiene el llamador.
+     * @param partial El mensaje.
+     */
+    private void release(Peer peer, Partial partial) {
+        peer.bytes -= partial.bytes;
+        totalBytes.addAndGet(-partial.bytes);
+    }
+
+    /**
+     * Olvida los mensajes pendientes de un extremo, por ejemplo cuando se desconecta.
+     *
+     * @param address La dirección del extremo.
+     */
+    public void forget(InetSocketAddress address) {
+        Peer peer = peers.remove(address);
+        if (peer == null) {
+            return;
+        }
+        synchronized (peer) {
+            peer.partials.values().forEach(partial -> release(peer, partial));
+            peer.partials.clear();
+        }
+    }
+
+    /**
+     * Genera un resumen del estado del reensamblado.
+     *
+     * @return Una cadena con los bytes pendientes y los contadores de mensajes.
+     */
+    public String snapshot() {
+        return String.format("reassembly: peers=%d pendingBytes=%d completed=%d expired=%d rejected=%d",
+                peers.size(), totalBytes.get(), completed.sum(), expired.sum(), rejected.sum());
+    }
+
+    /**
+     * Mensajes pendientes de un extremo, protegidos por el cerrojo del propio objeto.
+     */
+    private static final class Peer {
+        private final Map<Integer, Partial> partials = new LinkedHashMap<>();  // Por identificador, en orden de llegada
+        private long bytes;  // Bytes pendientes del extremo
+    }
+
+    /**
+     * Un mensaje del que han llegado algunos fragmentos.
+     */
+    private static final class Partial {
+        private final byte[][] chunks;  // Datos de cada fragmento, o null si no ha llegado
+        private final long deadline;  // Instante en el que vence el plazo
+        private int received;  // Fragmentos recibidos
+        private int size;  // Bytes de datos recibidos
+        private int bytes;  // Bytes contabilizados en las cuotas, incluida la tabla de fragmentos
+
+        private Partial(int count, long deadline) {
+            this.chunks = new byte[count][];
+            this.deadline = deadline;
+        }
+
+        /**
+         * Concatena los fragmentos en orden.
+         *
+         * @return Los bytes de la trama original.
+         */
+        private byte[] join() {
+            byte[] message = new byte[size];
+            int offset = 0;
+            for (byte[] chunk : chunks) {
+                System.arraycopy(chunk, 0, message, offset, chunk.length);
+                offset += chunk.length;
+            }
+            return message;
+        }
+    }
+}
@@ -0,0 +1,675 @@
+package common.reliability;
+
+import common.metrics.LatencyRecorder;
+import common.protocol.Frame;
+import common.protocol.FrameCodec;
+import common.timer.TimerWheel;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * La clase {@code ReliableEndpoint} añade entrega fiable a las tramas del protocolo binario, sobre UDP.
+ * <p>
+ * Se sitúa entre el servidor o el cliente y el envío de datagramas, y mantiene una sesión por cada extremo
+ * remoto. Las tramas fiables llevan el indicador {@link FrameCodec#FLAG_RELIABLE} y un número de secuencia
+ * propio de la sesión, que empieza en un valor aleatorio marcado con {@link FrameCodec#FLAG_SYN}; así, un
+ * extremo que se reinicia en el mismo puerto abre una sesión nueva en lugar de verse como duplicado.
+ * </p>
+ * <p>
+ * El receptor responde a cada trama fiable con una trama {@link FrameCodec#OP_ACK} que lleva la confirmación
+ * acumulada (la siguiente secuencia esperada) y un mapa de bits con las {@value #SACK_WINDOW} tramas posteriores
+ * ya recibidas (confirmación selectiva). Las tramas que llegan tras un hueco se guardan y se entregan en orden
+ * cuando llega la que falta, y las repetidas se descartan. El emisor guarda cada trama hasta su confirmación
+ * y programa su retransmisión en una {@link TimerWheel} con el plazo estimado por un {@link RttEstimator};
+ * solo se retransmiten las tramas que no figuran como recibidas, en cuanto vence su plazo o en cuanto se
+ * confirman {@value #DUPLICATE_THRESHOLD} tramas posteriores. Tras {@value #MAX_RETRANSMITS} retransmisiones
+ * de una trama se abandonan los envíos pendientes y el siguiente envío empieza una secuencia nueva; el estado de
+ * recepción de la sesión no cambia, por lo que las tramas del extremo se siguen confirmando.
+ * </p>
+ * <p>
+ * Si llega una trama fiable sin {@link FrameCodec#FLAG_SYN} de un extremo del que no se conoce la secuencia
+ * inicial, por ejemplo tras {@link #forget(InetSocketAddress)}, el receptor responde con una confirmación de
+ * reinicio, marcada con {@link FrameCodec#FLAG_SYN} y con la secuencia de esa trama. El emisor, si la secuencia
+ * sigue pendiente, empieza una secuencia nueva y vuelve a enviar sus tramas sin confirmar, en orden, a partir de
+ * la trama inicial; así no retransmite en vano hasta agotar los intentos.
+ * </p>
+ * <p>
+ * Cada sesión regula su envío con una ventana de congestión de crecimiento aditivo y reducción multiplicativa
+ * (AIMD): empieza con {@value #INITIAL_WINDOW} tramas en vuelo, crece una trama por confirmación hasta el umbral
+ * y una trama por ventana completa a partir de él, y se reduce a la mitad, como mucho una vez por ventana,
+ * cuando se pierde una trama. La ventana nunca supera {@value #SACK_WINDOW} tramas, las que el receptor puede
+ * registrar por delante de la confirmación acumulada. Las tramas que no caben esperan en una cola acotada por
+ * extremo; si un extremo lento la llena, se descartan primero los mensajes de chat más antiguos, y los
+ * descartados se resumen en un único aviso que llega en su lugar. Así, un extremo lento no acumula memoria
+ * en el emisor ni retrasa a los demás.
+ * </p>
+ * <p>
+ * Las confirmaciones no son fiables: si se pierde una, la retransmisión de la trama provoca otra.
+ * </p>
+ */
+public class ReliableEndpoint {
+    private static final Logger logger = Logger.getLogger(ReliableEndpoint.class.getName());
+
+    /** Retransmisiones de una trama antes de darla por perdida. */
+    public static final int MAX_RETRANSMITS = 8;
+
+    /** Tramas posteriores a la confirmación acumulada que cubre la confirmación selectiva. */
+    public static final int SACK_WINDOW = Long.SIZE;
+
+    /** Ventana de congestión inicial, en tramas. */
+    public static final int INITIAL_WINDOW = 4;
+
+    /** Tramas posteriores confirmadas que hacen retransmitir una trama sin esperar a su plazo. */
+    public static final int DUPLICATE_THRESHOLD = 3;
+
+    /**
+     * Ventana de congestión mínima, en tramas: la justa para que, si se pierde una, lleguen las
+     * {@value #DUPLICATE_THRESHOLD} posteriores que permiten retransmitirla sin esperar a su plazo.
+     */
+    public static final int MIN_WINDOW = DUPLICATE_THRESHOLD + 1;
+
+    /** Tramas en espera por extremo por defecto. */
+    public static final int DEFAULT_BACKLOG_CAPACITY = 256;
+
+    /**
+     * Envío de datagramas ya codificados hacia un extremo remoto.
+     */
+    @FunctionalInterface
+    public interface Transport {
+        /**
+         * Envía un datagrama.
+         *
+         * @param payload El datagrama, entre la posición y el límite del buffer.
+         * @param address La dirección de destino.
+         * @throws IOException Si ocurre un error al enviar.
+         */
+        void send(ByteBuffer payload, InetSocketAddress address) throws IOException;
+    }
+
+    private final TimerWheel timers;  // Rueda en la que se programan las retransmisiones
+    private final Transport transport;  // Envío de los datagramas
+    private final int backlogCapacity;  // Tramas en espera por extremo
+    private final IntFunction<byte[]> dropNotice;  // Aviso que resume los mensajes descartados, o null
+    private final Map<InetSocketAddress, Session> sessions;  // Sesión de cada extremo remoto
+    private final LongAdder sent;  // Tramas fiables enviadas por primera vez
+    private final LongAdder retransmitted;  // Retransmisiones
+    private final LongAdder acknowledged;  // Tramas confirmadas
+    private final LongAdder duplicates;  // Tramas recibidas repetidas
+    private final LongAdder expired;  // Tramas dadas por perdidas
+    private final LongAdder dropped;  // Tramas descartadas por estar llena la cola de un extremo
+    private final LongAdder congestionEvents;  // Reducciones de la ventana de congestión
+    private final LatencyRecorder deliveryLatency;  // Tiempo desde el primer envío hasta la confirmación
+
+    /**
+     * Constructor de la clase {@code ReliableEndpoint} con la cola por defecto y sin aviso de descartes.
+     *
+     * @param timers La rueda en la que se programan las retransmisiones.
+     * @param transport El envío de los datagramas.
+     */
+    public ReliableEndpoint(TimerWheel timers, Transport transport) {
+        this(timers, transport, DEFAULT_BACKLOG_CAPACITY, null);
+    }
+
+    /**
+     * Constructor de la clase {@code ReliableEndpoint}.
+     *
+     * @param timers La rueda en la que se programan las retransmisiones.
+     * @param transport El envío de los datagramas.
+     * @param backlogCapacity Las tramas que pueden esperar a cada extremo cuando su ventana está llena.
+     * @param dropNotice Crea la trama con la que se avisa a un extremo de cuántos mensajes se le han descartado,
+     *                   o {@code null} para descartarlos sin aviso.
+     * @throws IllegalArgumentException Si la capacidad de la cola no es positiva.
+     */
+    public ReliableEndpoint(TimerWheel timers, Transport transport, int backlogCapacity, IntFunction<byte[]> dropNotice) {
+        if (backlogCapacity < 1) {
+            throw new IllegalArgumentException("Backlog capacity must be positive: " + backlogCapacity);
+        }
+        this.timers = timers;
+        this.transport = transport;
+        this.backlogCapacity = backlogCapacity;
+        this.dropNotice = dropNotice;
+        this.sessions = new ConcurrentHashMap<>();
+        this.sent = new LongAdder();
+        this.retransmitted = new LongAdder();
+        this.acknowledged = new LongAdder();
+        this.duplicates = new LongAdder();
+        this.expired = new LongAdder();
+        this.dropped = new LongAdder();
+        this.congestionEvents = new LongAdder();
+        this.deliveryLatency = new LatencyRecorder("reliable-delivery");
+    }
+
+    /**
+     * Envía una trama de forma fiable. La trama se copia, por lo que el array puede compartirse entre varios
+     * destinatarios; la copia recibe los indicadores y la secuencia de la sesión y se guarda hasta su confirmación.
+     * Si la ventana del extremo está llena, la trama espera en su cola; si la cola también lo está, se descarta
+     * un mensaje de chat, el más antiguo en espera o, si no hay ninguno, esta misma trama.
+     *
+     * @param frame Los bytes de la trama.
+     * @param address La dirección del extremo remoto.
+     * @throws IOException Si ocurre un error al enviar.
+     */
+    public void send(byte[] frame, InetSocketAddress address) throws IOException {
+        Session session = sessions.computeIfAbsent(address, Session::new);
+        List<Pending> ready;
+        synchronized (session) {
+            if (session.backlog.size() < backlogCapacity || makeRoom(session, frame)) {
+                session.backlog.add(frame.clone());
+            }
+            ready = admit(session);
+        }
+        transmit(session, ready);
+    }
+
+    /**
+     * Libera un hueco en la cola llena de un extremo descartando el mensaje de chat en espera más antiguo.
+     * Los avisos, errores y respuestas a comandos no se descartan mientras quede algún mensaje de chat.
+     *
+     * @param session La sesión, cuyo cerrojo tiene el llamador.
+     * @param frame La trama que se quiere poner en la cola.
+     * @return {@code true} si se ha liberado un hueco; {@code false} si se descarta la trama nueva.
+     */
+    private boolean makeRoom(Session session, byte[] frame) {
+        dropped.increment();
+        if (session.skipped++ == 0) {
+            logger.log(Level.WARNING, "Outbound backlog to {0} is full, dropping chat messages", session.address);
+        }
+        Iterator<byte[]> waiting = session.backlog.iterator();
+        while (waiting.hasNext()) {
+            if (FrameCodec.opcodeOf(waiting.next()) == FrameCodec.OP_CHAT) {
+                waiting.remove();
+                return true;
+            }
+        }
+        if (FrameCodec.opcodeOf(frame) == FrameCodec.OP_CHAT) {
+            return false;
+        }
+        session.backlog.poll();  // Sin mensajes de chat en espera: se sacrifica la trama más antigua
+        return true;
+    }
+
+    /**
+     * Pasa a la ventana de envío las tramas en espera que caben en ella, asignándoles su secuencia y
+     * programando su retransmisión. Caben tantas tramas sin confirmar como indique la ventana de congestión,
+     * y nunca más de {@value #SACK_WINDOW} secuencias por delante de la más antigua sin confirmar, las que el
+     * receptor puede registrar. Si se han descartado mensajes desde el último envío, primero sale el aviso
+     * que los resume.
+     *
+     * @param session La sesión, cuyo cerrojo tiene el llamador.
+     * @return Las tramas que deben enviarse, fuera del cerrojo.
+     */
+    private List<Pending> admit(Session session) {
+        List<Pending> ready = new ArrayList<>();
+        while (!session.backlog.isEmpty()
+                && session.unacked.size() < (int) session.window
+                && session.nextSequence - session.oldestUnacked <= SACK_WINDOW) {
+            byte[] frame = session.skipped > 0 && dropNotice != null
+                    ? dropNotice.apply(session.skipped)
+                    : session.backlog.poll();
+            session.skipped = 0;
+            int sequence = session.nextSequence++;
+            byte flags = sequence == session.initialSequence
+                    ? (byte) (FrameCodec.FLAG_RELIABLE | FrameCodec.FLAG_SYN)
+                    : FrameCodec.FLAG_RELIABLE;
+            FrameCodec.stamp(frame, flags, sequence);
+            Pending pending = new Pending(sequence, frame, System.nanoTime());
+            session.unacked.put(sequence, pending);
+            schedule(session, pending);
+            ready.add(pending);
+        }
+        return ready;
+    }
+
+    /**
+     * Envía por primera vez las tramas admitidas en la ventana.
+     *
+     * @param session La sesión.
+     * @param ready Las tramas.
+     * @throws IOException Si ocurre un error al enviar.
+     */
+    private void transmit(Session session, List<Pending> ready) throws IOException {
+        for (Pending pending : ready) {
+            sent.increment();
+            transport.send(ByteBuffer.wrap(pending.frame), session.address);
+        }
+    }
+
+    /**
+     * Procesa una trama recibida. Las confirmaciones se aplican a la sesión y se consumen; las tramas fiables
+     * se confirman y se entregan una sola vez y en orden de secuencia; el resto se entrega sin más.
+     *
+     * @param frame La trama recibida.
+     * @param address La dirección del extremo que la envió.
+     * @return Las tramas que deben entregarse al servidor o al cliente, en orden: ninguna si la trama es una
+     *         confirmación, está repetida o espera a una anterior; varias si completa un hueco.
+     * @throws IOException Si ocurre un error al enviar la confirmación.
+     */
+    public List<Frame> receive(Frame frame, InetSocketAddress address) throws IOException {
+        if (frame.getOpcode() == FrameCodec.OP_ACK) {
+            handleAck(frame, address);
+            return List.of();
+        }
+        if (!frame.hasFlag(FrameCodec.FLAG_RELIABLE)) {
+            return List.of(frame);
+        }
+
+        Session session = sessions.computeIfAbsent(address, Session::new);
+        List<Frame> delivered = new ArrayList<>(1);
+        boolean accepted;
+        int cumulative;
+        long selective;
+        synchronized (session) {
+            session.remoteReliable = true;
+            int sequence = frame.getSequence();
+            if (frame.hasFlag(FrameCodec.FLAG_SYN) && (!session.receiving || sequence != session.remoteInitialSequence)) {
+                // Primera trama de una sesión nueva del extremo remoto: se reinicia el estado de recepción
+                session.receiving = true;
+                session.remoteInitialSequence = sequence;
+                session.expected = sequence;
+                session.received = 0;
+                Arrays.fill(session.reorder, null);
+            }
+            if (!session.receiving) {
+                // Sin la trama inicial no se puede ordenar: se pide al emisor que empiece una secuencia nueva
+                byte[] reset = FrameCodec.encode(FrameCodec.OP_ACK, FrameCodec.FLAG_SYN, sequence, "0");
+                transport.send(ByteBuffer.wrap(reset), address);
+                return List.of();
+            }
+            accepted = accept(session, frame, delivered);
+            cumulative = session.expected;
+            selective = session.received;
+        }
+        if (!accepted) {
+            duplicates.increment();
+            logger.log(Level.FINE, "Duplicate frame {0} from {1}", new Object[]{frame.getSequence(), address});
+        }
+        byte[] ack = FrameCodec.encode(FrameCodec.OP_ACK, (byte) 0, cumulative, Long.toHexString(selective));
+        transport.send(ByteBuffer.wrap(ack), address);
+        return delivered;
+    }
+
+    /**
+     * Registra la llegada de una trama en el estado de recepción de la sesión. Una trama posterior a un hueco
+     * se guarda hasta que llega la que falta; la trama esperada se entrega junto con las guardadas que la siguen.
+     *
+     * @param session La sesión, cuyo cerrojo tiene el llamador.
+     * @param frame La trama recibida.
+     * @param delivered La lista en la que se añaden las tramas que pueden entregarse.
+     * @return {@code true} si la trama no se había recibido antes y está dentro de la ventana.
+     */
+    private static boolean accept(Session session, Frame frame, List<Frame> delivered) {
+        int offset = frame.getSequence() - session.expected;  // Con desbordamiento: las secuencias dan la vuelta
+        if (offset < 0) {
+            return false;
+        }
+        if (offset == 0) {
+            // Avanza la confirmación acumulada sobre las tramas posteriores que ya habían llegado
+            delivered.add(frame);
+            session.expected++;
+            while ((session.received & 1) != 0) {
+                session.received >>>= 1;
+                int index = session.expected & (SACK_WINDOW - 1);
+                delivered.add(session.reorder[index]);
+                session.reorder[index] = null;
+                session.expected++;
+            }
+            session.received >>>= 1;
+            return true;
+        }
+        if (offset > SACK_WINDOW) {
+            return false;  // Fuera de la ventana: se descarta y el emisor la retransmitirá
+        }
+        long bit = 1L << (offset - 1);
+        if ((session.received & bit) != 0) {
+            return false;
+        }
+        session.received |= bit;
+        session.reorder[frame.getSequence() & (SACK_WINDOW - 1)] = frame;
+        return true;
+    }
+
+    /**
+     * Aplica una confirmación: libera las tramas confirmadas, acumulada o selectivamente, y toma muestras del
+     * tiempo de ida y vuelta de las que no se habían retransmitido. Se ignoran las confirmaciones cuya secuencia
+     * acumulada no está entre la trama pendiente más antigua y la próxima por enviar, que son antiguas o ajenas a
+     * la sesión, y los bits selectivos de secuencias aún no enviadas. Una confirmación de reinicio hace empezar
+     * una secuencia nueva.
+     *
+     * @param frame La trama de confirmación.
+     * @param address La dirección del extremo que la envió.
+     */
+    private void handleAck(Frame frame, InetSocketAddress address) {
+        Session session = sessions.get(address);
+        if (session == null) {
+            return;
+        }
+        int cumulative = frame.getSequence();
+        long selective;
+        try {
+            selective = Long.parseUnsignedLong(frame.getField(0), 16);
+        } catch (NumberFormatException e) {
+            selective = 0;
+        }
+
+        if (frame.hasFlag(FrameCodec.FLAG_SYN)) {
+            restart(session, cumulative);
+            return;
+        }
+
+        long now = System.nanoTime();
+        List<Pending> lost = new ArrayList<>();
+        List<Pending> ready;
+        synchronized (session) {
+            if (cumulative - session.oldestUnacked < 0 || cumulative - session.nextSequence > 0) {
+                return;  // Fuera de [oldestUnacked, nextSequence]: confirmación antigua o de otra secuencia
+            }
+            int unsent = session.nextSequence - cumulative - 1;  // Secuencias enviadas por encima de la acumulada
+            if (unsent < Long.SIZE) {
+                selective &= unsent <= 0 ? 0 : (1L << unsent) - 1;
+            }
+            for (long bits = selective; bits != 0; bits &= bits - 1) {
+                int sequence = cumulative + 1 + Long.numberOfTrailingZeros(bits);
+                release(session, session.unacked.remove(sequence), now);
+            }
+            while (session.oldestUnacked - session.nextSequence < 0
+                    && (session.oldestUnacked - cumulative < 0 || !session.unacked.containsKey(session.oldestUnacked))) {
+                release(session, session.unacked.remove(session.oldestUnacked), now);
+                session.oldestUnacked++;
+            }
+            for (int offset = 0; offset < Long.SIZE && Long.bitCount(selective >>> offset) >= DUPLICATE_THRESHOLD; offset++) {
+                // Con DUPLICATE_THRESHOLD tramas posteriores ya recibidas, la trama se da por perdida sin esperar
+                Pending pending = session.unacked.get(cumulative + offset);
+                if (pending != null && !pending.fastRetransmitted) {
+                    pending.fastRetransmitted = true;
+                    pending.timeout.cancel();
+                    pending.retransmissions++;
+                    schedule(session, pending);
+                    onLoss(session, pending);
+                    lost.add(pending);
+                }
+            }
+            ready = admit(session);  // La ventana ha avanzado: salen las tramas en espera
+        }
+        try {
+            for (Pending pending : lost) {
+                retransmitted.increment();
+                transport.send(ByteBuffer.wrap(pending.frame), address);
+            }
+            transmit(session, ready);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Failed to send frame to {0}: {1}", new Object[]{address, e.getMessage()});
+        }
+    }
+
+    /**
+     * Reduce a la mitad la ventana de congestión por la pérdida de una trama. Las pérdidas de tramas enviadas
+     * antes de la última reducción pertenecen al mismo episodio y no la reducen de nuevo.
+     *
+     * @param session La sesión, cuyo cerrojo tiene el llamador.
+     * @param pending La trama perdida.
+     */
+    private void onLoss(Session session, Pending pending) {
+        if (pending.sequence - session.recoverySequence < 0) {
+            return;
+        }
+        session.threshold = Math.max(MIN_WINDOW, session.window / 2);
+        session.window = session.threshold;
+        session.recoverySequence = session.nextSequence;
+        congestionEvents.increment();
+    }
+
+    /**
+     * Libera una trama confirmada.
+     *
+     * @param session La sesión, cuyo cerrojo tiene el llamador.
+     * @param pending La trama, o null si ya se había liberado.
+     * @param now El instante de la confirmación.
+     */
+    private void release(Session session, Pending pending, long now) {
+        if (pending == null) {
+            return;
+        }
+        pending.timeout.cancel();
+        if (session.window < session.threshold) {
+            session.window += 1;  // Arranque lento: la ventana se duplica en cada ida y vuelta
+        } else {
+            session.window += 1 / session.window;  // Crecimiento aditivo: una trama más por ventana confirmada
+        }
+        session.window = Math.min(session.window, SACK_WINDOW);
+        long elapsed = now - pending.firstSentAt;
+        if (pending.retransmissions == 0) {
+            session.rtt.sample(elapsed);  // Algoritmo de Karn: solo las tramas enviadas una vez
+        }
+        deliveryLatency.record(elapsed);
+        acknowledged.increment();
+    }
+
+    /**
+     * Programa la retransmisión de una trama con el plazo actual de la sesión.
+     *
+     * @param session La sesión, cuyo cerrojo tiene el llamador.
+     * @param pending La trama.
+     */
+    private void schedule(Session session, Pending pending) {
+        pending.timeout = timers.schedule(() -> retransmit(session, pending),
+                session.rtt.getBackoffNanos(pending.retransmissions), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Retransmite una trama cuyo plazo ha vencido sin confirmación, o la da por perdida si ha agotado los intentos.
+     *
+     * @param session La sesión.
+     * @param pending La trama.
+     */
+    private void retransmit(Session session, Pending pending) {
+        synchronized (session) {
+            if (session.unacked.get(pending.sequence) != pending) {
+                return;  // Confirmada u olvidada mientras vencía el plazo
+            }
+            if (pending.retransmissions >= MAX_RETRANSMITS) {
+                // El receptor no puede avanzar sin esta trama: se abandonan los envíos y el próximo empieza de cero
+                expired.increment();
+                logger.log(Level.WARNING, "Giving up on frame {0} to {1} after {2} retransmissions, resetting send sequence",
+                        new Object[]{pending.sequence, session.address, MAX_RETRANSMITS});
+                cancelAll(session);
+                resetSequence(session);
+                return;
+            }
+            pending.retransmissions++;
+            schedule(session, pending);
+            onLoss(session, pending);
+        }
+        retransmitted.increment();
+        try {
+            transport.send(ByteBuffer.wrap(pending.frame), session.address);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Failed to retransmit frame to {0}: {1}", new Object[]{session.address, e.getMessage()});
+        }
+    }
+
+    /**
+     * Atiende una confirmación de reinicio: si la secuencia que la provocó sigue pendiente, empieza una secuencia
+     * nueva y vuelve a poner en la ventana, en su orden y por delante de las que esperan, las tramas sin confirmar.
+     *
+     * @param session La sesión.
+     * @param sequence La secuencia de la trama que el receptor no pudo ordenar.
+     */
+    private void restart(Session session, int sequence) {
+        List<Pending> ready;
+        synchronized (session) {
+            if (!session.unacked.containsKey(sequence)) {
+                return;  // Reinicio ya atendido o provocado por una trama de una secuencia anterior
+            }
+            logger.log(Level.FINE, "Peer {0} lost the session, restarting send sequence", session.address);
+            for (int pending = session.nextSequence - 1; pending - session.oldestUnacked >= 0; pending--) {
+                Pending unacked = session.unacked.remove(pending);
+                if (unacked != null) {
+                    unacked.timeout.cancel();
+                    session.backlog.addFirst(unacked.frame);
+                }
+            }
+            resetSequence(session);
+            ready = admit(session);
+        }
+        try {
+            transmit(session, ready);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Failed to send frame to {0}: {1}", new Object[]{session.address, e.getMessage()});
+        }
+    }
+
+    /**
+     * Empieza una secuencia de envío nueva, con la ventana de congestión inicial. No toca el estado de recepción.
+     *
+     * @param session La sesión, cuyo cerrojo tiene el llamador, sin tramas pendientes de confirmación.
+     */
+    private static void resetSequence(Session session) {
+        session.initialSequence = ThreadLocalRandom.current().nextInt();
+        session.nextSequence = session.initialSequence;
+        session.oldestUnacked = session.initialSequence;
+        session.recoverySequence = session.initialSequence;
+        session.window = INITIAL_WINDOW;
+        session.threshold = SACK_WINDOW;
+    }
+
+    /**
+     * Indica si un extremo remoto usa entrega fiable, es decir, si ha enviado alguna trama fiable. Solo a estos
+     * extremos se les envían tramas fiables, ya que solo ellos las confirman.
+     *
+     * @param address La dirección del extremo.
+     * @return {@code true} si el extremo confirma las tramas fiables.
+     */
+    public boolean isReliablePeer(InetSocketAddress address) {
+        Session session = sessions.get(address);
+        return session != null && session.remoteReliable;
+    }
+
+    /**
+     * Espera a que se confirmen todas las tramas enviadas a un extremo, por ejemplo antes de cerrar el socket.
+     *
+     * @param address La dirección del extremo.
+     * @param timeoutMillis El tiempo máximo de espera en milisegundos.
+     * @return {@code true} si no quedan tramas pendientes.
+     * @throws InterruptedException Si el hilo se interrumpe mientras espera.
+     */
+    public boolean awaitDelivery(InetSocketAddress address, long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        Session session = sessions.get(address);
+        while (session != null) {
+            synchronized (session) {
+                if (session.unacked.isEmpty() && session.backlog.isEmpty()) {
+                    return true;
+                }
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            Thread.sleep(TimerWheel.DEFAULT_TICK_MILLIS);
+        }
+        return true;
+    }
+
+    /**
+     * Olvida la sesión de un extremo remoto, cancelando las retransmisiones pendientes.
+     *
+     * @param address La dirección del extremo.
+     */
+    public void forget(InetSocketAddress address) {
+        Session session = sessions.remove(address);
+        if (session == null) {
+            return;
+        }
+        synchronized (session) {
+            cancelAll(session);
+        }
+    }
+
+    /**
+     * Cancela las retransmisiones de una sesión y descarta sus tramas pendientes y en espera.
+     *
+     * @param session La sesión, cuyo cerrojo tiene el llamador.
+     */
+    private static void cancelAll(Session session) {
+        session.unacked.values().forEach(pending -> pending.timeout.cancel());
+        session.unacked.clear();
+        session.backlog.clear();
+    }
+
+    /**
+     * Genera un resumen de la entrega fiable y reinicia las latencias del intervalo.
+     *
+     * @return Una cadena con los contadores de tramas y la latencia de entrega.
+     */
+    public String snapshot() {
+        return String.format("reliable: sessions=%d sent=%d retransmitted=%d acked=%d duplicates=%d expired=%d dropped=%d congestion=%d %s",
+                sessions.size(), sent.sum(), retransmitted.sum(), acknowledged.sum(), duplicates.sum(), expired.sum(),
+                dropped.sum(), congestionEvents.sum(), deliveryLatency.snapshot());
+    }
+
+    /**
+     * Estado de la entrega fiable con un extremo remoto, protegido por el cerrojo del propio objeto.
+     */
+    private static final class Session {
+        private final InetSocketAddress address;
+        private final RttEstimator rtt;
+        private final Map<Integer, Pending> unacked;  // Tramas enviadas pendientes de confirmación, por secuencia
+        private final Deque<byte[]> backlog;  // Tramas que esperan hueco en la ventana de envío
+        private final Frame[] reorder;  // Tramas recibidas tras un hueco, por secuencia módulo la ventana
+        private int initialSequence;  // Secuencia inicial de los envíos, aleatoria
+        private int nextSequence;  // Secuencia de la próxima trama enviada
+        private int oldestUnacked;  // Primera secuencia enviada que puede seguir pendiente
+        private volatile boolean remoteReliable;  // Si el extremo ha enviado tramas fiables
+        private boolean receiving;  // Si se ha recibido la trama inicial del extremo
+        private int remoteInitialSequence;  // Secuencia inicial del extremo
+        private int expected;  // Siguiente secuencia esperada: todas las anteriores han llegado
+        private long received;  // Bit i: ha llegado la secuencia expected + 1 + i
+        private double window;  // Ventana de congestión: tramas sin confirmar permitidas
+        private double threshold;  // Umbral entre el arranque lento y el crecimiento aditivo
+        private int recoverySequence;  // Primera secuencia enviada tras la última reducción de la ventana
+        private int skipped;  // Mensajes descartados desde el último aviso
+
+        private Session(InetSocketAddress address) {
+            this.address = address;
+            this.rtt = new RttEstimator();
+            this.unacked = new HashMap<>();
+            this.backlog = new ArrayDeque<>();
+            this.reorder = new Frame[SACK_WINDOW];
+            resetSequence(this);
+        }
+    }
+
+    /**
+     * Una trama enviada pendiente de confirmación.
+     */
+    private static final class Pending {
+        private final int sequence;
+        private final byte[] frame;
+        private final long firstSentAt;  // Instante del primer envío
+        private int retransmissions;  // Retransmisiones hechas, protegido por el cerrojo de la sesión
+        private boolean fastRetransmitted;  // Si ya se retransmitió por confirmaciones posteriores
+        private TimerWheel.Timeout timeout;  // Plazo de la próxima retransmisión
+
+        private Pending(int sequence, byte[] frame, long firstSentAt) {
+            this.sequence = sequence;
+            this.frame = frame;
+            this.firstSentAt = firstSentAt;
+        }
+    }
+}
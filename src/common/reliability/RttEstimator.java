@@ -0,0 +1,92 @@
+package common.reliability;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * La clase {@code RttEstimator} estima el tiempo de ida y vuelta con un cliente y calcula el plazo de
+ * retransmisión, siguiendo el RFC 6298.
+ * <p>
+ * Mantiene una media suavizada (SRTT) y una variación (RTTVAR) de las muestras, y fija el plazo en
+ * {@code SRTT + 4 * RTTVAR}, acotado entre {@link #MIN_RTO_MILLIS} y {@link #MAX_RTO_MILLIS}. Cada retransmisión
+ * de una trama duplica su plazo. Solo deben aportarse muestras de tramas que no se hayan
+ * retransmitido (algoritmo de Karn), ya que la confirmación de una retransmisión no indica a qué envío responde.
+ * No es segura para varios hilos: la protege el cerrojo de la sesión a la que pertenece.
+ * </p>
+ */
+public class RttEstimator {
+
+    /** Plazo de retransmisión antes de la primera muestra, en milisegundos. */
+    public static final long INITIAL_RTO_MILLIS = 250;
+
+    /** Plazo mínimo de retransmisión, en milisegundos. */
+    public static final long MIN_RTO_MILLIS = 50;
+
+    /** Plazo máximo de retransmisión, en milisegundos. */
+    public static final long MAX_RTO_MILLIS = 5000;
+
+    private long smoothedNanos;  // SRTT, 0 hasta la primera muestra
+    private long variationNanos;  // RTTVAR
+    private long rtoNanos;  // Plazo de retransmisión actual
+
+    /**
+     * Constructor de la clase {@code RttEstimator}, con el plazo inicial.
+     */
+    public RttEstimator() {
+        this.rtoNanos = TimeUnit.MILLISECONDS.toNanos(INITIAL_RTO_MILLIS);
+    }
+
+    /**
+     * Incorpora una muestra del tiempo de ida y vuelta y recalcula el plazo.
+     *
+     * @param sampleNanos El tiempo entre el envío de una trama no retransmitida y su confirmación.
+     */
+    public void sample(long sampleNanos) {
+        if (smoothedNanos == 0) {
+            smoothedNanos = sampleNanos;
+            variationNanos = sampleNanos / 2;
+        } else {
+            variationNanos = (3 * variationNanos + Math.abs(smoothedNanos - sampleNanos)) / 4;
+            smoothedNanos = (7 * smoothedNanos + sampleNanos) / 8;
+        }
+        rtoNanos = clamp(smoothedNanos + 4 * variationNanos);
+    }
+
+    /**
+     * Calcula el plazo de un nuevo intento de envío, duplicando el plazo actual por cada retransmisión previa
+     * (retroceso exponencial). El retroceso se aplica por trama, de modo que una trama perdida no retrasa las demás.
+     *
+     * @param retransmissions Las veces que ya se ha retransmitido la trama.
+     * @return El plazo en nanosegundos.
+     */
+    public long getBackoffNanos(int retransmissions) {
+        return clamp(rtoNanos << Math.min(retransmissions, 16));
+    }
+
+    /**
+     * Obtiene el plazo de retransmisión actual.
+     *
+     * @return El plazo en nanosegundos.
+     */
+    public long getRtoNanos() {
+        return rtoNanos;
+    }
+
+    /**
+     * Obtiene el tiempo de ida y vuelta suavizado.
+     *
+     * @return El SRTT en nanosegundos, o 0 si aún no hay muestras.
+     */
+    public long getSmoothedNanos() {
+        return smoothedNanos;
+    }
+
+    /**
+     * Acota un plazo entre el mínimo y el máximo.
+     *
+     * @param nanos El plazo calculado.
+     * @return El plazo acotado.
+     */
+    private static long clamp(long nanos) {
+        return Math.max(TimeUnit.MILLISECONDS.toNanos(MIN_RTO_MILLIS), Math.min(TimeUnit.MILLISECONDS.toNanos(MAX_RTO_MILLIS), nanos));
+    }
+}
@@ -0,0 +1,94 @@
+package common.socket;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+/**
+ * La clase {@code PeerAddressTable} guarda una única instancia de {@link InetSocketAddress} por cada cliente
+ * del que se reciben datagramas.
+ * <p>
+ * El bucle de recepción obtiene de cada paquete una {@link InetAddress} y un puerto; en lugar de crear una
+ * dirección nueva por datagrama, busca la ya creada para ese cliente. Así, tras el primer datagrama de cada
+ * cliente la recepción no crea direcciones, y todas las estructuras del servidor (usuarios, clientes binarios,
+ * colas por cliente) reciben la misma instancia, con lo que sus comparaciones se resuelven por identidad.
+ * </p>
+ * <p>
+ * La tabla es de correspondencia directa: cada cliente ocupa la posición que indica su hash, y si otro cliente
+ * cae en la misma posición la sustituye. Un cliente desplazado solo provoca que se vuelva a crear su dirección,
+ * por lo que la tabla no necesita eliminar entradas ni crece con el número de clientes. Las direcciones son
+ * inmutables, así que la tabla puede leerse desde varios hilos sin cerrojos, aunque está pensada para el hilo
+ * de recepción.
+ * </p>
+ */
+public class PeerAddressTable {
+
+    /** Número de posiciones por defecto de la tabla. */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final InetSocketAddress[] slots;  // Dirección de cada posición, o null si está libre
+    private final int mask;  // Máscara para calcular la posición a partir del hash
+
+    /**
+     * Constructor de la clase {@code PeerAddressTable} con la capacidad por defecto.
+     */
+    public PeerAddressTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor de la clase {@code PeerAddressTable}.
+     *
+     * @param capacity El número de posiciones de la tabla; se redondea a la siguiente potencia de dos.
+     */
+    public PeerAddressTable(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.slots = new InetSocketAddress[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Devuelve la dirección guardada para un cliente, creándola si no estaba en la tabla.
+     *
+     * @param address La dirección IP del cliente.
+     * @param port El puerto del cliente.
+     * @return La dirección del cliente, la misma instancia mientras no sea desplazada de la tabla.
+     */
+    public InetSocketAddress intern(InetAddress address, int port) {
+        int index = indexOf(address.hashCode(), port);
+        InetSocketAddress cached = slots[index];
+        if (cached != null && cached.getPort() == port && address.equals(cached.getAddress())) {
+            return cached;  // Camino habitual: el cliente ya tiene dirección, no se crea ningún objeto
+        }
+        InetSocketAddress created = new InetSocketAddress(address, port);
+        slots[index] = created;
+        return created;
+    }
+
+    /**
+     * Devuelve la instancia guardada equivalente a una dirección, guardando la recibida si no había ninguna.
+     *
+     * @param address La dirección del cliente, ya resuelta.
+     * @return La dirección guardada para ese cliente.
+     */
+    public InetSocketAddress intern(InetSocketAddress address) {
+        int index = indexOf(address.getAddress().hashCode(), address.getPort());
+        InetSocketAddress cached = slots[index];
+        if (address.equals(cached)) {
+            return cached;
+        }
+        slots[index] = address;
+        return address;
+    }
+
+    /**
+     * Calcula la posición de un cliente, mezclando el hash de la IP con el puerto.
+     *
+     * @param addressHash El hash de la dirección IP.
+     * @param port El puerto.
+     * @return La posición en la tabla.
+     */
+    private int indexOf(int addressHash, int port) {
+        int hash = addressHash * 31 + port;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+}
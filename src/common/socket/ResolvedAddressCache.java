@@ -0,0 +1,91 @@
+package common.socket;
+
+import common.logger.ChatLogger;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * La clase {@code ResolvedAddressCache} resuelve direcciones que llegan como nombre de host
+ * ({@link InetSocketAddress#isUnresolved()}) y guarda el resultado durante un tiempo de vida limitado.
+ * <p>
+ * Las direcciones ya resueltas se devuelven tal cual, sin ninguna consulta DNS. Solo las direcciones
+ * sin resolver consultan el DNS, y como mucho una vez por nombre y periodo de validez, de modo que el
+ * camino de envío nunca hace consultas DNS por cada datagrama.
+ * </p>
+ */
+public class ResolvedAddressCache {
+
+    /** Logger utilizado para registrar los eventos y errores en la clase. */
+    private static final Logger logger = ChatLogger.getLogger(ResolvedAddressCache.class.getName());
+
+    /** Tiempo de vida por defecto de una resolución, en segundos. */
+    public static final long DEFAULT_TTL_SECONDS = 60;
+
+    /** Tiempo de vida de cada resolución, en nanosegundos. */
+    private final long ttlNanos;
+
+    /** Resoluciones guardadas, por dirección sin resolver (nombre de host y puerto). */
+    private final Map<InetSocketAddress, Entry> entries;
+
+    /**
+     * Constructor de la clase {@code ResolvedAddressCache}.
+     *
+     * @param ttlSeconds El tiempo de vida de cada resolución, en segundos.
+     */
+    public ResolvedAddressCache(long ttlSeconds) {
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.entries = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Devuelve una dirección resuelta lista para enviar.
+     *
+     * @param address La dirección de destino, resuelta o no.
+     * @return La misma dirección si ya estaba resuelta, o la resolución guardada o recién obtenida.
+     * @throws UnknownHostException Si el nombre de host no puede resolverse.
+     */
+    public InetSocketAddress resolve(InetSocketAddress address) throws UnknownHostException {
+        if (!address.isUnresolved()) {
+            return address;  // Camino habitual: la dirección ya tiene IP, no hay nada que consultar
+        }
+
+        long now = System.nanoTime();
+        Entry entry = entries.get(address);
+        if (entry != null && now - entry.resolvedAt < ttlNanos) {
+            return entry.address;
+        }
+
+        InetAddress resolved = InetAddress.getByName(address.getHostString());
+        InetSocketAddress result = new InetSocketAddress(resolved, address.getPort());
+        entries.put(address, new Entry(result, now));
+        logger.log(Level.CONFIG, "Resolved {0} to {1}", new Object[]{address, result});
+        return result;
+    }
+
+    /**
+     * Elimina todas las resoluciones guardadas.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Una resolución guardada y el instante en que se obtuvo.
+     */
+    private static final class Entry {
+        private final InetSocketAddress address;
+        private final long resolvedAt;
+
+        private Entry(InetSocketAddress address, long resolvedAt) {
+            this.address = address;
+            this.resolvedAt = resolvedAt;
+        }
+    }
+}
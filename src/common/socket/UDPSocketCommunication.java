@@ -1,9 +1,13 @@
 package common.socket;
 
 import common.logger.ChatLogger;
+import common.metrics.LatencyRecorder;
 
 import java.io.IOException;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -19,6 +23,37 @@ public class UDPSocketCommunication {
     /** Logger utilizado para registrar los eventos y errores en la clase. */
     private static final Logger logger = ChatLogger.getLogger(UDPSocketCommunication.class.getName());
 
+    /** Resoluciones de las direcciones que llegan como nombre de host, con tiempo de vida configurable. */
+    private static final ResolvedAddressCache ADDRESS_CACHE =
+            new ResolvedAddressCache(Long.getLong("chat.dns.ttl", ResolvedAddressCache.DEFAULT_TTL_SECONDS));
+
+    /** Tamaño máximo de los datos de un datagrama UDP sobre IPv4. */
+    public static final int MAX_DATAGRAM_SIZE = 65507;
+
+    /** MTU por defecto: tamaño máximo de los datagramas que se envían sin fragmentar las tramas. */
+    public static final int DEFAULT_MTU = 1200;
+
+    /** MTU mínima admitida, suficiente para la cabecera de un fragmento y algunos datos. */
+    public static final int MIN_MTU = 128;
+
+    /**
+     * MTU configurada ({@code chat.net.mtu}): las tramas mayores se envían en fragmentos de este tamaño.
+     * El valor por defecto cabe en cualquier enlace sin que IP tenga que fragmentar el datagrama.
+     */
+    private static final int MTU = Math.max(MIN_MTU, Math.min(MAX_DATAGRAM_SIZE, Integer.getInteger("chat.net.mtu", DEFAULT_MTU)));
+
+    /** Latencia de cada envío de datagrama. */
+    private static final LatencyRecorder SEND_LATENCY = new LatencyRecorder("send");
+
+    /**
+     * Probabilidad de descartar cada envío ({@code chat.net.lossRate}, entre 0 y 1), para simular una red con
+     * pérdidas al probar la entrega fiable. Por defecto es 0 y no se descarta nada.
+     */
+    private static final double LOSS_RATE = Double.parseDouble(System.getProperty("chat.net.lossRate", "0"));
+
+    /** Paquete reutilizado por cada hilo para los envíos de mensajes ya codificados. */
+    private static final ThreadLocal<DatagramPacket> REUSABLE_PACKET = ThreadLocal.withInitial(() -> new DatagramPacket(new byte[0], 0));
+
     /**
      * Envía un mensaje a través de un socket UDP.
      *
@@ -31,11 +66,16 @@ public class UDPSocketCommunication {
             // Convierte el mensaje a un array de bytes
             byte[] buffer = message.getBytes();
 
-            // Crea un paquete UDP con el mensaje, dirección IP y puerto del destinatario
-            DatagramPacket packet = new DatagramPacket(buffer, buffer.length, InetAddress.getByName(address.getHostName()), address.getPort());
+            // Crea un paquete UDP con el mensaje y la dirección ya resuelta del destinatario
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length, resolve(address));
 
             // Envía el paquete
+            if (shouldDrop()) {
+                return;
+            }
+            long start = System.nanoTime();
             socket.send(packet);
+            SEND_LATENCY.recordSince(start);
         } catch (IOException e) {
             // En caso de error, se registra el problema
             logger.log(Level.SEVERE, "Failed to send message: " + e.getMessage());
@@ -43,22 +83,136 @@ public class UDPSocketCommunication {
     }
 
     /**
-     * Recibe un mensaje a través de un socket UDP.
+     * Envía un mensaje ya codificado a través de un socket UDP sin copiarlo ni crear un paquete nuevo.
+     * Se reutiliza un {@code DatagramPacket} por hilo, apuntándolo al array del buffer y a la dirección destino,
+     * por lo que un mismo buffer puede enviarse a muchos destinatarios sin asignaciones adicionales.
+     * La posición y el límite del buffer no se modifican.
+     *
+     * @param socket El socket UDP utilizado para enviar el mensaje.
+     * @param payload El mensaje codificado, entre la posición y el límite del buffer.
+     * @param address La dirección a la que se enviará el mensaje (dirección IP y puerto).
+     */
+    public static void sendMessage(DatagramSocket socket, ByteBuffer payload, InetSocketAddress address) {
+        try {
+            DatagramPacket packet = REUSABLE_PACKET.get();
+            if (payload.hasArray()) {
+                packet.setData(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+            } else {
+                // Buffer directo: se copia a un array, ya que DatagramSocket solo envía desde arrays
+                byte[] buffer = new byte[payload.remaining()];
+                payload.duplicate().get(buffer);
+                packet.setData(buffer);
+            }
+            packet.setSocketAddress(resolve(address));
+
+            // Envía el paquete
+            if (shouldDrop()) {
+                return;
+            }
+            long start = System.nanoTime();
+            socket.send(packet);
+            SEND_LATENCY.recordSince(start);
+        } catch (IOException e) {
+            // En caso de error, se registra el problema
+            logger.log(Level.SEVERE, "Failed to send message: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Envía un mensaje ya codificado a través de un canal UDP, registrando la latencia del envío.
+     * El buffer se consume como en {@link DatagramChannel#send(ByteBuffer, java.net.SocketAddress)}.
+     *
+     * @param channel El canal UDP utilizado para enviar el mensaje.
+     * @param payload El mensaje codificado, entre la posición y el límite del buffer.
+     * @param address La dirección a la que se enviará el mensaje (dirección IP y puerto).
+     * @return El número de bytes enviados, que puede ser 0 si el canal no es bloqueante y no admite más datos.
+     * @throws IOException Si ocurre un error al enviar el mensaje.
+     */
+    public static int send(DatagramChannel channel, ByteBuffer payload, InetSocketAddress address) throws IOException {
+        InetSocketAddress target = resolve(address);
+        if (shouldDrop()) {
+            int length = payload.remaining();
+            payload.position(payload.limit());  // Se consume como si se hubiera enviado
+            return length;
+        }
+        long start = System.nanoTime();
+        int sent = channel.send(payload, target);
+        SEND_LATENCY.recordSince(start);
+        return sent;
+    }
+
+    /**
+     * Devuelve una dirección lista para enviar. Las direcciones ya resueltas se usan tal cual; las que llegan
+     * como nombre de host se resuelven una vez y se guardan durante {@code chat.dns.ttl} segundos.
+     *
+     * @param address La dirección de destino.
+     * @return La dirección resuelta.
+     * @throws UnknownHostException Si el nombre de host no puede resolverse.
+     */
+    public static InetSocketAddress resolve(InetSocketAddress address) throws UnknownHostException {
+        return ADDRESS_CACHE.resolve(address);
+    }
+
+    /**
+     * Decide si se descarta un envío para simular pérdidas, según {@code chat.net.lossRate}.
+     *
+     * @return {@code true} si el datagrama no debe enviarse.
+     */
+    private static boolean shouldDrop() {
+        return LOSS_RATE > 0 && ThreadLocalRandom.current().nextDouble() < LOSS_RATE;
+    }
+
+    /**
+     * Obtiene la MTU configurada con {@code chat.net.mtu}, acotada entre {@link #MIN_MTU} y {@link #MAX_DATAGRAM_SIZE}.
+     *
+     * @return El tamaño máximo de los datagramas de tramas, en bytes.
+     */
+    public static int getMtu() {
+        return MTU;
+    }
+
+    /**
+     * Obtiene las métricas de latencia de los envíos de datagramas.
+     *
+     * @return El registro de latencia de los envíos.
+     */
+    public static LatencyRecorder getSendLatency() {
+        return SEND_LATENCY;
+    }
+
+    /**
+     * Recibe un mensaje a través de un socket UDP, en un buffer nuevo con capacidad para el datagrama más grande.
      *
      * @param socket El socket UDP desde el que se recibirá el mensaje.
      * @return El paquete UDP que contiene el mensaje recibido.
      * @throws IOException Si ocurre un error al recibir el mensaje.
      */
     public static DatagramPacket receiveMessage(DatagramSocket socket) throws IOException {
-        // Se crea un buffer de 1024 bytes para recibir el mensaje
-        byte[] buffer = new byte[1024];
+        // Se crea un buffer para el mayor datagrama posible, de modo que ningún mensaje se trunque
+        byte[] buffer = new byte[MAX_DATAGRAM_SIZE];
 
         // Se crea un paquete UDP para almacenar el mensaje recibido
         DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
 
+        return receiveMessage(socket, packet);  // Retorna el paquete recibido
+    }
+
+    /**
+     * Recibe un mensaje a través de un socket UDP en un paquete reutilizado, sin crear buffers nuevos.
+     * La longitud del paquete se restablece a la de su buffer antes de recibir, ya que cada recepción
+     * la reduce al tamaño del datagrama recibido. El contenido anterior del buffer se sobrescribe.
+     *
+     * @param socket El socket UDP desde el que se recibirá el mensaje.
+     * @param packet El paquete en el que se recibirá el mensaje.
+     * @return El mismo paquete, con el datagrama recibido y la dirección del remitente.
+     * @throws IOException Si ocurre un error al recibir el mensaje.
+     */
+    public static DatagramPacket receiveMessage(DatagramSocket socket, DatagramPacket packet) throws IOException {
+        packet.setLength(packet.getData().length - packet.getOffset());
+
         // Recibe el paquete del socket
         socket.receive(packet);
 
-        return packet;  // Retorna el paquete recibido
+        return packet;
     }
 }
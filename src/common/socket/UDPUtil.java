@@ -1,9 +1,14 @@
 package common.socket;
 
+import java.io.IOException;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.SocketException;
+import java.net.StandardSocketOptions;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
 
 /**
  * La clase {@code UDPUtil} proporciona utilidades para manejar operaciones comunes
@@ -59,6 +64,70 @@ public class UDPUtil {
         return new DatagramSocket(port);
     }
 
+    /**
+     * Abre un canal UDP NIO enlazado al puerto especificado.
+     *
+     * @param port El puerto en el que se enlazará el canal.
+     * @param blocking {@code true} si el canal debe operar en modo bloqueante, {@code false} para modo no bloqueante.
+     * @return Un objeto {@code DatagramChannel} enlazado al puerto especificado.
+     * @throws IOException Si ocurre un error al abrir o enlazar el canal.
+     */
+    public static DatagramChannel openChannel(int port, boolean blocking) throws IOException {
+        return openChannel(port, blocking, false);
+    }
+
+    /**
+     * Abre un canal UDP NIO enlazado al puerto especificado, permitiendo opcionalmente que varios canales
+     * compartan el mismo puerto mediante {@code SO_REUSEPORT}. El núcleo reparte entonces los datagramas
+     * entrantes entre los canales según el origen de cada datagrama.
+     *
+     * @param port El puerto en el que se enlazará el canal.
+     * @param blocking {@code true} si el canal debe operar en modo bloqueante, {@code false} para modo no bloqueante.
+     * @param reusePort {@code true} para activar {@code SO_REUSEPORT} antes de enlazar el canal.
+     * @return Un objeto {@code DatagramChannel} enlazado al puerto especificado.
+     * @throws IOException Si ocurre un error al abrir o enlazar el canal.
+     */
+    public static DatagramChannel openChannel(int port, boolean blocking, boolean reusePort) throws IOException {
+        DatagramChannel channel = DatagramChannel.open();
+        try {
+            if (reusePort) {
+                channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+            }
+            channel.bind(new InetSocketAddress(port));
+            channel.configureBlocking(blocking);
+        } catch (IOException e) {
+            channel.close();  // Libera el canal si no se pudo configurar
+            throw e;
+        }
+        return channel;
+    }
+
+    /**
+     * Indica si la plataforma admite la opción {@code SO_REUSEPORT} en canales UDP.
+     *
+     * @return {@code true} si la opción está disponible.
+     */
+    public static boolean isReusePortSupported() {
+        try (DatagramChannel channel = DatagramChannel.open()) {
+            return channel.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Copia unos bytes en un buffer directo de solo lectura, pensado para compartirse entre varios envíos.
+     * Los canales NIO envían un buffer directo sin copiarlo a memoria nativa en cada envío.
+     *
+     * @param bytes Los bytes a copiar.
+     * @return Un buffer directo de solo lectura con los bytes entre su posición y su límite.
+     */
+    public static ByteBuffer toSharedDirectBuffer(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+        return buffer.asReadOnlyBuffer();
+    }
+
     /**
      * Resuelve un nombre de host a su dirección IP correspondiente.
      *
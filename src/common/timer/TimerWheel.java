@@ -0,0 +1,204 @@
+package common.timer;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * La clase {@code TimerWheel} planifica tareas diferidas en una rueda de temporización (hashed timing wheel).
+ * <p>
+ * La rueda es un array circular de casillas; cada casilla cubre un intervalo fijo (el tic) y un único hilo
+ * avanza una casilla por tic y ejecuta las tareas vencidas de esa casilla. Una tarea con un retardo mayor que
+ * una vuelta completa se guarda con el número de vueltas que le quedan. Planificar y cancelar cuestan O(1),
+ * sin importar cuántas tareas haya pendientes, lo que la hace adecuada para miles de temporizadores que casi
+ * siempre se cancelan antes de vencer, como los de retransmisión.
+ * </p>
+ * <p>
+ * Las tareas se planifican desde cualquier hilo a través de una cola sin bloqueos que el hilo de la rueda
+ * vacía en cada tic; la cancelación solo marca la tarea, que se descarta cuando la rueda pasa por su casilla.
+ * La precisión es la de un tic: una tarea vence como muy pronto en su plazo y como muy tarde un tic después.
+ * Las tareas se ejecutan en el hilo de la rueda, por lo que deben ser breves.
+ * </p>
+ */
+public class TimerWheel implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(TimerWheel.class.getName());
+
+    /** Duración por defecto de un tic, en milisegundos. */
+    public static final long DEFAULT_TICK_MILLIS = 10;
+
+    /** Número de casillas por defecto de la rueda. */
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private final long tickNanos;  // Duración de un tic
+    private final Timeout[] buckets;  // Primera tarea de cada casilla, enlazadas en una lista
+    private final int mask;  // Máscara para calcular la casilla a partir del tic
+    private final Queue<Timeout> scheduled;  // Tareas planificadas pendientes de colocar en su casilla
+    private final long startTime;  // Instante de referencia de los tics
+    private final Thread worker;  // Hilo que avanza la rueda
+    private volatile boolean running;
+    private long tick;  // Tic en curso, solo lo usa el hilo de la rueda
+
+    /**
+     * Constructor de la clase {@code TimerWheel} con el tic y el tamaño por defecto.
+     *
+     * @param name El nombre del hilo de la rueda.
+     */
+    public TimerWheel(String name) {
+        this(name, DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * Constructor de la clase {@code TimerWheel}. El hilo de la rueda arranca inmediatamente como hilo demonio.
+     *
+     * @param name El nombre del hilo de la rueda.
+     * @param tickMillis La duración de un tic en milisegundos.
+     * @param wheelSize El número de casillas; se redondea a la siguiente potencia de dos.
+     * @throws IllegalArgumentException Si el tic no es positivo.
+     */
+    public TimerWheel(String name, long tickMillis, int wheelSize) {
+        if (tickMillis < 1) {
+            throw new IllegalArgumentException("Tick must be positive: " + tickMillis);
+        }
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.buckets = new Timeout[size];
+        this.mask = size - 1;
+        this.scheduled = new ConcurrentLinkedQueue<>();
+        this.startTime = System.nanoTime();
+        this.running = true;
+        this.worker = new Thread(this::run, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Planifica una tarea.
+     *
+     * @param task La tarea, que se ejecutará en el hilo de la rueda.
+     * @param delay El retardo.
+     * @param unit La unidad del retardo.
+     * @return El temporizador de la tarea, con el que puede cancelarse.
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        Timeout timeout = new Timeout(task, System.nanoTime() + unit.toNanos(Math.max(0, delay)) - startTime);
+        scheduled.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Bucle del hilo de la rueda: espera al final de cada tic, coloca las tareas nuevas y ejecuta las vencidas.
+     */
+    private void run() {
+        while (running) {
+            long deadline = startTime + (tick + 1) * tickNanos;
+            long wait;
+            while ((wait = deadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+                if (!running) {
+                    return;
+                }
+            }
+            transferScheduled();
+            expire((int) (tick & mask));
+            tick++;
+        }
+    }
+
+    /**
+     * Coloca en su casilla las tareas planificadas desde el último tic.
+     */
+    private void transferScheduled() {
+        Timeout timeout;
+        while ((timeout = scheduled.poll()) != null) {
+            if (timeout.cancelled) {
+                continue;
+            }
+            long target = Math.max(timeout.deadline / tickNanos, tick);  // Una tarea ya vencida va a la casilla actual
+            timeout.rounds = (target - tick) / buckets.length;
+            int index = (int) (target & mask);
+            timeout.next = buckets[index];
+            buckets[index] = timeout;
+        }
+    }
+
+    /**
+     * Recorre una casilla: ejecuta las tareas sin vueltas pendientes, descarta las canceladas y descuenta una
+     * vuelta a las demás.
+     *
+     * @param index La casilla.
+     */
+    private void expire(int index) {
+        Timeout timeout = buckets[index];
+        Timeout kept = null;
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.cancelled) {
+                timeout.next = null;
+            } else if (timeout.rounds > 0) {
+                timeout.rounds--;
+                timeout.next = kept;
+                kept = timeout;
+            } else {
+                timeout.next = null;
+                timeout.fire();
+            }
+            timeout = next;
+        }
+        buckets[index] = kept;
+    }
+
+    /**
+     * Detiene el hilo de la rueda. Las tareas pendientes no se ejecutan.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(worker);
+    }
+
+    /**
+     * Una tarea planificada en la rueda.
+     */
+    public static final class Timeout {
+        private final Runnable task;
+        private final long deadline;  // Plazo en nanosegundos desde el inicio de la rueda
+        private volatile boolean cancelled;
+        private long rounds;  // Vueltas que faltan, solo lo usa el hilo de la rueda
+        private Timeout next;  // Siguiente tarea de la casilla, solo lo usa el hilo de la rueda
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Cancela la tarea. Si ya se ha ejecutado, no tiene efecto.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        /**
+         * Indica si la tarea se ha cancelado.
+         *
+         * @return {@code true} si se ha cancelado.
+         */
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * Ejecuta la tarea, registrando sus errores para que no detengan la rueda.
+         */
+        private void fire() {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                logger.log(Level.SEVERE, "Timer task failed: {0}", e.getMessage());
+            }
+        }
+    }
+}
@@ -1,17 +1,38 @@
 package server;
 
+import common.command.Command;
+import common.command.CommandContext;
 import common.socket.UDPSocketCommunication;
 import common.socket.UDPUtil;
 import common.command.CommandFactory;
 import common.data.UserManager;
+import common.command.commands.ExitCommand;
+import common.command.commands.HistoryCommand;
+import common.command.commands.LoginCommand;
+import common.protocol.Frame;
+import common.protocol.FrameCodec;
+import common.protocol.FrameCompressor;
+import common.protocol.FrameFragmenter;
+import common.protocol.FrameReassembler;
+import common.reliability.ReliableEndpoint;
+import common.timer.TimerWheel;
 import common.data.MessageHistoryManager;
+import common.data.Room;
+import common.data.RoomManager;
 import common.model.Message;
 import common.model.User;
+import server.cluster.ClusterNode;
 
 import java.io.IOException;
 import java.net.*;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -21,11 +42,40 @@ import java.util.logging.Logger;
  */
 public abstract class AbstractUDPServer implements Server {
     private static final Logger logger = Logger.getLogger(AbstractUDPServer.class.getName());
+    private static final String UNKNOWN_COMMAND = "Unknown command: ";  // Error de un comando no registrado, seguido de su nombre
+    private static final String COMMAND_FAILED = "Error executing command: ";  // Error de un comando que ha fallado, seguido de la causa
+    private static final String DROPPED = " messages dropped: your connection is too slow";  // Aviso a un cliente lento, tras el número
+    private static final String SESSION_EXPIRED = "Session expired. Log in again.";  // Aviso a un latido sin sesión
+    private static final String SESSION_TIMED_OUT = "Session timed out. Log in again.";  // Aviso a un cliente expulsado por inactividad
     protected final int port;  // Puerto en el que escucha el servidor
     protected final UserManager userManager;  // Gestor de usuarios conectados
-    protected final MessageHistoryManager messageHistoryManager;  // Gestor del historial de mensajes
+    protected MessageHistoryManager messageHistoryManager;  // Gestor del historial de mensajes de la sala por defecto
+    protected RoomManager roomManager;  // Gestor de las salas y de la sala de cada usuario
     protected DatagramSocket serverSocket;  // Socket del servidor UDP
     protected AtomicBoolean isRunning;  // Estado de ejecución del servidor
+    protected final CommandFactory commandFactory;  // Fábrica de comandos para crear comandos específicos
+    protected CommandExecutor commandExecutor;  // Ejecutor de comandos fuera del hilo de recepción, o null para ejecutarlos en línea
+    private RoomShardExecutor roomShards;  // Hilos dueños de las salas, o null si las salas no se reparten
+    private ClusterNode cluster;  // Nodo del clúster, o null si el servidor funciona solo
+    private MulticastPublisher multicast;  // Publicación de las salas en un grupo multicast, o null si no está habilitada
+    private final Set<InetSocketAddress> binaryPeers;  // Clientes que han negociado el protocolo binario
+    private final Set<InetSocketAddress> compressionPeers;  // Clientes binarios que aceptan tramas comprimidas
+    private final Set<InetSocketAddress> heartbeatPeers;  // Clientes binarios que envían latidos
+    private int loginHistoryTail;  // Mensajes del historial que recibe un usuario al conectarse
+    private int metricsIntervalSeconds;  // Intervalo del informe periódico de métricas, 0 para desactivarlo
+    private int peerBacklog;  // Tramas fiables que pueden esperar a cada cliente
+    private int batchWindowMillis;  // Ventana de agrupación de las tramas para cada cliente, 0 para no agrupar
+    private int maxRooms;  // Número máximo de salas
+    private Function<String, MessageHistoryManager> roomHistoryFactory;  // Historial de cada sala nueva, o null para uno en memoria
+    private int idleTimeoutMillis;  // Tiempo sin datagramas tras el que se expulsa a un cliente con latidos, 0 para no expulsarlo
+    private ScheduledExecutorService metricsReporter;  // Planificador del informe periódico de métricas
+    protected TimerWheel timers;  // Rueda de temporizadores del servidor (retransmisiones, lotes, balizas e inactividad)
+    protected ReliableEndpoint reliability;  // Entrega fiable de tramas a los clientes que la usan
+    protected FrameBatcher batcher;  // Agrupación de las tramas para los clientes que aceptan lotes
+    private SessionMonitor sessions;  // Expulsión de los clientes inactivos, o null si está desactivada
+    private final FrameFragmenter fragmenter;  // División de las tramas mayores que la MTU
+    private final FrameReassembler reassembler;  // Reconstrucción de las tramas fragmentadas por los clientes
+    private final FrameCompressor compressor;  // Compresión de las tramas para los clientes que la aceptan
 
     /**
      * Constructor de la clase AbstractUDPServer.
@@ -38,6 +88,18 @@ public abstract class AbstractUDPServer implements Server {
         this.userManager = new UserManager();
         this.messageHistoryManager = new MessageHistoryManager();
         this.isRunning = new AtomicBoolean();
+        this.commandFactory = new CommandFactory();
+        this.loginHistoryTail = MessageHistoryManager.DEFAULT_CAPACITY;
+        this.peerBacklog = ReliableEndpoint.DEFAULT_BACKLOG_CAPACITY;
+        this.batchWindowMillis = FrameBatcher.DEFAULT_WINDOW_MILLIS;
+        this.maxRooms = RoomManager.DEFAULT_MAX_ROOMS;
+        this.idleTimeoutMillis = SessionMonitor.DEFAULT_IDLE_TIMEOUT_MILLIS;
+        this.binaryPeers = ConcurrentHashMap.newKeySet();
+        this.compressionPeers = ConcurrentHashMap.newKeySet();
+        this.heartbeatPeers = ConcurrentHashMap.newKeySet();
+        this.fragmenter = new FrameFragmenter(UDPSocketCommunication.getMtu());
+        this.reassembler = new FrameReassembler();
+        this.compressor = new FrameCompressor();
     }
 
     /**
@@ -47,21 +109,69 @@ public abstract class AbstractUDPServer implements Server {
     @Override
     public void start() {
         try {
-            serverSocket = UDPUtil.createSocket(port);
+            serverSocket = openSocket();
+            Function<String, MessageHistoryManager> historyFactory = roomHistoryFactory != null ? roomHistoryFactory
+                    : name -> new MessageHistoryManager(messageHistoryManager.getCapacity());
+            roomManager = new RoomManager(messageHistoryManager, historyFactory, maxRooms);
+            if (cluster != null) {
+                cluster.start(this);
+            }
+            timers = new TimerWheel("server-timers");
+            batcher = new FrameBatcher(timers, this::sendEncoded, UDPSocketCommunication.getMtu(), batchWindowMillis);
+            reliability = new ReliableEndpoint(timers, batcher::send, peerBacklog, AbstractUDPServer::encodeDropNotice);
+            if (multicast != null) {
+                multicast.start(this, timers);
+            }
+            if (idleTimeoutMillis > 0) {
+                sessions = new SessionMonitor(timers, idleTimeoutMillis, this::evictIdle);
+            }
             logger.log(Level.INFO, "Server started on port: " + port);
             isRunning.set(true);
+            startMetricsReporter();
             listen();  // Método abstracto para escuchar los mensajes (debe ser implementado por las subclases)
-        } catch (SocketException e) {
+        } catch (IOException e) {
             logger.log(Level.SEVERE, "Failed to start server: " + e.getMessage());
         }
     }
 
+    /**
+     * Abre el socket sobre el que escuchará el servidor.
+     * Las subclases pueden sobrescribir este método para abrir un canal NIO u otro tipo de socket.
+     *
+     * @return El socket UDP del servidor.
+     * @throws IOException Si ocurre un error al abrir el socket.
+     */
+    protected DatagramSocket openSocket() throws IOException {
+        return UDPUtil.createSocket(port);
+    }
+
     /**
      * Detiene el servidor UDP.
      * Cierra el socket del servidor y cambia el estado de ejecución a falso.
      */
     @Override
     public void stop() {
+        if (commandExecutor != null) {
+            commandExecutor.shutdown();
+        }
+        if (metricsReporter != null) {
+            metricsReporter.shutdownNow();
+        }
+        if (timers != null) {
+            timers.close();
+        }
+        if (cluster != null) {
+            cluster.stop();
+        }
+        if (multicast != null) {
+            multicast.stop();
+        }
+        messageHistoryManager.close();
+        if (roomManager != null) {
+            for (Room room : roomManager.getRooms()) {
+                room.getHistory().close();  // Fuerza a disco el diario de cada sala, si lo tiene
+            }
+        }
         if (serverSocket != null && !serverSocket.isClosed()) {
             isRunning.set(false);
             serverSocket.close();
@@ -75,6 +185,610 @@ public abstract class AbstractUDPServer implements Server {
      */
     public abstract void listen();
 
+    /**
+     * Sustituye el historial de mensajes, por ejemplo por uno de otra capacidad o respaldado por un diario en disco.
+     * Debe llamarse antes de {@link #start()}.
+     *
+     * @param messageHistoryManager El historial que usará el servidor.
+     */
+    public void setMessageHistoryManager(MessageHistoryManager messageHistoryManager) {
+        this.messageHistoryManager = messageHistoryManager;
+    }
+
+    /**
+     * Establece cuántos de los últimos mensajes del historial recibe un usuario al conectarse. El resto
+     * puede pedirse por páginas con el comando {@code /history}.
+     *
+     * @param loginHistoryTail El número de mensajes.
+     */
+    public void setLoginHistoryTail(int loginHistoryTail) {
+        this.loginHistoryTail = loginHistoryTail;
+    }
+
+    /**
+     * Establece el intervalo del informe periódico de métricas en el log.
+     *
+     * @param seconds El intervalo en segundos, o 0 para desactivar el informe.
+     */
+    public void setMetricsInterval(int seconds) {
+        this.metricsIntervalSeconds = seconds;
+    }
+
+    /**
+     * Establece cuántas tramas fiables pueden esperar a cada cliente cuando su ventana de envío está llena.
+     * Si un cliente lento la llena, se descartan sus mensajes de chat más antiguos. Debe llamarse antes de
+     * {@link #start()}.
+     *
+     * @param peerBacklog El número de tramas.
+     */
+    public void setPeerBacklog(int peerBacklog) {
+        this.peerBacklog = peerBacklog;
+    }
+
+    /**
+     * Establece la ventana durante la que se agrupan en un solo datagrama las tramas para un mismo cliente.
+     * Solo se agrupan las tramas de los clientes que aceptan lotes. Debe llamarse antes de {@link #start()}.
+     *
+     * @param millis La duración de la ventana en milisegundos, o 0 para no agrupar.
+     */
+    public void setBatchWindow(int millis) {
+        this.batchWindowMillis = millis;
+    }
+
+    /**
+     * Establece el tiempo sin recibir datagramas tras el que se expulsa a un cliente que envía latidos, como si
+     * hubiera salido con {@code /exit}. Los clientes sin latidos nunca se expulsan. Debe llamarse antes de
+     * {@link #start()}.
+     *
+     * @param millis El tiempo en milisegundos, o 0 para no expulsar a nadie.
+     */
+    public void setIdleTimeout(int millis) {
+        this.idleTimeoutMillis = millis;
+    }
+
+    /**
+     * Establece el número máximo de salas, incluida la sala por defecto. Debe llamarse antes de {@link #start()}.
+     *
+     * @param maxRooms El número de salas.
+     */
+    public void setMaxRooms(int maxRooms) {
+        this.maxRooms = maxRooms;
+    }
+
+    /**
+     * Establece cómo se crea el historial de cada sala distinta de la sala por defecto, por ejemplo respaldado por
+     * un diario en disco propio de la sala. Sin él, el historial de esas salas solo se mantiene en memoria, con la
+     * capacidad del historial por defecto. Debe llamarse antes de {@link #start()}.
+     *
+     * @param roomHistoryFactory Crea el historial de una sala a partir de su nombre.
+     */
+    public void setRoomHistoryFactory(Function<String, MessageHistoryManager> roomHistoryFactory) {
+        this.roomHistoryFactory = roomHistoryFactory;
+    }
+
+    /**
+     * Integra el servidor en un clúster. El nodo se arranca con el servidor. Debe llamarse antes de {@link #start()}.
+     *
+     * @param cluster El nodo del clúster.
+     */
+    public void setCluster(ClusterNode cluster) {
+        this.cluster = cluster;
+    }
+
+    /**
+     * Obtiene el nodo del clúster.
+     *
+     * @return El nodo, o {@code null} si el servidor funciona solo.
+     */
+    public ClusterNode getCluster() {
+        return cluster;
+    }
+
+    /**
+     * Publica los mensajes de las salas en un grupo multicast para los clientes que pueden unirse a él. El
+     * publicador se arranca con el servidor. Debe llamarse antes de {@link #start()}.
+     *
+     * @param multicast El publicador.
+     */
+    public void setMulticast(MulticastPublisher multicast) {
+        this.multicast = multicast;
+    }
+
+    /**
+     * Obtiene los textos fijos que el propio servidor envía a los clientes, sin los de los comandos. Forman parte
+     * del diccionario de {@link FrameCompressor}.
+     *
+     * @return Los textos fijos.
+     */
+    public static List<String> getReplies() {
+        return List.of(UNKNOWN_COMMAND, COMMAND_FAILED, DROPPED, SESSION_EXPIRED, SESSION_TIMED_OUT);
+    }
+
+    /**
+     * Codifica el aviso que recibe un cliente lento en lugar de los mensajes de chat que se le han descartado.
+     *
+     * @param count El número de mensajes descartados.
+     * @return Los bytes de la trama de aviso.
+     */
+    private static byte[] encodeDropNotice(int count) {
+        return FrameCodec.encode(FrameCodec.OP_NOTICE, (byte) 0, 0, count + DROPPED);
+    }
+
+    /**
+     * Arranca el informe periódico de métricas si está habilitado.
+     */
+    private void startMetricsReporter() {
+        if (metricsIntervalSeconds <= 0) {
+            return;
+        }
+        metricsReporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "server-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        metricsReporter.scheduleAtFixedRate(this::reportMetrics, metricsIntervalSeconds, metricsIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Registra en el log las métricas del servidor. Las subclases pueden sobrescribirlo para añadir las suyas,
+     * llamando a la implementación base.
+     */
+    protected void reportMetrics() {
+        logger.log(Level.INFO, "Metrics {0}", UDPSocketCommunication.getSendLatency().snapshot());
+        logger.log(Level.INFO, "Metrics {0}", reliability.snapshot());
+        logger.log(Level.INFO, "Metrics {0}", reassembler.snapshot());
+        logger.log(Level.INFO, "Metrics {0}", compressor.snapshot());
+        logger.log(Level.INFO, "Metrics {0}", batcher.snapshot());
+        if (roomShards != null) {
+            logger.log(Level.INFO, "Metrics {0}", roomShards.snapshot());
+        }
+        if (cluster != null) {
+            logger.log(Level.INFO, "Metrics {0}", cluster.snapshot());
+        }
+        if (multicast != null) {
+            logger.log(Level.INFO, "Metrics {0}", multicast.snapshot());
+        }
+        if (sessions != null) {
+            logger.log(Level.INFO, "Metrics {0}", sessions.snapshot());
+        }
+    }
+
+    /**
+     * Establece el ejecutor con el que se procesan los mensajes recibidos.
+     * Con un ejecutor, el hilo de recepción no espera a que terminen los comandos; sin él ({@code null}),
+     * los mensajes se procesan en el hilo de recepción.
+     *
+     * @param commandExecutor El ejecutor a utilizar, o {@code null} para procesar en línea.
+     */
+    public void setCommandExecutor(CommandExecutor commandExecutor) {
+        this.commandExecutor = commandExecutor;
+    }
+
+    /**
+     * Reparte las salas entre hilos de trabajo con un {@link RoomShardExecutor}, que pasa a ser el ejecutor de
+     * los mensajes recibidos. Cada sala solo se difunde y se escribe desde el hilo al que pertenece.
+     *
+     * @param shardCount El número de hilos de trabajo.
+     */
+    public void setRoomShards(int shardCount) {
+        this.roomShards = new RoomShardExecutor(shardCount, this::roomNameOf);
+        this.commandExecutor = roomShards;
+    }
+
+    /**
+     * Maneja un datagrama recibido. Las tramas del protocolo binario se decodifican y se manejan con
+     * {@link #handleFrame(Frame, InetSocketAddress)}; el resto se interpreta como texto.
+     * <p>
+     * El texto se analiza directamente sobre los bytes: los espacios de los extremos se descartan ajustando
+     * los límites y el nombre de un comando se resuelve en la fábrica sin convertirlo a texto, de modo que solo
+     * se crea la cadena que el servidor necesita conservar (el mensaje de chat o los argumentos del comando).
+     * Los bytes no se guardan más allá de esta llamada, por lo que el llamador puede reutilizar el buffer
+     * para el siguiente datagrama.
+     * </p>
+     *
+     * @param data Los bytes recibidos.
+     * @param offset La posición del primer byte del datagrama.
+     * @param length La longitud del datagrama.
+     * @param clientAddress La dirección del cliente que envió el datagrama.
+     * @throws IOException Si ocurre un error al manejar el mensaje.
+     */
+    protected void handleDatagram(byte[] data, int offset, int length, InetSocketAddress clientAddress) throws IOException {
+        if (FrameCodec.isFrame(data, offset, length)) {
+            Frame frame = decodeFrame(data, offset, length, clientAddress);
+            if (frame != null) {
+                handleFrame(frame, clientAddress);
+            }
+            return;
+        }
+
+        // Equivalente a String.trim() sobre los bytes: en UTF-8 ningún byte de un carácter multibyte es <= ' '
+        int start = offset;
+        int end = offset + length;
+        while (start < end && (data[start] & 0xFF) <= ' ') {
+            start++;
+        }
+        while (end > start && (data[end - 1] & 0xFF) <= ' ') {
+            end--;
+        }
+
+        if (start < end && data[start] == CommandFactory.COMMAND_SYMBOL) {
+            handleCommandDatagram(data, start + 1, end, clientAddress);
+            return;
+        }
+        String message = new String(data, start, end - start);
+        if (logger.isLoggable(Level.FINE)) {
+            logger.log(Level.FINE, "Received message from {0}: {1}", new Object[]{clientAddress, message});
+        }
+        handleMessage(message, clientAddress);
+    }
+
+    /**
+     * Maneja un comando de texto recibido, resolviéndolo en la fábrica a partir de los bytes de su nombre.
+     * El nombre termina en el primer espacio y el resto del datagrama son los argumentos, igual que en
+     * {@link #processCommand(String, InetSocketAddress)}.
+     *
+     * @param data Los bytes recibidos.
+     * @param start La posición del primer byte del nombre, tras el símbolo de comando.
+     * @param end La posición siguiente al último byte del datagrama, sin espacios finales.
+     * @param clientAddress La dirección del cliente que envió el comando.
+     * @throws IOException Si ocurre un error al manejar el comando.
+     */
+    private void handleCommandDatagram(byte[] data, int start, int end, InetSocketAddress clientAddress) throws IOException {
+        int nameEnd = start;
+        while (nameEnd < end && data[nameEnd] != ' ') {
+            nameEnd++;
+        }
+        Command command = commandFactory.getCommand(data, start, nameEnd - start);
+        String commandName = command != null ? command.getName() : new String(data, start, nameEnd - start);
+        String content = nameEnd < end ? new String(data, nameEnd + 1, end - nameEnd - 1) : "";
+        if (logger.isLoggable(Level.FINE)) {
+            logger.log(Level.FINE, "Received command from {0}: {1} {2}", new Object[]{clientAddress, commandName, content});
+        }
+        handleCommand(command, commandName, content, clientAddress);
+    }
+
+    /**
+     * Decodifica una trama binaria. Si no es válida se registra y se notifica al cliente en texto, lo que hace
+     * que un cliente con una versión no soportada vuelva al protocolo de texto.
+     *
+     * @param data Los bytes recibidos.
+     * @param offset La posición del primer byte del datagrama.
+     * @param length La longitud del datagrama.
+     * @param clientAddress La dirección del cliente que envió la trama.
+     * @return La trama, o {@code null} si no es válida.
+     * @throws IOException Si ocurre un error al notificar al cliente.
+     */
+    protected Frame decodeFrame(byte[] data, int offset, int length, InetSocketAddress clientAddress) throws IOException {
+        try {
+            Frame frame = FrameCodec.decode(data, offset, length);
+            if (logger.isLoggable(Level.FINE)) {
+                logger.log(Level.FINE, "Received frame from {0}: {1}", new Object[]{clientAddress, frame});
+            }
+            return frame;
+        } catch (ProtocolException e) {
+            logger.log(Level.WARNING, "Invalid frame from {0}: {1}", new Object[]{clientAddress, e.getMessage()});
+            if (!binaryPeers.contains(clientAddress)) {
+                sendMessage("ERROR: " + e.getMessage(), clientAddress);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Maneja una trama del protocolo binario. El cliente queda registrado como cliente binario, de modo que
+     * las respuestas y difusiones que reciba se codifican como tramas. Sigue la misma cola por cliente que
+     * {@link #handleMessage(String, InetSocketAddress)}.
+     * <p>
+     * Antes de despacharla, la trama pasa por la entrega fiable: las confirmaciones se consumen, las tramas
+     * fiables se confirman en el acto y se despachan en orden de secuencia, y las repetidas no se despachan de nuevo.
+     * Los fragmentos se guardan hasta que llegan todos los de su mensaje, que se despacha como una sola trama.
+     * Un cliente que marca sus tramas con {@link FrameCodec#FLAG_ACCEPTS_COMPRESSION} recibe desde entonces
+     * las tramas comprimidas; las que él envía comprimidas ya llegan descomprimidas de {@link FrameCodec#decode}.
+     * Del mismo modo, un cliente que marca sus tramas con {@link FrameCodec#FLAG_ACCEPTS_BATCH} recibe desde
+     * entonces las suyas agrupadas por el {@link FrameBatcher}, y uno que las marca con
+     * {@link FrameCodec#FLAG_ACCEPTS_MULTICAST} recibe los mensajes de su sala como datagramas del grupo multicast.
+     * Las tramas de control del grupo se atienden en el acto, sin pasar por el ejecutor de comandos.
+     * </p>
+     * <p>
+     * Cada trama cuenta como actividad del cliente para el {@link SessionMonitor}, que vigila desde que inician
+     * sesión a los clientes que la marcan con {@link FrameCodec#FLAG_SENDS_HEARTBEATS}. Los latidos no se
+     * despachan; si llega uno de un cliente sin sesión, por ejemplo porque se le expulsó y no recibió el aviso,
+     * se le responde con {@link FrameCodec#OP_SESSION_EXPIRED} para que vuelva a iniciar sesión.
+     * </p>
+     *
+     * @param frame La trama recibida.
+     * @param clientAddress La dirección del cliente que envió la trama.
+     * @throws IOException Si ocurre un error al manejar la trama.
+     */
+    protected void handleFrame(Frame frame, InetSocketAddress clientAddress) throws IOException {
+        if (sessions != null) {
+            sessions.touch(clientAddress);
+        }
+        binaryPeers.add(clientAddress);
+        if ((frame.getFlags() & FrameCodec.FLAG_SENDS_HEARTBEATS) != 0) {
+            heartbeatPeers.add(clientAddress);
+        }
+        if ((frame.getFlags() & FrameCodec.FLAG_ACCEPTS_COMPRESSION) != 0) {
+            compressionPeers.add(clientAddress);
+        }
+        if ((frame.getFlags() & FrameCodec.FLAG_ACCEPTS_BATCH) != 0) {
+            batcher.enable(clientAddress);
+        }
+        if ((frame.getFlags() & FrameCodec.FLAG_ACCEPTS_MULTICAST) != 0 && multicast != null) {
+            multicast.enable(clientAddress);
+        }
+        for (Frame received : reliability.receive(frame, clientAddress)) {
+            Frame delivered = received.getOpcode() == FrameCodec.OP_FRAGMENT ? reassemble(received, clientAddress) : received;
+            if (delivered != null && delivered.getOpcode() == FrameCodec.OP_HEARTBEAT) {
+                if (sessions != null && userManager.getUserByAddress(clientAddress) == null) {
+                    sendSessionExpired(SESSION_EXPIRED, clientAddress);
+                }
+                continue;
+            }
+            if (delivered == null || handleMulticastControl(delivered, clientAddress)) {
+                continue;  // Faltan fragmentos del mensaje, o era una trama de control del grupo multicast
+            }
+            if (commandExecutor == null) {
+                dispatchFrame(delivered, clientAddress);
+                continue;
+            }
+            commandExecutor.execute(clientAddress, () -> {
+                try {
+                    dispatchFrame(delivered, clientAddress);
+                } catch (IOException e) {
+                    logger.log(Level.SEVERE, "Error handling frame from {0}: {1}", new Object[]{clientAddress, e.getMessage()});
+                }
+            });
+        }
+    }
+
+    /**
+     * Atiende una trama de control del grupo multicast: la confirmación de que el cliente recibe el grupo, el aviso
+     * de que ha dejado de recibirlo o una petición de reparación, cuyos datagramas se le reenvían por unicast.
+     *
+     * @param frame La trama recibida.
+     * @param clientAddress La dirección del cliente que la envió.
+     * @return {@code true} si era una trama de control del grupo.
+     * @throws IOException Si ocurre un error al reenviar los datagramas.
+     */
+    private boolean handleMulticastControl(Frame frame, InetSocketAddress clientAddress) throws IOException {
+        if (multicast == null) {
+            return false;
+        }
+        switch (frame.getOpcode()) {
+            case FrameCodec.OP_MULTICAST_JOIN:
+                multicast.setReceiving(clientAddress, true);
+                return true;
+            case FrameCodec.OP_MULTICAST_LEAVE:
+                multicast.setReceiving(clientAddress, false);
+                return true;
+            case FrameCodec.OP_MULTICAST_NACK:
+                if (multicast.isCurrentEpoch(frame.getField(0))) {
+                    try {
+                        int from = Integer.parseInt(frame.getField(2));
+                        for (byte[] datagram : multicast.repair(frame.getField(1), from, Integer.parseInt(frame.getField(3)))) {
+                            batcher.send(ByteBuffer.wrap(datagram), clientAddress);
+                        }
+                    } catch (NumberFormatException e) {
+                        logger.log(Level.WARNING, "Invalid repair request from {0}: {1}", new Object[]{clientAddress, frame});
+                    }
+                }
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Pasa un fragmento al reensamblado. Un fragmento no válido se registra y se descarta.
+     *
+     * @param fragment El fragmento recibido.
+     * @param clientAddress La dirección del cliente que lo envió.
+     * @return La trama completa, o {@code null} si aún faltan fragmentos o el fragmento no es válido.
+     */
+    private Frame reassemble(Frame fragment, InetSocketAddress clientAddress) {
+        try {
+            return reassembler.accept(fragment, clientAddress);
+        } catch (ProtocolException e) {
+            logger.log(Level.WARNING, "Invalid fragment from {0}: {1}", new Object[]{clientAddress, e.getMessage()});
+            return null;
+        }
+    }
+
+    /**
+     * Despacha una trama: los mensajes de chat se difunden y los códigos de comando se resuelven directamente
+     * en la tabla de opcodes de la fábrica de comandos, sin analizar texto.
+     *
+     * @param frame La trama recibida.
+     * @param clientAddress La dirección del cliente que envió la trama.
+     * @throws IOException Si ocurre un error al manejar la trama.
+     */
+    protected void dispatchFrame(Frame frame, InetSocketAddress clientAddress) throws IOException {
+        if (frame.getOpcode() == FrameCodec.OP_CHAT) {
+            handleRegularMessage(frame.getField(0), clientAddress);
+            return;
+        }
+        Command command = commandFactory.getCommand(frame.getOpcode());
+        runCommand(command, command != null ? command.getName() : "opcode " + frame.getOpcode(), frame.joinFields(), clientAddress);
+    }
+
+    /**
+     * Maneja el mensaje recibido. Si hay un ejecutor de comandos configurado, el mensaje se procesa en un hilo
+     * virtual, encolado tras los mensajes anteriores del mismo cliente; los mensajes regulares siguen la misma
+     * cola para que no adelanten a un {@code /login} pendiente del mismo cliente.
+     *
+     * @param message El mensaje recibido.
+     * @param clientAddress La dirección del cliente que envió el mensaje.
+     * @throws IOException Si ocurre un error al manejar el mensaje.
+     */
+    protected void handleMessage(String message, InetSocketAddress clientAddress) throws IOException {
+        if (commandExecutor == null) {
+            dispatchMessage(message, clientAddress);
+            return;
+        }
+        commandExecutor.execute(clientAddress, () -> {
+            try {
+                dispatchMessage(message, clientAddress);
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Error handling message from {0}: {1}", new Object[]{clientAddress, e.getMessage()});
+            }
+        });
+    }
+
+    /**
+     * Maneja un comando ya resuelto. Sigue la misma cola por cliente que
+     * {@link #handleMessage(String, InetSocketAddress)}.
+     *
+     * @param command El comando, o {@code null} si no se encontró.
+     * @param commandName El nombre con el que se solicitó el comando.
+     * @param content Los argumentos del comando.
+     * @param clientAddress La dirección del cliente que envió el comando.
+     * @throws IOException Si ocurre un error al manejar el comando.
+     */
+    protected void handleCommand(Command command, String commandName, String content, InetSocketAddress clientAddress) throws IOException {
+        if (commandExecutor == null) {
+            runCommand(command, commandName, content, clientAddress);
+            return;
+        }
+        commandExecutor.execute(clientAddress, () -> {
+            try {
+                runCommand(command, commandName, content, clientAddress);
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Error handling command from {0}: {1}", new Object[]{clientAddress, e.getMessage()});
+            }
+        });
+    }
+
+    /**
+     * Despacha el mensaje recibido, determinando si es un comando o un mensaje regular.
+     *
+     * @param message El mensaje recibido.
+     * @param clientAddress La dirección del cliente que envió el mensaje.
+     * @throws IOException Si ocurre un error al manejar el mensaje.
+     */
+    protected void dispatchMessage(String message, InetSocketAddress clientAddress) throws IOException {
+        if (isCommand(message)) {
+            logger.log(Level.FINE, "Message identified as command: {0}", message);
+            processCommand(message, clientAddress);  // Procesa el comando si es identificado como tal
+        } else {
+            logger.log(Level.FINE, "Message identified as regular message: {0}", message);
+            handleRegularMessage(message, clientAddress);  // Maneja el mensaje regular
+        }
+    }
+
+    /**
+     * Maneja un mensaje regular, enviándolo a los usuarios de la sala de su autor.
+     *
+     * @param message El mensaje recibido.
+     * @param clientAddress La dirección del cliente que envió el mensaje.
+     * @throws IOException Si ocurre un error al enviar el mensaje.
+     */
+    protected void handleRegularMessage(String message, InetSocketAddress clientAddress) throws IOException {
+        if (logger.isLoggable(Level.FINE)) {
+            logger.log(Level.FINE, "Handling regular message from {0}: {1}", new Object[]{clientAddress, message});
+        }
+        User user = getUserManager().getUserByAddress(clientAddress);  // Obtiene el usuario que envió el mensaje
+        if (user == null) {
+            logger.log(Level.WARNING, "No user found for address: {0}", clientAddress);
+            return;
+        }
+
+        Message newMessage = new Message(user, message);  // Crea un objeto Message con el usuario y el mensaje
+        if (logger.isLoggable(Level.FINE)) {
+            logger.log(Level.FINE, "Broadcasting message from user {0}: {1}", new Object[]{user.getUsername(), message});
+        }
+        broadcastMessage(newMessage, clientAddress);  // Difunde el mensaje a los clientes de su sala
+    }
+
+    /**
+     * Procesa un comando recibido en el mensaje.
+     *
+     * @param message El mensaje recibido que contiene el comando.
+     * @param clientAddress La dirección del cliente que envió el comando.
+     * @throws IOException Si ocurre un error al procesar el comando.
+     */
+    protected void processCommand(String message, InetSocketAddress clientAddress) throws IOException {
+        int space = message.indexOf(' ');  // Separa el nombre del comando de su contenido sin crear arrays intermedios
+        String commandName = space < 0 ? message.substring(1) : message.substring(1, space);  // Elimina el símbolo de comando "/"
+        String content = space < 0 ? "" : message.substring(space + 1);
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.log(Level.FINE, "Processing command: {0} with content: {1}", new Object[]{commandName, content});
+        }
+        runCommand(commandFactory.getCommand(commandName), commandName, content, clientAddress);  // Obtiene el comando a partir del nombre
+    }
+
+    /**
+     * Ejecuta un comando ya resuelto, notificando al cliente si el comando no existe o si falla.
+     *
+     * @param command El comando, o {@code null} si no se encontró.
+     * @param commandName El nombre con el que se solicitó el comando.
+     * @param content Los argumentos del comando.
+     * @param clientAddress La dirección del cliente que envió el comando.
+     * @throws IOException Si ocurre un error al notificar al cliente.
+     */
+    private void runCommand(Command command, String commandName, String content, InetSocketAddress clientAddress) throws IOException {
+        try {
+            if (command != null) {
+                logger.log(Level.FINE, "Executing command: {0}", commandName);
+                executeCommand(command, createCommandContext(content, clientAddress));  // Ejecuta el comando
+            } else {
+                logger.log(Level.WARNING, "Unknown command received: {0}", commandName);
+                handleUnknownCommand(commandName, clientAddress);  // Maneja comandos desconocidos
+            }
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Error processing command: {0}", e.getMessage());
+            handleCommandError(e, clientAddress);  // Maneja errores al procesar el comando
+        }
+    }
+
+    /**
+     * Crea el contexto necesario para ejecutar un comando.
+     *
+     * @param content El contenido del comando.
+     * @param clientAddress La dirección del cliente que envió el comando.
+     * @return El contexto que contiene información sobre el comando.
+     */
+    private CommandContext createCommandContext(String content, InetSocketAddress clientAddress) {
+        return new CommandContext(this, clientAddress, content);  // Crea un nuevo contexto con la dirección y los argumentos
+    }
+
+    /**
+     * Ejecuta el comando recibido.
+     *
+     * @param command El comando a ejecutar.
+     * @param context El contexto de la invocación.
+     * @throws IOException Si ocurre un error al ejecutar el comando.
+     */
+    private void executeCommand(Command command, CommandContext context) throws IOException {
+        command.execute(context);  // Ejecuta la instancia compartida del comando con el contexto de esta invocación
+        logger.log(Level.FINE, "Command executed successfully: {0}", command.getName());
+    }
+
+    /**
+     * Maneja un comando desconocido.
+     *
+     * @param commandName El nombre del comando desconocido.
+     * @param clientAddress La dirección del cliente que envió el comando.
+     * @throws IOException Si ocurre un error al manejar el comando desconocido.
+     */
+    private void handleUnknownCommand(String commandName, InetSocketAddress clientAddress) throws IOException {
+        logger.log(Level.WARNING, "Unknown command received: {0}", commandName);
+        sendError(UNKNOWN_COMMAND + commandName, clientAddress);  // Informa al cliente que el comando no es reconocido
+    }
+
+    /**
+     * Maneja errores al procesar un comando.
+     *
+     * @param e La excepción que se ha lanzado durante el procesamiento del comando.
+     * @param clientAddress La dirección del cliente que envió el comando.
+     * @throws IOException Si ocurre un error al manejar el error del comando.
+     */
+    private void handleCommandError(Exception e, InetSocketAddress clientAddress) throws IOException {
+        logger.log(Level.SEVERE, "Error executing command: {0}", e.getMessage());
+        sendError(COMMAND_FAILED + e.getMessage(), clientAddress);  // Informa al cliente sobre el error del comando
+    }
+
     /**
      * Verifica si un mensaje es un comando, basándose en el símbolo de comando definido en {@link CommandFactory#COMMAND_SYMBOL}.
      *
@@ -86,7 +800,7 @@ public abstract class AbstractUDPServer implements Server {
     }
 
     /**
-     * Difunde un mensaje a todos los usuarios conectados, excluyendo al remitente.
+     * Difunde un mensaje a los usuarios de la sala de su autor, excluyendo al remitente.
      *
      * @param message El mensaje a difundir.
      * @param sender La dirección del remitente.
@@ -95,14 +809,201 @@ public abstract class AbstractUDPServer implements Server {
     @Override
     public void broadcastMessage(Message message, InetSocketAddress sender) throws IOException {
         if (message != null) {
-            logger.log(Level.INFO, "Broadcasting message: " + message);
-            messageHistoryManager.addMessage(message);  // Agregar el mensaje al historial
+            broadcastMessage(roomOf(message.getUser()), message, sender);
+        }
+    }
+
+    /**
+     * Difunde un mensaje a los usuarios de una sala, excluyendo al remitente, y lo reenvía a los demás nodos
+     * del clúster con miembros en la sala.
+     *
+     * @param room La sala.
+     * @param message El mensaje a difundir.
+     * @param sender La dirección del remitente, o {@code null} si no hay que excluir a nadie.
+     * @throws IOException Si ocurre un error al enviar el mensaje.
+     */
+    public void broadcastMessage(Room room, Message message, InetSocketAddress sender) throws IOException {
+        deliverToRoom(room, message, sender);
+        if (message != null && cluster != null) {
+            cluster.relayToRoom(room.getName(), message);
+        }
+    }
+
+    /**
+     * Difunde a los usuarios locales de una sala un mensaje reenviado por otro nodo del clúster.
+     *
+     * @param roomName El nombre de la sala.
+     * @param message El mensaje.
+     * @throws IOException Si ocurre un error al enviar el mensaje.
+     */
+    public void deliverRelayed(String roomName, Message message) throws IOException {
+        Room room = roomManager.getRoom(roomName);
+        if (room != null) {
+            deliverToRoom(room, message, null);
+        }
+    }
+
+    /**
+     * Entrega a un usuario local un mensaje privado reenviado por otro nodo del clúster.
+     *
+     * @param target El nombre del destinatario.
+     * @param message El mensaje.
+     * @return {@code true} si el destinatario está conectado a este servidor.
+     * @throws IOException Si ocurre un error al enviar el mensaje.
+     */
+    public boolean deliverPrivate(String target, Message message) throws IOException {
+        User user = userManager.getUserByName(target);
+        if (user == null) {
+            return false;
+        }
+        sendChatMessage(message, user.getAddress());
+        return true;
+    }
 
-            // Enviar el mensaje a todos los clientes, excepto al remitente
-            for (User client : userManager.getClients().values()) {
-                if (!client.getAddress().equals(sender)) {
-                    sendMessage(message.toString(), client.getAddress());
+    /**
+     * Desconecta a un usuario local cuyo nombre ya estaba conectado en otro nodo del clúster. El aviso de
+     * desconexión solo se difunde en este servidor y el nombre no se da de baja, ya que pertenece al otro nodo.
+     *
+     * @param username El nombre de usuario.
+     * @throws IOException Si ocurre un error al notificar al cliente.
+     */
+    public void rejectLogin(String username) throws IOException {
+        User user = userManager.getUserByName(username);
+        if (user == null) {
+            return;
+        }
+        sendError(LoginCommand.USER_EXISTS, user.getAddress());
+        userManager.removeUser(username);
+        Room room = roomManager.leave(user);
+        if (room != null) {
+            deliverToRoom(room, new Message(user, ExitCommand.DISCONNECTED), null);
+        }
+        forgetPeer(user.getAddress());
+        cluster.withdraw(username);
+    }
+
+    /**
+     * Difunde un mensaje a los usuarios locales de una sala, excluyendo al remitente, y lo guarda en el historial
+     * de la sala. Solo se recorren los miembros de la sala, no todos los usuarios conectados. Si las salas están
+     * repartidas entre hilos y la sala pertenece a otro, la difusión se encola en el hilo dueño. Con un grupo
+     * multicast, el mensaje se publica una vez para todos los miembros que pueden unirse a él y solo se les envía
+     * por unicast a los que aún no les llega.
+     *
+     * @param room La sala.
+     * @param message El mensaje a difundir.
+     * @param sender La dirección del remitente, o {@code null} si no hay que excluir a nadie.
+     * @throws IOException Si ocurre un error al enviar el mensaje.
+     */
+    private void deliverToRoom(Room room, Message message, InetSocketAddress sender) throws IOException {
+        if (message != null && roomShards != null && !roomShards.ownsRoom(room.getName())) {
+            // La sala pertenece a otro hilo: la difusión se reenvía a su cola
+            roomShards.executeInRoom(room.getName(), () -> {
+                try {
+                    deliverToRoom(room, message, sender);
+                } catch (IOException e) {
+                    logger.log(Level.SEVERE, "Error broadcasting to room {0}: {1}", new Object[]{room.getName(), e.getMessage()});
                 }
+            });
+        } else if (message != null) {
+            if (logger.isLoggable(Level.FINE)) {
+                logger.log(Level.FINE, "Broadcasting message to {0}: {1}", new Object[]{room.getName(), message});
+            }
+            room.getHistory().addMessage(message);  // Agregar el mensaje al historial de la sala
+
+            // Codificar el mensaje una sola vez por protocolo y enviar el mismo buffer a cada destinatario
+            ByteBuffer textPayload = null;
+            byte[] frame = null;
+            OutgoingFrame plain = null;
+            OutgoingFrame compressed = null;  // La misma trama comprimida, también una sola vez
+            boolean publishAttempted = false;  // Si ya se ha intentado publicar en el grupo multicast
+            byte[] published = null;  // El datagrama publicado en el grupo, o null si no cabe en la MTU
+            ByteBuffer multicastCopy = null;  // El mismo datagrama, para los clientes a los que no les llega el grupo
+
+            // Enviar el mensaje a los miembros de la sala, excepto al remitente, recorriendo la instantánea actual
+            for (User client : room.getMembers()) {
+                InetSocketAddress address = client.getAddress();
+                if (address.equals(sender)) {
+                    continue;
+                }
+                if (multicast != null && multicast.isEnabled(address)) {
+                    if (!publishAttempted) {
+                        // Se publica una sola vez; el autor también recibe el grupo, pero no muestra su mensaje
+                        publishAttempted = true;
+                        published = multicast.publish(room.getName(), message, sender != null ? message.getUser().getUsername() : "");
+                    }
+                    if (published != null) {
+                        if (!multicast.isReceiving(address)) {
+                            if (multicastCopy == null) {
+                                multicastCopy = encodeBroadcast(published);
+                            }
+                            batcher.send(multicastCopy, address);
+                        }
+                        continue;
+                    }
+                }
+                if (binaryPeers.contains(address)) {
+                    if (frame == null) {
+                        frame = FrameCodec.encode(FrameCodec.OP_CHAT, (byte) 0, 0, message.getUser().getUsername(), message.getText());
+                    }
+                    if (!compressionPeers.contains(address)) {
+                        if (plain == null) {
+                            plain = new OutgoingFrame(frame);
+                        }
+                        plain.send(address);
+                    } else {
+                        if (compressed == null) {
+                            byte[] compressedFrame = compressor.compress(frame);
+                            if (compressedFrame == frame && plain == null) {
+                                plain = new OutgoingFrame(frame);  // No se ha comprimido: se comparte con los demás clientes
+                            }
+                            compressed = compressedFrame == frame ? plain : new OutgoingFrame(compressedFrame);
+                        }
+                        compressed.send(address);
+                    }
+                } else {
+                    if (textPayload == null) {
+                        textPayload = encodeBroadcast(message.toString().getBytes());
+                    }
+                    sendEncoded(textPayload, address);
+                }
+            }
+        }
+    }
+
+    /**
+     * Una trama de difusión, dividida en fragmentos si no cabe en la MTU. Los buffers de los clientes sin entrega
+     * fiable se codifican la primera vez que se necesitan y se comparten entre todos ellos; cada cliente fiable
+     * recibe su propia copia, con su secuencia.
+     */
+    private final class OutgoingFrame {
+        private final List<byte[]> parts;  // La trama, o sus fragmentos
+        private List<ByteBuffer> payloads;  // Los buffers compartidos, o null hasta el primer cliente sin entrega fiable
+
+        private OutgoingFrame(byte[] frame) {
+            this.parts = fragmenter.split(frame);
+        }
+
+        /**
+         * Envía la trama a un cliente binario.
+         *
+         * @param address La dirección del cliente.
+         * @throws IOException Si ocurre un error al enviar la trama.
+         */
+        private void send(InetSocketAddress address) throws IOException {
+            if (reliability.isReliablePeer(address)) {
+                for (byte[] part : parts) {
+                    reliability.send(part, address);
+                }
+                return;
+            }
+            if (payloads == null) {
+                payloads = new ArrayList<>(parts.size());
+                for (byte[] part : parts) {
+                    payloads.add(encodeBroadcast(part));
+                }
+            }
+            for (ByteBuffer payload : payloads) {
+                batcher.send(payload, address);
             }
         }
     }
@@ -116,24 +1017,268 @@ public abstract class AbstractUDPServer implements Server {
      */
     @Override
     public void sendMessage(String message, InetSocketAddress clientAddress) throws IOException {
-        UDPSocketCommunication.sendMessage(serverSocket, message, clientAddress);
-        logger.log(Level.INFO, "Sending message to " + clientAddress + ": " + message);
+        sendText(FrameCodec.OP_NOTICE, message, clientAddress);
     }
 
     /**
-     * Envía el historial de mensajes a un cliente específico.
+     * Envía un mensaje de chat a un cliente específico. Los clientes binarios lo reciben como trama de chat,
+     * con el usuario y el texto en campos separados; los clientes de texto, con el formato de {@link Message#toString()}.
+     *
+     * @param message El mensaje de chat.
+     * @param clientAddress La dirección del cliente al que se enviará el mensaje.
+     * @throws IOException Si ocurre un error al enviar el mensaje.
+     */
+    public void sendChatMessage(Message message, InetSocketAddress clientAddress) throws IOException {
+        if (binaryPeers.contains(clientAddress)) {
+            sendFrame(FrameCodec.encode(FrameCodec.OP_CHAT, (byte) 0, 0, message.getUser().getUsername(), message.getText()), clientAddress);
+        } else {
+            sendEncoded(ByteBuffer.wrap(message.toString().getBytes()), clientAddress);
+        }
+        if (logger.isLoggable(Level.FINE)) {
+            logger.log(Level.FINE, "Sending message to {0}: {1}", new Object[]{clientAddress, message});
+        }
+    }
+
+    /**
+     * Envía un mensaje de error a un cliente específico. Los clientes binarios lo reciben como trama de error;
+     * los clientes de texto reciben el mismo texto que con {@link #sendMessage(String, InetSocketAddress)}.
+     *
+     * @param message El mensaje de error.
+     * @param clientAddress La dirección del cliente al que se enviará el mensaje.
+     * @throws IOException Si ocurre un error al enviar el mensaje.
+     */
+    public void sendError(String message, InetSocketAddress clientAddress) throws IOException {
+        sendText(FrameCodec.OP_ERROR, message, clientAddress);
+    }
+
+    /**
+     * Envía un texto a un cliente, como trama con el código indicado si el cliente usa el protocolo binario
+     * o como texto en otro caso.
+     *
+     * @param opcode El código de la trama para los clientes binarios.
+     * @param message El texto.
+     * @param clientAddress La dirección del cliente.
+     * @throws IOException Si ocurre un error al enviar el mensaje.
+     */
+    private void sendText(byte opcode, String message, InetSocketAddress clientAddress) throws IOException {
+        if (binaryPeers.contains(clientAddress)) {
+            sendFrame(FrameCodec.encode(opcode, (byte) 0, 0, message), clientAddress);
+        } else {
+            sendEncoded(ByteBuffer.wrap(message.getBytes()), clientAddress);
+        }
+        if (logger.isLoggable(Level.FINE)) {
+            logger.log(Level.FINE, "Sending message to {0}: {1}", new Object[]{clientAddress, message});
+        }
+    }
+
+    /**
+     * Envía una trama a un cliente binario, de forma fiable si el cliente usa la entrega fiable. Si el cliente
+     * acepta tramas comprimidas, la trama se comprime y se marca con {@link FrameCodec#FLAG_ACCEPTS_COMPRESSION}
+     * para que el cliente sepa que también puede comprimir las suyas. Si no cabe en la MTU, se envían sus fragmentos.
+     *
+     * @param frame Los bytes de la trama, recién codificada para este envío.
+     * @param clientAddress La dirección del cliente.
+     * @throws IOException Si ocurre un error al enviar la trama.
+     */
+    private void sendFrame(byte[] frame, InetSocketAddress clientAddress) throws IOException {
+        if (compressionPeers.contains(clientAddress)) {
+            frame = compressor.compress(frame);
+            FrameCodec.addFlags(frame, FrameCodec.FLAG_ACCEPTS_COMPRESSION);
+        }
+        boolean reliable = reliability.isReliablePeer(clientAddress);
+        for (byte[] part : fragmenter.split(frame)) {
+            if (reliable) {
+                reliability.send(part, clientAddress);
+            } else {
+                batcher.send(ByteBuffer.wrap(part), clientAddress);
+            }
+        }
+    }
+
+    /**
+     * Empieza a vigilar la actividad de un cliente que acaba de iniciar sesión, si envía latidos y la expulsión
+     * por inactividad está activada.
+     *
+     * @param clientAddress La dirección del cliente.
+     */
+    public void watchSession(InetSocketAddress clientAddress) {
+        if (sessions != null && heartbeatPeers.contains(clientAddress)) {
+            sessions.watch(clientAddress);
+        }
+    }
+
+    /**
+     * Expulsa a un cliente que ha dejado de enviar datagramas: se le avisa con
+     * {@link FrameCodec#OP_SESSION_EXPIRED}, sale de su sala, que recibe el aviso, y se olvida todo su estado,
+     * igual que con {@code /exit}. Sigue la misma cola por cliente que sus mensajes; sin ejecutor de comandos se
+     * ejecuta en el hilo de la rueda de temporizadores.
+     *
+     * @param clientAddress La dirección del cliente.
+     */
+    private void evictIdle(InetSocketAddress clientAddress) {
+        logger.log(Level.INFO, "Evicting idle client {0}", clientAddress);
+        Runnable eviction = () -> {
+            try {
+                sendSessionExpired(SESSION_TIMED_OUT, clientAddress);
+                ExitCommand.INSTANCE.handleDisconnect(this, clientAddress, ExitCommand.TIMED_OUT);
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Error evicting idle client {0}: {1}", new Object[]{clientAddress, e.getMessage()});
+            }
+        };
+        if (commandExecutor == null) {
+            eviction.run();
+        } else {
+            commandExecutor.execute(clientAddress, eviction);
+        }
+    }
+
+    /**
+     * Avisa a un cliente de que el servidor no tiene su sesión. La trama se envía directamente, sin entrega
+     * fiable ni lotes, porque el estado de ambos se olvida al cerrar la sesión.
+     *
+     * @param notice El texto del aviso.
+     * @param clientAddress La dirección del cliente.
+     * @throws IOException Si ocurre un error al enviar el aviso.
+     */
+    private void sendSessionExpired(String notice, InetSocketAddress clientAddress) throws IOException {
+        sendEncoded(ByteBuffer.wrap(FrameCodec.encode(FrameCodec.OP_SESSION_EXPIRED, (byte) 0, 0, notice)), clientAddress);
+    }
+
+    /**
+     * Olvida el protocolo y la compresión negociados por un cliente que se ha desconectado, junto con su sesión
+     * de entrega fiable, los fragmentos que tuviera pendientes, su suscripción al grupo multicast y la vigilancia
+     * de su actividad. Las tramas que tuviera agrupadas se envían antes.
+     *
+     * @param clientAddress La dirección del cliente.
+     */
+    public void forgetPeer(InetSocketAddress clientAddress) {
+        binaryPeers.remove(clientAddress);
+        compressionPeers.remove(clientAddress);
+        heartbeatPeers.remove(clientAddress);
+        if (sessions != null) {
+            sessions.forget(clientAddress);
+        }
+        if (multicast != null) {
+            multicast.forget(clientAddress);
+        }
+        batcher.forget(clientAddress);
+        reliability.forget(clientAddress);
+        reassembler.forget(clientAddress);
+    }
+
+    /**
+     * Codifica un mensaje que se va a enviar a muchos destinatarios. El buffer resultante se comparte entre
+     * todos los envíos de la difusión, por lo que el mensaje se serializa una única vez.
+     * Los motores basados en canales NIO sobrescriben este método para devolver un buffer directo.
+     *
+     * @param payload Los bytes del mensaje, ya en el formato del protocolo del destinatario.
+     * @return Un buffer con el mensaje codificado entre su posición y su límite.
+     */
+    protected ByteBuffer encodeBroadcast(byte[] payload) {
+        return ByteBuffer.wrap(payload);
+    }
+
+    /**
+     * Envía un mensaje ya codificado a un cliente específico.
+     * El buffer puede estar compartido con otros envíos: las implementaciones no deben modificar su posición,
+     * su límite ni su contenido (si necesitan consumirlo, deben usar {@link ByteBuffer#duplicate()}).
+     *
+     * @param payload El mensaje codificado, entre la posición y el límite del buffer.
+     * @param clientAddress La dirección del cliente al que se enviará el mensaje.
+     * @throws IOException Si ocurre un error al enviar el mensaje.
+     */
+    protected void sendEncoded(ByteBuffer payload, InetSocketAddress clientAddress) throws IOException {
+        UDPSocketCommunication.sendMessage(serverSocket, payload, clientAddress);
+    }
+
+    /**
+     * Invita a un cliente que acaba de entrar en una sala al grupo multicast, con la siguiente secuencia de la
+     * sala. No hace nada si no hay grupo o el cliente no puede unirse a él.
+     *
+     * @param room La sala.
+     * @param clientAddress La dirección del cliente.
+     * @throws IOException Si ocurre un error al enviar la invitación.
+     */
+    public void announceRoom(Room room, InetSocketAddress clientAddress) throws IOException {
+        if (multicast != null && multicast.isEnabled(clientAddress)) {
+            sendFrame(multicast.encodeJoin(room.getName()), clientAddress);
+        }
+    }
+
+    /**
+     * Envía a un cliente los últimos mensajes del historial de su sala. Si hay mensajes anteriores, se le indica
+     * cómo pedirlos con el comando {@code /history}, en lugar de enviarlos todos de golpe.
      *
      * @param clientAddress La dirección del cliente al que se enviará el historial.
      * @throws IOException Si ocurre un error al enviar el historial.
      */
     public void sendHistory(InetSocketAddress clientAddress) throws IOException {
-        List<Message> history = messageHistoryManager.getHistory();
-        logger.log(Level.INFO, "Sending history to new user from " + clientAddress);
-        for (Message message : history) {
-            sendMessage(message.toString(), clientAddress);
+        logger.log(Level.FINE, "Sending history to new user from {0}", clientAddress);
+        MessageHistoryManager history = getHistoryOf(clientAddress);
+        MessageHistoryManager.Cursor cursor = history.latest(loginHistoryTail);  // Lee el historial sin copiarlo
+        long first = -1;
+        while (cursor.hasNext()) {
+            sendMessage(cursor.next().toString(), clientAddress);
+            if (first < 0) {
+                first = cursor.getSequence();
+            }
+        }
+        if (first > history.getOldestSequence()) {
+            sendMessage(HistoryCommand.olderMessagesHint(first), clientAddress);
         }
     }
 
+    /**
+     * Obtiene el historial de mensajes de la sala por defecto.
+     *
+     * @return El historial de mensajes.
+     */
+    public MessageHistoryManager getMessageHistoryManager() {
+        return messageHistoryManager;
+    }
+
+    /**
+     * Obtiene el historial de la sala en la que está un cliente.
+     *
+     * @param clientAddress La dirección del cliente.
+     * @return El historial de su sala, o el de la sala por defecto si el cliente no ha iniciado sesión.
+     */
+    public MessageHistoryManager getHistoryOf(InetSocketAddress clientAddress) {
+        User user = userManager.getUserByAddress(clientAddress);
+        return user == null ? messageHistoryManager : roomOf(user).getHistory();
+    }
+
+    /**
+     * Obtiene la sala en la que está un usuario.
+     *
+     * @param user El usuario.
+     * @return Su sala, o la sala por defecto si no está en ninguna.
+     */
+    public Room roomOf(User user) {
+        Room room = roomManager.roomOf(user);
+        return room != null ? room : roomManager.getDefaultRoom();
+    }
+
+    /**
+     * Obtiene el nombre de la sala en la que está un cliente.
+     *
+     * @param clientAddress La dirección del cliente.
+     * @return El nombre de su sala, o el de la sala por defecto si no ha iniciado sesión.
+     */
+    private String roomNameOf(InetSocketAddress clientAddress) {
+        User user = userManager.getUserByAddress(clientAddress);
+        return user == null ? RoomManager.DEFAULT_ROOM : roomOf(user).getName();
+    }
+
+    /**
+     * Obtiene el gestor de salas del servidor.
+     *
+     * @return El gestor de salas.
+     */
+    public RoomManager getRoomManager() {
+        return roomManager;
+    }
+
     /**
      * Obtiene el gestor de usuarios del servidor.
      *
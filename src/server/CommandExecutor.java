@@ -0,0 +1,26 @@
+package server;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Ejecutor de los mensajes y comandos recibidos fuera del hilo de recepción.
+ * <p>
+ * Las implementaciones deben ejecutar las tareas de un mismo cliente en el orden en que se encolan, para que
+ * un mensaje no adelante a un {@code /login} pendiente del mismo cliente.
+ * </p>
+ */
+public interface CommandExecutor {
+
+    /**
+     * Encola una tarea de un cliente.
+     *
+     * @param peer La dirección del cliente que originó la tarea.
+     * @param task La tarea a ejecutar.
+     */
+    void execute(InetSocketAddress peer, Runnable task);
+
+    /**
+     * Detiene el ejecutor. Las tareas en curso terminan, pero no se lanzan nuevas.
+     */
+    void shutdown();
+}
@@ -0,0 +1,206 @@
+package server;
+
+import common.protocol.FrameCodec;
+import common.reliability.ReliableEndpoint;
+import common.timer.TimerWheel;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * La clase {@code FrameBatcher} agrupa en un solo datagrama {@link FrameCodec#OP_BATCH} las tramas que se envían
+ * seguidas a un mismo cliente.
+ * <p>
+ * En una sala concurrida, cada cliente recibe un datagrama por mensaje, y lo que limita es el número de paquetes
+ * por segundo, no el ancho de banda. La primera trama para un cliente inactivo sale en el acto y abre una
+ * ventana; las tramas que llegan durante la ventana se acumulan y salen juntas al cerrarse, o antes si llenan
+ * la MTU. Si la ventana se cierra sin tramas, el cliente vuelve a estar inactivo. Con poco tráfico no se añade
+ * latencia, y con mucho cada cliente recibe como mucho un datagrama por ventana y MTU.
+ * </p>
+ * <p>
+ * Solo se agrupan las tramas de los clientes habilitados con {@link #enable(InetSocketAddress)}; las demás se
+ * envían directamente. Es segura para varios hilos: cada cliente se protege con el cerrojo de su lote.
+ * </p>
+ */
+public class FrameBatcher {
+    private static final Logger logger = Logger.getLogger(FrameBatcher.class.getName());
+
+    /** Ventana de agrupación por defecto, en milisegundos. */
+    public static final int DEFAULT_WINDOW_MILLIS = 10;
+
+    private final TimerWheel timers;  // Rueda en la que se programa el cierre de las ventanas
+    private final ReliableEndpoint.Transport transport;  // Envío de los datagramas
+    private final int capacity;  // Bytes de tramas que caben en un lote sin superar la MTU
+    private final long windowMillis;  // Duración de la ventana, 0 si la agrupación está desactivada
+    private final Map<InetSocketAddress, Batch> batches;  // Lote de cada cliente habilitado
+    private final LongAdder frames;  // Tramas enviadas a clientes habilitados
+    private final LongAdder datagrams;  // Datagramas en los que se han enviado
+
+    /**
+     * Constructor de la clase {@code FrameBatcher}.
+     *
+     * @param timers La rueda en la que se programa el cierre de las ventanas.
+     * @param transport El envío de los datagramas.
+     * @param mtu El tamaño máximo de un lote, en bytes.
+     * @param windowMillis La duración de la ventana en milisegundos, o 0 para no agrupar.
+     */
+    public FrameBatcher(TimerWheel timers, ReliableEndpoint.Transport transport, int mtu, long windowMillis) {
+        this.timers = timers;
+        this.transport = transport;
+        this.capacity = mtu - FrameCodec.HEADER_SIZE;
+        this.windowMillis = windowMillis;
+        this.batches = new ConcurrentHashMap<>();
+        this.frames = new LongAdder();
+        this.datagrams = new LongAdder();
+    }
+
+    /**
+     * Habilita la agrupación para un cliente que acepta lotes. No tiene efecto si la agrupación está desactivada.
+     *
+     * @param address La dirección del cliente.
+     */
+    public void enable(InetSocketAddress address) {
+        if (windowMillis > 0) {
+            batches.computeIfAbsent(address, key -> new Batch());
+        }
+    }
+
+    /**
+     * Envía una trama a un cliente, agrupándola con las siguientes si el cliente está habilitado y tiene una
+     * ventana abierta.
+     *
+     * @param payload La trama, entre la posición y el límite del buffer, que no se modifican.
+     * @param address La dirección del cliente.
+     * @throws IOException Si ocurre un error al enviar.
+     */
+    public void send(ByteBuffer payload, InetSocketAddress address) throws IOException {
+        Batch batch = batches.get(address);
+        if (batch == null) {
+            transport.send(payload, address);
+            return;
+        }
+        synchronized (batch) {
+            frames.increment();
+            int length = payload.remaining();
+            if (batch.window == null || batch.closed || length + FrameCodec.BATCH_ENTRY_OVERHEAD > capacity) {
+                if (batch.window == null && !batch.closed) {
+                    batch.window = timers.schedule(() -> closeWindow(batch, address), windowMillis, TimeUnit.MILLISECONDS);
+                } else {
+                    flush(batch, address);  // Las tramas acumuladas salen antes, para conservar el orden
+                }
+                datagrams.increment();
+                transport.send(payload, address);
+                return;
+            }
+            if (batch.size + FrameCodec.BATCH_ENTRY_OVERHEAD + length > capacity) {
+                flush(batch, address);
+            }
+            if (batch.buffer == null) {
+                batch.buffer = new byte[capacity];
+            }
+            batch.buffer[batch.size] = (byte) (length >> 8);
+            batch.buffer[batch.size + 1] = (byte) length;
+            payload.duplicate().get(batch.buffer, batch.size + FrameCodec.BATCH_ENTRY_OVERHEAD, length);
+            batch.size += FrameCodec.BATCH_ENTRY_OVERHEAD + length;
+            batch.count++;
+        }
+    }
+
+    /**
+     * Cierra la ventana de un cliente: envía las tramas acumuladas y abre otra, o deja al cliente inactivo si
+     * no se ha acumulado ninguna.
+     *
+     * @param batch El lote del cliente.
+     * @param address La dirección del cliente.
+     */
+    private void closeWindow(Batch batch, InetSocketAddress address) {
+        synchronized (batch) {
+            if (batch.count == 0 || batch.closed) {
+                batch.window = null;
+                batch.buffer = null;  // Un cliente inactivo no retiene memoria
+                return;
+            }
+            try {
+                flush(batch, address);
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Failed to send batch to {0}: {1}", new Object[]{address, e.getMessage()});
+            }
+            batch.window = timers.schedule(() -> closeWindow(batch, address), windowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Envía las tramas acumuladas de un cliente: una sola tal cual, o varias en un lote.
+     *
+     * @param batch El lote del cliente, cuyo cerrojo tiene el llamador.
+     * @param address La dirección del cliente.
+     * @throws IOException Si ocurre un error al enviar.
+     */
+    private void flush(Batch batch, InetSocketAddress address) throws IOException {
+        if (batch.count == 0) {
+            return;
+        }
+        byte[] datagram = batch.count == 1
+                ? Arrays.copyOfRange(batch.buffer, FrameCodec.BATCH_ENTRY_OVERHEAD, batch.size)
+                : FrameCodec.encode(FrameCodec.OP_BATCH, (byte) 0, 0, batch.buffer, 0, batch.size);
+        batch.size = 0;
+        batch.count = 0;
+        datagrams.increment();
+        transport.send(ByteBuffer.wrap(datagram), address);  // Un array nuevo: el motor puede enviarlo más tarde
+    }
+
+    /**
+     * Envía las tramas pendientes de un cliente y deja de agrupar las suyas, por ejemplo cuando se desconecta.
+     *
+     * @param address La dirección del cliente.
+     */
+    public void forget(InetSocketAddress address) {
+        Batch batch = batches.remove(address);
+        if (batch == null) {
+            return;
+        }
+        synchronized (batch) {
+            batch.closed = true;
+            if (batch.window != null) {
+                batch.window.cancel();
+            }
+            try {
+                flush(batch, address);
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Failed to send batch to {0}: {1}", new Object[]{address, e.getMessage()});
+            }
+            batch.buffer = null;
+        }
+    }
+
+    /**
+     * Genera un resumen de la agrupación.
+     *
+     * @return Una cadena con las tramas enviadas a clientes habilitados y los datagramas que han ocupado.
+     */
+    public String snapshot() {
+        long sentFrames = frames.sum();
+        long sentDatagrams = datagrams.sum();
+        return String.format("batching: peers=%d frames=%d datagrams=%d (%.2f frames/datagram)",
+                batches.size(), sentFrames, sentDatagrams, sentDatagrams == 0 ? 0.0 : (double) sentFrames / sentDatagrams);
+    }
+
+    /**
+     * Las tramas acumuladas para un cliente, protegidas por el cerrojo del propio objeto.
+     */
+    private static final class Batch {
+        private byte[] buffer;  // Tramas acumuladas con su longitud, o null si el cliente está inactivo
+        private int size;  // Bytes ocupados del buffer
+        private int count;  // Tramas acumuladas
+        private TimerWheel.Timeout window;  // Cierre de la ventana abierta, o null si el cliente está inactivo
+        private boolean closed;  // Si el cliente se ha olvidado
+    }
+}
@@ -0,0 +1,348 @@
+package server;
+
+import common.data.Room;
+import common.model.Message;
+import common.protocol.FrameCodec;
+import common.socket.UDPSocketCommunication;
+import common.timer.TimerWheel;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * La clase {@code MulticastPublisher} publica los mensajes de las salas en un grupo IP multicast, para que en una
+ * red local el servidor envíe un solo datagrama por mensaje en lugar de uno por miembro.
+ * <p>
+ * Los clientes que marcan sus tramas con {@link FrameCodec#FLAG_ACCEPTS_MULTICAST} reciben al entrar en una sala
+ * una invitación al grupo con la siguiente secuencia de la sala. Cada mensaje publicado lleva la secuencia de su
+ * sala, y el mismo datagrama se envía por unicast a los clientes que aún no han confirmado que reciben el grupo,
+ * de modo que un cliente cuya red no encamina el multicast sigue recibiendo los mensajes y descarta los repetidos
+ * por su secuencia. En cuanto un cliente confirma que le llega el grupo deja de recibir las copias, y si deja de
+ * llegarle lo indica y vuelven a enviársele.
+ * </p>
+ * <p>
+ * Se conservan los últimos {@value #DEFAULT_REPAIR_CAPACITY} datagramas de cada sala: un cliente que detecta un
+ * salto en las secuencias pide los que le faltan y se le reenvían por unicast; los que ya no se conservan se le
+ * indican como perdidos. Para que también se detecten las pérdidas del último mensaje, cada
+ * {@code syncMillis} se publica en el grupo una baliza con la siguiente secuencia de cada sala con miembros.
+ * </p>
+ * <p>
+ * Las tramas que no caben en la MTU no se publican y siguen el camino unicast habitual, con sus fragmentos.
+ * </p>
+ */
+public class MulticastPublisher {
+    private static final Logger logger = Logger.getLogger(MulticastPublisher.class.getName());
+
+    /** Saltos que atraviesa por defecto un datagrama multicast: 1 no sale de la red local. */
+    public static final int DEFAULT_TTL = 1;
+
+    /** Intervalo por defecto entre balizas, en milisegundos. */
+    public static final int DEFAULT_SYNC_MILLIS = 1000;
+
+    /** Datagramas que se conservan de cada sala para reparar las pérdidas. */
+    public static final int DEFAULT_REPAIR_CAPACITY = 256;
+
+    private final InetSocketAddress group;  // Grupo multicast en el que se publica
+    private final int ttl;  // Saltos que atraviesan los datagramas
+    private final NetworkInterface networkInterface;  // Interfaz de salida, o null para la del sistema
+    private final long syncMillis;  // Intervalo entre balizas
+    private final String epoch;  // Identificador de esta ejecución, para que los clientes no mezclen secuencias de otra
+    private final Map<String, Channel> channels;  // Secuencia y datagramas recientes de cada sala
+    private final Set<InetSocketAddress> enabledPeers;  // Clientes que pueden unirse al grupo
+    private final Set<InetSocketAddress> receivingPeers;  // Clientes que han confirmado que reciben el grupo
+    private final LongAdder published;  // Mensajes publicados en el grupo
+    private final LongAdder repaired;  // Datagramas reenviados a clientes que los han perdido
+    private final LongAdder lost;  // Datagramas pedidos que ya no se conservaban
+    private volatile boolean running;
+    private AbstractUDPServer server;  // Servidor local, del que se leen las salas
+    private MulticastSocket socket;  // Socket de publicación
+    private TimerWheel timers;  // Rueda de temporizadores del servidor, para las balizas
+
+    /**
+     * Constructor de la clase {@code MulticastPublisher}.
+     *
+     * @param group La dirección y el puerto del grupo multicast.
+     * @param ttl Los saltos que atraviesan los datagramas.
+     * @param networkInterface La interfaz por la que se publica, o {@code null} para la del sistema.
+     * @param syncMillis El intervalo entre balizas en milisegundos.
+     * @throws IllegalArgumentException Si la dirección no es de multicast.
+     */
+    public MulticastPublisher(InetSocketAddress group, int ttl, NetworkInterface networkInterface, long syncMillis) {
+        if (!group.getAddress().isMulticastAddress()) {
+            throw new IllegalArgumentException("Not a multicast address: " + group);
+        }
+        this.group = group;
+        this.ttl = ttl;
+        this.networkInterface = networkInterface;
+        this.syncMillis = syncMillis;
+        this.epoch = Integer.toHexString(ThreadLocalRandom.current().nextInt());
+        this.channels = new ConcurrentHashMap<>();
+        this.enabledPeers = ConcurrentHashMap.newKeySet();
+        this.receivingPeers = ConcurrentHashMap.newKeySet();
+        this.published = new LongAdder();
+        this.repaired = new LongAdder();
+        this.lost = new LongAdder();
+    }
+
+    /**
+     * Abre el socket de publicación y empieza a publicar las balizas.
+     *
+     * @param server El servidor local.
+     * @param timers La rueda de temporizadores del servidor.
+     * @throws IOException Si no se puede abrir el socket.
+     */
+    public void start(AbstractUDPServer server, TimerWheel timers) throws IOException {
+        this.server = server;
+        this.timers = timers;
+        this.socket = new MulticastSocket();
+        socket.setTimeToLive(ttl);
+        if (networkInterface != null) {
+            socket.setNetworkInterface(networkInterface);
+        }
+        this.running = true;
+        timers.schedule(this::sync, syncMillis, TimeUnit.MILLISECONDS);
+        logger.log(Level.INFO, "Multicast fan-out to {0} (ttl {1})", new Object[]{groupName(), ttl});
+    }
+
+    /**
+     * Cierra el socket de publicación.
+     */
+    public void stop() {
+        running = false;
+        if (socket != null) {
+            socket.close();
+        }
+    }
+
+    /**
+     * Registra a un cliente que puede unirse al grupo. Hasta que confirme que lo recibe, se le envían copias por unicast.
+     *
+     * @param address La dirección del cliente.
+     */
+    public void enable(InetSocketAddress address) {
+        enabledPeers.add(address);
+    }
+
+    /**
+     * Comprueba si un cliente puede unirse al grupo.
+     *
+     * @param address La dirección del cliente.
+     * @return {@code true} si recibe los mensajes de su sala como datagramas del grupo, por multicast o por unicast.
+     */
+    public boolean isEnabled(InetSocketAddress address) {
+        return enabledPeers.contains(address);
+    }
+
+    /**
+     * Registra si a un cliente le llega el grupo.
+     *
+     * @param address La dirección del cliente.
+     * @param receiving {@code true} si lo recibe y ya no necesita las copias por unicast.
+     */
+    public void setReceiving(InetSocketAddress address, boolean receiving) {
+        if (receiving) {
+            receivingPeers.add(address);
+        } else {
+            receivingPeers.remove(address);
+        }
+    }
+
+    /**
+     * Comprueba si a un cliente le llega el grupo.
+     *
+     * @param address La dirección del cliente.
+     * @return {@code true} si no necesita las copias por unicast.
+     */
+    public boolean isReceiving(InetSocketAddress address) {
+        return receivingPeers.contains(address);
+    }
+
+    /**
+     * Olvida a un cliente que se ha desconectado.
+     *
+     * @param address La dirección del cliente.
+     */
+    public void forget(InetSocketAddress address) {
+        enabledPeers.remove(address);
+        receivingPeers.remove(address);
+    }
+
+    /**
+     * Codifica la invitación al grupo que recibe un cliente al entrar en una sala, y publica una baliza de la sala
+     * para que el cliente pueda confirmar cuanto antes que el grupo le llega.
+     *
+     * @param room El nombre de la sala.
+     * @return Los bytes de la invitación.
+     */
+    public byte[] encodeJoin(String room) {
+        publishSync(room);
+        return FrameCodec.encode(FrameCodec.OP_MULTICAST_JOIN, (byte) 0, 0,
+                epoch, room, groupName(), String.valueOf(syncMillis), String.valueOf(nextSequence(room)));
+    }
+
+    /**
+     * Publica un mensaje de una sala en el grupo con la siguiente secuencia de la sala, y lo conserva para las
+     * reparaciones.
+     *
+     * @param room El nombre de la sala.
+     * @param message El mensaje.
+     * @param excluded El nombre del usuario que no debe mostrarlo, o una cadena vacía.
+     * @return El datagrama publicado, que se reenvía tal cual a los clientes que no reciben el grupo, o
+     *         {@code null} si no cabe en la MTU y debe enviarse por unicast.
+     */
+    public byte[] publish(String room, Message message, String excluded) {
+        byte[] chat = FrameCodec.encode(FrameCodec.OP_CHAT, (byte) 0, 0, message.getUser().getUsername(), message.getText());
+        Channel channel = channels.computeIfAbsent(room, name -> new Channel());
+        synchronized (channel) {  // La secuencia y el envío, en el mismo orden en todos los clientes
+            byte[] datagram = FrameCodec.encode(FrameCodec.OP_MULTICAST, (byte) 0, channel.next, chat, 0, chat.length,
+                    epoch, room, excluded);
+            if (datagram.length > UDPSocketCommunication.getMtu()) {
+                return null;
+            }
+            channel.recent[Math.floorMod(channel.next, DEFAULT_REPAIR_CAPACITY)] = datagram;
+            channel.next++;
+            send(datagram);
+            published.increment();
+            return datagram;
+        }
+    }
+
+    /**
+     * Obtiene los datagramas que un cliente ha pedido reparar. Si alguno ya no se conserva, la lista empieza por
+     * una trama {@link FrameCodec#OP_MULTICAST_NACK} con los que el cliente debe dar por perdidos.
+     *
+     * @param room El nombre de la sala.
+     * @param from La primera secuencia pedida.
+     * @param count El número de secuencias pedidas.
+     * @return Los datagramas a reenviar al cliente, en orden.
+     */
+    public List<byte[]> repair(String room, int from, int count) {
+        List<byte[]> datagrams = new ArrayList<>();
+        Channel channel = channels.get(room);
+        if (channel == null || from < 0 || count <= 0) {
+            return datagrams;
+        }
+        synchronized (channel) {
+            int end = (int) Math.min((long) from + Math.min(count, DEFAULT_REPAIR_CAPACITY), channel.next);
+            int oldest = Math.max(0, channel.next - DEFAULT_REPAIR_CAPACITY);
+            int missing = Math.max(0, Math.min(oldest, end) - from);
+            if (missing > 0) {
+                lost.add(missing);
+                datagrams.add(FrameCodec.encode(FrameCodec.OP_MULTICAST_NACK, (byte) 0, 0, epoch, room,
+                        String.valueOf(from), String.valueOf(missing)));
+            }
+            for (int sequence = Math.max(from, oldest); sequence < end; sequence++) {
+                datagrams.add(channel.recent[Math.floorMod(sequence, DEFAULT_REPAIR_CAPACITY)]);
+                repaired.increment();
+            }
+        }
+        return datagrams;
+    }
+
+    /**
+     * Comprueba si una trama de un cliente pertenece a esta ejecución del servidor.
+     *
+     * @param epoch La época de la trama.
+     * @return {@code true} si coincide con la de este publicador.
+     */
+    public boolean isCurrentEpoch(String epoch) {
+        return this.epoch.equals(epoch);
+    }
+
+    /**
+     * Obtiene la siguiente secuencia de una sala.
+     *
+     * @param room El nombre de la sala.
+     * @return La secuencia que llevará su próximo mensaje.
+     */
+    private int nextSequence(String room) {
+        Channel channel = channels.get(room);
+        if (channel == null) {
+            return 0;
+        }
+        synchronized (channel) {
+            return channel.next;
+        }
+    }
+
+    /**
+     * Tarea periódica: publica una baliza por cada sala con miembros, olvida las salas que ya no existen y se
+     * vuelve a planificar.
+     */
+    private void sync() {
+        if (!running) {
+            return;
+        }
+        for (Room room : server.getRoomManager().getRooms()) {
+            if (room.getMemberCount() > 0) {
+                publishSync(room.getName());
+            }
+        }
+        channels.keySet().removeIf(name -> server.getRoomManager().getRoom(name) == null);
+        timers.schedule(this::sync, syncMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Publica la baliza de una sala.
+     *
+     * @param room El nombre de la sala.
+     */
+    private void publishSync(String room) {
+        send(FrameCodec.encode(FrameCodec.OP_MULTICAST_SYNC, (byte) 0, nextSequence(room), epoch, room));
+    }
+
+    /**
+     * Envía un datagrama al grupo.
+     *
+     * @param datagram El datagrama.
+     */
+    private void send(byte[] datagram) {
+        if (running) {
+            UDPSocketCommunication.sendMessage(socket, ByteBuffer.wrap(datagram), group);
+        }
+    }
+
+    /**
+     * Obtiene el grupo con el formato {@code ip:puerto} con el que se anuncia a los clientes.
+     *
+     * @return El grupo.
+     */
+    private String groupName() {
+        return group.getAddress().getHostAddress() + ":" + group.getPort();
+    }
+
+    /**
+     * Genera un resumen de la publicación.
+     *
+     * @return Una cadena con los clientes que reciben el grupo y los mensajes publicados, reparados y perdidos.
+     */
+    public String snapshot() {
+        return String.format("multicast: group=%s rooms=%d receiving=%d/%d published=%d repaired=%d lost=%d",
+                groupName(), channels.size(), receivingPeers.size(), enabledPeers.size(), published.sum(), repaired.sum(), lost.sum());
+    }
+
+    /**
+     * La secuencia de una sala y sus últimos datagramas publicados. Se accede con su propio cerrojo.
+     */
+    private static final class Channel {
+        private final byte[][] recent;  // Datagramas por secuencia, en círculo
+        private int next;  // Secuencia del próximo mensaje
+
+        private Channel() {
+            this.recent = new byte[DEFAULT_REPAIR_CAPACITY][];
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package server;
+
+import common.socket.UDPSocketCommunication;
+import common.socket.UDPUtil;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Implementación de un servidor UDP basada en NIO.
+ * <p>
+ * Utiliza un {@link DatagramChannel} en modo no bloqueante registrado en un {@link Selector}, de modo que
+ * la recepción, el despacho y el envío no quedan bloqueados unos detrás de otros. Los envíos no se escriben
+ * directamente en el socket: se encolan por destinatario y se vacían cuando el canal está listo para escritura.
+ * Cada cola admite un número máximo de envíos; si un destinatario que no da abasto la llena, sus envíos nuevos
+ * se descartan y se cuentan, igual que en las colas entre etapas de {@link server.pipeline.PipelinedUDPServer}.
+ * La recepción reutiliza un {@code ByteBuffer} directo y las difusiones se codifican una sola vez en un buffer
+ * directo compartido por todos los destinatarios.
+ * </p>
+ */
+public class NioUDPServer extends AbstractUDPServer {
+
+    /** Número máximo de envíos pendientes por destinatario por defecto. */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    private static final Logger logger = Logger.getLogger(NioUDPServer.class.getName());
+    private static final int BUFFER_SIZE = UDPSocketCommunication.MAX_DATAGRAM_SIZE;  // Cabe cualquier datagrama, sin truncarlo
+    private static final int MAX_SENDS_PER_DESTINATION = 16;  // Envíos por destinatario en cada pasada de escritura
+
+    private final ByteBuffer receiveBuffer;  // Buffer directo reutilizado en cada recepción
+    private final byte[] receiveBytes;  // Copia en heap del datagrama recibido para decodificarlo
+    private final Map<InetSocketAddress, Queue<ByteBuffer>> pendingWrites;  // Cola de escritura por destinatario
+    private final int queueCapacity;  // Envíos pendientes admitidos por destinatario
+    private final LongAdder droppedWrites;  // Envíos descartados por cola llena
+    private DatagramChannel channel;  // Canal UDP no bloqueante
+    private Selector selector;  // Selector que multiplexa lectura y escritura
+    private SelectionKey key;  // Registro del canal en el selector
+    private volatile Thread selectorThread;  // Hilo que ejecuta el bucle del selector
+
+    /**
+     * Constructor del servidor UDP basado en NIO, con la capacidad de cola por defecto.
+     *
+     * @param port El puerto en el que el servidor escuchará las conexiones.
+     */
+    public NioUDPServer(int port) {
+        this(port, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Constructor del servidor UDP basado en NIO.
+     *
+     * @param port El puerto en el que el servidor escuchará las conexiones.
+     * @param queueCapacity El número máximo de envíos pendientes por destinatario.
+     */
+    public NioUDPServer(int port, int queueCapacity) {
+        super(port);
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be positive: " + queueCapacity);
+        }
+        this.queueCapacity = queueCapacity;
+        this.droppedWrites = new LongAdder();
+        this.receiveBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.receiveBytes = new byte[BUFFER_SIZE];
+        this.pendingWrites = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Abre el canal no bloqueante y lo registra en el selector para lectura.
+     *
+     * @return El socket asociado al canal, usado por los comandos.
+     * @throws IOException Si ocurre un error al abrir el canal o el selector.
+     */
+    @Override
+    protected DatagramSocket openSocket() throws IOException {
+        channel = UDPUtil.openChannel(port, false);
+        selector = Selector.open();
+        key = channel.register(selector, SelectionKey.OP_READ);
+        return channel.socket();
+    }
+
+    /**
+     * Bucle principal del selector. Lee todos los datagramas disponibles, los despacha y vacía
+     * las colas de escritura pendientes sin bloquear en ningún punto.
+     */
+    @Override
+    public void listen() {
+        selectorThread = Thread.currentThread();
+        try {
+            while (isRunning.get()) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey selected = keys.next();
+                    keys.remove();
+                    if (!selected.isValid()) {
+                        continue;
+                    }
+                    if (selected.isReadable()) {
+                        readAvailable();
+                    }
+                    if (selected.isValid() && selected.isWritable()) {
+                        flushPendingWrites();
+                    }
+                }
+                flushPendingWrites();  // Intenta vaciar lo generado durante el despacho sin esperar otra selección
+            }
+        } catch (IOException e) {
+            if (isRunning.get()) {
+                logger.log(Level.SEVERE, "Error in selector loop: {0}", e.getMessage());
+            }
+        } finally {
+            selectorThread = null;
+            closeSelector();
+            logger.log(Level.INFO, "Server stopped listening.");
+        }
+    }
+
+    /**
+     * Lee todos los datagramas disponibles en el canal y los despacha.
+     *
+     * @throws IOException Si ocurre un error al leer del canal.
+     */
+    private void readAvailable() throws IOException {
+        SocketAddress source;
+        while ((source = channel.receive(receiveBuffer)) != null) {
+            receiveBuffer.flip();
+            int length = receiveBuffer.remaining();
+            receiveBuffer.get(receiveBytes, 0, length);
+            receiveBuffer.clear();
+
+            InetSocketAddress clientAddress = (InetSocketAddress) source;
+            try {
+                handleDatagram(receiveBytes, 0, length, clientAddress);
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Error handling message from {0}: {1}", new Object[]{clientAddress, e.getMessage()});
+            }
+        }
+    }
+
+    /**
+     * Vacía las colas de escritura de cada destinatario mientras el canal acepte datagramas.
+     * Cada destinatario envía como máximo {@value #MAX_SENDS_PER_DESTINATION} datagramas por pasada para que
+     * un destinatario con mucho tráfico no acapare el canal. Si el socket no admite más datos se mantiene
+     * el interés de escritura y se reintenta cuando el selector indique que el canal es escribible.
+     *
+     * @throws IOException Si ocurre un error al escribir en el canal.
+     */
+    private void flushPendingWrites() throws IOException {
+        boolean pending = false;
+        for (Map.Entry<InetSocketAddress, Queue<ByteBuffer>> entry : pendingWrites.entrySet()) {
+            Queue<ByteBuffer> queue = entry.getValue();
+            int sent = 0;
+            ByteBuffer buffer;
+            while (sent < MAX_SENDS_PER_DESTINATION && (buffer = queue.peek()) != null) {
+                if (UDPSocketCommunication.send(channel, buffer, entry.getKey()) == 0) {
+                    updateWriteInterest(true);  // El buffer del socket está lleno, esperar a OP_WRITE
+                    return;
+                }
+                queue.poll();
+                sent++;
+            }
+            if (!queue.isEmpty()) {
+                pending = true;
+            } else if (pendingWrites.computeIfPresent(entry.getKey(), (address, current) -> current.isEmpty() ? null : current) != null) {
+                pending = true;  // Un productor añadió datos entre la comprobación y la eliminación
+            }
+        }
+        updateWriteInterest(pending);
+    }
+
+    /**
+     * Activa o desactiva el interés de escritura del canal en el selector.
+     *
+     * @param enabled {@code true} para recibir notificaciones de escritura.
+     */
+    private void updateWriteInterest(boolean enabled) {
+        if (key != null && key.isValid()) {
+            int ops = enabled ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+            if (key.interestOps() != ops) {
+                key.interestOps(ops);
+            }
+        }
+    }
+
+    /**
+     * Codifica un mensaje de difusión en un buffer directo de solo lectura, compartido por todos los destinatarios.
+     *
+     * @param payload Los bytes del mensaje.
+     * @return El buffer directo con el mensaje codificado.
+     */
+    @Override
+    protected ByteBuffer encodeBroadcast(byte[] payload) {
+        return UDPUtil.toSharedDirectBuffer(payload);
+    }
+
+    /**
+     * Encola un mensaje codificado para un cliente específico. El envío real se realiza desde el hilo del selector.
+     * Se encola una vista del buffer, de modo que el contenido no se copia aunque se comparta entre destinatarios.
+     * Si la cola del destinatario está llena, el mensaje se descarta y se cuenta.
+     *
+     * @param payload El mensaje codificado.
+     * @param clientAddress La dirección del cliente al que se enviará el mensaje.
+     */
+    @Override
+    protected void sendEncoded(ByteBuffer payload, InetSocketAddress clientAddress) {
+        ByteBuffer view = payload.duplicate();
+        pendingWrites.compute(clientAddress, (address, queue) -> {
+            Queue<ByteBuffer> target = queue != null ? queue : new LinkedBlockingQueue<>(queueCapacity);
+            if (!target.offer(view)) {  // Se añade dentro de compute para no competir con la eliminación de colas vacías
+                droppedWrites.increment();  // Cola llena: se descarta de forma visible
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.log(Level.FINE, "Send queue full, dropping message for {0}", address);
+                }
+            }
+            return target;
+        });
+
+        if (Thread.currentThread() != selectorThread && selector != null) {
+            selector.wakeup();  // Despierta al selector para que vacíe la cola cuanto antes
+        }
+    }
+
+    /**
+     * Obtiene el número de envíos descartados porque la cola de su destinatario estaba llena.
+     *
+     * @return Los envíos descartados desde el arranque.
+     */
+    public long getDroppedWrites() {
+        return droppedWrites.sum();
+    }
+
+    /**
+     * Registra en el log las métricas del servidor y el estado de las colas de escritura.
+     */
+    @Override
+    protected void reportMetrics() {
+        super.reportMetrics();
+        logger.log(Level.INFO, "Nio {0}", String.format("sendQueues destinations=%d capacity=%d dropped=%d",
+                pendingWrites.size(), queueCapacity, getDroppedWrites()));
+    }
+
+    /**
+     * Detiene el servidor, despierta al selector y cierra el canal.
+     * El selector se cierra desde el propio bucle de escucha al terminar.
+     */
+    @Override
+    public void stop() {
+        isRunning.set(false);
+        if (selector != null) {
+            selector.wakeup();
+        }
+        super.stop();
+    }
+
+    /**
+     * Cierra el selector liberando sus recursos.
+     */
+    private void closeSelector() {
+        try {
+            if (selector != null && selector.isOpen()) {
+                selector.close();
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Error closing selector: {0}", e.getMessage());
+        }
+    }
+}
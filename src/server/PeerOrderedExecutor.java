@@ -0,0 +1,142 @@
+package server;
+
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Ejecutor que lanza cada tarea en su propio hilo virtual manteniendo el orden por cliente.
+ * <p>
+ * Las tareas de una misma dirección ({@link InetSocketAddress}) forman una cola: solo una de ellas se ejecuta
+ * a la vez y la siguiente se lanza cuando termina la anterior, de modo que los comandos de un cliente se ejecutan
+ * en el orden en que llegaron. Las tareas de clientes distintos se ejecutan en paralelo y el hilo de recepción
+ * nunca espera a que terminen.
+ * </p>
+ * <p>
+ * Los hilos virtuales requieren Java 21. En versiones anteriores se utiliza un pool de hilos de plataforma
+ * con las mismas garantías de orden.
+ * </p>
+ */
+public class PeerOrderedExecutor implements CommandExecutor {
+    private static final Logger logger = Logger.getLogger(PeerOrderedExecutor.class.getName());
+
+    private final ExecutorService executor;  // Ejecutor que lanza un hilo (virtual si es posible) por tarea
+    private final Map<InetSocketAddress, Lane> lanes;  // Cola de tareas pendientes de cada cliente
+
+    /**
+     * Constructor de la clase {@code PeerOrderedExecutor}.
+     */
+    public PeerOrderedExecutor() {
+        this.executor = createExecutor();
+        this.lanes = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Crea un ejecutor de un hilo virtual por tarea si la JVM lo admite, o un pool de hilos en caso contrario.
+     *
+     * @return El ejecutor creado.
+     */
+    private static ExecutorService createExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            logger.log(Level.WARNING, "Virtual threads not available on this JVM, using a cached thread pool");
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "command-worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Encola una tarea de un cliente. Si no hay otra tarea de ese cliente en curso, se lanza inmediatamente.
+     *
+     * @param peer La dirección del cliente que originó la tarea.
+     * @param task La tarea a ejecutar.
+     */
+    @Override
+    public void execute(InetSocketAddress peer, Runnable task) {
+        boolean[] start = new boolean[1];
+        lanes.compute(peer, (address, lane) -> {
+            Lane target = lane != null ? lane : new Lane();
+            target.tasks.add(task);
+            if (!target.running) {
+                target.running = true;
+                start[0] = true;
+            }
+            return target;
+        });
+        if (start[0]) {
+            submit(peer);
+        }
+    }
+
+    /**
+     * Lanza la siguiente tarea pendiente de un cliente en un nuevo hilo. Si no quedan tareas, se elimina su cola.
+     *
+     * @param peer La dirección del cliente.
+     */
+    private void submit(InetSocketAddress peer) {
+        Runnable[] next = new Runnable[1];
+        lanes.computeIfPresent(peer, (address, lane) -> {
+            next[0] = lane.tasks.poll();
+            if (next[0] == null) {
+                lane.running = false;
+                return null;  // No quedan tareas: se libera la cola del cliente
+            }
+            return lane;
+        });
+        if (next[0] == null) {
+            return;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    next[0].run();
+                } catch (RuntimeException e) {
+                    logger.log(Level.SEVERE, "Task for " + peer + " failed: " + e.getMessage(), e);
+                } finally {
+                    submit(peer);  // Encadena la siguiente tarea del mismo cliente
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.log(Level.CONFIG, "Executor shut down, discarding tasks for {0}", peer);
+            lanes.remove(peer);
+        }
+    }
+
+    /**
+     * Obtiene el número de clientes con tareas pendientes o en curso.
+     *
+     * @return El número de colas activas.
+     */
+    public int getActivePeers() {
+        return lanes.size();
+    }
+
+    /**
+     * Detiene el ejecutor. Las tareas en curso terminan, pero no se lanzan nuevas.
+     */
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Cola de tareas de un cliente. Solo se accede a ella desde operaciones atómicas del mapa {@code lanes}.
+     */
+    private static final class Lane {
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();  // Tareas pendientes en orden de llegada
+        private boolean running;  // Indica si hay una tarea del cliente en ejecución
+    }
+}
@@ -0,0 +1,202 @@
+package server;
+
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Ejecutor que reparte las salas entre hilos de trabajo por el hash de su nombre, de modo que cada sala
+ * pertenece a un único hilo.
+ * <p>
+ * Con un solo hilo de despacho, conversaciones que no tienen nada que ver se ejecutan una tras otra. Aquí cada
+ * hilo tiene su cola y es el único que difunde los mensajes de sus salas y escribe en sus historiales, por lo que
+ * las salas de hilos distintos avanzan en paralelo y los mensajes de una misma sala no compiten entre sí.
+ * El hilo de recepción encola cada mensaje en el hilo de la sala en la que está su cliente (los clientes sin
+ * sesión van a la sala por defecto). Las difusiones a una sala de otro hilo, como el aviso de llegada de
+ * {@code /join}, se reenvían a la cola de su dueño con {@link #executeInRoom(String, Runnable)}.
+ * </p>
+ * <p>
+ * El orden por cliente se conserva: mientras un cliente tiene tareas pendientes en un hilo, las siguientes van
+ * al mismo hilo aunque haya cambiado de sala, y las que ya no le corresponden se reenvían desde allí en orden.
+ * </p>
+ */
+public class RoomShardExecutor implements CommandExecutor {
+    private static final Logger logger = Logger.getLogger(RoomShardExecutor.class.getName());
+
+    private final Shard[] shards;  // Hilos de trabajo, cada uno dueño de las salas cuyo hash le corresponde
+    private final Function<InetSocketAddress, String> roomOfPeer;  // Sala en la que está cada cliente
+    private final Map<InetSocketAddress, Lane> lanes;  // Hilo y tareas pendientes de cada cliente con tareas en curso
+    private final LongAdder forwarded;  // Tareas reenviadas al hilo dueño de otra sala
+    private volatile boolean running;  // Indica si los hilos siguen aceptando tareas
+
+    /**
+     * Constructor de la clase {@code RoomShardExecutor}. Arranca los hilos de trabajo.
+     *
+     * @param shardCount El número de hilos de trabajo.
+     * @param roomOfPeer Obtiene el nombre de la sala en la que está un cliente.
+     */
+    public RoomShardExecutor(int shardCount, Function<InetSocketAddress, String> roomOfPeer) {
+        this.shards = new Shard[Math.max(1, shardCount)];
+        this.roomOfPeer = roomOfPeer;
+        this.lanes = new ConcurrentHashMap<>();
+        this.forwarded = new LongAdder();
+        this.running = true;
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard("room-shard-" + i);
+            shards[i].thread.start();
+        }
+    }
+
+    /**
+     * Encola una tarea de un cliente en el hilo dueño de su sala, o en el hilo en el que ya tiene tareas pendientes.
+     *
+     * @param peer La dirección del cliente que originó la tarea.
+     * @param task La tarea a ejecutar.
+     */
+    @Override
+    public void execute(InetSocketAddress peer, Runnable task) {
+        lanes.compute(peer, (address, lane) -> {
+            Lane target = lane != null ? lane : new Lane(shardOf(roomOfPeer.apply(address)));
+            target.pending++;
+            target.shard.queue.add(() -> {
+                try {
+                    task.run();
+                } finally {
+                    release(address);
+                }
+            });
+            return target;
+        });
+    }
+
+    /**
+     * Descuenta una tarea terminada de un cliente y libera su cola si no le quedan más.
+     *
+     * @param peer La dirección del cliente.
+     */
+    private void release(InetSocketAddress peer) {
+        lanes.computeIfPresent(peer, (address, lane) -> --lane.pending == 0 ? null : lane);
+    }
+
+    /**
+     * Encola una tarea en el hilo dueño de una sala.
+     *
+     * @param room El nombre de la sala.
+     * @param task La tarea a ejecutar.
+     */
+    public void executeInRoom(String room, Runnable task) {
+        forwarded.increment();
+        shardOf(room).queue.add(task);
+    }
+
+    /**
+     * Comprueba si el hilo actual es el dueño de una sala.
+     *
+     * @param room El nombre de la sala.
+     * @return {@code true} si el hilo actual puede difundir en la sala y escribir en su historial.
+     */
+    public boolean ownsRoom(String room) {
+        return Thread.currentThread() == shardOf(room).thread;
+    }
+
+    /**
+     * Obtiene el hilo dueño de una sala.
+     *
+     * @param room El nombre de la sala.
+     * @return El hilo de trabajo.
+     */
+    private Shard shardOf(String room) {
+        int hash = room.hashCode();
+        return shards[Math.floorMod(hash ^ (hash >>> 16), shards.length)];
+    }
+
+    /**
+     * Genera un resumen del reparto: tareas de cada hilo desde el último resumen, tareas en cola, reenviadas
+     * y desequilibrio (tareas del hilo más cargado respecto a la media; 1.00 es un reparto perfecto).
+     *
+     * @return Una cadena con las métricas de los hilos.
+     */
+    public String snapshot() {
+        StringBuilder tasks = new StringBuilder();
+        StringBuilder queued = new StringBuilder();
+        long total = 0;
+        long max = 0;
+        for (Shard shard : shards) {
+            long count = shard.tasks.sumThenReset();
+            total += count;
+            max = Math.max(max, count);
+            tasks.append(tasks.length() == 0 ? "" : ",").append(count);
+            queued.append(queued.length() == 0 ? "" : ",").append(shard.queue.size());
+        }
+        double imbalance = total == 0 ? 1.0 : (double) max * shards.length / total;
+        return String.format("room shards: tasks=[%s] queued=[%s] forwarded=%d imbalance=%.2f",
+                tasks, queued, forwarded.sum(), imbalance);
+    }
+
+    /**
+     * Detiene los hilos de trabajo. La tarea en curso de cada hilo termina, pero no se ejecutan las pendientes.
+     */
+    @Override
+    public void shutdown() {
+        running = false;
+        for (Shard shard : shards) {
+            shard.thread.interrupt();
+        }
+    }
+
+    /**
+     * Un hilo de trabajo con su cola de tareas.
+     */
+    private final class Shard {
+        private final BlockingQueue<Runnable> queue;  // Tareas pendientes, en orden de llegada
+        private final LongAdder tasks;  // Tareas ejecutadas desde el último resumen
+        private final Thread thread;  // Único hilo que ejecuta las tareas de la cola
+
+        private Shard(String name) {
+            this.queue = new LinkedBlockingQueue<>();
+            this.tasks = new LongAdder();
+            this.thread = new Thread(this::run, name);
+            this.thread.setDaemon(true);
+        }
+
+        /**
+         * Ejecuta las tareas de la cola hasta que se detiene el ejecutor.
+         */
+        private void run() {
+            while (running) {
+                Runnable task;
+                try {
+                    task = queue.take();
+                } catch (InterruptedException e) {
+                    break;
+                }
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    logger.log(Level.SEVERE, "Task on " + thread.getName() + " failed: " + e.getMessage(), e);
+                }
+                tasks.increment();
+            }
+            logger.log(Level.CONFIG, "{0} stopped", thread.getName());
+        }
+    }
+
+    /**
+     * El hilo asignado a un cliente y sus tareas pendientes. Solo se accede desde operaciones atómicas del mapa
+     * {@code lanes}.
+     */
+    private static final class Lane {
+        private final Shard shard;  // Hilo en el que se encolan las tareas del cliente
+        private int pending;  // Tareas encoladas que aún no han terminado
+
+        private Lane(Shard shard) {
+            this.shard = shard;
+        }
+    }
+}
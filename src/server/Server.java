@@ -25,8 +25,8 @@ public interface Server {
     void stop();
 
     /**
-     * Difunde un mensaje a todos los usuarios conectados.
-     * Este mensaje es enviado a todos los clientes registrados en el servidor,
+     * Difunde un mensaje a los usuarios de la sala de su autor.
+     * Este mensaje es enviado a todos los clientes de la sala,
      * excepto al remitente.
      *
      * @param message El mensaje que se enviará a los usuarios.
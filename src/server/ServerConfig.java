@@ -0,0 +1,496 @@
+package server;
+
+import common.data.MessageHistoryManager;
+import common.data.RoomManager;
+import common.reliability.ReliableEndpoint;
+import server.cluster.ClusterNode;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * La clase {@code ServerConfig} agrupa las opciones de arranque del servidor de chat.
+ * <p>
+ * Los valores se leen de un conjunto de propiedades ({@code chat.server.*}), normalmente las propiedades
+ * del sistema, para poder seleccionar el motor del servidor y sus parámetros sin recompilar la aplicación.
+ * Las propiedades ausentes o con valores no válidos toman su valor por defecto.
+ * </p>
+ */
+public class ServerConfig {
+    private static final Logger logger = Logger.getLogger(ServerConfig.class.getName());
+
+    /** Puerto por defecto en el que escucha el servidor. */
+    public static final int DEFAULT_PORT = 5000;
+
+    /**
+     * Motores de servidor disponibles.
+     */
+    public enum Engine {
+        /** Servidor clásico con un único hilo bloqueado en {@code DatagramSocket.receive()}. */
+        BLOCKING,
+        /** Servidor basado en {@code DatagramChannel} no bloqueante y un {@code Selector}. */
+        NIO,
+        /** Servidor con varios canales en el mismo puerto ({@code SO_REUSEPORT}), un hilo de recepción por canal. */
+        SHARDED,
+        /** Servidor organizado en etapas (recepción, decodificación, despacho y envío) unidas por colas acotadas. */
+        PIPELINE
+    }
+
+    /**
+     * Modos de ejecución de los comandos recibidos.
+     */
+    public enum CommandMode {
+        /** Los comandos se ejecutan en el hilo que recibe el mensaje. */
+        INLINE,
+        /** Cada comando se ejecuta en un hilo virtual, conservando el orden de los mensajes de cada cliente. */
+        VIRTUAL,
+        /** Cada mensaje se ejecuta en el hilo dueño de la sala del cliente; las salas se reparten por hash. */
+        ROOMS
+    }
+
+    private final int port;  // Puerto de escucha
+    private final Engine engine;  // Motor seleccionado
+    private final int shardCount;  // Número de canales de recepción del motor SHARDED
+    private final int nioQueueCapacity;  // Envíos pendientes por destinatario del motor NIO
+    private final int decoderThreads;  // Hilos de decodificación del motor PIPELINE
+    private final int dispatchThreads;  // Hilos de despacho del motor PIPELINE
+    private final int queueCapacity;  // Capacidad de cada cola entre etapas del motor PIPELINE
+    private final int egressBatchMicros;  // Ventana de agrupación de envíos del motor PIPELINE
+    private final int historyCapacity;  // Mensajes conservados en el historial
+    private final int loginHistoryTail;  // Mensajes del historial que recibe un usuario al conectarse
+    private final String journalDirectory;  // Directorio del diario del historial, vacío si no se persiste
+    private final int journalSegmentSize;  // Tamaño de cada segmento del diario en bytes
+    private final int journalSegments;  // Segmentos del diario que se conservan
+    private final int journalSyncMillis;  // Milisegundos entre sincronizaciones del diario con el disco
+    private final int metricsIntervalSeconds;  // Intervalo del informe de métricas, 0 para desactivarlo
+    private final CommandMode commandMode;  // Modo de ejecución de los comandos
+    private final int peerBacklog;  // Tramas fiables que pueden esperar a cada cliente
+    private final int batchWindowMillis;  // Ventana de agrupación de las tramas para cada cliente
+    private final int idleTimeoutMillis;  // Tiempo sin datagramas tras el que se expulsa a un cliente con latidos
+    private final int maxRooms;  // Número máximo de salas
+    private final int roomShards;  // Hilos entre los que se reparten las salas en el modo ROOMS
+    private final InetSocketAddress clusterBind;  // Dirección del clúster de este nodo, o null si no hay clúster
+    private final List<InetSocketAddress> clusterPeers;  // Direcciones del clúster de los demás nodos
+    private final int gossipMillis;  // Intervalo de presencia del clúster
+    private final InetSocketAddress multicastGroup;  // Grupo multicast de las salas, o null si no se publica en ninguno
+    private final int multicastTtl;  // Saltos que atraviesan los datagramas multicast
+    private final String multicastInterface;  // Interfaz de red del grupo multicast, vacía para la del sistema
+    private final int multicastSyncMillis;  // Intervalo entre balizas del grupo multicast
+
+    /**
+     * Constructor de la clase {@code ServerConfig}.
+     *
+     * @param properties Las propiedades de las que se leen las opciones.
+     */
+    public ServerConfig(Properties properties) {
+        this.port = readInt(properties, "chat.server.port", DEFAULT_PORT, 0);
+        this.engine = readEnum(properties, "chat.server.engine", Engine.class, Engine.BLOCKING);
+        this.shardCount = readInt(properties, "chat.server.shards", Runtime.getRuntime().availableProcessors(), 1);
+        this.nioQueueCapacity = readInt(properties, "chat.server.nio.queueCapacity", NioUDPServer.DEFAULT_QUEUE_CAPACITY, 1);
+        this.decoderThreads = readInt(properties, "chat.server.pipeline.decoders", 2, 1);
+        this.dispatchThreads = readInt(properties, "chat.server.pipeline.workers", Runtime.getRuntime().availableProcessors(), 1);
+        this.queueCapacity = readInt(properties, "chat.server.pipeline.queueCapacity", 4096, 2);
+        this.egressBatchMicros = readInt(properties, "chat.server.pipeline.egressBatchMicros", 20, 0);
+        this.historyCapacity = readInt(properties, "chat.server.history.capacity", MessageHistoryManager.DEFAULT_CAPACITY, 1);
+        this.loginHistoryTail = readInt(properties, "chat.server.history.loginTail", MessageHistoryManager.DEFAULT_CAPACITY, 0);
+        this.journalDirectory = properties.getProperty("chat.server.journal.dir", "").trim();
+        this.journalSegmentSize = readInt(properties, "chat.server.journal.segmentSize", 16 * 1024 * 1024, 4096);
+        this.journalSegments = readInt(properties, "chat.server.journal.segments", 4, 1);
+        this.journalSyncMillis = readInt(properties, "chat.server.journal.syncInterval", 1000, 1);
+        this.metricsIntervalSeconds = readInt(properties, "chat.server.metrics.interval", 0, 0);
+        this.commandMode = readEnum(properties, "chat.server.commands", CommandMode.class, CommandMode.INLINE);
+        this.peerBacklog = readInt(properties, "chat.server.peerBacklog", ReliableEndpoint.DEFAULT_BACKLOG_CAPACITY, 1);
+        this.batchWindowMillis = readInt(properties, "chat.server.batchWindow", FrameBatcher.DEFAULT_WINDOW_MILLIS, 0);
+        this.idleTimeoutMillis = readInt(properties, "chat.server.idleTimeout", SessionMonitor.DEFAULT_IDLE_TIMEOUT_MILLIS, 0);
+        this.maxRooms = readInt(properties, "chat.server.rooms.max", RoomManager.DEFAULT_MAX_ROOMS, 1);
+        this.roomShards = readInt(properties, "chat.server.rooms.shards", Runtime.getRuntime().availableProcessors(), 1);
+        List<InetSocketAddress> bind = readAddresses(properties, "chat.server.cluster.bind");
+        this.clusterBind = bind.isEmpty() ? null : bind.get(0);
+        this.clusterPeers = readAddresses(properties, "chat.server.cluster.peers");
+        this.gossipMillis = readInt(properties, "chat.server.cluster.gossipInterval", ClusterNode.DEFAULT_GOSSIP_MILLIS, 10);
+        List<InetSocketAddress> group = readAddresses(properties, "chat.server.multicast.group");
+        this.multicastGroup = group.isEmpty() || !group.get(0).getAddress().isMulticastAddress() ? null : group.get(0);
+        if (!group.isEmpty() && multicastGroup == null) {
+            logger.log(Level.WARNING, "{0} is not a multicast address, multicast fan-out disabled", group.get(0));
+        }
+        this.multicastTtl = readInt(properties, "chat.server.multicast.ttl", MulticastPublisher.DEFAULT_TTL, 0);
+        this.multicastInterface = properties.getProperty("chat.server.multicast.interface", "").trim();
+        this.multicastSyncMillis = readInt(properties, "chat.server.multicast.syncInterval", MulticastPublisher.DEFAULT_SYNC_MILLIS, 10);
+    }
+
+    /**
+     * Crea la configuración a partir de las propiedades del sistema.
+     * <ul>
+     *     <li>{@code chat.server.port}: puerto de escucha (por defecto {@value #DEFAULT_PORT}).</li>
+     *     <li>{@code chat.server.engine}: {@code blocking}, {@code nio}, {@code sharded} o {@code pipeline} (por defecto {@code blocking}).</li>
+     *     <li>{@code chat.server.shards}: canales de recepción del motor {@code sharded} (por defecto, uno por núcleo).</li>
+     *     <li>{@code chat.server.nio.queueCapacity}: envíos pendientes por destinatario del motor {@code nio} (por defecto {@value NioUDPServer#DEFAULT_QUEUE_CAPACITY}).</li>
+     *     <li>{@code chat.server.pipeline.decoders}: hilos de decodificación del motor {@code pipeline} (por defecto 2).</li>
+     *     <li>{@code chat.server.pipeline.workers}: hilos de despacho del motor {@code pipeline} (por defecto, uno por núcleo).</li>
+     *     <li>{@code chat.server.pipeline.queueCapacity}: capacidad de cada cola entre etapas (por defecto 4096).</li>
+     *     <li>{@code chat.server.pipeline.egressBatchMicros}: ventana de agrupación de envíos en microsegundos, 0 para no esperar (por defecto 20).</li>
+     *     <li>{@code chat.server.history.capacity}: mensajes conservados en el historial (por defecto {@value MessageHistoryManager#DEFAULT_CAPACITY}).</li>
+     *     <li>{@code chat.server.history.loginTail}: mensajes del historial que recibe un usuario al conectarse (por defecto {@value MessageHistoryManager#DEFAULT_CAPACITY}).</li>
+     *     <li>{@code chat.server.journal.dir}: directorio del diario del historial; sin valor el historial no se persiste.</li>
+     *     <li>{@code chat.server.journal.segmentSize}: tamaño de cada segmento del diario en bytes (por defecto 16 MiB).</li>
+     *     <li>{@code chat.server.journal.segments}: segmentos del diario que se conservan (por defecto 4).</li>
+     *     <li>{@code chat.server.journal.syncInterval}: milisegundos entre sincronizaciones del diario con el disco (por defecto 1000).</li>
+     *     <li>{@code chat.server.metrics.interval}: segundos entre informes de métricas, 0 para desactivarlos (por defecto 0, desactivados).</li>
+     *     <li>{@code chat.server.commands}: {@code inline}, {@code virtual} o {@code rooms} (por defecto {@code inline}).</li>
+     *     <li>{@code chat.server.peerBacklog}: tramas fiables que pueden esperar a cada cliente con la ventana llena (por defecto {@value ReliableEndpoint#DEFAULT_BACKLOG_CAPACITY}).</li>
+     *     <li>{@code chat.server.batchWindow}: milisegundos durante los que se agrupan las tramas para un mismo cliente, 0 para no agruparlas (por defecto {@value FrameBatcher#DEFAULT_WINDOW_MILLIS}).</li>
+     *     <li>{@code chat.server.idleTimeout}: milisegundos sin datagramas tras los que se expulsa a un cliente que envía latidos, 0 para no expulsarlo (por defecto {@value SessionMonitor#DEFAULT_IDLE_TIMEOUT_MILLIS}).</li>
+     *     <li>{@code chat.server.rooms.max}: número máximo de salas, incluida la sala por defecto (por defecto {@value RoomManager#DEFAULT_MAX_ROOMS}).</li>
+     *     <li>{@code chat.server.rooms.shards}: hilos entre los que se reparten las salas con {@code chat.server.commands=rooms} (por defecto, uno por núcleo).</li>
+     *     <li>{@code chat.server.cluster.bind}: {@code host:puerto} del socket del clúster de este nodo; sin valor el servidor funciona solo.</li>
+     *     <li>{@code chat.server.cluster.peers}: {@code host:puerto} del clúster de los demás nodos, separados por comas.</li>
+     *     <li>{@code chat.server.cluster.gossipInterval}: milisegundos entre anuncios de presencia del clúster (por defecto {@value ClusterNode#DEFAULT_GOSSIP_MILLIS}).</li>
+     *     <li>{@code chat.server.multicast.group}: {@code ip:puerto} del grupo multicast en el que se publican las salas; sin valor solo se usa unicast.</li>
+     *     <li>{@code chat.server.multicast.ttl}: saltos que atraviesan los datagramas multicast (por defecto {@value MulticastPublisher#DEFAULT_TTL}).</li>
+     *     <li>{@code chat.server.multicast.interface}: nombre de la interfaz de red del grupo multicast; sin valor, la del sistema.</li>
+     *     <li>{@code chat.server.multicast.syncInterval}: milisegundos entre balizas del grupo multicast (por defecto {@value MulticastPublisher#DEFAULT_SYNC_MILLIS}).</li>
+     * </ul>
+     *
+     * @return La configuración leída.
+     */
+    public static ServerConfig fromSystemProperties() {
+        return new ServerConfig(System.getProperties());
+    }
+
+    /**
+     * Lee una propiedad entera. Si no existe, no es un número o es menor que el mínimo, se usa el valor por defecto.
+     *
+     * @param properties Las propiedades.
+     * @param name El nombre de la propiedad.
+     * @param defaultValue El valor por defecto.
+     * @param min El valor mínimo admitido.
+     * @return El valor leído.
+     */
+    private static int readInt(Properties properties, String name, int defaultValue, int min) {
+        String value = properties.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int parsed = Integer.parseInt(value.trim());
+            if (parsed >= min) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // Se registra a continuación junto con los valores fuera de rango
+        }
+        logger.log(Level.WARNING, "Invalid value {0} for {1}, using {2}", new Object[]{value, name, String.valueOf(defaultValue)});
+        return defaultValue;
+    }
+
+    /**
+     * Lee una propiedad cuyo valor es una lista de direcciones {@code host:puerto} separadas por comas.
+     * Las direcciones no válidas se registran y se ignoran.
+     *
+     * @param properties Las propiedades.
+     * @param name El nombre de la propiedad.
+     * @return Las direcciones, vacía si la propiedad no existe.
+     */
+    private static List<InetSocketAddress> readAddresses(Properties properties, String name) {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (String value : properties.getProperty(name, "").split(",")) {
+            value = value.trim();
+            if (value.isEmpty()) {
+                continue;
+            }
+            int colon = value.lastIndexOf(':');
+            try {
+                InetSocketAddress address = new InetSocketAddress(value.substring(0, colon), Integer.parseInt(value.substring(colon + 1)));
+                if (!address.isUnresolved()) {
+                    addresses.add(address);
+                    continue;
+                }
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                // Se registra a continuación junto con los nombres que no se resuelven
+            }
+            logger.log(Level.WARNING, "Invalid address {0} for {1}, ignoring it", new Object[]{value, name});
+        }
+        return addresses;
+    }
+
+    /**
+     * Lee una propiedad cuyo valor es una constante de un enumerado, sin distinguir mayúsculas.
+     * Si no existe o no es válida, se usa el valor por defecto.
+     *
+     * @param properties Las propiedades.
+     * @param name El nombre de la propiedad.
+     * @param type La clase del enumerado.
+     * @param defaultValue El valor por defecto.
+     * @param <E> El tipo del enumerado.
+     * @return El valor leído.
+     */
+    private static <E extends Enum<E>> E readEnum(Properties properties, String name, Class<E> type, E defaultValue) {
+        String value = properties.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Enum.valueOf(type, value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            logger.log(Level.WARNING, "Invalid value {0} for {1}, using {2}", new Object[]{value, name, defaultValue});
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Obtiene el puerto de escucha.
+     *
+     * @return El puerto.
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Obtiene el motor de servidor seleccionado.
+     *
+     * @return El motor.
+     */
+    public Engine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Obtiene el número de canales de recepción del motor {@link Engine#SHARDED}.
+     *
+     * @return El número de shards.
+     */
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * Obtiene el número de hilos de decodificación del motor {@link Engine#PIPELINE}.
+     *
+     * @return Los hilos de decodificación.
+     */
+    public int getDecoderThreads() {
+        return decoderThreads;
+    }
+
+    /**
+     * Obtiene el número de hilos de despacho del motor {@link Engine#PIPELINE}.
+     *
+     * @return Los hilos de despacho.
+     */
+    public int getDispatchThreads() {
+        return dispatchThreads;
+    }
+
+    /**
+     * Obtiene el número máximo de envíos pendientes por destinatario del motor {@link Engine#NIO}.
+     *
+     * @return La capacidad de la cola de cada destinatario.
+     */
+    public int getNioQueueCapacity() {
+        return nioQueueCapacity;
+    }
+
+    /**
+     * Obtiene la capacidad de cada cola entre etapas del motor {@link Engine#PIPELINE}.
+     *
+     * @return La capacidad de cola.
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Obtiene la ventana durante la que el motor {@link Engine#PIPELINE} agrupa los envíos.
+     *
+     * @return La ventana en microsegundos, o 0 si los envíos no esperan.
+     */
+    public int getEgressBatchMicros() {
+        return egressBatchMicros;
+    }
+
+    /**
+     * Obtiene el número de mensajes que conserva el historial.
+     *
+     * @return La capacidad del historial.
+     */
+    public int getHistoryCapacity() {
+        return historyCapacity;
+    }
+
+    /**
+     * Obtiene el número de mensajes del historial que recibe un usuario al conectarse.
+     *
+     * @return Los mensajes enviados al conectarse.
+     */
+    public int getLoginHistoryTail() {
+        return loginHistoryTail;
+    }
+
+    /**
+     * Obtiene el directorio del diario del historial.
+     *
+     * @return El directorio, o una cadena vacía si el historial no se persiste.
+     */
+    public String getJournalDirectory() {
+        return journalDirectory;
+    }
+
+    /**
+     * Obtiene el tamaño de cada segmento del diario.
+     *
+     * @return El tamaño en bytes.
+     */
+    public int getJournalSegmentSize() {
+        return journalSegmentSize;
+    }
+
+    /**
+     * Obtiene el número de segmentos del diario que se conservan.
+     *
+     * @return Los segmentos conservados.
+     */
+    public int getJournalSegments() {
+        return journalSegments;
+    }
+
+    /**
+     * Obtiene el intervalo entre sincronizaciones del diario con el disco.
+     *
+     * @return El intervalo en milisegundos.
+     */
+    public int getJournalSyncMillis() {
+        return journalSyncMillis;
+    }
+
+    /**
+     * Obtiene el intervalo entre informes de métricas.
+     *
+     * @return El intervalo en segundos, o 0 si los informes están desactivados.
+     */
+    public int getMetricsIntervalSeconds() {
+        return metricsIntervalSeconds;
+    }
+
+    /**
+     * Obtiene el modo de ejecución de los comandos.
+     *
+     * @return El modo de ejecución.
+     */
+    public CommandMode getCommandMode() {
+        return commandMode;
+    }
+
+    /**
+     * Obtiene cuántas tramas fiables pueden esperar a cada cliente cuando su ventana de envío está llena.
+     *
+     * @return El número de tramas.
+     */
+    public int getPeerBacklog() {
+        return peerBacklog;
+    }
+
+    /**
+     * Obtiene durante cuántos milisegundos se agrupan las tramas para un mismo cliente.
+     *
+     * @return La duración de la ventana, 0 si no se agrupan.
+     */
+    public int getBatchWindowMillis() {
+        return batchWindowMillis;
+    }
+
+    /**
+     * Obtiene el tiempo sin datagramas tras el que se expulsa a un cliente que envía latidos.
+     *
+     * @return El tiempo en milisegundos, o 0 si no se expulsa a nadie.
+     */
+    public int getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    /**
+     * Obtiene el número máximo de salas, incluida la sala por defecto.
+     *
+     * @return El número de salas.
+     */
+    public int getMaxRooms() {
+        return maxRooms;
+    }
+
+    /**
+     * Obtiene el número de hilos entre los que se reparten las salas en el modo {@link CommandMode#ROOMS}.
+     *
+     * @return El número de hilos.
+     */
+    public int getRoomShards() {
+        return roomShards;
+    }
+
+    /**
+     * Obtiene la dirección del socket del clúster de este nodo.
+     *
+     * @return La dirección, o {@code null} si el servidor funciona solo.
+     */
+    public InetSocketAddress getClusterBind() {
+        return clusterBind;
+    }
+
+    /**
+     * Obtiene las direcciones del clúster de los demás nodos.
+     *
+     * @return Las direcciones.
+     */
+    public List<InetSocketAddress> getClusterPeers() {
+        return clusterPeers;
+    }
+
+    /**
+     * Obtiene el intervalo de presencia del clúster.
+     *
+     * @return El intervalo en milisegundos.
+     */
+    public int getGossipMillis() {
+        return gossipMillis;
+    }
+
+    /**
+     * Obtiene el grupo multicast en el que se publican las salas.
+     *
+     * @return El grupo, o {@code null} si solo se usa unicast.
+     */
+    public InetSocketAddress getMulticastGroup() {
+        return multicastGroup;
+    }
+
+    /**
+     * Obtiene los saltos que atraviesan los datagramas multicast.
+     *
+     * @return El TTL.
+     */
+    public int getMulticastTtl() {
+        return multicastTtl;
+    }
+
+    /**
+     * Obtiene el nombre de la interfaz de red del grupo multicast.
+     *
+     * @return El nombre, o una cadena vacía para usar la del sistema.
+     */
+    public String getMulticastInterface() {
+        return multicastInterface;
+    }
+
+    /**
+     * Obtiene el intervalo entre balizas del grupo multicast.
+     *
+     * @return El intervalo en milisegundos.
+     */
+    public int getMulticastSyncMillis() {
+        return multicastSyncMillis;
+    }
+}
@@ -0,0 +1,141 @@
+package server;
+
+import common.data.MessageHistoryManager;
+import common.data.MessageJournal;
+import server.cluster.ClusterNode;
+import server.pipeline.PipelinedUDPServer;
+
+import java.io.IOException;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Punto de entrada del servidor de chat.
+ * Crea el motor de servidor indicado en {@link ServerConfig} y lo pone en marcha.
+ */
+public class ServerLauncher {
+    private static final Logger logger = Logger.getLogger(ServerLauncher.class.getName());
+    private static final String ROOMS_DIRECTORY = "rooms";  // Subdirectorio del diario con un diario por sala
+
+    /**
+     * Método principal. Acepta opcionalmente el puerto como primer argumento.
+     *
+     * @param args Argumentos de la línea de comandos.
+     */
+    public static void main(String[] args) {
+        Properties properties = new Properties(System.getProperties());
+        if (args.length > 0) {
+            properties.setProperty("chat.server.port", args[0]);  // El argumento tiene prioridad sobre la propiedad
+        }
+        ServerConfig config = new ServerConfig(properties);
+
+        Server server = createServer(config);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop));  // Cierra el socket al terminar el proceso
+        server.start();
+    }
+
+    /**
+     * Crea el servidor correspondiente al motor configurado.
+     *
+     * @param config La configuración del servidor.
+     * @return El servidor creado, sin iniciar.
+     */
+    public static Server createServer(ServerConfig config) {
+        logger.log(Level.INFO, "Creating {0} server on port {1}", new Object[]{config.getEngine(), String.valueOf(config.getPort())});
+        AbstractUDPServer server = createEngine(config);
+        if (config.getJournalDirectory().isEmpty()) {
+            server.setMessageHistoryManager(new MessageHistoryManager(config.getHistoryCapacity()));
+        } else {
+            Path directory = Paths.get(config.getJournalDirectory());
+            server.setMessageHistoryManager(createHistory(config, directory));
+            server.setRoomHistoryFactory(room -> createHistory(config, directory.resolve(ROOMS_DIRECTORY).resolve(room)));
+        }
+        server.setLoginHistoryTail(config.getLoginHistoryTail());
+        server.setMetricsInterval(config.getMetricsIntervalSeconds());
+        server.setPeerBacklog(config.getPeerBacklog());
+        server.setBatchWindow(config.getBatchWindowMillis());
+        server.setIdleTimeout(config.getIdleTimeoutMillis());
+        server.setMaxRooms(config.getMaxRooms());
+        if (config.getCommandMode() == ServerConfig.CommandMode.VIRTUAL) {
+            server.setCommandExecutor(new PeerOrderedExecutor());
+        } else if (config.getCommandMode() == ServerConfig.CommandMode.ROOMS) {
+            server.setRoomShards(config.getRoomShards());
+        }
+        if (config.getClusterBind() != null) {
+            server.setCluster(new ClusterNode(config.getClusterBind(), config.getClusterPeers(), config.getGossipMillis()));
+        }
+        if (config.getMulticastGroup() != null) {
+            server.setMulticast(new MulticastPublisher(config.getMulticastGroup(), config.getMulticastTtl(),
+                    findInterface(config.getMulticastInterface()), config.getMulticastSyncMillis()));
+        }
+        return server;
+    }
+
+    /**
+     * Busca una interfaz de red por su nombre. Si no existe, se registra y se usa la del sistema.
+     *
+     * @param name El nombre de la interfaz, o una cadena vacía para usar la del sistema.
+     * @return La interfaz, o {@code null} para usar la del sistema.
+     */
+    private static NetworkInterface findInterface(String name) {
+        if (name.isEmpty()) {
+            return null;
+        }
+        try {
+            NetworkInterface networkInterface = NetworkInterface.getByName(name);
+            if (networkInterface != null) {
+                return networkInterface;
+            }
+        } catch (SocketException e) {
+            // Se registra a continuación junto con las interfaces que no existen
+        }
+        logger.log(Level.WARNING, "Network interface {0} not found, using the system default", name);
+        return null;
+    }
+
+    /**
+     * Crea el historial de mensajes de una sala, respaldado por un diario en disco en el directorio indicado, del
+     * que reconstruye los mensajes conservados. Si el diario no puede abrirse, el historial solo se mantiene en
+     * memoria.
+     *
+     * @param config La configuración del servidor.
+     * @param directory El directorio del diario de la sala.
+     * @return El historial creado.
+     */
+    private static MessageHistoryManager createHistory(ServerConfig config, Path directory) {
+        try {
+            MessageJournal journal = new MessageJournal(directory, config.getJournalSegmentSize(),
+                    config.getJournalSegments(), config.getJournalSyncMillis());
+            return new MessageHistoryManager(config.getHistoryCapacity(), journal);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Failed to open message journal, history will not persist: {0}", e.getMessage());
+            return new MessageHistoryManager(config.getHistoryCapacity());
+        }
+    }
+
+    /**
+     * Crea el motor de servidor configurado.
+     *
+     * @param config La configuración del servidor.
+     * @return El motor creado.
+     */
+    private static AbstractUDPServer createEngine(ServerConfig config) {
+        switch (config.getEngine()) {
+            case NIO:
+                return new NioUDPServer(config.getPort(), config.getNioQueueCapacity());
+            case SHARDED:
+                return new ShardedUDPServer(config.getPort(), config.getShardCount());
+            case PIPELINE:
+                return new PipelinedUDPServer(config.getPort(), config.getDecoderThreads(), config.getDispatchThreads(),
+                        config.getQueueCapacity(), config.getEgressBatchMicros());
+            case BLOCKING:
+            default:
+                return new UDPServer(config.getPort());
+        }
+    }
+}
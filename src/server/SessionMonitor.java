@@ -0,0 +1,132 @@
+package server;
+
+import common.timer.TimerWheel;
+
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * La clase {@code SessionMonitor} detecta los clientes que han dejado de enviar datagramas y los expulsa.
+ * <p>
+ * Cada cliente vigilado tiene un único plazo en la {@link TimerWheel} del servidor. Recibir un datagrama no
+ * reprograma el plazo, solo anota el instante; cuando el plazo vence, si el cliente ha enviado algo desde
+ * entonces se vuelve a programar por el tiempo que le queda, y si no se expulsa. Así, cada datagrama cuesta
+ * una escritura y cada cliente como mucho un plazo por intervalo de inactividad, sin recorrer todas las sesiones.
+ * </p>
+ * <p>
+ * Solo se vigilan los clientes que envían latidos ({@link common.protocol.FrameCodec#FLAG_SENDS_HEARTBEATS}),
+ * desde que inician sesión hasta que se desconectan o se expulsan; los de texto y los binarios anteriores no
+ * avisan de que siguen vivos cuando no escriben, por lo que nunca se expulsan. Los datagramas de un cliente que
+ * no se vigila no crean ninguna sesión, así que un cliente expulsado no vuelve a vigilarse hasta que inicia
+ * sesión de nuevo. Es segura para varios hilos.
+ * </p>
+ */
+public class SessionMonitor {
+
+    /** Tiempo sin datagramas tras el que se expulsa a un cliente por defecto, en milisegundos. */
+    public static final int DEFAULT_IDLE_TIMEOUT_MILLIS = 30000;
+
+    private final TimerWheel timers;  // Rueda en la que se programan los plazos
+    private final long idleNanos;  // Tiempo sin datagramas tras el que se expulsa a un cliente
+    private final Consumer<InetSocketAddress> evict;  // Expulsión de un cliente inactivo
+    private final Map<InetSocketAddress, Session> sessions;  // Sesión de cada cliente vigilado
+    private final LongAdder evicted;  // Clientes expulsados por inactividad
+
+    /**
+     * Constructor de la clase {@code SessionMonitor}.
+     *
+     * @param timers La rueda en la que se programan los plazos.
+     * @param idleMillis El tiempo sin datagramas tras el que se expulsa a un cliente, en milisegundos.
+     * @param evict La expulsión de un cliente inactivo, que se ejecuta en el hilo de la rueda.
+     */
+    public SessionMonitor(TimerWheel timers, long idleMillis, Consumer<InetSocketAddress> evict) {
+        this.timers = timers;
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+        this.evict = evict;
+        this.sessions = new ConcurrentHashMap<>();
+        this.evicted = new LongAdder();
+    }
+
+    /**
+     * Empieza a vigilar a un cliente que acaba de iniciar sesión. No hace nada si ya se vigilaba.
+     *
+     * @param address La dirección del cliente.
+     */
+    public void watch(InetSocketAddress address) {
+        sessions.computeIfAbsent(address, key -> {
+            Session created = new Session(key);
+            created.timeout = timers.schedule(() -> check(created), idleNanos, TimeUnit.NANOSECONDS);
+            return created;
+        });
+    }
+
+    /**
+     * Anota que se ha recibido un datagrama de un cliente, si se vigila.
+     *
+     * @param address La dirección del cliente.
+     */
+    public void touch(InetSocketAddress address) {
+        Session session = sessions.get(address);
+        if (session != null) {
+            session.lastSeen = System.nanoTime();
+        }
+    }
+
+    /**
+     * Comprueba una sesión cuyo plazo ha vencido: la reprograma si el cliente ha enviado algo durante el plazo
+     * y la expulsa si no.
+     *
+     * @param session La sesión.
+     */
+    private void check(Session session) {
+        long idle = System.nanoTime() - session.lastSeen;
+        if (idle < idleNanos) {
+            session.timeout = timers.schedule(() -> check(session), idleNanos - idle, TimeUnit.NANOSECONDS);
+            return;
+        }
+        if (sessions.remove(session.address, session)) {
+            evicted.increment();
+            evict.accept(session.address);
+        }
+    }
+
+    /**
+     * Deja de vigilar a un cliente que se ha desconectado.
+     *
+     * @param address La dirección del cliente.
+     */
+    public void forget(InetSocketAddress address) {
+        Session session = sessions.remove(address);
+        if (session != null) {
+            session.timeout.cancel();
+        }
+    }
+
+    /**
+     * Resume las sesiones vigiladas y las expulsiones para el informe periódico de métricas.
+     *
+     * @return El resumen en una línea.
+     */
+    public String snapshot() {
+        return String.format("sessions: watched=%d evicted=%d idleTimeout=%dms",
+                sessions.size(), evicted.sum(), TimeUnit.NANOSECONDS.toMillis(idleNanos));
+    }
+
+    /**
+     * La sesión de un cliente vigilado.
+     */
+    private static final class Session {
+        private final InetSocketAddress address;  // Dirección del cliente
+        private volatile long lastSeen;  // Instante del último datagrama recibido
+        private volatile TimerWheel.Timeout timeout;  // Plazo en curso
+
+        private Session(InetSocketAddress address) {
+            this.address = address;
+            this.lastSeen = System.nanoTime();
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package server;
+
+import common.socket.UDPSocketCommunication;
+import common.socket.UDPUtil;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Implementación de un servidor UDP que reparte la recepción entre varios núcleos.
+ * <p>
+ * Abre varios {@link DatagramChannel} enlazados al mismo puerto con {@code SO_REUSEPORT}. El núcleo del sistema
+ * reparte los datagramas entre los canales según la dirección de origen, por lo que todos los mensajes de un mismo
+ * cliente llegan siempre al mismo shard y conservan su orden. Cada shard tiene su propio hilo de recepción y su
+ * propio buffer; el estado compartido ({@code UserManager} y {@code MessageHistoryManager}) es seguro para hilos.
+ * </p>
+ */
+public class ShardedUDPServer extends AbstractUDPServer {
+    private static final Logger logger = Logger.getLogger(ShardedUDPServer.class.getName());
+    private static final int BUFFER_SIZE = UDPSocketCommunication.MAX_DATAGRAM_SIZE;  // Cabe cualquier datagrama, sin truncarlo
+
+    private final int shardCount;  // Número de shards solicitados
+    private final List<Shard> shards;  // Shards abiertos
+    private final ThreadLocal<Shard> currentShard;  // Shard que atiende el hilo actual, para responder por su canal
+
+    /**
+     * Constructor del servidor UDP con shards.
+     *
+     * @param port El puerto en el que el servidor escuchará las conexiones.
+     * @param shardCount El número de canales de recepción a abrir sobre el puerto.
+     */
+    public ShardedUDPServer(int port, int shardCount) {
+        super(port);
+        this.shardCount = Math.max(1, shardCount);
+        this.shards = new ArrayList<>();
+        this.currentShard = new ThreadLocal<>();
+    }
+
+    /**
+     * Abre un canal por shard sobre el mismo puerto. Si la plataforma no admite {@code SO_REUSEPORT}
+     * se abre un único canal.
+     *
+     * @return El socket del primer shard, usado por los comandos.
+     * @throws IOException Si ocurre un error al abrir los canales.
+     */
+    @Override
+    protected DatagramSocket openSocket() throws IOException {
+        boolean reusePort = UDPUtil.isReusePortSupported();
+        int count = shardCount;
+        if (!reusePort && count > 1) {
+            logger.log(Level.WARNING, "SO_REUSEPORT not supported, falling back to a single shard");
+            count = 1;
+        }
+
+        try {
+            for (int i = 0; i < count; i++) {
+                shards.add(new Shard(i, UDPUtil.openChannel(port, true, reusePort)));
+            }
+        } catch (IOException e) {
+            closeShards();
+            throw e;
+        }
+        logger.log(Level.INFO, "Opened {0} receive shards on port {1}", new Object[]{shards.size(), String.valueOf(port)});
+        return shards.get(0).channel.socket();
+    }
+
+    /**
+     * Inicia un hilo de recepción por shard adicional y ejecuta el primer shard en el hilo actual.
+     * El método retorna cuando todos los shards han terminado.
+     */
+    @Override
+    public void listen() {
+        List<Thread> threads = new ArrayList<>();
+        for (Shard shard : shards.subList(1, shards.size())) {
+            Thread thread = new Thread(shard::receiveLoop, "udp-shard-" + shard.id);
+            thread.start();
+            threads.add(thread);
+        }
+
+        shards.get(0).receiveLoop();
+
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        logger.log(Level.INFO, "Server stopped listening.");
+    }
+
+    /**
+     * Codifica un mensaje de difusión en un buffer directo de solo lectura, compartido por todos los destinatarios.
+     *
+     * @param payload Los bytes del mensaje.
+     * @return El buffer directo con el mensaje codificado.
+     */
+    @Override
+    protected ByteBuffer encodeBroadcast(byte[] payload) {
+        return UDPUtil.toSharedDirectBuffer(payload);
+    }
+
+    /**
+     * Envía un mensaje codificado a un cliente específico. Si el hilo actual pertenece a un shard se responde
+     * por su canal; en otro caso se usa el primer shard. Todos los canales comparten el puerto de origen.
+     *
+     * @param payload El mensaje codificado.
+     * @param clientAddress La dirección del cliente al que se enviará el mensaje.
+     * @throws IOException Si ocurre un error al enviar el mensaje.
+     */
+    @Override
+    protected void sendEncoded(ByteBuffer payload, InetSocketAddress clientAddress) throws IOException {
+        Shard shard = currentShard.get();
+        DatagramChannel channel = (shard != null ? shard : shards.get(0)).channel;
+        UDPSocketCommunication.send(channel, payload.duplicate(), clientAddress);  // La vista evita modificar la posición del buffer compartido
+    }
+
+    /**
+     * Detiene el servidor cerrando todos los canales, lo que desbloquea a los hilos de recepción.
+     */
+    @Override
+    public void stop() {
+        super.stop();
+        closeShards();
+    }
+
+    /**
+     * Cierra los canales de todos los shards.
+     */
+    private void closeShards() {
+        for (Shard shard : shards) {
+            try {
+                shard.channel.close();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Error closing shard {0}: {1}", new Object[]{shard.id, e.getMessage()});
+            }
+        }
+    }
+
+    /**
+     * Un shard de recepción: un canal bloqueante enlazado al puerto compartido y su buffer de recepción.
+     */
+    private final class Shard {
+        private final int id;  // Identificador del shard
+        private final DatagramChannel channel;  // Canal propio del shard
+        private final ByteBuffer receiveBuffer;  // Buffer directo reutilizado en cada recepción
+        private final byte[] receiveBytes;  // Copia en heap del datagrama para decodificarlo
+
+        /**
+         * Constructor de un shard.
+         *
+         * @param id El identificador del shard.
+         * @param channel El canal del shard.
+         */
+        private Shard(int id, DatagramChannel channel) {
+            this.id = id;
+            this.channel = channel;
+            this.receiveBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            this.receiveBytes = new byte[BUFFER_SIZE];
+        }
+
+        /**
+         * Bucle de recepción del shard. Recibe y despacha datagramas mientras el servidor esté en ejecución.
+         */
+        private void receiveLoop() {
+            currentShard.set(this);
+            try {
+                while (isRunning.get()) {
+                    SocketAddress source = channel.receive(receiveBuffer);
+                    receiveBuffer.flip();
+                    int length = receiveBuffer.remaining();
+                    receiveBuffer.get(receiveBytes, 0, length);
+                    receiveBuffer.clear();
+
+                    InetSocketAddress clientAddress = (InetSocketAddress) source;
+                    logger.log(Level.FINE, "Shard {0} received {1} bytes from {2}", new Object[]{id, length, clientAddress});
+                    try {
+                        handleDatagram(receiveBytes, 0, length, clientAddress);
+                    } catch (IOException e) {
+                        logger.log(Level.SEVERE, "Error handling message from {0}: {1}", new Object[]{clientAddress, e.getMessage()});
+                    }
+                }
+            } catch (ClosedChannelException e) {
+                logger.log(Level.CONFIG, "Shard {0} channel closed", id);
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Error receiving message on shard {0}: {1}", new Object[]{id, e.getMessage()});
+            } finally {
+                currentShard.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,756 @@
+package server.cluster;
+
+import common.command.commands.PrivateMessageCommand;
+import common.data.Room;
+import common.model.Message;
+import common.model.User;
+import common.protocol.Frame;
+import common.protocol.FrameCodec;
+import common.reliability.ReliableEndpoint;
+import common.socket.UDPSocketCommunication;
+import common.timer.TimerWheel;
+import server.AbstractUDPServer;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * La clase {@code ClusterNode} conecta un servidor con los demás nodos de un clúster, para que los usuarios
+ * conectados a nodos distintos compartan salas, mensajes privados y nombres.
+ * <p>
+ * Cada usuario está conectado a un solo nodo, que es el que le envía sus mensajes. Los nodos se comunican por un
+ * socket UDP propio con tramas de {@link FrameCodec}:
+ * </p>
+ * <ul>
+ *     <li><b>Presencia</b>: cada nodo difunde periódicamente a los demás sus usuarios y las salas en las que
+ *     tiene miembros, repartidos en páginas que caben en la MTU. Entre dos presencias completas, cada alta, baja
+ *     o cambio de sala se anuncia con un cambio que solo lleva ese usuario. Un nodo del que no llega presencia
+ *     durante {@value #SUSPECT_INTERVALS} intervalos sale del clúster y se olvidan sus usuarios.</li>
+ *     <li><b>Difusión</b>: un mensaje de una sala se reenvía una vez a cada nodo con miembros en ella, que lo
+ *     difunde a sus miembros locales sin volver a reenviarlo.</li>
+ *     <li><b>Mensajes privados</b>: se reenvían al nodo del destinatario según la presencia. Si aún no se conoce,
+ *     se envían al nodo dueño del nombre, que los reenvía una vez al nodo del usuario.</li>
+ *     <li><b>Nombres</b>: un {@link ConsistentHashRing} asigna cada nombre de usuario a un nodo dueño, que
+ *     registra en qué nodo está conectado. Si dos nodos aceptan a la vez el mismo nombre, el dueño rechaza
+ *     al segundo, que desconecta a su usuario.</li>
+ * </ul>
+ * <p>
+ * Los reenvíos, el registro de nombres y los cambios de presencia usan la entrega fiable de
+ * {@link ReliableEndpoint}; la presencia completa se envía sin confirmación, ya que se repite en cada intervalo.
+ * Cada presencia completa tiene una generación mayor que la anterior, también entre arranques del nodo, y los
+ * cambios llevan la de la última enviada: al completar las páginas de una generación, el receptor olvida los
+ * usuarios de los que no ha sabido nada desde la generación anterior, sin perder las altas que se hayan
+ * cruzado con las páginas.
+ * </p>
+ */
+public class ClusterNode {
+    private static final Logger logger = Logger.getLogger(ClusterNode.class.getName());
+
+    /**
+     * Página de la presencia completa de un nodo: su identificador, la generación, el número de página, el total
+     * de páginas, una parte de sus usuarios y, solo en la primera página, las salas en las que tiene miembros.
+     */
+    public static final byte OP_PRESENCE = 0x40;
+
+    /** Mensaje de una sala: sala, autor y texto. */
+    public static final byte OP_ROOM = 0x41;
+
+    /** Mensaje privado: destinatario, autor, texto y número de reenvíos. */
+    public static final byte OP_PRIVATE = 0x42;
+
+    /** Registro de un nombre en su nodo dueño: nombre y nodo en el que está conectado. */
+    public static final byte OP_CLAIM = 0x43;
+
+    /** Rechazo de un nombre que ya está conectado en otro nodo. */
+    public static final byte OP_REJECT = 0x44;
+
+    /** Baja de un nombre en su nodo dueño: nombre y nodo en el que estaba conectado. */
+    public static final byte OP_RELEASE = 0x45;
+
+    /** Respuesta a un mensaje privado cuyo destinatario no está conectado: destinatario y autor. */
+    public static final byte OP_NOT_FOUND = 0x46;
+
+    /**
+     * Cambio de la presencia de un nodo: su identificador, la generación de su última presencia completa, los
+     * usuarios que se han conectado, los que se han desconectado y todas las salas en las que tiene miembros.
+     */
+    public static final byte OP_PRESENCE_DELTA = 0x47;
+
+    /** Intervalo de presencia por defecto, en milisegundos. */
+    public static final int DEFAULT_GOSSIP_MILLIS = 1000;
+
+    /** Intervalos sin presencia tras los que un nodo sale del clúster. */
+    public static final int SUSPECT_INTERVALS = 3;
+
+    private static final String SEPARATOR = "\n";  // Separador de las listas de usuarios y salas de la presencia
+
+    private static final int PRESENCE_FIELDS = 6;  // Campos de cada página de la presencia
+
+    private static final int MAX_NUMBER_LENGTH = 20;  // Caracteres de un número de la presencia (generación y páginas)
+
+    private final InetSocketAddress bindAddress;  // Dirección del socket del clúster de este nodo
+    private final String selfId;  // Identificador de este nodo en el clúster
+    private final List<InetSocketAddress> seeds;  // Nodos configurados, a los que se envía la presencia
+    private final long gossipMillis;  // Intervalo de presencia
+    private final Map<InetSocketAddress, Peer> peers;  // Nodos vivos por dirección
+    private final Map<String, Peer> peersById;  // Nodos vivos por identificador
+    private final Map<String, Peer> remoteUsers;  // Nodo de cada usuario conectado a otro nodo
+    private final Map<String, String> homeDirectory;  // Nodo de cada usuario cuyo nombre pertenece a este nodo
+    private final Object membershipLock;  // Serializa los cambios de nodos y de presencia
+    private final LongAdder relayedOut;  // Mensajes reenviados a otros nodos
+    private final LongAdder relayedIn;  // Mensajes recibidos de otros nodos
+    private final LongAdder rejected;  // Nombres rechazados por estar conectados en otro nodo
+    private final AtomicLong generation;  // Generación de la última presencia completa enviada
+    private volatile ConsistentHashRing ring;  // Dueño de cada nombre entre los nodos vivos
+    private volatile boolean running;
+    private AbstractUDPServer server;  // Servidor local
+    private DatagramSocket socket;  // Socket del clúster
+    private TimerWheel timers;  // Presencia periódica y retransmisiones
+    private ReliableEndpoint reliability;  // Entrega fiable de reenvíos y registros
+
+    /**
+     * Constructor de la clase {@code ClusterNode}.
+     *
+     * @param bindAddress La dirección del socket del clúster de este nodo, que también lo identifica.
+     * @param seeds Las direcciones del clúster de los demás nodos.
+     * @param gossipMillis El intervalo de presencia en milisegundos.
+     */
+    public ClusterNode(InetSocketAddress bindAddress, List<InetSocketAddress> seeds, long gossipMillis) {
+        this.bindAddress = bindAddress;
+        this.selfId = idOf(bindAddress);
+        this.seeds = List.copyOf(seeds);
+        this.gossipMillis = gossipMillis;
+        this.peers = new ConcurrentHashMap<>();
+        this.peersById = new ConcurrentHashMap<>();
+        this.remoteUsers = new ConcurrentHashMap<>();
+        this.homeDirectory = new ConcurrentHashMap<>();
+        this.membershipLock = new Object();
+        this.relayedOut = new LongAdder();
+        this.relayedIn = new LongAdder();
+        this.rejected = new LongAdder();
+        this.generation = new AtomicLong(System.currentTimeMillis());  // Mayor que la de un arranque anterior
+        this.ring = new ConsistentHashRing(List.of(selfId));
+    }
+
+    /**
+     * Abre el socket del clúster y empieza a recibir y a enviar la presencia.
+     *
+     * @param server El servidor local.
+     * @throws SocketException Si no se puede abrir el socket.
+     */
+    public void start(AbstractUDPServer server) throws SocketException {
+        this.server = server;
+        this.socket = new DatagramSocket(bindAddress);
+        this.timers = new TimerWheel("cluster-timers");
+        this.reliability = new ReliableEndpoint(timers, this::sendDatagram);
+        this.running = true;
+        Thread receiver = new Thread(this::receiveLoop, "cluster-receiver");
+        receiver.setDaemon(true);
+        receiver.start();
+        gossip();
+        logger.log(Level.INFO, "Cluster node {0} started, seeds: {1}", new Object[]{selfId, seeds});
+    }
+
+    /**
+     * Detiene el nodo: deja de enviar la presencia y cierra el socket. Los demás nodos lo dan por caído al
+     * dejar de recibirla.
+     */
+    public void stop() {
+        running = false;
+        if (timers != null) {
+            timers.close();
+        }
+        if (socket != null) {
+            socket.close();
+        }
+    }
+
+    /**
+     * Comprueba si un nombre está conectado en otro nodo.
+     *
+     * @param username El nombre de usuario.
+     * @return {@code true} si otro nodo tiene conectado a ese usuario.
+     */
+    public boolean isRemoteUser(String username) {
+        if (remoteUsers.containsKey(username)) {
+            return true;
+        }
+        String host = homeDirectory.get(username);
+        return host != null && !host.equals(selfId);
+    }
+
+    /**
+     * Obtiene los usuarios conectados a otros nodos.
+     *
+     * @return Una copia de sus nombres.
+     */
+    public Set<String> getRemoteUsers() {
+        return new HashSet<>(remoteUsers.keySet());
+    }
+
+    /**
+     * Registra en su nodo dueño un usuario que acaba de conectarse a este nodo y anuncia el alta a los demás nodos.
+     * Si el dueño ya lo tiene conectado en otro nodo, responde con un rechazo y el usuario se desconecta.
+     *
+     * @param username El nombre de usuario.
+     */
+    public void claim(String username) {
+        String home = ring.ownerOf(username);
+        if (home.equals(selfId)) {
+            homeDirectory.put(username, selfId);  // El servidor ya ha comprobado que no está en otro nodo
+        } else {
+            sendTo(home, FrameCodec.encode(OP_CLAIM, (byte) 0, 0, username, selfId));
+        }
+        sendDelta(username, "");
+    }
+
+    /**
+     * Da de baja en su nodo dueño a un usuario que se ha desconectado de este nodo y anuncia la baja a los demás nodos.
+     *
+     * @param username El nombre de usuario.
+     */
+    public void release(String username) {
+        String home = ring.ownerOf(username);
+        if (home.equals(selfId)) {
+            homeDirectory.remove(username, selfId);
+        } else {
+            sendTo(home, FrameCodec.encode(OP_RELEASE, (byte) 0, 0, username, selfId));
+        }
+        sendDelta("", username);
+    }
+
+    /**
+     * Anuncia la baja de un usuario rechazado por su nodo dueño, sin darlo de baja en el dueño, que lo tiene
+     * registrado en otro nodo.
+     *
+     * @param username El nombre de usuario.
+     */
+    public void withdraw(String username) {
+        sendDelta("", username);
+    }
+
+    /**
+     * Anuncia a los demás nodos las salas en las que este nodo tiene miembros, por ejemplo cuando un usuario
+     * cambia de sala.
+     */
+    public void presenceChanged() {
+        sendDelta("", "");
+    }
+
+    /**
+     * Envía a los nodos vivos un cambio de presencia con las salas actuales. Su tamaño no depende del número de
+     * usuarios; los nodos que aún no se conocen lo recibirán en la siguiente presencia completa.
+     *
+     * @param joined El usuario que se ha conectado, o una cadena vacía.
+     * @param left El usuario que se ha desconectado, o una cadena vacía.
+     */
+    private void sendDelta(String joined, String left) {
+        if (!running) {
+            return;
+        }
+        byte[] frame = FrameCodec.encode(OP_PRESENCE_DELTA, (byte) 0, 0, selfId, Long.toString(generation.get()), joined, left, activeRooms());
+        for (Peer peer : peers.values()) {
+            try {
+                reliability.send(frame, peer.address);
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Failed to send presence to {0}: {1}", new Object[]{peer.address, e.getMessage()});
+            }
+        }
+    }
+
+    /**
+     * Reenvía un mensaje de una sala a los nodos que tienen miembros en ella.
+     *
+     * @param room El nombre de la sala.
+     * @param message El mensaje.
+     */
+    public void relayToRoom(String room, Message message) {
+        byte[] frame = null;
+        for (Peer peer : peers.values()) {
+            if (!peer.rooms.contains(room)) {
+                continue;
+            }
+            if (frame == null) {
+                frame = FrameCodec.encode(OP_ROOM, (byte) 0, 0, room, message.getUser().getUsername(), message.getText());
+            }
+            send(frame, peer.address);
+        }
+    }
+
+    /**
+     * Reenvía un mensaje privado al nodo de su destinatario o, si aún no se conoce, al nodo dueño de su nombre.
+     *
+     * @param target El nombre del destinatario.
+     * @param message El mensaje.
+     * @return {@code true} si se ha reenviado, {@code false} si el destinatario no está en el clúster.
+     */
+    public boolean relayPrivate(String target, Message message) {
+        Peer host = remoteUsers.get(target);
+        String node = host != null ? host.id : ring.ownerOf(target);
+        if (node.equals(selfId)) {
+            return false;  // Este nodo es el dueño del nombre y no lo tiene conectado
+        }
+        return sendTo(node, FrameCodec.encode(OP_PRIVATE, (byte) 0, 0, target, message.getUser().getUsername(), message.getText(), "0"));
+    }
+
+    /**
+     * Envía una trama fiable a un nodo vivo por su identificador.
+     *
+     * @param node El identificador del nodo.
+     * @param frame La trama.
+     * @return {@code true} si el nodo está vivo y se ha enviado.
+     */
+    private boolean sendTo(String node, byte[] frame) {
+        Peer peer = peersById.get(node);
+        if (peer == null) {
+            logger.log(Level.WARNING, "Cluster node {0} is not reachable", node);
+            return false;
+        }
+        send(frame, peer.address);
+        return true;
+    }
+
+    /**
+     * Envía una trama fiable a un nodo.
+     *
+     * @param frame La trama.
+     * @param address La dirección del clúster del nodo.
+     */
+    private void send(byte[] frame, InetSocketAddress address) {
+        try {
+            reliability.send(frame, address);
+            relayedOut.increment();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to relay to {0}: {1}", new Object[]{address, e.getMessage()});
+        }
+    }
+
+    /**
+     * Envía un datagrama por el socket del clúster.
+     *
+     * @param payload El datagrama.
+     * @param address La dirección de destino.
+     */
+    private void sendDatagram(ByteBuffer payload, InetSocketAddress address) {
+        UDPSocketCommunication.sendMessage(socket, payload, address);
+    }
+
+    /**
+     * Tarea periódica: da por caídos los nodos silenciosos, envía la presencia y se vuelve a planificar, aunque
+     * falle, para que los demás nodos no den este por caído.
+     */
+    private void gossip() {
+        if (!running) {
+            return;
+        }
+        try {
+            expireSilentPeers();
+            sendPresence();
+        } catch (RuntimeException e) {
+            logger.log(Level.SEVERE, "Cluster gossip failed: " + e.getMessage(), e);
+        } finally {
+            timers.schedule(this::gossip, gossipMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Envía la presencia completa de este nodo, sin confirmación, a los nodos configurados y a los que se han
+     * conocido. Los usuarios se reparten en páginas que caben en la MTU; la primera lleva también las salas.
+     */
+    private void sendPresence() {
+        String current = Long.toString(generation.incrementAndGet());
+        String rooms = activeRooms();
+        int budget = UDPSocketCommunication.getMtu() - FrameCodec.HEADER_SIZE - PRESENCE_FIELDS * Short.BYTES
+                - utf8Length(selfId) - 3 * MAX_NUMBER_LENGTH;
+        List<String> pages = new ArrayList<>();
+        StringBuilder page = new StringBuilder();
+        int pageBytes = utf8Length(rooms);
+        for (User user : server.getUserManager().getUsers()) {
+            int length = utf8Length(user.getUsername()) + SEPARATOR.length();
+            if (page.length() > 0 && pageBytes + length > budget) {
+                pages.add(page.toString());
+                page.setLength(0);
+                pageBytes = 0;
+            }
+            page.append(page.length() == 0 ? "" : SEPARATOR).append(user.getUsername());
+            pageBytes += length;
+        }
+        pages.add(page.toString());
+
+        Set<InetSocketAddress> targets = new HashSet<>(seeds);
+        targets.addAll(peers.keySet());
+        String count = Integer.toString(pages.size());
+        for (int i = 0; i < pages.size(); i++) {
+            ByteBuffer payload = ByteBuffer.wrap(FrameCodec.encode(OP_PRESENCE, (byte) 0, 0,
+                    selfId, current, Integer.toString(i), count, pages.get(i), i == 0 ? rooms : ""));
+            for (InetSocketAddress target : targets) {
+                sendDatagram(payload, target);
+            }
+        }
+    }
+
+    /**
+     * Obtiene las salas en las que este nodo tiene miembros.
+     *
+     * @return Sus nombres, separados por saltos de línea.
+     */
+    private String activeRooms() {
+        StringBuilder rooms = new StringBuilder();
+        for (Room room : server.getRoomManager().getRooms()) {
+            if (room.getMemberCount() > 0) {
+                rooms.append(rooms.length() == 0 ? "" : SEPARATOR).append(room.getName());
+            }
+        }
+        return rooms.toString();
+    }
+
+    /**
+     * Bucle del hilo de recepción del clúster.
+     */
+    private void receiveLoop() {
+        byte[] buffer = new byte[UDPSocketCommunication.MAX_DATAGRAM_SIZE];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        while (running) {
+            try {
+                packet.setData(buffer);
+                socket.receive(packet);
+                InetSocketAddress source = (InetSocketAddress) packet.getSocketAddress();
+                Frame frame = FrameCodec.decode(packet.getData(), packet.getOffset(), packet.getLength());
+                for (Frame delivered : reliability.receive(frame, source)) {
+                    handle(delivered, source);
+                }
+            } catch (ProtocolException e) {
+                logger.log(Level.WARNING, "Invalid cluster frame: {0}", e.getMessage());
+            } catch (IOException e) {
+                if (running) {
+                    logger.log(Level.SEVERE, "Error receiving cluster frame: {0}", e.getMessage());
+                }
+            } catch (RuntimeException e) {
+                logger.log(Level.SEVERE, "Error handling cluster frame: " + e.getMessage(), e);
+            }
+        }
+        logger.log(Level.CONFIG, "Cluster receiver stopped");
+    }
+
+    /**
+     * Maneja una trama de otro nodo.
+     *
+     * @param frame La trama.
+     * @param source La dirección del clúster del nodo que la envió.
+     * @throws IOException Si ocurre un error al entregar un mensaje a los usuarios locales.
+     */
+    private void handle(Frame frame, InetSocketAddress source) throws IOException {
+        switch (frame.getOpcode()) {
+            case OP_PRESENCE:
+                try {
+                    onPresence(frame.getField(0), Long.parseLong(frame.getField(1)), Integer.parseInt(frame.getField(2)),
+                            Integer.parseInt(frame.getField(3)), split(frame.getField(4)), split(frame.getField(5)), source);
+                } catch (NumberFormatException e) {
+                    logger.log(Level.WARNING, "Invalid presence from {0}: {1}", new Object[]{source, frame});
+                }
+                break;
+            case OP_PRESENCE_DELTA:
+                try {
+                    onDelta(frame.getField(0), Long.parseLong(frame.getField(1)), frame.getField(2), frame.getField(3),
+                            split(frame.getField(4)), source);
+                } catch (NumberFormatException e) {
+                    logger.log(Level.WARNING, "Invalid presence change from {0}: {1}", new Object[]{source, frame});
+                }
+                break;
+            case OP_ROOM:
+                relayedIn.increment();
+                server.deliverRelayed(frame.getField(0), new Message(new User(frame.getField(1), source), frame.getField(2)));
+                break;
+            case OP_PRIVATE:
+                relayedIn.increment();
+                onPrivate(frame, source);
+                break;
+            case OP_CLAIM:
+                onClaim(frame.getField(0), frame.getField(1), source);
+                break;
+            case OP_REJECT:
+                rejected.increment();
+                logger.log(Level.WARNING, "Username {0} is already connected to another node", frame.getField(0));
+                server.rejectLogin(frame.getField(0));
+                break;
+            case OP_RELEASE:
+                homeDirectory.remove(frame.getField(0), frame.getField(1));
+                break;
+            case OP_NOT_FOUND:
+                User author = server.getUserManager().getUserByName(frame.getField(1));
+                if (author != null) {
+                    server.sendError(PrivateMessageCommand.userNotFound(frame.getField(0)), author.getAddress());
+                }
+                break;
+            default:
+                logger.log(Level.WARNING, "Unknown cluster opcode {0} from {1}", new Object[]{frame.getOpcode(), source});
+        }
+    }
+
+    /**
+     * Registra una página de la presencia completa de un nodo. Si es la primera presencia, el nodo entra en el
+     * clúster y el anillo se recalcula. Los usuarios de la página se añaden en el acto; cuando han llegado todas
+     * las páginas de la generación, se olvidan los usuarios del nodo de los que no se ha sabido nada en ella. Las
+     * páginas de una generación anterior a la que se está reuniendo solo cuentan como señal de vida.
+     *
+     * @param id El identificador del nodo.
+     * @param pageGeneration La generación de la presencia.
+     * @param page El número de la página.
+     * @param pages El total de páginas de la generación.
+     * @param users Los usuarios de la página.
+     * @param rooms Las salas en las que tiene miembros, solo en la primera página.
+     * @param source Su dirección del clúster.
+     */
+    private void onPresence(String id, long pageGeneration, int page, int pages, Set<String> users, Set<String> rooms,
+                            InetSocketAddress source) {
+        if (page < 0 || page >= pages) {
+            logger.log(Level.WARNING, "Invalid presence page {0}/{1} from {2}", new Object[]{page, pages, source});
+            return;
+        }
+        synchronized (membershipLock) {
+            Peer peer = join(id, source);
+            if (pageGeneration < peer.assembling) {
+                return;  // Página retrasada de una presencia ya superada
+            }
+            if (pageGeneration > peer.assembling) {
+                peer.assembling = pageGeneration;
+                peer.pages = pages;
+                peer.received.clear();
+            }
+            addUsers(peer, users, pageGeneration);
+            if (page == 0) {
+                peer.rooms = rooms;
+            }
+            peer.received.set(page);
+            if (peer.received.cardinality() == peer.pages) {
+                // Presencia completa: los usuarios que no han aparecido en ella ni en un cambio posterior se han ido
+                peer.users.entrySet().removeIf(entry -> {
+                    boolean gone = entry.getValue() < pageGeneration;
+                    if (gone) {
+                        remoteUsers.remove(entry.getKey(), peer);
+                    }
+                    return gone;
+                });
+            }
+        }
+    }
+
+    /**
+     * Aplica un cambio de la presencia de un nodo.
+     *
+     * @param id El identificador del nodo.
+     * @param deltaGeneration La generación de la última presencia completa del nodo.
+     * @param joined El usuario que se ha conectado, o una cadena vacía.
+     * @param left El usuario que se ha desconectado, o una cadena vacía.
+     * @param rooms Las salas en las que tiene miembros.
+     * @param source Su dirección del clúster.
+     */
+    private void onDelta(String id, long deltaGeneration, String joined, String left, Set<String> rooms, InetSocketAddress source) {
+        synchronized (membershipLock) {
+            Peer peer = join(id, source);
+            if (!joined.isEmpty()) {
+                addUsers(peer, Set.of(joined), deltaGeneration);
+            }
+            if (!left.isEmpty() && peer.users.remove(left) != null) {
+                remoteUsers.remove(left, peer);
+            }
+            peer.rooms = rooms;
+        }
+    }
+
+    /**
+     * Obtiene un nodo por su dirección, añadiéndolo al clúster si es nuevo, y anota que sigue vivo. Lo llama quien
+     * tiene {@code membershipLock}.
+     *
+     * @param id El identificador del nodo.
+     * @param source Su dirección del clúster.
+     * @return El nodo.
+     */
+    private Peer join(String id, InetSocketAddress source) {
+        Peer peer = peers.get(source);
+        if (peer == null) {
+            peer = new Peer(id, source);
+            peers.put(source, peer);
+            peersById.put(id, peer);
+            rebuildRing();
+            logger.log(Level.INFO, "Cluster node joined: {0}", id);
+        }
+        peer.lastSeen = System.nanoTime();
+        return peer;
+    }
+
+    /**
+     * Añade usuarios a un nodo con la generación en la que se ha sabido de ellos. Los que pertenecen a este nodo
+     * se registran si aún no lo estaban, por ejemplo porque el anillo ha cambiado desde que se conectaron. Lo
+     * llama quien tiene {@code membershipLock}.
+     *
+     * @param peer El nodo.
+     * @param users Los usuarios.
+     * @param seen La generación.
+     */
+    private void addUsers(Peer peer, Set<String> users, long seen) {
+        for (String user : users) {
+            peer.users.merge(user, seen, Math::max);
+            remoteUsers.put(user, peer);
+            if (ring.ownerOf(user).equals(selfId)) {
+                homeDirectory.putIfAbsent(user, peer.id);
+            }
+        }
+    }
+
+    /**
+     * Da por caídos los nodos de los que no llega presencia y olvida sus usuarios.
+     */
+    private void expireSilentPeers() {
+        long limit = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(gossipMillis * SUSPECT_INTERVALS);
+        synchronized (membershipLock) {
+            for (Peer peer : new ArrayList<>(peers.values())) {
+                if (peer.lastSeen - limit >= 0) {
+                    continue;
+                }
+                peers.remove(peer.address);
+                peersById.remove(peer.id);
+                remoteUsers.values().removeIf(host -> host == peer);
+                homeDirectory.values().removeIf(host -> host.equals(peer.id));
+                reliability.forget(peer.address);
+                rebuildRing();
+                logger.log(Level.WARNING, "Cluster node left: {0}", peer.id);
+            }
+        }
+    }
+
+    /**
+     * Recalcula el anillo con este nodo y los nodos vivos. Lo llama quien tiene {@code membershipLock}.
+     */
+    private void rebuildRing() {
+        List<String> nodes = new ArrayList<>(peersById.keySet());
+        nodes.add(selfId);
+        ring = new ConsistentHashRing(nodes);
+    }
+
+    /**
+     * Maneja un mensaje privado de otro nodo: se entrega si el destinatario está conectado aquí, o se reenvía una
+     * vez al nodo del destinatario si este nodo es el dueño de su nombre. Si no está en ninguno, se avisa al nodo
+     * del autor.
+     *
+     * @param frame La trama del mensaje.
+     * @param source La dirección del nodo que la envió.
+     * @throws IOException Si ocurre un error al entregar el mensaje.
+     */
+    private void onPrivate(Frame frame, InetSocketAddress source) throws IOException {
+        String target = frame.getField(0);
+        Message message = new Message(new User(frame.getField(1), source), frame.getField(2));
+        if (server.deliverPrivate(target, message)) {
+            return;
+        }
+        String host = homeDirectory.get(target);
+        Peer peer = host != null ? peersById.get(host) : null;
+        if (frame.getField(3).equals("0") && peer != null && !peer.address.equals(source)) {
+            send(FrameCodec.encode(OP_PRIVATE, (byte) 0, 0, target, frame.getField(1), frame.getField(2), "1"), peer.address);
+        } else if (frame.getField(3).equals("0")) {
+            send(FrameCodec.encode(OP_NOT_FOUND, (byte) 0, 0, target, frame.getField(1)), source);
+        } else {
+            logger.log(Level.WARNING, "Private message for unknown user {0} dropped", target);
+        }
+    }
+
+    /**
+     * Registra un nombre conectado en otro nodo. Si ya está conectado en un nodo distinto, o en este, se rechaza.
+     *
+     * @param username El nombre de usuario.
+     * @param node El identificador del nodo que lo ha conectado.
+     * @param source La dirección del clúster de ese nodo.
+     */
+    private void onClaim(String username, String node, InetSocketAddress source) {
+        String host = server.getUserManager().getUserByName(username) != null ? selfId : homeDirectory.putIfAbsent(username, node);
+        if (host != null && !host.equals(node)) {
+            rejected.increment();
+            logger.log(Level.WARNING, "Rejecting {0} on {1}: already connected to {2}", new Object[]{username, node, host});
+            send(FrameCodec.encode(OP_REJECT, (byte) 0, 0, username), source);
+        }
+    }
+
+    /**
+     * Separa una lista de la presencia.
+     *
+     * @param field El campo con los elementos separados por saltos de línea.
+     * @return Los elementos.
+     */
+    private static Set<String> split(String field) {
+        return field.isEmpty() ? Set.of() : new HashSet<>(Arrays.asList(field.split(SEPARATOR)));
+    }
+
+    /**
+     * Calcula los bytes que ocupa un texto en UTF-8.
+     *
+     * @param text El texto.
+     * @return Los bytes.
+     */
+    private static int utf8Length(String text) {
+        return text.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    /**
+     * Obtiene el identificador de un nodo a partir de su dirección del clúster.
+     *
+     * @param address La dirección.
+     * @return El identificador, con el formato {@code ip:puerto}.
+     */
+    private static String idOf(InetSocketAddress address) {
+        return address.getAddress().getHostAddress() + ":" + address.getPort();
+    }
+
+    /**
+     * Genera un resumen del clúster.
+     *
+     * @return Una cadena con los nodos vivos, los usuarios remotos y los mensajes reenviados.
+     */
+    public String snapshot() {
+        return String.format("cluster: node=%s peers=%d remoteUsers=%d homeNames=%d relayedOut=%d relayedIn=%d rejected=%d %s",
+                selfId, peers.size(), remoteUsers.size(), homeDirectory.size(), relayedOut.sum(), relayedIn.sum(),
+                rejected.sum(), reliability.snapshot());
+    }
+
+    /**
+     * Otro nodo vivo del clúster y su última presencia. Salvo las salas y el instante de la última presencia, su
+     * estado se protege con {@code membershipLock}.
+     */
+    private static final class Peer {
+        private final String id;  // Identificador del nodo
+        private final InetSocketAddress address;  // Dirección del clúster del nodo
+        private final Map<String, Long> users;  // Usuarios conectados al nodo y generación en la que se supo de ellos
+        private final BitSet received;  // Páginas recibidas de la presencia que se está reuniendo
+        private long assembling;  // Generación de la presencia que se está reuniendo
+        private int pages;  // Total de páginas de esa presencia
+        private volatile Set<String> rooms;  // Salas en las que el nodo tiene miembros
+        private volatile long lastSeen;  // Instante de la última presencia, en System.nanoTime()
+
+        private Peer(String id, InetSocketAddress address) {
+            this.id = id;
+            this.address = address;
+            this.users = new HashMap<>();
+            this.received = new BitSet();
+            this.rooms = Set.of();
+        }
+    }
+}
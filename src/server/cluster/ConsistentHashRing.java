@@ -0,0 +1,70 @@
+package server.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Anillo de hash consistente que asigna cada nombre de usuario a un nodo del clúster.
+ * <p>
+ * Cada nodo ocupa {@value #VIRTUAL_NODES} posiciones del anillo y un nombre pertenece al primer nodo que se
+ * encuentra avanzando desde su hash. Cuando un nodo entra o sale del clúster solo cambian de dueño los nombres
+ * de sus posiciones, no todos. El anillo es inmutable: cada cambio de miembros crea uno nuevo, que puede
+ * consultarse desde cualquier hilo sin sincronización.
+ * </p>
+ */
+public final class ConsistentHashRing {
+
+    /** Posiciones que ocupa cada nodo en el anillo, para repartir los nombres de forma uniforme. */
+    public static final int VIRTUAL_NODES = 64;
+
+    private final TreeMap<Long, String> positions;  // Nodo de cada posición del anillo
+
+    /**
+     * Constructor de la clase {@code ConsistentHashRing}.
+     *
+     * @param nodes Los identificadores de los nodos del clúster.
+     */
+    public ConsistentHashRing(Collection<String> nodes) {
+        this.positions = new TreeMap<>();
+        for (String node : nodes) {
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                positions.put(hash(node + "#" + i), node);
+            }
+        }
+    }
+
+    /**
+     * Obtiene el nodo dueño de un nombre.
+     *
+     * @param key El nombre.
+     * @return El identificador del nodo, o {@code null} si el anillo está vacío.
+     */
+    public String ownerOf(String key) {
+        if (positions.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Long, String> entry = positions.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : positions.firstEntry().getValue();
+    }
+
+    /**
+     * Calcula la posición de un nombre en el anillo: FNV-1a de 64 bits sobre su UTF-8, con una mezcla final
+     * para que nombres parecidos ("nodo#1", "nodo#2") queden lejos.
+     *
+     * @param key El nombre.
+     * @return La posición.
+     */
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,222 @@
+package server.pipeline;
+
+import common.socket.UDPSocketCommunication;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Etapa de envío por lotes del pipeline.
+ * <p>
+ * Los hilos de despacho encolan los datagramas salientes y un único hilo los agrupa durante una ventana
+ * corta (en microsegundos, contada desde que el primer datagrama del lote entró en la cola) o hasta llenar
+ * el lote, y después los escribe seguidos sobre un canal no bloqueante. Así una difusión a una sala grande
+ * se convierte en unas pocas ráfagas de envíos consecutivos en lugar de miles de envíos bloqueantes
+ * intercalados con el resto del trabajo.
+ * </p>
+ * <p>
+ * Java no expone {@code sendmmsg}, por lo que cada datagrama sigue siendo una llamada al sistema; lo que se
+ * agrupa es el trabajo en el hilo de envío. Las métricas informan de las llamadas al sistema por segundo y
+ * de los datagramas por lote para comprobar el efecto de la ventana.
+ * </p>
+ */
+public class BatchingEgress {
+    private static final Logger logger = Logger.getLogger(BatchingEgress.class.getName());
+    private static final int MAX_BATCH = 256;  // Datagramas máximos por lote
+
+    private final DatagramChannel channel;  // Canal no bloqueante por el que se envía
+    private final long windowNanos;  // Ventana de agrupación, 0 para enviar en cuanto no haya más pendientes
+    private final RingBuffer<OutboundPacket> queue;  // Datagramas pendientes de enviar
+    private final OutboundPacket[] batch;  // Lote en curso, reutilizado entre envíos
+    private final StageMetrics metrics;  // Profundidad de cola y latencia de la etapa
+    private final LongAdder flushes;  // Lotes enviados
+    private final LongAdder datagrams;  // Datagramas enviados
+    private final LongAdder syscalls;  // Llamadas de envío realizadas, incluidas las que no admitieron datos
+    private long lastSnapshotAt;  // Instante del último informe
+    private long lastFlushes;  // Lotes enviados en el último informe
+    private long lastDatagrams;  // Datagramas enviados en el último informe
+    private long lastSyscalls;  // Llamadas de envío en el último informe
+
+    /**
+     * Constructor de la clase {@code BatchingEgress}.
+     *
+     * @param channel El canal por el que se envían los datagramas, preferiblemente no bloqueante.
+     * @param windowMicros La ventana de agrupación en microsegundos, o 0 para no esperar.
+     * @param capacity La capacidad de la cola de envío.
+     */
+    public BatchingEgress(DatagramChannel channel, long windowMicros, int capacity) {
+        this.channel = channel;
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(0, windowMicros));
+        this.queue = new RingBuffer<>(capacity);
+        this.batch = new OutboundPacket[MAX_BATCH];
+        this.metrics = new StageMetrics("egress", queue);
+        this.flushes = new LongAdder();
+        this.datagrams = new LongAdder();
+        this.syscalls = new LongAdder();
+        this.lastSnapshotAt = System.nanoTime();
+    }
+
+    /**
+     * Intenta encolar un datagrama para su envío.
+     *
+     * @param packet El datagrama.
+     * @return {@code true} si se encoló, {@code false} si la cola está llena.
+     */
+    public boolean offer(OutboundPacket packet) {
+        return queue.offer(packet);
+    }
+
+    /**
+     * Bucle del hilo de envío: forma lotes y los escribe en el canal mientras la condición se cumpla.
+     *
+     * @param running Condición de continuación, normalmente el estado de ejecución del servidor.
+     */
+    public void run(BooleanSupplier running) {
+        int idle = 0;
+        while (running.getAsBoolean()) {
+            OutboundPacket first = queue.poll();
+            if (first == null) {
+                idle = IdleStrategy.idle(idle);
+                continue;
+            }
+            idle = 0;
+            int size = collect(first);
+            if (!flush(size, running)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Completa un lote a partir de su primer datagrama hasta llenarlo o agotar la ventana.
+     *
+     * @param first El primer datagrama del lote.
+     * @return El tamaño del lote.
+     */
+    private int collect(OutboundPacket first) {
+        batch[0] = first;
+        int size = 1;
+        long deadline = first.enqueuedAt + windowNanos;
+        while (size < MAX_BATCH) {
+            OutboundPacket next = queue.poll();
+            if (next != null) {
+                batch[size++] = next;
+            } else if (windowNanos == 0 || System.nanoTime() - deadline >= 0) {
+                break;
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Escribe el lote en el canal. Si el buffer del socket está lleno se espera y se reintenta el mismo
+     * datagrama, para no desordenar ni perder los envíos.
+     *
+     * @param size El tamaño del lote.
+     * @param running Condición de continuación.
+     * @return {@code false} si el canal se ha cerrado y el hilo debe terminar.
+     */
+    private boolean flush(int size, BooleanSupplier running) {
+        try {
+            for (int i = 0; i < size; i++) {
+                OutboundPacket packet = batch[i];
+                batch[i] = null;
+                send(packet, running);
+                metrics.recordProcessed(packet.enqueuedAt);
+            }
+        } catch (ClosedChannelException e) {
+            logger.log(Level.CONFIG, "Egress channel closed");
+            return false;
+        }
+        flushes.increment();
+        datagrams.add(size);
+        return true;
+    }
+
+    /**
+     * Envía un datagrama, reintentando mientras el canal no admita más datos.
+     *
+     * @param packet El datagrama.
+     * @param running Condición de continuación.
+     * @throws ClosedChannelException Si el canal se ha cerrado.
+     */
+    private void send(OutboundPacket packet, BooleanSupplier running) throws ClosedChannelException {
+        int idle = 0;
+        try {
+            while (true) {
+                syscalls.increment();
+                if (UDPSocketCommunication.send(channel, packet.data, packet.destination) > 0 || !running.getAsBoolean()) {
+                    return;
+                }
+                idle = IdleStrategy.idle(idle);
+            }
+        } catch (ClosedChannelException e) {
+            throw e;
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Failed to send message to {0}: {1}", new Object[]{packet.destination, e.getMessage()});
+        }
+    }
+
+    /**
+     * Obtiene las métricas de profundidad de cola y latencia de la etapa.
+     *
+     * @return Las métricas de la etapa.
+     */
+    public StageMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Genera un resumen de los lotes enviados desde el último informe.
+     *
+     * @return Una cadena con los lotes, los datagramas por lote y las llamadas al sistema por segundo.
+     */
+    public synchronized String snapshot() {
+        long now = System.nanoTime();
+        long totalFlushes = flushes.sum();
+        long totalDatagrams = datagrams.sum();
+        long totalSyscalls = syscalls.sum();
+        long intervalFlushes = totalFlushes - lastFlushes;
+        double seconds = Math.max(1, now - lastSnapshotAt) / 1e9;
+        double perFlush = intervalFlushes == 0 ? 0 : (double) (totalDatagrams - lastDatagrams) / intervalFlushes;
+        double syscallRate = (totalSyscalls - lastSyscalls) / seconds;
+
+        lastSnapshotAt = now;
+        lastFlushes = totalFlushes;
+        lastDatagrams = totalDatagrams;
+        lastSyscalls = totalSyscalls;
+        return String.format("egress-batch: flushes=%d datagrams/flush=%.1f syscalls/s=%.0f", intervalFlushes, perFlush, syscallRate);
+    }
+
+    /**
+     * Datagrama pendiente de enviar.
+     */
+    public static final class OutboundPacket {
+        private final ByteBuffer data;
+        private final InetSocketAddress destination;
+        private final long enqueuedAt;
+
+        /**
+         * Constructor de un datagrama pendiente.
+         *
+         * @param data El contenido, que se consume al enviarlo.
+         * @param destination La dirección de destino.
+         * @param enqueuedAt El instante, en {@link System#nanoTime()}, en que se encola.
+         */
+        public OutboundPacket(ByteBuffer data, InetSocketAddress destination, long enqueuedAt) {
+            this.data = data;
+            this.destination = destination;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+}
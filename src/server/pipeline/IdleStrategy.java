@@ -0,0 +1,32 @@
+package server.pipeline;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Estrategia de espera de los hilos del pipeline cuando no tienen trabajo: primero giran activamente
+ * durante unas pocas iteraciones y después duermen brevemente, para reaccionar rápido a las ráfagas
+ * sin consumir un núcleo completo en reposo.
+ */
+final class IdleStrategy {
+    private static final int SPIN_TRIES = 100;  // Iteraciones activas antes de dormir un hilo ocioso
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);  // Espera de un hilo ocioso
+
+    private IdleStrategy() {
+    }
+
+    /**
+     * Espera una iteración según el número de iteraciones ociosas consecutivas.
+     *
+     * @param idle El número de iteraciones ociosas consecutivas.
+     * @return El nuevo número de iteraciones ociosas.
+     */
+    static int idle(int idle) {
+        if (idle < SPIN_TRIES) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        return idle + 1;
+    }
+}
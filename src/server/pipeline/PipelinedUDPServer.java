@@ -0,0 +1,403 @@
+package server.pipeline;
+
+import common.protocol.Frame;
+import common.protocol.FrameCodec;
+import common.socket.UDPSocketCommunication;
+import common.socket.UDPUtil;
+import server.AbstractUDPServer;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Implementación de un servidor UDP organizada como un pipeline de etapas.
+ * <p>
+ * Las etapas son: recepción (un hilo), decodificación (varios hilos), despacho de comandos y difusiones
+ * (varios hilos) y envío por lotes (un hilo, véase {@link BatchingEgress}). Las etapas se comunican mediante {@link RingBuffer} acotados, de forma que
+ * las ráfagas se absorben en las colas en lugar de perderse en el buffer del núcleo, y cada etapa expone
+ * métricas de profundidad de cola y latencia para ver cuál está saturada.
+ * </p>
+ * <p>
+ * Los paquetes se reparten entre los hilos de decodificación y de despacho según la dirección de origen,
+ * por lo que los mensajes de un mismo cliente se procesan siempre en orden. Si la cola de decodificación
+ * está llena, el hilo de recepción descarta el paquete y lo contabiliza; las etapas internas esperan
+ * a que haya espacio para no perder mensajes ya aceptados.
+ * </p>
+ */
+public class PipelinedUDPServer extends AbstractUDPServer {
+    private static final Logger logger = Logger.getLogger(PipelinedUDPServer.class.getName());
+    private static final int BUFFER_SIZE = UDPSocketCommunication.MAX_DATAGRAM_SIZE;  // Cabe cualquier datagrama, sin truncarlo
+    private static final int POOLED_SIZE = 2048;  // Tamaño de los arrays del pool: cualquier datagrama de hasta la MTU
+
+    private final RingBuffer<byte[]> bufferPool;  // Arrays de recepción libres, reutilizados entre paquetes
+    private final List<RingBuffer<RawPacket>> decodeQueues;  // Una cola por hilo de decodificación
+    private final List<RingBuffer<DecodedMessage>> dispatchQueues;  // Una cola por hilo de despacho
+    private final StageMetrics ingressMetrics;
+    private final StageMetrics decodeMetrics;
+    private final StageMetrics dispatchMetrics;
+    private final Charset charset;  // Juego de caracteres usado por el protocolo de texto
+    private final List<Thread> workers;  // Hilos de las etapas internas
+    private final long egressBatchMicros;  // Ventana de agrupación de la etapa de envío
+    private final int queueCapacity;  // Capacidad de cada cola entre etapas
+    private DatagramChannel channel;  // Canal no bloqueante compartido por recepción y envío
+    private BatchingEgress egress;  // Etapa de envío, creada al abrir el canal
+
+    /**
+     * Constructor del servidor UDP con pipeline.
+     *
+     * @param port El puerto en el que el servidor escuchará las conexiones.
+     * @param decoderThreads El número de hilos de decodificación.
+     * @param dispatchThreads El número de hilos de despacho de comandos y difusiones.
+     * @param queueCapacity La capacidad de cada cola entre etapas.
+     * @param egressBatchMicros La ventana en microsegundos durante la que se agrupan los envíos, o 0 para no esperar.
+     */
+    public PipelinedUDPServer(int port, int decoderThreads, int dispatchThreads, int queueCapacity, long egressBatchMicros) {
+        super(port);
+        this.bufferPool = new RingBuffer<>(queueCapacity * Math.max(1, decoderThreads));
+        this.decodeQueues = createQueues(Math.max(1, decoderThreads), queueCapacity);
+        this.dispatchQueues = createQueues(Math.max(1, dispatchThreads), queueCapacity);
+        this.ingressMetrics = new StageMetrics("ingress");
+        this.decodeMetrics = new StageMetrics("decode", decodeQueues.toArray(new RingBuffer<?>[0]));
+        this.dispatchMetrics = new StageMetrics("dispatch", dispatchQueues.toArray(new RingBuffer<?>[0]));
+        this.charset = Charset.defaultCharset();
+        this.workers = new ArrayList<>();
+        this.egressBatchMicros = egressBatchMicros;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Crea una lista de colas con la capacidad indicada.
+     *
+     * @param count El número de colas.
+     * @param capacity La capacidad de cada cola.
+     * @param <T> El tipo de elementos de las colas.
+     * @return Las colas creadas.
+     */
+    private static <T> List<RingBuffer<T>> createQueues(int count, int capacity) {
+        List<RingBuffer<T>> queues = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            queues.add(new RingBuffer<>(capacity));
+        }
+        return queues;
+    }
+
+    /**
+     * Abre el canal no bloqueante del servidor y la etapa de envío que escribe en él.
+     *
+     * @return El socket asociado al canal, que solo se usa para cerrarlo.
+     * @throws IOException Si ocurre un error al abrir el canal.
+     */
+    @Override
+    protected DatagramSocket openSocket() throws IOException {
+        channel = UDPUtil.openChannel(port, false);
+        egress = new BatchingEgress(channel, egressBatchMicros, queueCapacity);
+        return channel.socket();
+    }
+
+    /**
+     * Arranca los hilos de las etapas internas y ejecuta la etapa de recepción en el hilo actual.
+     */
+    @Override
+    public void listen() {
+        for (int i = 0; i < decodeQueues.size(); i++) {
+            RingBuffer<RawPacket> queue = decodeQueues.get(i);
+            startWorker("pipeline-decode-" + i, () -> decodeLoop(queue));
+        }
+        for (int i = 0; i < dispatchQueues.size(); i++) {
+            RingBuffer<DecodedMessage> queue = dispatchQueues.get(i);
+            startWorker("pipeline-dispatch-" + i, () -> dispatchLoop(queue));
+        }
+        startWorker("pipeline-egress", () -> egress.run(isRunning::get));
+
+        try {
+            ingressLoop();
+        } finally {
+            isRunning.set(false);
+            for (Thread worker : workers) {
+                try {
+                    worker.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            logger.log(Level.INFO, "Server stopped listening.");
+        }
+    }
+
+    /**
+     * Crea y arranca un hilo de una etapa interna.
+     *
+     * @param name El nombre del hilo.
+     * @param loop El bucle que ejecutará el hilo.
+     */
+    private void startWorker(String name, Runnable loop) {
+        Thread thread = new Thread(loop, name);
+        thread.start();
+        workers.add(thread);
+    }
+
+    /**
+     * Etapa de recepción: copia cada datagrama en un array del pool, o en uno a su medida si es mayor que los
+     * del pool, y lo entrega al decodificador
+     * correspondiente a su origen. El canal no es bloqueante, así que sin datagramas el hilo espera
+     * con la misma estrategia que el resto de etapas.
+     */
+    private void ingressLoop() {
+        ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        int idle = 0;
+        try {
+            while (isRunning.get()) {
+                InetSocketAddress source = (InetSocketAddress) channel.receive(receiveBuffer);
+                if (source == null) {
+                    idle = IdleStrategy.idle(idle);
+                    continue;
+                }
+                idle = 0;
+                long receivedAt = System.nanoTime();
+                receiveBuffer.flip();
+                int length = receiveBuffer.remaining();
+                byte[] data = length <= POOLED_SIZE ? bufferPool.poll() : new byte[length];  // Los grandes no pasan por el pool
+                if (data == null) {
+                    data = new byte[POOLED_SIZE];
+                }
+                receiveBuffer.get(data, 0, length);
+                receiveBuffer.clear();
+
+                RawPacket packet = new RawPacket(data, length, source, receivedAt);
+                if (!selectQueue(decodeQueues, source).offer(packet)) {
+                    ingressMetrics.recordDropped();  // Cola de decodificación llena: se descarta de forma visible
+                    recycle(data);
+                } else {
+                    ingressMetrics.recordProcessed(receivedAt);
+                }
+            }
+        } catch (ClosedChannelException e) {
+            logger.log(Level.CONFIG, "Ingress channel closed");
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error receiving message: {0}", e.getMessage());
+        }
+    }
+
+    /**
+     * Devuelve al pool un array de recepción ya procesado. Los arrays de datagramas grandes, creados a su medida,
+     * no se guardan, de modo que el pool solo retiene arrays pequeños.
+     *
+     * @param data El array.
+     */
+    private void recycle(byte[] data) {
+        if (data.length == POOLED_SIZE) {
+            bufferPool.offer(data);
+        }
+    }
+
+    /**
+     * Etapa de decodificación: convierte cada paquete en una trama o en texto y lo entrega al hilo de despacho de su origen.
+     *
+     * @param queue La cola de entrada de este decodificador.
+     */
+    private void decodeLoop(RingBuffer<RawPacket> queue) {
+        int idle = 0;
+        while (isRunning.get()) {
+            RawPacket packet = queue.poll();
+            if (packet == null) {
+                idle = IdleStrategy.idle(idle);
+                continue;
+            }
+            idle = 0;
+            DecodedMessage decoded = decode(packet);
+            recycle(packet.data);
+            decodeMetrics.recordProcessed(packet.enqueuedAt);
+            if (decoded == null) {
+                continue;  // Trama no válida, ya notificada
+            }
+            offerWaiting(selectQueue(dispatchQueues, packet.source), decoded);
+        }
+    }
+
+    /**
+     * Decodifica un paquete como trama binaria o como texto.
+     *
+     * @param packet El paquete recibido.
+     * @return El mensaje decodificado, o {@code null} si era una trama no válida.
+     */
+    private DecodedMessage decode(RawPacket packet) {
+        if (!FrameCodec.isFrame(packet.data, 0, packet.length)) {
+            String message = new String(packet.data, 0, packet.length, charset).trim();
+            return new DecodedMessage(message, null, packet.source, System.nanoTime());
+        }
+        try {
+            Frame frame = decodeFrame(packet.data, 0, packet.length, packet.source);
+            return frame == null ? null : new DecodedMessage(null, frame, packet.source, System.nanoTime());
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error handling frame from {0}: {1}", new Object[]{packet.source, e.getMessage()});
+            return null;
+        }
+    }
+
+    /**
+     * Etapa de despacho: ejecuta comandos y difusiones. Los envíos generados se encolan para la etapa de envío.
+     *
+     * @param queue La cola de entrada de este hilo de despacho.
+     */
+    private void dispatchLoop(RingBuffer<DecodedMessage> queue) {
+        int idle = 0;
+        while (isRunning.get()) {
+            DecodedMessage decoded = queue.poll();
+            if (decoded == null) {
+                idle = IdleStrategy.idle(idle);
+                continue;
+            }
+            idle = 0;
+            try {
+                if (decoded.frame != null) {
+                    handleFrame(decoded.frame, decoded.source);
+                } else {
+                    if (logger.isLoggable(Level.FINE)) {
+                        logger.log(Level.FINE, "Received message from {0}: {1}", new Object[]{decoded.source, decoded.message});
+                    }
+                    handleMessage(decoded.message, decoded.source);
+                }
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Error handling message from {0}: {1}", new Object[]{decoded.source, e.getMessage()});
+            }
+            dispatchMetrics.recordProcessed(decoded.enqueuedAt);
+        }
+    }
+
+    /**
+     * Codifica un mensaje de difusión en un buffer directo de solo lectura, compartido por todos los destinatarios.
+     *
+     * @param payload Los bytes del mensaje.
+     * @return El buffer directo con el mensaje codificado.
+     */
+    @Override
+    protected ByteBuffer encodeBroadcast(byte[] payload) {
+        return UDPUtil.toSharedDirectBuffer(payload);
+    }
+
+    /**
+     * Encola un mensaje codificado para la etapa de envío. Se encola una vista del buffer, de modo que el
+     * contenido no se copia aunque se comparta entre destinatarios. Si la cola está llena se espera a que
+     * haya espacio.
+     *
+     * @param payload El mensaje codificado.
+     * @param clientAddress La dirección del cliente al que se enviará el mensaje.
+     */
+    @Override
+    protected void sendEncoded(ByteBuffer payload, InetSocketAddress clientAddress) {
+        BatchingEgress.OutboundPacket packet = new BatchingEgress.OutboundPacket(payload.duplicate(), clientAddress, System.nanoTime());
+        int idle = 0;
+        while (!egress.offer(packet) && isRunning.get()) {
+            idle = IdleStrategy.idle(idle);
+        }
+    }
+
+    /**
+     * Inserta un elemento en una cola esperando a que haya espacio (contrapresión entre etapas internas).
+     * Si el servidor se detiene mientras espera, el elemento se descarta.
+     *
+     * @param queue La cola destino.
+     * @param element El elemento a insertar.
+     * @param <T> El tipo del elemento.
+     */
+    private <T> void offerWaiting(RingBuffer<T> queue, T element) {
+        int idle = 0;
+        while (!queue.offer(element)) {
+            if (!isRunning.get()) {
+                return;
+            }
+            idle = IdleStrategy.idle(idle);
+        }
+    }
+
+    /**
+     * Selecciona la cola que corresponde a una dirección de origen, para conservar el orden por cliente.
+     *
+     * @param queues Las colas candidatas.
+     * @param source La dirección de origen.
+     * @param <T> El tipo de elementos de las colas.
+     * @return La cola seleccionada.
+     */
+    private static <T> RingBuffer<T> selectQueue(List<RingBuffer<T>> queues, InetSocketAddress source) {
+        return queues.get(Math.floorMod(source.hashCode(), queues.size()));
+    }
+
+    /**
+     * Registra en el log las métricas del servidor y el estado de todas las etapas.
+     */
+    @Override
+    protected void reportMetrics() {
+        super.reportMetrics();
+        for (StageMetrics metrics : getStageMetrics()) {
+            logger.log(Level.INFO, "Pipeline {0}", metrics.snapshot());
+        }
+        if (egress != null) {
+            logger.log(Level.INFO, "Pipeline {0}", egress.snapshot());
+        }
+    }
+
+    /**
+     * Obtiene las métricas de todas las etapas en orden de recorrido.
+     *
+     * @return Las métricas de recepción, decodificación, despacho y envío.
+     */
+    public List<StageMetrics> getStageMetrics() {
+        return egress == null
+                ? List.of(ingressMetrics, decodeMetrics, dispatchMetrics)
+                : List.of(ingressMetrics, decodeMetrics, dispatchMetrics, egress.getMetrics());
+    }
+
+    /**
+     * Detiene el servidor. Todas las etapas, incluida la de recepción, terminan al observar que el servidor
+     * ya no está en ejecución; después se cierra el canal.
+     */
+    @Override
+    public void stop() {
+        isRunning.set(false);
+        super.stop();
+    }
+
+    /**
+     * Datagrama recibido pendiente de decodificar.
+     */
+    private static final class RawPacket {
+        private final byte[] data;
+        private final int length;
+        private final InetSocketAddress source;
+        private final long enqueuedAt;
+
+        private RawPacket(byte[] data, int length, InetSocketAddress source, long enqueuedAt) {
+            this.data = data;
+            this.length = length;
+            this.source = source;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+    /**
+     * Mensaje decodificado pendiente de despachar: un texto o una trama binaria.
+     */
+    private static final class DecodedMessage {
+        private final String message;
+        private final Frame frame;
+        private final InetSocketAddress source;
+        private final long enqueuedAt;
+
+        private DecodedMessage(String message, Frame frame, InetSocketAddress source, long enqueuedAt) {
+            this.message = message;
+            this.frame = frame;
+            this.source = source;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+}
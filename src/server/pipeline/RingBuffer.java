@@ -0,0 +1,111 @@
+package server.pipeline;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Cola acotada sin bloqueos para varios productores y varios consumidores.
+ * <p>
+ * Cada celda del buffer circular lleva un número de secuencia que indica si está libre para el productor
+ * o lista para el consumidor, de modo que productores y consumidores solo compiten con una operación CAS
+ * sobre su propio contador. La capacidad se redondea a la siguiente potencia de dos.
+ * </p>
+ *
+ * @param <E> El tipo de elementos almacenados.
+ */
+public class RingBuffer<E> {
+    private final int mask;  // Máscara para convertir una posición en un índice del buffer
+    private final AtomicReferenceArray<E> elements;  // Celdas del buffer
+    private final AtomicLongArray sequences;  // Secuencia de cada celda
+    private final AtomicLong tail;  // Siguiente posición a escribir por los productores
+    private final AtomicLong head;  // Siguiente posición a leer por los consumidores
+
+    /**
+     * Constructor de la clase {@code RingBuffer}.
+     *
+     * @param capacity La capacidad mínima del buffer. Se redondea a la siguiente potencia de dos.
+     */
+    public RingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.mask = size - 1;
+        this.elements = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.tail = new AtomicLong();
+        this.head = new AtomicLong();
+    }
+
+    /**
+     * Inserta un elemento si hay espacio disponible.
+     *
+     * @param element El elemento a insertar.
+     * @return {@code true} si se insertó, {@code false} si el buffer está lleno.
+     */
+    public boolean offer(E element) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.set(index, element);
+                    sequences.set(index, position + 1);  // Publica la celda para los consumidores
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false;  // La celda aún no ha sido consumida: buffer lleno
+            } else {
+                position = tail.get();  // Otro productor avanzó, reintentar
+            }
+        }
+    }
+
+    /**
+     * Extrae el elemento más antiguo si existe.
+     *
+     * @return El elemento extraído, o {@code null} si el buffer está vacío.
+     */
+    public E poll() {
+        long position = head.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    E element = elements.get(index);
+                    elements.set(index, null);
+                    sequences.set(index, position + mask + 1);  // Libera la celda para la siguiente vuelta
+                    return element;
+                }
+                position = head.get();
+            } else if (difference < 0) {
+                return null;  // La celda aún no ha sido publicada: buffer vacío
+            } else {
+                position = head.get();  // Otro consumidor avanzó, reintentar
+            }
+        }
+    }
+
+    /**
+     * Obtiene el número aproximado de elementos en el buffer. El valor es exacto solo si no hay operaciones en curso.
+     *
+     * @return El número de elementos.
+     */
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+
+    /**
+     * Obtiene la capacidad del buffer.
+     *
+     * @return La capacidad, siempre potencia de dos.
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+}
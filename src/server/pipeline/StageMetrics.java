@@ -0,0 +1,112 @@
+package server.pipeline;
+
+import common.metrics.LatencyRecorder;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Métricas de una etapa del pipeline del servidor.
+ * <p>
+ * Registra la profundidad de las colas de entrada de la etapa, los elementos procesados, los descartados
+ * y la latencia (desde que el elemento entra en la cola de la etapa hasta que termina de procesarse).
+ * Los contadores de latencia se reinician en cada {@link #snapshot()}, de modo que cada informe
+ * refleja solo el último intervalo.
+ * </p>
+ */
+public class StageMetrics {
+    private final String name;  // Nombre de la etapa
+    private final RingBuffer<?>[] queues;  // Colas de entrada de la etapa
+    private final LatencyRecorder latency;  // Elementos procesados y su latencia
+    private final LongAdder dropped;  // Elementos descartados por cola llena
+
+    /**
+     * Constructor de la clase {@code StageMetrics}.
+     *
+     * @param name El nombre de la etapa.
+     * @param queues Las colas de entrada de la etapa.
+     */
+    public StageMetrics(String name, RingBuffer<?>... queues) {
+        this.name = name;
+        this.queues = queues;
+        this.latency = new LatencyRecorder(name);
+        this.dropped = new LongAdder();
+    }
+
+    /**
+     * Registra un elemento procesado.
+     *
+     * @param enqueuedAt El instante, en {@link System#nanoTime()}, en que el elemento entró en la cola de la etapa.
+     */
+    public void recordProcessed(long enqueuedAt) {
+        latency.recordSince(enqueuedAt);
+    }
+
+    /**
+     * Registra un elemento descartado porque la cola de la etapa estaba llena.
+     */
+    public void recordDropped() {
+        dropped.increment();
+    }
+
+    /**
+     * Obtiene la profundidad actual de las colas de la etapa.
+     *
+     * @return La suma de elementos pendientes en todas las colas.
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (RingBuffer<?> queue : queues) {
+            depth += queue.size();
+        }
+        return depth;
+    }
+
+    /**
+     * Obtiene la capacidad total de las colas de la etapa.
+     *
+     * @return La suma de las capacidades.
+     */
+    public int getQueueCapacity() {
+        int capacity = 0;
+        for (RingBuffer<?> queue : queues) {
+            capacity += queue.capacity();
+        }
+        return capacity;
+    }
+
+    /**
+     * Obtiene el número de elementos procesados desde el inicio.
+     *
+     * @return Los elementos procesados.
+     */
+    public long getProcessed() {
+        return latency.getTotal();
+    }
+
+    /**
+     * Obtiene el número de elementos descartados desde el inicio.
+     *
+     * @return Los elementos descartados.
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Genera un resumen de la etapa y reinicia los contadores de latencia del intervalo.
+     *
+     * @return Una cadena con profundidad, descartados, procesados y latencias media y máxima en microsegundos.
+     */
+    public String snapshot() {
+        return String.format("%s depth=%d/%d dropped=%d", latency.snapshot(), getQueueDepth(), getQueueCapacity(), getDropped());
+    }
+
+    /**
+     * Obtiene el nombre de la etapa.
+     *
+     * @return El nombre.
+     */
+    public String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,110 @@
+package common.data;
+
+import common.model.Message;
+import common.model.User;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Prueba de {@link MessageJournal} a lo largo de varios reinicios.
+ * <p>
+ * Comprueba que, tras cada reinicio, el diario sigue anexando en el último segmento en lugar de abrir uno nuevo,
+ * de modo que la retención por número de segmentos no elimina mensajes, y que al llenarse un segmento se abre
+ * otro sin perder los mensajes del anterior. Se ejecuta con su método {@code main}, que termina con código 1
+ * si alguna comprobación falla.
+ * </p>
+ */
+public class MessageJournalTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+    private static final int MAX_SEGMENTS = 2;
+
+    private final Path directory;
+
+    private MessageJournalTest(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Ejecuta la prueba.
+     *
+     * @param args No se usan.
+     * @throws Exception Si la prueba no puede ejecutarse.
+     */
+    public static void main(String[] args) throws Exception {
+        Path directory = Files.createTempDirectory("journal-test");
+        MessageJournalTest test = new MessageJournalTest(directory);
+        try {
+            test.restartsKeepAppendingToLastSegment();
+            test.fullSegmentRollsOver();
+            System.out.println("MessageJournalTest: OK");
+        } catch (AssertionError e) {
+            System.out.println("MessageJournalTest: FAILED - " + e.getMessage());
+            System.exit(1);
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    /**
+     * Más reinicios que segmentos conservados, con un mensaje en cada uno: no se pierde ninguno.
+     */
+    private void restartsKeepAppendingToLastSegment() throws Exception {
+        for (int restart = 0; restart < MAX_SEGMENTS + 3; restart++) {
+            try (MessageJournal journal = open()) {
+                long next = journal.replay((sequence, timestamp, message) -> { });
+                journal.append(next, System.currentTimeMillis(), new Message(new User("alice", null), "restart " + restart));
+            }
+        }
+        List<String> texts = replay();
+        check(texts.size() == MAX_SEGMENTS + 3, "messages lost across restarts: " + texts);
+        check(segmentCount() == 1, "restarts opened new segments: " + segmentCount());
+    }
+
+    /**
+     * Un segmento lleno da paso a otro y ambos se leen en la reconstrucción.
+     */
+    private void fullSegmentRollsOver() throws Exception {
+        int before = replay().size();
+        String text = "x".repeat(1000);
+        try (MessageJournal journal = open()) {
+            long next = journal.replay((sequence, timestamp, message) -> { });
+            for (int i = 0; i < 4; i++) {
+                journal.append(next + i, System.currentTimeMillis(), new Message(new User("bob", null), text));
+            }
+        }
+        check(segmentCount() == 2, "expected a second segment, found " + segmentCount());
+        check(replay().size() == before + 4, "messages lost when rolling: " + replay().size());
+    }
+
+    private MessageJournal open() throws Exception {
+        return new MessageJournal(directory, SEGMENT_SIZE, MAX_SEGMENTS, 1000);
+    }
+
+    private List<String> replay() throws Exception {
+        List<String> texts = new ArrayList<>();
+        try (MessageJournal journal = open()) {
+            journal.replay((sequence, timestamp, message) -> texts.add(message.getText()));
+        }
+        return texts;
+    }
+
+    private long segmentCount() throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
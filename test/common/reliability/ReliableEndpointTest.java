@@ -0,0 +1,130 @@
+package common.reliability;
+
+import common.protocol.Frame;
+import common.protocol.FrameCodec;
+import common.timer.TimerWheel;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Prueba de {@link ReliableEndpoint} con dos extremos unidos por una red simulada en memoria.
+ * <p>
+ * Comprueba que un receptor que ha olvidado la sesión hace que el emisor empiece una secuencia nueva en lugar de
+ * retransmitir en vano, y que las confirmaciones fuera de la ventana de envío se ignoran. Se ejecuta con su
+ * método {@code main}, que termina con código 1 si alguna comprobación falla.
+ * </p>
+ */
+public class ReliableEndpointTest {
+
+    private static final InetSocketAddress ALICE = new InetSocketAddress("127.0.0.1", 1001);
+    private static final InetSocketAddress BOB = new InetSocketAddress("127.0.0.1", 1002);
+
+    private final Queue<Datagram> network = new ArrayDeque<>();  // Datagramas en tránsito
+    private final List<String> deliveredToBob = new ArrayList<>();
+    private final TimerWheel timers = new TimerWheel("reliable-test");
+    private final ReliableEndpoint alice = new ReliableEndpoint(timers, (payload, to) -> network.add(new Datagram(ALICE, to, payload)));
+    private final ReliableEndpoint bob = new ReliableEndpoint(timers, (payload, to) -> network.add(new Datagram(BOB, to, payload)));
+
+    /**
+     * Ejecuta la prueba.
+     *
+     * @param args No se usan.
+     * @throws Exception Si la prueba no puede ejecutarse.
+     */
+    public static void main(String[] args) throws Exception {
+        ReliableEndpointTest test = new ReliableEndpointTest();
+        try {
+            test.forgottenReceiverRestartsSequence();
+            test.outOfWindowAcksAreIgnored();
+            System.out.println("ReliableEndpointTest: OK");
+        } catch (AssertionError e) {
+            System.out.println("ReliableEndpointTest: FAILED - " + e.getMessage());
+            System.exit(1);
+        } finally {
+            test.timers.close();
+        }
+    }
+
+    /**
+     * El receptor olvida la sesión a mitad de la secuencia: las tramas siguientes llegan igualmente, en orden.
+     */
+    private void forgottenReceiverRestartsSequence() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            alice.send(chat("before-" + i), BOB);
+        }
+        pump();
+        bob.forget(ALICE);
+        for (int i = 0; i < 3; i++) {
+            alice.send(chat("after-" + i), BOB);
+        }
+        pump();
+        check(deliveredToBob.equals(List.of("before-0", "before-1", "before-2", "after-0", "after-1", "after-2")),
+                "unexpected delivery after forget: " + deliveredToBob);
+        check(alice.awaitDelivery(BOB, 0), "frames still pending after restart");
+    }
+
+    /**
+     * Una confirmación de secuencias nunca enviadas no libera las tramas pendientes.
+     */
+    private void outOfWindowAcksAreIgnored() throws Exception {
+        alice.send(chat("lost"), BOB);
+        Datagram lost = network.poll();  // La trama se pierde
+        int sequence = FrameCodec.decode(lost.payload, 0, lost.payload.length).getSequence();
+        for (int cumulative : new int[]{sequence + 1000, sequence - 1000}) {
+            byte[] ack = FrameCodec.encode(FrameCodec.OP_ACK, (byte) 0, cumulative, Long.toHexString(-1L));
+            alice.receive(FrameCodec.decode(ack, 0, ack.length), BOB);
+            check(!alice.awaitDelivery(BOB, 0), "ack with cumulative " + cumulative + " released a pending frame");
+        }
+        // Acumulada válida, pero con bits selectivos de secuencias no enviadas
+        byte[] ack = FrameCodec.encode(FrameCodec.OP_ACK, (byte) 0, sequence, Long.toHexString(-1L));
+        alice.receive(FrameCodec.decode(ack, 0, ack.length), BOB);
+        check(!alice.awaitDelivery(BOB, 0), "selective bits beyond the send window released a pending frame");
+    }
+
+    /**
+     * Entrega los datagramas en tránsito, y los que provocan, hasta que no queda ninguno.
+     */
+    private void pump() throws Exception {
+        Datagram datagram;
+        while ((datagram = network.poll()) != null) {
+            Frame frame = FrameCodec.decode(datagram.payload, 0, datagram.payload.length);
+            ReliableEndpoint target = datagram.to.equals(BOB) ? bob : alice;
+            for (Frame delivered : target.receive(frame, datagram.from)) {
+                if (target == bob) {
+                    deliveredToBob.add(delivered.getField(0));
+                }
+            }
+        }
+    }
+
+    private static byte[] chat(String text) {
+        return FrameCodec.encode(FrameCodec.OP_CHAT, (byte) 0, 0, text);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    /**
+     * Un datagrama en tránsito, copiado al enviarse.
+     */
+    private static final class Datagram {
+        private final InetSocketAddress from;
+        private final InetSocketAddress to;
+        private final byte[] payload;
+
+        private Datagram(InetSocketAddress from, InetSocketAddress to, ByteBuffer payload) {
+            this.from = from;
+            this.to = to;
+            this.payload = new byte[payload.remaining()];
+            payload.duplicate().get(this.payload);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package server;
+
+import common.command.commands.LoginCommand;
+import common.protocol.Frame;
+import common.protocol.FrameCodec;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Prueba de la expulsión de los clientes inactivos.
+ * <p>
+ * Arranca un servidor con un plazo de inactividad corto y lo usa con un cliente binario que anuncia latidos:
+ * comprueba que el cliente solo se vigila desde que inicia sesión, que al expulsarlo se le avisa con
+ * {@link FrameCodec#OP_SESSION_EXPIRED}, que un latido posterior recibe el mismo aviso en lugar de volver a
+ * vigilarlo en silencio y que puede volver a iniciar sesión. Se ejecuta con su método {@code main}, que termina
+ * con código 1 si alguna comprobación falla.
+ * </p>
+ */
+public class IdleEvictionTest {
+
+    private static final int IDLE_MILLIS = 300;  // Plazo de inactividad del servidor de la prueba
+    private static final long TIMEOUT_MILLIS = 5000;  // Espera máxima de cada comprobación
+
+    private final List<Frame> inbox = new ArrayList<>();
+    private DatagramSocket socket;
+    private InetSocketAddress server;
+
+    /**
+     * Ejecuta la prueba.
+     *
+     * @param args No se usan.
+     * @throws Exception Si la prueba no puede ejecutarse.
+     */
+    public static void main(String[] args) throws Exception {
+        IdleEvictionTest test = new IdleEvictionTest();
+        Server node = null;
+        try {
+            node = test.startServer();
+            test.run();
+            System.out.println("IdleEvictionTest: OK");
+        } catch (AssertionError e) {
+            System.out.println("IdleEvictionTest: FAILED - " + e.getMessage());
+            System.exit(1);
+        } finally {
+            if (node != null) {
+                node.stop();
+            }
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Recorre los casos de la prueba en orden.
+     *
+     * @throws Exception Si la prueba no puede ejecutarse.
+     */
+    private void run() throws Exception {
+        // Sin sesión, las tramas con el indicador de latidos no hacen que se vigile al cliente
+        send(FrameCodec.encode(FrameCodec.OP_CHAT, FrameCodec.FLAG_SENDS_HEARTBEATS, 0, "anyone there?"));
+        Thread.sleep(3 * IDLE_MILLIS);
+        check(!received(FrameCodec.OP_SESSION_EXPIRED, ""), "client without a session was evicted");
+
+        // Con sesión, el silencio lleva a la expulsión y al aviso
+        login("dave");
+        expect(FrameCodec.OP_SESSION_EXPIRED, "Session timed out.");
+
+        // Un latido de un cliente expulsado recibe otra vez el aviso
+        inbox.clear();
+        send(FrameCodec.encode(FrameCodec.OP_HEARTBEAT, FrameCodec.FLAG_SENDS_HEARTBEATS, 0));
+        expect(FrameCodec.OP_SESSION_EXPIRED, "Session expired.");
+
+        // El cliente puede volver a iniciar sesión
+        inbox.clear();
+        login("dave");
+    }
+
+    /**
+     * Arranca el servidor en un puerto libre, en un hilo propio.
+     *
+     * @return El servidor.
+     * @throws IOException Si no se puede abrir el socket del cliente.
+     */
+    private Server startServer() throws IOException {
+        socket = new DatagramSocket(0);
+        socket.setSoTimeout(50);
+        int port;
+        try (DatagramSocket probe = new DatagramSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        server = new InetSocketAddress("127.0.0.1", port);
+        Properties properties = new Properties();
+        properties.setProperty("chat.server.port", Integer.toString(port));
+        properties.setProperty("chat.server.idleTimeout", Integer.toString(IDLE_MILLIS));
+        Server node = ServerLauncher.createServer(new ServerConfig(properties));
+        Thread thread = new Thread(node::start, "server-" + port);
+        thread.setDaemon(true);
+        thread.start();
+        return node;
+    }
+
+    /**
+     * Inicia sesión, repitiendo el login hasta que llega la confirmación por si el servidor aún no escuchaba.
+     */
+    private void login(String username) throws IOException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        do {
+            send(FrameCodec.encode(LoginCommand.OPCODE, FrameCodec.FLAG_SENDS_HEARTBEATS, 0, username));
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError(username + " could not log in, received " + inbox);
+            }
+        } while (!received(FrameCodec.OP_CHAT, "is connected."));
+    }
+
+    private void send(byte[] frame) throws IOException {
+        socket.send(new DatagramPacket(frame, frame.length, server));
+    }
+
+    /**
+     * Recibe lo que haya pendiente y comprueba si alguna trama tiene el código y un campo que contiene el texto.
+     */
+    private boolean received(byte opcode, String text) throws IOException {
+        byte[] buffer = new byte[65535];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        try {
+            while (true) {
+                socket.receive(packet);
+                inbox.add(FrameCodec.decode(packet.getData(), 0, packet.getLength()));
+            }
+        } catch (SocketTimeoutException e) {
+            // No hay más tramas pendientes
+        }
+        return inbox.stream().anyMatch(frame -> frame.getOpcode() == opcode && frame.joinFields().contains(text));
+    }
+
+    /**
+     * Espera a recibir una trama con el código y un campo que contiene el texto.
+     */
+    private void expect(byte opcode, String text) throws IOException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!received(opcode, text)) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("expected \"" + text + "\", received " + inbox);
+            }
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
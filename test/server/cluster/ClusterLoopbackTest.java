@@ -0,0 +1,278 @@
+package server.cluster;
+
+import server.AbstractUDPServer;
+import server.Server;
+import server.ServerConfig;
+import server.ServerLauncher;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Prueba de integración del clúster sobre la interfaz de bucle local.
+ * <p>
+ * Arranca tres nodos en el mismo proceso, en puertos libres, y los usa con clientes del protocolo de texto:
+ * comprueba la difusión entre nodos en una sala, el reenvío de mensajes privados y la respuesta cuando el
+ * destinatario no existe, el rechazo de un nombre ya conectado en otro nodo, una presencia que no cabe en un
+ * datagrama y la salida del clúster de un nodo detenido. Se ejecuta con su método {@code main}, que termina con
+ * código 1 si alguna comprobación falla.
+ * </p>
+ */
+public class ClusterLoopbackTest {
+
+    private static final int GOSSIP_MILLIS = 100;  // Intervalo de presencia de los nodos de la prueba
+    private static final long TIMEOUT_MILLIS = 5000;  // Espera máxima de cada comprobación
+    private static final int CROWD = 200;  // Usuarios de un nodo, con nombres largos para ocupar varias páginas de presencia
+
+    private final List<Server> nodes = new ArrayList<>();
+    private final List<TextClient> clients = new ArrayList<>();
+
+    /**
+     * Ejecuta la prueba.
+     *
+     * @param args No se usan.
+     * @throws Exception Si la prueba no puede ejecutarse.
+     */
+    public static void main(String[] args) throws Exception {
+        ClusterLoopbackTest test = new ClusterLoopbackTest();
+        try {
+            test.run();
+            System.out.println("ClusterLoopbackTest: OK");
+        } catch (AssertionError e) {
+            System.out.println("ClusterLoopbackTest: FAILED - " + e.getMessage());
+            System.exit(1);
+        } finally {
+            test.close();
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Recorre los casos de la prueba en orden, ya que cada uno parte del estado que deja el anterior.
+     *
+     * @throws Exception Si la prueba no puede ejecutarse.
+     */
+    private void run() throws Exception {
+        int[] ports = freePorts(6);
+        InetSocketAddress[] cluster = {
+                new InetSocketAddress("127.0.0.1", ports[3]),
+                new InetSocketAddress("127.0.0.1", ports[4]),
+                new InetSocketAddress("127.0.0.1", ports[5])
+        };
+        AbstractUDPServer node1 = startNode(ports[0], cluster[0], cluster[1], cluster[2]);
+        AbstractUDPServer node2 = startNode(ports[1], cluster[1], cluster[0], cluster[2]);
+        Server node3 = startNode(ports[2], cluster[2], cluster[0], cluster[1]);
+
+        TextClient alice = client(ports[0]);
+        TextClient bob = client(ports[1]);
+        TextClient carol = client(ports[2]);
+        alice.login("alice");
+        bob.login("bob");
+        carol.login("carol");
+        await("presence converges", () -> node1.getCluster().getRemoteUsers().containsAll(List.of("bob", "carol"))
+                && node2.getCluster().getRemoteUsers().containsAll(List.of("alice", "carol")));
+
+        // Difusión entre nodos: solo la reciben los miembros de la sala
+        alice.send("/join dev");
+        bob.send("/join dev");
+        alice.expect("You are now in dev.");
+        bob.expect("You are now in dev.");
+        Thread.sleep(3 * GOSSIP_MILLIS);
+        alice.send("hello dev");
+        bob.expect("[alice] hello dev");
+        carol.send("hello general");
+        Thread.sleep(3 * GOSSIP_MILLIS);
+        check(!bob.received("hello general") && !alice.received("hello general"), "general message leaked into dev");
+        check(!carol.received("hello dev"), "dev message leaked into general");
+
+        // Mensajes privados entre nodos y destinatario inexistente
+        carol.send("/private alice psst");
+        alice.expect("[carol] [Private] psst");
+        carol.send("/private nobody hello");
+        carol.expect("User nobody not found.");
+
+        // Nombre ya conectado en otro nodo
+        TextClient impostor = client(ports[1]);
+        impostor.send("/login alice");
+        impostor.expect("User already exists. Try another name.");
+
+        // Presencia de más usuarios de los que caben en un datagrama
+        for (int i = 0; i < CROWD; i++) {
+            client(ports[1]).send("/login crowd-member-" + (1000 + i));
+        }
+        await("paged presence reaches node1", () -> node1.getCluster().getRemoteUsers().size() == CROWD + 2);
+
+        // Nodo caído: los demás dejan de verlo tras los intervalos sin presencia
+        node3.stop();
+        await("stopped node expires", () -> !node1.getCluster().getRemoteUsers().contains("carol")
+                && !node2.getCluster().getRemoteUsers().contains("carol"));
+        bob.send("/private carol anyone");
+        bob.expect("User carol not found.");
+    }
+
+    /**
+     * Arranca un nodo en un hilo propio.
+     *
+     * @param port El puerto de los clientes.
+     * @param bind La dirección del clúster del nodo.
+     * @param peers Las direcciones del clúster de los demás nodos.
+     * @return El servidor del nodo.
+     */
+    private AbstractUDPServer startNode(int port, InetSocketAddress bind, InetSocketAddress... peers) {
+        Properties properties = new Properties();
+        properties.setProperty("chat.server.port", Integer.toString(port));
+        properties.setProperty("chat.server.cluster.bind", "127.0.0.1:" + bind.getPort());
+        StringBuilder seeds = new StringBuilder();
+        for (InetSocketAddress peer : peers) {
+            seeds.append(seeds.length() == 0 ? "" : ",").append("127.0.0.1:").append(peer.getPort());
+        }
+        properties.setProperty("chat.server.cluster.peers", seeds.toString());
+        properties.setProperty("chat.server.cluster.gossipInterval", Integer.toString(GOSSIP_MILLIS));
+        AbstractUDPServer server = (AbstractUDPServer) ServerLauncher.createServer(new ServerConfig(properties));
+        Thread thread = new Thread(server::start, "node-" + port);
+        thread.setDaemon(true);
+        thread.start();
+        nodes.add(server);
+        return server;
+    }
+
+    /**
+     * Crea un cliente de texto para un nodo.
+     *
+     * @param port El puerto del nodo.
+     * @return El cliente.
+     * @throws IOException Si no se puede abrir su socket.
+     */
+    private TextClient client(int port) throws IOException {
+        TextClient client = new TextClient(port);
+        clients.add(client);
+        return client;
+    }
+
+    /**
+     * Detiene los nodos y cierra los clientes.
+     */
+    private void close() {
+        clients.forEach(client -> client.socket.close());
+        nodes.forEach(Server::stop);
+    }
+
+    /**
+     * Reserva puertos UDP libres abriendo sockets efímeros y cerrándolos.
+     *
+     * @param count El número de puertos.
+     * @return Los puertos.
+     * @throws IOException Si no se pueden abrir los sockets.
+     */
+    private static int[] freePorts(int count) throws IOException {
+        DatagramSocket[] sockets = new DatagramSocket[count];
+        int[] ports = new int[count];
+        for (int i = 0; i < count; i++) {
+            sockets[i] = new DatagramSocket(0);
+            ports[i] = sockets[i].getLocalPort();
+        }
+        for (DatagramSocket socket : sockets) {
+            socket.close();
+        }
+        return ports;
+    }
+
+    /**
+     * Espera a que se cumpla una condición.
+     *
+     * @param description La condición, para el mensaje de error.
+     * @param condition La condición.
+     * @throws InterruptedException Si se interrumpe la espera.
+     */
+    private static void await(String description, BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("timed out waiting for: " + description);
+            }
+            Thread.sleep(20);
+        }
+    }
+
+    /**
+     * Comprueba una condición.
+     *
+     * @param condition La condición.
+     * @param message El mensaje de error si no se cumple.
+     */
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    /**
+     * Cliente del protocolo de texto que guarda todo lo que recibe.
+     */
+    private static final class TextClient {
+        private final DatagramSocket socket;
+        private final InetSocketAddress server;
+        private final List<String> inbox = new ArrayList<>();
+
+        private TextClient(int port) throws IOException {
+            this.socket = new DatagramSocket(0);
+            this.socket.setSoTimeout(50);
+            this.server = new InetSocketAddress("127.0.0.1", port);
+        }
+
+        /**
+         * Inicia sesión, repitiendo el login hasta que llega la confirmación por si el nodo aún no escuchaba.
+         */
+        private void login(String username) throws IOException {
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            do {
+                send("/login " + username);
+                if (System.currentTimeMillis() > deadline) {
+                    throw new AssertionError(username + " could not log in, received " + inbox);
+                }
+            } while (!received("[" + username + "] is connected."));
+        }
+
+        private void send(String text) throws IOException {
+            byte[] data = text.getBytes(StandardCharsets.UTF_8);
+            socket.send(new DatagramPacket(data, data.length, server));
+        }
+
+        /**
+         * Recibe lo que haya pendiente y comprueba si algún mensaje contiene el texto.
+         */
+        private boolean received(String text) throws IOException {
+            byte[] buffer = new byte[65535];
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                while (true) {
+                    socket.receive(packet);
+                    inbox.add(new String(packet.getData(), 0, packet.getLength(), StandardCharsets.UTF_8));
+                }
+            } catch (SocketTimeoutException e) {
+                // No hay más mensajes pendientes
+            }
+            return inbox.stream().anyMatch(message -> message.contains(text));
+        }
+
+        /**
+         * Espera a recibir un mensaje que contenga el texto.
+         */
+        private void expect(String text) throws IOException {
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            while (!received(text)) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new AssertionError("expected \"" + text + "\", received " + inbox);
+                }
+            }
+        }
+    }
+}